@@ -19,6 +19,7 @@ import com.intellij.ProjectTopics;
 import com.intellij.compiler.CompilerWorkspaceConfiguration;
 import com.intellij.compiler.impl.javaCompiler.javac.JavacConfiguration;
 import com.intellij.compiler.server.impl.CompileServerClasspathManager;
+import com.intellij.concurrency.JobScheduler;
 import com.intellij.execution.ExecutionAdapter;
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.ExecutionManager;
@@ -108,6 +109,8 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -128,10 +131,17 @@ public class BuildManager implements ApplicationComponent{
   public static final String TEMP_DIR_NAME = "_temp_";
   private static final int MAKE_TRIGGER_DELAY = 300 /*300 ms*/;
   private static final int DOCUMENT_SAVE_TRIGGER_DELAY = 1500 /*1.5 sec*/;
+  private static final int PRELOADED_PROCESS_SHUTDOWN_TIMEOUT = 30000 /*30 sec*/;
+  private static final int PRELOADED_PROCESS_IDLE_TIMEOUT = 600 /*10 min*/;
   private final boolean IS_UNIT_TEST_MODE;
   private static final String IWS_EXTENSION = ".iws";
   private static final String IPR_EXTENSION = ".ipr";
   private static final String IDEA_PROJECT_DIR_PATTERN = "/.idea/";
+  private static final String IML_EXTENSION = ".iml";
+  private static final String XML_EXTENSION = ".xml";
+  private static final String WORKSPACE_FILE_NAME = "workspace.xml";
+  // application level configuration the build process loads the project model with
+  private static final String[] GLOBAL_CONFIGURATION_FILE_NAMES = {"jdk.table.xml", "applicationLibraries.xml", "path.macros.xml"};
   private static final Function<String, Boolean> PATH_FILTER =
     SystemInfo.isFileSystemCaseSensitive?
     new Function<String, Boolean>() {
@@ -156,6 +166,8 @@ public class BuildManager implements ApplicationComponent{
   private final Executor myPooledThreadExecutor = new PooledThreadExecutor();
   private final SequentialTaskExecutor myRequestsProcessor = new SequentialTaskExecutor(myPooledThreadExecutor);
   private final Map<String, ProjectData> myProjectDataMap = Collections.synchronizedMap(new HashMap<String, ProjectData>());
+  // a build process launched in advance for the next build of the project; only added and removed on the project's task queue
+  private final ConcurrentMap<String, BuildProcess> myPreloadedBuilds = new ConcurrentHashMap<String, BuildProcess>();
 
   private final BuildManagerPeriodicTask myAutoMakeTask = new BuildManagerPeriodicTask() {
     @Override
@@ -234,11 +246,41 @@ public class BuildManager implements ApplicationComponent{
     conn.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener.Adapter() {
       @Override
       public void after(@NotNull List<? extends VFileEvent> events) {
+        if (!myPreloadedBuilds.isEmpty()) {
+          cancelPreloadedBuildsWithChangedConfiguration(events);
+        }
         if (shouldTriggerMake(events)) {
           scheduleAutoMake();
         }
       }
 
+      /**
+       * Preloaded processes have loaded the project model, which is outdated if the files it is loaded from are changed
+       */
+      private void cancelPreloadedBuildsWithChangedConfiguration(List<? extends VFileEvent> events) {
+        final String optionsPath = FileUtil.toSystemIndependentName(PathManager.getOptionsPath());
+        for (VFileEvent event : events) {
+          for (String fileName : GLOBAL_CONFIGURATION_FILE_NAMES) {
+            if (FileUtil.pathsEqual(event.getPath(), optionsPath + "/" + fileName)) {
+              cancelPreloadedBuilds(null);
+              return;
+            }
+          }
+        }
+        for (Project project : myProjectManager.getOpenProjects()) {
+          final String projectPath = getProjectPath(project);
+          if (projectPath == null || !myPreloadedBuilds.containsKey(projectPath)) {
+            continue;
+          }
+          for (VFileEvent event : events) {
+            if (isProjectConfigurationFile(project, projectPath, event.getPath())) {
+              cancelPreloadedBuilds(projectPath);
+              break;
+            }
+          }
+        }
+      }
+
       private boolean shouldTriggerMake(List<? extends VFileEvent> events) {
         if (PowerSaveMode.isEnabled()) {
           return false;
@@ -370,6 +412,7 @@ public class BuildManager implements ApplicationComponent{
 
   public void clearState(Project project) {
     final String projectPath = getProjectPath(project);
+    cancelPreloadedBuilds(projectPath);
     synchronized (myProjectDataMap) {
       final ProjectData data = myProjectDataMap.get(projectPath);
       if (data != null) {
@@ -399,6 +442,27 @@ public class BuildManager implements ApplicationComponent{
     }
   }
 
+  /**
+   * Checks if the project model is loaded from the file: the .ipr file or the .xml files in the .idea directory, and the module files.
+   * The workspace file is saved before every build and only affects the command line, which is checked separately.
+   */
+  private static boolean isProjectConfigurationFile(Project project, String projectPath, String path) {
+    if (StringUtil.endsWithIgnoreCase(path, IPR_EXTENSION)) {
+      return FileUtil.pathsEqual(path, projectPath);
+    }
+    if (StringUtil.endsWithIgnoreCase(path, IML_EXTENSION)) {
+      for (Module module : ModuleManager.getInstance(project).getModules()) {
+        if (FileUtil.pathsEqual(path, FileUtil.toSystemIndependentName(module.getModuleFilePath()))) {
+          return true;
+        }
+      }
+      return false;
+    }
+    final String ideaDirPath = projectPath + IDEA_PROJECT_DIR_PATTERN;
+    return FileUtil.startsWith(path, ideaDirPath) && StringUtil.endsWithIgnoreCase(path, XML_EXTENSION) &&
+           !FileUtil.pathsEqual(path, ideaDirPath + WORKSPACE_FILE_NAME);
+  }
+
   @Nullable
   private static String getProjectPath(final Project project) {
     final String url = project.getPresentableUrl();
@@ -592,22 +656,12 @@ public class BuildManager implements ApplicationComponent{
                     return;
                   }
                   myBuildsInProgress.put(projectPath, future);
-                  final OSProcessHandler processHandler = launchBuildProcess(project, myListenPort, sessionId);
-                  final StringBuilder stdErrOutput = new StringBuilder();
-                  processHandler.addProcessListener(new ProcessAdapter() {
-                    @Override
-                    public void onTextAvailable(ProcessEvent event, Key outputType) {
-                      // re-translate builder's output to idea.log
-                      final String text = event.getText();
-                      if (!StringUtil.isEmptyOrSpaces(text)) {
-                        LOG.info("BUILDER_PROCESS [" + outputType.toString() + "]: " + text.trim());
-                        if (stdErrOutput.length() < 1024 && ProcessOutputTypes.STDERR.equals(outputType)) {
-                          stdErrOutput.append(text);
-                        }
-                      }
-                    }
-                  });
-                  processHandler.startNotify();
+                  BuildProcess buildProcess = takePreloadedProcess(project, projectPath, sessionId);
+                  if (buildProcess == null) {
+                    buildProcess = launchBuildProcess(project, myListenPort, sessionId, false);
+                  }
+                  final OSProcessHandler processHandler = buildProcess.processHandler;
+                  final StringBuilder stdErrOutput = buildProcess.stdErrOutput;
                   final boolean terminated = processHandler.waitFor();
                   if (terminated) {
                     final int exitValue = processHandler.getProcess().exitValue();
@@ -643,6 +697,9 @@ public class BuildManager implements ApplicationComponent{
                       unregistered.sessionTerminated(sessionId);
                     }
                   }
+                  if (execFailure == null) {
+                    preloadBuildProcess(project, projectPath, projectTaskQueue);
+                  }
                 }
               }
             });
@@ -676,13 +733,173 @@ public class BuildManager implements ApplicationComponent{
     stopListening();
   }
 
+  /**
+   * Launches a build process which loads the project and opens its build data while waiting for the next build request.
+   * Called on the project's task queue after a build is finished, so the process never runs concurrently with another build of the project.
+   */
+  private void preloadBuildProcess(final Project project, final String projectPath, SequentialTaskExecutor projectTaskQueue) {
+    if (IS_UNIT_TEST_MODE || !Registry.is("compiler.process.preload") || project.isDisposed()) {
+      return;
+    }
+    projectTaskQueue.submit(new Runnable() {
+      @Override
+      public void run() {
+        if (project.isDisposed() || myPreloadedBuilds.containsKey(projectPath)) {
+          return;
+        }
+        final UUID preloadedId = UUID.randomUUID();
+        myMessageDispatcher.registerPreloadedSession(preloadedId, new BuilderMessageHandler() {
+          @Override
+          public void buildStarted(UUID sessionId) {
+          }
+
+          @Override
+          public void handleBuildMessage(Channel channel, UUID sessionId, CmdlineRemoteProto.Message.BuilderMessage msg) {
+          }
+
+          @Override
+          public void handleFailure(UUID sessionId, CmdlineRemoteProto.Message.Failure failure) {
+            LOG.info("Preloaded build process failure: " + failure.getDescription());
+          }
+
+          @Override
+          public void sessionTerminated(UUID sessionId) {
+          }
+        });
+        try {
+          final BuildProcess process = launchBuildProcess(project, myListenPort, preloadedId, true);
+          myPreloadedBuilds.put(projectPath, process);
+          scheduleIdleShutdown(projectPath, process);
+        }
+        catch (Throwable e) {
+          myMessageDispatcher.unregisterBuildMessageHandler(preloadedId);
+          LOG.info("Failed to preload build process for " + projectPath, e);
+        }
+      }
+    });
+  }
+
+  /**
+   * The preloaded process keeps a JVM with the loaded project, so it's shut down if no build is started for a while
+   */
+  private void scheduleIdleShutdown(final String projectPath, final BuildProcess process) {
+    final int timeout = Registry.intValue("compiler.process.preload.idle.timeout", PRELOADED_PROCESS_IDLE_TIMEOUT);
+    JobScheduler.getScheduler().schedule(new Runnable() {
+      @Override
+      public void run() {
+        if (myPreloadedBuilds.get(projectPath) == process) {
+          cancelPreloadedBuild(projectPath, process);
+        }
+      }
+    }, timeout, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Called on the project's task queue before a build is started. A preloaded process that cannot run the build
+   * is shut down, so that a new process does not open the same build data concurrently.
+   * @return the preloaded process which has started the session, or null if a new process should be launched
+   */
+  @Nullable
+  private BuildProcess takePreloadedProcess(Project project, String projectPath, UUID sessionId) {
+    final BuildProcess process = myPreloadedBuilds.remove(projectPath);
+    if (process == null) {
+      return null;
+    }
+    if (!process.obsolete && !process.processHandler.isProcessTerminated() && hasSameCommandLine(project, process) &&
+        myMessageDispatcher.startPreloadedSession(process.sessionId, sessionId)) {
+      return process;
+    }
+    shutdownPreloadedProcess(process);
+    return null;
+  }
+
+  private boolean hasSameCommandLine(Project project, BuildProcess process) {
+    try {
+      return process.commandLine.equals(createBuildProcessCommandLine(project, myListenPort, process.sessionId, true).getCommandLineString());
+    }
+    catch (ExecutionException e) {
+      return false;
+    }
+  }
+
+  private void shutdownPreloadedProcess(BuildProcess process) {
+    // let the process close the storages it has opened
+    myMessageDispatcher.cancelSession(process.sessionId);
+    if (!process.processHandler.waitFor(PRELOADED_PROCESS_SHUTDOWN_TIMEOUT)) {
+      process.processHandler.destroyProcess();
+    }
+    myMessageDispatcher.unregisterBuildMessageHandler(process.sessionId);
+  }
+
+  /**
+   * @param projectPath the project to cancel the preloaded process for, or null to cancel the processes for all projects
+   */
+  private void cancelPreloadedBuilds(@Nullable String projectPath) {
+    for (Map.Entry<String, BuildProcess> entry : myPreloadedBuilds.entrySet()) {
+      final String path = entry.getKey();
+      if (projectPath != null && !projectPath.equals(path)) {
+        continue;
+      }
+      cancelPreloadedBuild(path, entry.getValue());
+    }
+  }
+
+  private void cancelPreloadedBuild(final String projectPath, final BuildProcess process) {
+    // a build already queued for the project will shut the process down instead of using it
+    process.obsolete = true;
+    final Runnable shutdown = new Runnable() {
+      @Override
+      public void run() {
+        if (myPreloadedBuilds.remove(projectPath, process)) {
+          shutdownPreloadedProcess(process);
+        }
+      }
+    };
+    final ProjectData data = myProjectDataMap.get(projectPath);
+    if (data != null) {
+      data.taskQueue.submit(shutdown);
+    }
+    else {
+      myPooledThreadExecutor.execute(shutdown);
+    }
+  }
+
   @NotNull
   @Override
   public String getComponentName() {
     return "com.intellij.compiler.server.BuildManager";
   }
 
-  private OSProcessHandler launchBuildProcess(Project project, final int port, final UUID sessionId) throws ExecutionException {
+  private BuildProcess launchBuildProcess(Project project, final int port, final UUID sessionId, boolean preload) throws ExecutionException {
+    final GeneralCommandLine cmdLine = createBuildProcessCommandLine(project, port, sessionId, preload);
+    final Process process = cmdLine.createProcess();
+
+    final OSProcessHandler processHandler = new OSProcessHandler(process, null, mySystemCharset) {
+      @Override
+      protected boolean shouldDestroyProcessRecursively() {
+        return true;
+      }
+    };
+    final BuildProcess buildProcess = new BuildProcess(sessionId, cmdLine.getCommandLineString(), processHandler);
+    final StringBuilder stdErrOutput = buildProcess.stdErrOutput;
+    processHandler.addProcessListener(new ProcessAdapter() {
+      @Override
+      public void onTextAvailable(ProcessEvent event, Key outputType) {
+        // re-translate builder's output to idea.log
+        final String text = event.getText();
+        if (!StringUtil.isEmptyOrSpaces(text)) {
+          LOG.info("BUILDER_PROCESS [" + outputType.toString() + "]: " + text.trim());
+          if (stdErrOutput.length() < 1024 && ProcessOutputTypes.STDERR.equals(outputType)) {
+            stdErrOutput.append(text);
+          }
+        }
+      }
+    });
+    processHandler.startNotify();
+    return buildProcess;
+  }
+
+  private GeneralCommandLine createBuildProcessCommandLine(Project project, final int port, final UUID sessionId, boolean preload) throws ExecutionException {
     final String compilerPath;
     final String vmExecutablePath;
     JavaSdkVersion sdkVersion = null;
@@ -822,6 +1039,9 @@ public class BuildManager implements ApplicationComponent{
     if (Registry.is("compiler.process.use.external.javac")) {
       cmdLine.addParameter("-D"+ GlobalOptions.USE_EXTERNAL_JAVAC_OPTION);
     }
+    if (Registry.is("compiler.process.content.hash.check")) {
+      cmdLine.addParameter("-D"+ GlobalOptions.CONTENT_HASH_CHECK_OPTION + "=true");
+    }
 
     // javac's VM should use the same default locale that IDEA uses in order for javac to print messages in 'correct' language
     if (mySystemCharset != null) {
@@ -850,6 +1070,11 @@ public class BuildManager implements ApplicationComponent{
       cmdLine.addParameter("-agentlib:yjpagent=disablej2ee,disablealloc,sessionname=ExternalBuild");
     }
 
+    if (preload) {
+      cmdLine.addParameter("-D" + BuildMain.PRELOAD_PROJECT_PATH + "=" + FileUtil.toSystemIndependentName(getProjectPath(project)));
+      cmdLine.addParameter("-D" + BuildMain.PRELOAD_CONFIG_PATH + "=" + FileUtil.toSystemIndependentName(PathManager.getOptionsPath()));
+    }
+
     cmdLine.addParameter("-classpath");
     cmdLine.addParameter(classpathToString(cp));
 
@@ -862,14 +1087,7 @@ public class BuildManager implements ApplicationComponent{
 
     cmdLine.setWorkDirectory(workDirectory);
 
-    final Process process = cmdLine.createProcess();
-
-    return new OSProcessHandler(process, null, mySystemCharset) {
-      @Override
-      protected boolean shouldDestroyProcessRecursively() {
-        return true;
-      }
-    };
+    return cmdLine;
   }
 
   public File getBuildSystemDirectory() {
@@ -995,6 +1213,20 @@ public class BuildManager implements ApplicationComponent{
     }
   }
 
+  private static final class BuildProcess {
+    final UUID sessionId;
+    final String commandLine;
+    final OSProcessHandler processHandler;
+    final StringBuilder stdErrOutput = new StringBuilder();
+    volatile boolean obsolete;
+
+    private BuildProcess(UUID sessionId, String commandLine, OSProcessHandler processHandler) {
+      this.sessionId = sessionId;
+      this.commandLine = commandLine;
+      this.processHandler = processHandler;
+    }
+  }
+
   private static abstract class BuildManagerPeriodicTask implements Runnable {
     private final Alarm myAlarm = new Alarm(Alarm.ThreadToUse.SHARED_THREAD);
     private final AtomicBoolean myInProgress = new AtomicBoolean(false);
@@ -1093,6 +1325,7 @@ public class BuildManager implements ApplicationComponent{
 
     @Override
     public void projectClosed(Project project) {
+      cancelPreloadedBuilds(getProjectPath(project));
       myProjectDataMap.remove(getProjectPath(project));
       final MessageBusConnection conn = myConnections.remove(project);
       if (conn != null) {
@@ -43,6 +43,50 @@ class BuildMessageDispatcher extends SimpleChannelHandler {
     myMessageHandlers.put(sessionId, new SessionData(sessionId, handler, params));
   }
 
+  /**
+   * Registers a build process launched in advance. The process is left waiting for build parameters
+   * until it is handed a session with {@link #startPreloadedSession(UUID, UUID)}.
+   */
+  public void registerPreloadedSession(UUID preloadedId, BuilderMessageHandler handler) {
+    final SessionData data = new SessionData(preloadedId, handler, null);
+    data.preloaded = true;
+    myMessageHandlers.put(preloadedId, data);
+  }
+
+  /**
+   * Hands the handler and parameters registered for the session to the preloaded process, which starts the build right away.
+   * @return false if the preloaded process is not connected or is already gone; the session is left intact in this case
+   */
+  public boolean startPreloadedSession(UUID preloadedId, UUID sessionId) {
+    final SessionData preloaded = myMessageHandlers.get(preloadedId);
+    final SessionData session = myMessageHandlers.get(sessionId);
+    if (preloaded == null || session == null) {
+      return false;
+    }
+    synchronized (preloaded) {
+      final Channel channel = preloaded.channel;
+      if (!preloaded.paramsRequested || preloaded.closed || channel == null || !channel.isConnected()) {
+        return false;
+      }
+      myMessageHandlers.remove(preloadedId);
+      preloaded.sessionId = sessionId;
+      preloaded.handler = session.handler;
+      preloaded.preloaded = false;
+      myMessageHandlers.put(sessionId, preloaded);
+
+      final CmdlineRemoteProto.Message.ControllerMessage params = session.params;
+      if (params != null) {
+        session.params = null;
+        preloaded.handler.buildStarted(sessionId);
+        Channels.write(channel, CmdlineProtoUtil.toMessage(sessionId, params));
+      }
+      if (myCanceledSessions.contains(sessionId)) {
+        Channels.write(channel, CmdlineProtoUtil.toMessage(sessionId, CmdlineProtoUtil.createCancelCommand()));
+      }
+    }
+    return true;
+  }
+
   @Nullable
   public BuilderMessageHandler unregisterBuildMessageHandler(UUID sessionId) {
     myCanceledSessions.remove(sessionId);
@@ -114,14 +158,20 @@ class BuildMessageDispatcher extends SimpleChannelHandler {
         final CmdlineRemoteProto.Message.BuilderMessage builderMessage = message.getBuilderMessage();
         final CmdlineRemoteProto.Message.BuilderMessage.Type msgType = builderMessage.getType();
         if (msgType == CmdlineRemoteProto.Message.BuilderMessage.Type.PARAM_REQUEST) {
-          final CmdlineRemoteProto.Message.ControllerMessage params = sessionData.params;
-          if (params != null) {
-            handler.buildStarted(sessionId);
-            sessionData.params = null;
-            Channels.write(ctx.getChannel(), CmdlineProtoUtil.toMessage(sessionId, params));
-          }
-          else {
-            cancelSession(sessionId);
+          synchronized (sessionData) {
+            final CmdlineRemoteProto.Message.ControllerMessage params = sessionData.params;
+            if (params != null) {
+              handler.buildStarted(sessionId);
+              sessionData.params = null;
+              Channels.write(ctx.getChannel(), CmdlineProtoUtil.toMessage(sessionId, params));
+            }
+            else if (sessionData.preloaded) {
+              // the process stays idle until a build is requested
+              sessionData.paramsRequested = true;
+            }
+            else {
+              cancelSession(sessionId);
+            }
           }
         }
         else {
@@ -143,10 +193,15 @@ class BuildMessageDispatcher extends SimpleChannelHandler {
     finally {
       final SessionData sessionData = (SessionData)ctx.getAttachment();
       if (sessionData != null) {
-        final BuilderMessageHandler handler = unregisterBuildMessageHandler(sessionData.sessionId);
+        final UUID sessionId;
+        synchronized (sessionData) {
+          sessionData.closed = true;
+          sessionId = sessionData.sessionId;
+        }
+        final BuilderMessageHandler handler = unregisterBuildMessageHandler(sessionId);
         if (handler != null) {
           // notify the handler only if it has not been notified yet
-          handler.sessionTerminated(sessionData.sessionId);
+          handler.sessionTerminated(sessionId);
         }
       }
     }
@@ -181,10 +236,14 @@ class BuildMessageDispatcher extends SimpleChannelHandler {
   }
 
   private static final class SessionData {
-    final UUID sessionId;
-    final BuilderMessageHandler handler;
+    volatile UUID sessionId;
+    volatile BuilderMessageHandler handler;
     volatile CmdlineRemoteProto.Message.ControllerMessage params;
     volatile Channel channel;
+    // guarded by this
+    boolean preloaded;
+    boolean paramsRequested;
+    boolean closed;
 
     private SessionData(UUID sessionId, BuilderMessageHandler handler, CmdlineRemoteProto.Message.ControllerMessage params) {
       this.sessionId = sessionId;
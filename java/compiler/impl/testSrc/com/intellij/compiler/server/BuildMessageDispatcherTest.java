@@ -0,0 +1,156 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.server;
+
+import junit.framework.TestCase;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jetbrains.jps.api.CmdlineProtoUtil;
+import org.jetbrains.jps.api.CmdlineRemoteProto;
+
+import java.util.*;
+
+import static org.jetbrains.jps.api.CmdlineRemoteProto.Message.ControllerMessage;
+
+public class BuildMessageDispatcherTest extends TestCase {
+  private final BuildMessageDispatcher myDispatcher = new BuildMessageDispatcher();
+  private final UUID myPreloadedId = UUID.randomUUID();
+  private final UUID mySessionId = UUID.randomUUID();
+  private final List<String> myEvents = new ArrayList<String>();
+  private final ControllerMessage myParams = CmdlineProtoUtil.createBuildRequest(
+    "project", Collections.<ControllerMessage.ParametersMessage.TargetTypeBuildScope>emptyList(), Collections.<String>emptyList(),
+    Collections.<String, String>emptyMap(), ControllerMessage.GlobalSettings.newBuilder().setGlobalOptionsPath("options").build(), null
+  );
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDispatcher.registerPreloadedSession(myPreloadedId, new RecordingHandler("preloaded"));
+  }
+
+  public void testHandoffAfterParamRequest() {
+    final BuildProcessChannel process = new BuildProcessChannel();
+    process.send(myPreloadedId, CmdlineProtoUtil.createParamRequest());
+    assertNull("preloaded process must wait for a build", process.poll());
+
+    myDispatcher.registerBuildMessageHandler(mySessionId, new RecordingHandler("build"), myParams);
+    assertTrue(myDispatcher.startPreloadedSession(myPreloadedId, mySessionId));
+    assertWritten(process, mySessionId, ControllerMessage.Type.BUILD_PARAMETERS);
+    assertNull(process.poll());
+
+    process.send(mySessionId, CmdlineProtoUtil.createCompileProgressMessageResponse("compiling", 0.5f));
+    process.close();
+    assertEquals(Arrays.asList("build started " + mySessionId, "build message " + mySessionId, "build terminated " + mySessionId), myEvents);
+    assertNull(myDispatcher.unregisterBuildMessageHandler(mySessionId));
+  }
+
+  public void testHandoffBeforeParamRequestIsRefused() {
+    myDispatcher.registerBuildMessageHandler(mySessionId, new RecordingHandler("build"), myParams);
+    assertFalse("process that hasn't connected yet can't be handed the session", myDispatcher.startPreloadedSession(myPreloadedId, mySessionId));
+
+    // the refused process is shut down when it connects, the session is left for a new process
+    myDispatcher.cancelSession(myPreloadedId);
+    final BuildProcessChannel process = new BuildProcessChannel();
+    process.send(myPreloadedId, CmdlineProtoUtil.createParamRequest());
+    assertWritten(process, myPreloadedId, ControllerMessage.Type.CANCEL_BUILD_COMMAND);
+    assertNull(process.poll());
+
+    final BuildProcessChannel newProcess = new BuildProcessChannel();
+    newProcess.send(mySessionId, CmdlineProtoUtil.createParamRequest());
+    assertWritten(newProcess, mySessionId, ControllerMessage.Type.BUILD_PARAMETERS);
+    assertEquals(Collections.singletonList("build started " + mySessionId), myEvents);
+  }
+
+  public void testCancelBeforeHandoff() {
+    final BuildProcessChannel process = new BuildProcessChannel();
+    process.send(myPreloadedId, CmdlineProtoUtil.createParamRequest());
+    myDispatcher.registerBuildMessageHandler(mySessionId, new RecordingHandler("build"), myParams);
+    myDispatcher.cancelSession(mySessionId);
+    assertNull(process.poll());
+
+    assertTrue(myDispatcher.startPreloadedSession(myPreloadedId, mySessionId));
+    assertWritten(process, mySessionId, ControllerMessage.Type.BUILD_PARAMETERS);
+    assertWritten(process, mySessionId, ControllerMessage.Type.CANCEL_BUILD_COMMAND);
+    assertNull(process.poll());
+  }
+
+  public void testChannelClosedBeforeHandoff() {
+    final BuildProcessChannel process = new BuildProcessChannel();
+    process.send(myPreloadedId, CmdlineProtoUtil.createParamRequest());
+    process.close();
+    assertEquals(Collections.singletonList("preloaded terminated " + myPreloadedId), myEvents);
+
+    final RecordingHandler handler = new RecordingHandler("build");
+    myDispatcher.registerBuildMessageHandler(mySessionId, handler, myParams);
+    assertFalse(myDispatcher.startPreloadedSession(myPreloadedId, mySessionId));
+    assertNull(process.poll());
+    assertEquals(Collections.singletonList("preloaded terminated " + myPreloadedId), myEvents);
+    assertSame("the session must be left for a new process", handler, myDispatcher.unregisterBuildMessageHandler(mySessionId));
+  }
+
+  private static void assertWritten(BuildProcessChannel process, UUID sessionId, ControllerMessage.Type type) {
+    final CmdlineRemoteProto.Message message = process.poll();
+    assertNotNull(message);
+    assertEquals(sessionId, new UUID(message.getSessionId().getMostSigBits(), message.getSessionId().getLeastSigBits()));
+    assertEquals(type, message.getControllerMessage().getType());
+  }
+
+  /**
+   * The IDE side of a connection with a build process, collects the messages written to the process
+   */
+  private class BuildProcessChannel extends DecoderEmbedder<CmdlineRemoteProto.Message> {
+    private BuildProcessChannel() {
+      super(myDispatcher);
+    }
+
+    private void send(UUID sessionId, CmdlineRemoteProto.Message.BuilderMessage message) {
+      offer(CmdlineProtoUtil.toMessage(sessionId, message));
+    }
+
+    private void close() {
+      Channels.fireChannelClosed(getChannel());
+    }
+  }
+
+  private class RecordingHandler implements BuilderMessageHandler {
+    private final String myName;
+
+    private RecordingHandler(String name) {
+      myName = name;
+    }
+
+    @Override
+    public void buildStarted(UUID sessionId) {
+      myEvents.add(myName + " started " + sessionId);
+    }
+
+    @Override
+    public void handleBuildMessage(Channel channel, UUID sessionId, CmdlineRemoteProto.Message.BuilderMessage msg) {
+      myEvents.add(myName + " message " + sessionId);
+    }
+
+    @Override
+    public void handleFailure(UUID sessionId, CmdlineRemoteProto.Message.Failure failure) {
+      myEvents.add(myName + " failure " + sessionId);
+    }
+
+    @Override
+    public void sessionTerminated(UUID sessionId) {
+      myEvents.add(myName + " terminated " + sessionId);
+    }
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.intellij.ide.util.gotoByName;
 
+import com.intellij.navigation.ChooseByNameContributorEx;
 import com.intellij.navigation.GotoClassContributor;
 import com.intellij.navigation.NavigationItem;
 import com.intellij.openapi.project.Project;
@@ -22,11 +23,13 @@ import com.intellij.psi.PsiClass;
 import com.intellij.psi.presentation.java.SymbolPresentationUtil;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.search.PsiShortNamesCache;
+import com.intellij.util.PairProcessor;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Collection;
 
-public class DefaultClassNavigationContributor implements GotoClassContributor {
+public class DefaultClassNavigationContributor implements GotoClassContributor, ChooseByNameContributorEx {
   @Override
   @NotNull
   public String[] getNames(Project project, boolean includeNonProjectItems) {
@@ -40,17 +43,37 @@ public class DefaultClassNavigationContributor implements GotoClassContributor {
     return filterUnshowable(PsiShortNamesCache.getInstance(project).getClassesByName(name, scope), pattern);
   }
 
+  @Override
+  public boolean processItemsByNames(@NotNull Collection<String> names,
+                                     String pattern,
+                                     Project project,
+                                     boolean includeNonProjectItems,
+                                     @NotNull final PairProcessor<String, ? super NavigationItem> processor) {
+    final GlobalSearchScope scope = includeNonProjectItems ? GlobalSearchScope.allScope(project) : GlobalSearchScope.projectScope(project);
+    final boolean isAnnotation = pattern.startsWith("@");
+    return PsiShortNamesCache.getInstance(project).processClassesWithNames(names, scope, new PairProcessor<String, PsiClass>() {
+      @Override
+      public boolean process(String name, PsiClass aClass) {
+        return !isShowable(aClass, isAnnotation) || processor.process(name, aClass);
+      }
+    });
+  }
+
   private static NavigationItem[] filterUnshowable(PsiClass[] items, final String pattern) {
     boolean isAnnotation = pattern.startsWith("@");
     ArrayList<NavigationItem> list = new ArrayList<NavigationItem>(items.length);
     for (PsiClass item : items) {
-      if (item.getContainingFile().getVirtualFile() == null) continue;
-      if (isAnnotation && !item.isAnnotationType()) continue;
-      list.add(item);
+      if (isShowable(item, isAnnotation)) {
+        list.add(item);
+      }
     }
     return list.toArray(new NavigationItem[list.size()]);
   }
 
+  private static boolean isShowable(PsiClass item, boolean isAnnotation) {
+    return item.getContainingFile().getVirtualFile() != null && (!isAnnotation || item.isAnnotationType());
+  }
+
   @Override
   public String getQualifiedName(final NavigationItem item) {
     if (item instanceof PsiClass) {
@@ -20,11 +20,14 @@ import com.intellij.openapi.extensions.ExtensionPointName;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.*;
 import com.intellij.util.ArrayUtil;
+import com.intellij.util.PairProcessor;
 import com.intellij.util.Processor;
 import com.intellij.util.containers.HashSet;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collection;
+
 /**
  * Allows to retrieve files and Java classes, methods and fields in a project by
  * non-qualified names.
@@ -75,6 +78,26 @@ public abstract class PsiShortNamesCache {
   @NotNull
   public abstract PsiClass[] getClassesByName(@NotNull @NonNls String name, @NotNull GlobalSearchScope scope);
 
+  /**
+   * Processes the classes with each of the specified names in the specified scope together with the name,
+   * which is cheaper than calling {@link #getClassesByName(String, GlobalSearchScope)} for every name.
+   *
+   * @param names     the non-qualified names of the classes to find.
+   * @param scope     the scope in which classes are searched.
+   * @param processor the processor receiving the names and the found classes.
+   * @return false if the processor stopped the processing, true otherwise.
+   */
+  public boolean processClassesWithNames(@NotNull Collection<String> names,
+                                         @NotNull GlobalSearchScope scope,
+                                         @NotNull PairProcessor<String, ? super PsiClass> processor) {
+    for (String name : names) {
+      for (PsiClass aClass : getClassesByName(name, scope)) {
+        if (!processor.process(name, aClass)) return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Returns the list of names of all classes in the project and
    * (optionally) libraries.
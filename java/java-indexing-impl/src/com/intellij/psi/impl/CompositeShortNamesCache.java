@@ -23,6 +23,7 @@ import com.intellij.psi.PsiMethod;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.search.PsiShortNamesCache;
 import com.intellij.util.ArrayUtil;
+import com.intellij.util.PairProcessor;
 import com.intellij.util.Processor;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.HashSet;
@@ -31,6 +32,7 @@ import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Set;
 
 public class CompositeShortNamesCache extends PsiShortNamesCache {
@@ -81,6 +83,23 @@ public class CompositeShortNamesCache extends PsiShortNamesCache {
     return result != null ? result : PsiClass.EMPTY_ARRAY;
   }
 
+  @Override
+  public boolean processClassesWithNames(@NotNull Collection<String> names,
+                                         @NotNull GlobalSearchScope scope,
+                                         @NotNull final PairProcessor<String, ? super PsiClass> processor) {
+    final Set<PsiClass> processed = new THashSet<PsiClass>();
+    for (PsiShortNamesCache cache : myCaches) {
+      boolean proceed = cache.processClassesWithNames(names, scope, new PairProcessor<String, PsiClass>() {
+        @Override
+        public boolean process(String name, PsiClass aClass) {
+          return !processed.add(aClass) || processor.process(name, aClass);
+        }
+      });
+      if (!proceed) return false;
+    }
+    return true;
+  }
+
   @Override
   @NotNull
   public String[] getAllClassNames() {
@@ -29,9 +29,11 @@ import com.intellij.psi.search.PsiShortNamesCache;
 import com.intellij.psi.stubs.StubIndex;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.CommonProcessors;
+import com.intellij.util.PairProcessor;
 import com.intellij.util.Processor;
 import com.intellij.util.SmartList;
 import com.intellij.util.containers.HashSet;
+import gnu.trove.THashMap;
 import gnu.trove.THashSet;
 import gnu.trove.TObjectHashingStrategy;
 import org.jetbrains.annotations.NonNls;
@@ -40,6 +42,7 @@ import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class PsiShortNamesCacheImpl extends PsiShortNamesCache {
@@ -67,7 +70,40 @@ public class PsiShortNamesCacheImpl extends PsiShortNamesCache {
     final Collection<PsiClass> classes = JavaShortClassNameIndex.getInstance().get(name, myManager.getProject(), scope);
 
     if (classes.isEmpty()) return PsiClass.EMPTY_ARRAY;
-    ArrayList<PsiClass> list = new ArrayList<PsiClass>(classes.size());
+    List<PsiClass> list = filterHiddenClasses(classes, scope);
+    return list.toArray(new PsiClass[list.size()]);
+  }
+
+  @Override
+  public boolean processClassesWithNames(@NotNull Collection<String> names,
+                                         @NotNull GlobalSearchScope scope,
+                                         @NotNull PairProcessor<String, ? super PsiClass> processor) {
+    final Map<String, List<PsiClass>> classesByName = new THashMap<String, List<PsiClass>>();
+    JavaShortClassNameIndex.getInstance().processElements(names, myManager.getProject(), scope, new PairProcessor<String, PsiClass>() {
+      @Override
+      public boolean process(String name, PsiClass aClass) {
+        List<PsiClass> classes = classesByName.get(name);
+        if (classes == null) {
+          classes = new SmartList<PsiClass>();
+          classesByName.put(name, classes);
+        }
+        classes.add(aClass);
+        return true;
+      }
+    });
+
+    for (String name : names) {
+      List<PsiClass> classes = classesByName.get(name);
+      if (classes == null) continue;
+      for (PsiClass aClass : filterHiddenClasses(classes, scope)) {
+        if (!processor.process(name, aClass)) return false;
+      }
+    }
+    return true;
+  }
+
+  private static List<PsiClass> filterHiddenClasses(Collection<PsiClass> classes, GlobalSearchScope scope) {
+    List<PsiClass> list = new ArrayList<PsiClass>(classes.size());
 
     OuterLoop:
     for (PsiClass aClass : classes) {
@@ -95,7 +131,7 @@ public class PsiShortNamesCacheImpl extends PsiShortNamesCache {
 
       list.add(aClass);
     }
-    return list.toArray(new PsiClass[list.size()]);
+    return list;
   }
 
   @Override
@@ -25,6 +25,7 @@ import com.intellij.psi.impl.search.JavaSourceFilterScope;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.stubs.StringStubIndexExtension;
 import com.intellij.psi.stubs.StubIndexKey;
+import com.intellij.util.PairProcessor;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
@@ -46,4 +47,12 @@ public class JavaShortClassNameIndex extends StringStubIndexExtension<PsiClass>
   public Collection<PsiClass> get(final String s, final Project project, @NotNull final GlobalSearchScope scope) {
     return super.get(s, project, new JavaSourceFilterScope(scope));
   }
-}
\ No newline at end of file
+
+  @Override
+  public boolean processElements(@NotNull Collection<String> keys,
+                                 @NotNull Project project,
+                                 @NotNull GlobalSearchScope scope,
+                                 @NotNull PairProcessor<String, ? super PsiClass> processor) {
+    return super.processElements(keys, project, new JavaSourceFilterScope(scope), processor);
+  }
+}
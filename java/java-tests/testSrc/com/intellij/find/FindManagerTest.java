@@ -27,6 +27,7 @@ import com.intellij.openapi.fileTypes.FileTypes;
 import com.intellij.openapi.projectRoots.Sdk;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.PersistentFSConstants;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.search.GlobalSearchScope;
@@ -394,6 +395,35 @@ public class FindManagerTest extends DaemonAnalyzerTestCase {
     assertSize(2, findUsages(findModel));
   }
 
+  public void testFindInFilesNotCoveredByTrigramIndex() throws Exception {
+    TempDirTestFixture fixture = new LightTempDirTestFixtureImpl();
+    fixture.setUp();
+
+    try {
+      fixture.createFile("small.txt", "foo TargetWord bar");
+      String padding = StringUtil.repeat("foo bar\n", PersistentFSConstants.getMaxIntellisenseFileSize() / 8 + 1);
+      fixture.createFile("large.txt", padding + "foo TargetWord bar");
+      fixture.createFile("notes.unknownextension", "foo TargetWord bar");
+      PsiTestUtil.addSourceContentToRoots(myModule, fixture.getFile(""));
+
+      FindModel findModel = new FindModel();
+      findModel.setStringToFind("TargetWord");
+      findModel.setWholeWordsOnly(false);
+      findModel.setFromCursor(false);
+      findModel.setGlobal(true);
+      findModel.setMultipleFiles(true);
+      findModel.setProjectScope(true);
+      assertSize(3, findUsages(findModel));
+
+      findModel.setStringToFind("Target\\w+");
+      findModel.setRegularExpressions(true);
+      assertSize(3, findUsages(findModel));
+    }
+    finally {
+      fixture.tearDown();
+    }
+  }
+
   public void testLocalScopeSearchPerformance() throws Throwable {
     final int fileCount = 3000;
     final int lineCount = 500;
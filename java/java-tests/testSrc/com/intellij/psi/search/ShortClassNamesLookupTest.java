@@ -0,0 +1,86 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.search;
+
+import com.intellij.ide.util.gotoByName.GotoClassModel2;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.impl.java.stubs.index.JavaShortClassNameIndex;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.util.PairProcessor;
+
+import java.util.*;
+
+public class ShortClassNamesLookupTest extends LightCodeInsightFixtureTestCase {
+  private static final List<String> NAMES = Arrays.asList("Xyzzy", "Plugh", "Missing");
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myFixture.addClass("package a; public class Xyzzy {}");
+    myFixture.addClass("package b; public class Xyzzy {}");
+    myFixture.addClass("package a; public class Plugh {}");
+  }
+
+  public void testStubIndexProcessesElementsOfAllKeys() {
+    List<String> found = new ArrayList<String>();
+    assertTrue(JavaShortClassNameIndex.getInstance().processElements(NAMES, getProject(), getScope(), collector(found, -1)));
+    Collections.sort(found);
+    assertEquals(Arrays.asList("Plugh:a.Plugh", "Xyzzy:a.Xyzzy", "Xyzzy:b.Xyzzy"), found);
+  }
+
+  public void testStubIndexStopsWhenProcessorReturnsFalse() {
+    List<String> found = new ArrayList<String>();
+    assertFalse(JavaShortClassNameIndex.getInstance().processElements(NAMES, getProject(), getScope(), collector(found, 1)));
+    assertEquals(1, found.size());
+  }
+
+  public void testShortNamesCacheProcessesClassesInNamesOrder() {
+    List<String> found = new ArrayList<String>();
+    PsiShortNamesCache cache = PsiShortNamesCache.getInstance(getProject());
+    assertTrue(cache.processClassesWithNames(Arrays.asList("Plugh", "Missing", "Xyzzy"), getScope(), collector(found, -1)));
+    assertEquals("Plugh:a.Plugh", found.get(0));
+    assertSameElements(found.subList(1, found.size()), "Xyzzy:a.Xyzzy", "Xyzzy:b.Xyzzy");
+  }
+
+  public void testShortNamesCacheStopsWhenProcessorReturnsFalse() {
+    List<String> found = new ArrayList<String>();
+    PsiShortNamesCache cache = PsiShortNamesCache.getInstance(getProject());
+    assertFalse(cache.processClassesWithNames(NAMES, getScope(), collector(found, 2)));
+    assertEquals(2, found.size());
+  }
+
+  public void testGotoClassModelLooksUpSeveralNames() {
+    Map<String, Object[]> elements = new GotoClassModel2(getProject()).getElementsByNames(NAMES, false, "", new ProgressIndicatorBase());
+    assertSameElements(elements.keySet(), "Xyzzy", "Plugh");
+    assertEquals(2, elements.get("Xyzzy").length);
+    assertEquals(1, elements.get("Plugh").length);
+  }
+
+  private GlobalSearchScope getScope() {
+    return GlobalSearchScope.projectScope(getProject());
+  }
+
+  private static PairProcessor<String, PsiClass> collector(final List<String> found, final int limit) {
+    return new PairProcessor<String, PsiClass>() {
+      @Override
+      public boolean process(String name, PsiClass aClass) {
+        found.add(name + ":" + aClass.getQualifiedName());
+        return found.size() != limit;
+      }
+    };
+  }
+}
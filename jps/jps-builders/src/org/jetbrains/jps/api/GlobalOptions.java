@@ -25,6 +25,8 @@ public interface GlobalOptions {
   String GENERATE_CLASSPATH_INDEX_OPTION = "generate.classpath.index";
   String COMPILE_PARALLEL_OPTION = "compile.parallel";
   String COMPILE_PARALLEL_MAX_THREADS_OPTION = "compile.parallel.max.threads";
+  String PARALLEL_CLASS_ANALYSIS_OPTION = "compile.parallel.class.analysis";
   String REBUILD_ON_DEPENDENCY_CHANGE_OPTION = "rebuild.on.dependency.change";
+  String CONTENT_HASH_CHECK_OPTION = "compile.content.hash.check";
   String LOG_DIR_OPTION = "log.dir";
 }
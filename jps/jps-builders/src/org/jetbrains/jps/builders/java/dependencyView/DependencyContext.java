@@ -17,13 +17,14 @@ package org.jetbrains.jps.builders.java.dependencyView;
 
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.ConcurrencyUtil;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.io.PersistentStringEnumerator;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author: db
@@ -33,16 +34,16 @@ class DependencyContext {
   private final static String STRING_TABLE_NAME = "strings.tab";
   private final PersistentStringEnumerator myEnumerator;
 
-  private final Map<TypeRepr.AbstractType, TypeRepr.AbstractType> myTypeMap = new HashMap<TypeRepr.AbstractType, TypeRepr.AbstractType>();
-  private final Map<UsageRepr.Usage, UsageRepr.Usage> myUsageMap = new HashMap<UsageRepr.Usage, UsageRepr.Usage>();
+  // class files are analyzed concurrently
+  private final ConcurrentMap<TypeRepr.AbstractType, TypeRepr.AbstractType> myTypeMap = ContainerUtil.newConcurrentMap();
+  private final ConcurrentMap<UsageRepr.Usage, UsageRepr.Usage> myUsageMap = ContainerUtil.newConcurrentMap();
   private final int myEmptyName;
 
   UsageRepr.Usage getUsage(final UsageRepr.Usage u) {
      final UsageRepr.Usage r = myUsageMap.get(u);
 
      if (r == null) {
-       myUsageMap.put(u, u);
-       return u;
+       return ConcurrencyUtil.cacheOrGet(myUsageMap, u, u);
      }
 
      return r;
@@ -55,9 +56,7 @@ class DependencyContext {
       return r;
     }
 
-    myTypeMap.put(t, t);
-
-    return t;
+    return ConcurrencyUtil.cacheOrGet(myTypeMap, t, t);
   }
 
   void clearMemoryCaches() {
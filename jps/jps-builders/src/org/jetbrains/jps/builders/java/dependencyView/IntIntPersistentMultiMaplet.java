@@ -15,28 +15,33 @@
  */
 package org.jetbrains.jps.builders.java.dependencyView;
 
-import com.intellij.openapi.util.Ref;
 import com.intellij.util.Processor;
 import com.intellij.util.containers.SLRUCache;
 import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
 import com.intellij.util.io.KeyDescriptor;
 import com.intellij.util.io.PersistentHashMap;
 import gnu.trove.TIntHashSet;
 import gnu.trove.TIntObjectProcedure;
-import gnu.trove.TIntProcedure;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.util.Arrays;
 
 /**
+ * Values are stored as chunks of sorted delta-encoded ints. Adding values appends a chunk without reading the stored ones,
+ * values found to consist of too many chunks when they're read are written back as single chunks on flush.
+ *
  * @author: db
  * Date: 08.03.11
  */
 class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
   private static final TIntHashSet NULL_COLLECTION = new TIntHashSet();
   private static final int CACHE_SIZE = 128;
+  private static final int MAX_CHUNKS = 8;
   private final PersistentHashMap<Integer, TIntHashSet> myMap;
   private final SLRUCache<Integer, TIntHashSet> myCache;
+  private final TIntHashSet myKeysToCompact = new TIntHashSet();
 
   public IntIntPersistentMultiMaplet(final File file, final KeyDescriptor<Integer> keyExternalizer) throws IOException {
     myMap = new PersistentHashMap<Integer, TIntHashSet>(file, keyExternalizer, new IntSetExternalizer());
@@ -46,7 +51,13 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
       public TIntHashSet createValue(Integer key) {
         try {
           final TIntHashSet collection = myMap.get(key);
-          return collection == null? NULL_COLLECTION : collection;
+          if (collection == null) {
+            return NULL_COLLECTION;
+          }
+          if (((ChunkedIntSet)collection).myChunks > MAX_CHUNKS) {
+            myKeysToCompact.add(key);
+          }
+          return collection;
         }
         catch (IOException e) {
           throw new RuntimeException(e);
@@ -93,23 +104,9 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
       myCache.remove(key);
       myMap.appendData(key, new PersistentHashMap.ValueDataAppender() {
         public void append(final DataOutput out) throws IOException {
-          final Ref<IOException> exRef = new Ref<IOException>();
-          value.forEach(new TIntProcedure() {
-            @Override
-            public boolean execute(int value) {
-              try {
-                out.writeInt(value);
-              }
-              catch (IOException e) {
-                exRef.set(e);
-                return false;
-              }
-              return true;
-            }
-          });
-          final IOException exception = exRef.get();
-          if (exception != null) {
-            throw exception;
+          // an empty value still creates the mapping
+          if (!value.isEmpty()) {
+            writeChunk(out, value.toArray());
           }
         }
       });
@@ -125,7 +122,8 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
       myCache.remove(key);
       myMap.appendData(key, new PersistentHashMap.ValueDataAppender() {
         public void append(final DataOutput out) throws IOException {
-          out.writeInt(value);
+          DataInputOutputUtil.writeINT(out, 1);
+          DataInputOutputUtil.writeINT(out, value);
         }
       });
     }
@@ -214,6 +212,7 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
   public void close() {
     try {
       myCache.clear();
+      compactValues();
       myMap.close();
     }
     catch (IOException e) {
@@ -222,6 +221,12 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
   }
 
   public void flush(boolean memoryCachesOnly) {
+    try {
+      compactValues();
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
     if (memoryCachesOnly) {
       if (myMap.isDirty()) {
         myMap.dropMemoryCaches();
@@ -252,35 +257,62 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
     }
   }
 
+  /**
+   * Writes back the values stored in too many chunks as single chunks. The values are read again,
+   * because chunks may have been appended or the mapping removed since they were found.
+   */
+  private void compactValues() throws IOException {
+    if (myKeysToCompact.isEmpty()) {
+      return;
+    }
+    final int[] keys = myKeysToCompact.toArray();
+    myKeysToCompact.clear();
+    for (int key : keys) {
+      final TIntHashSet collection = myMap.get(key);
+      if (collection != null && !collection.isEmpty()) {
+        myMap.put(key, collection);
+      }
+    }
+  }
+
+  private static void writeChunk(final DataOutput out, final int[] values) throws IOException {
+    Arrays.sort(values);
+    DataInputOutputUtil.writeINT(out, values.length);
+    int prev = 0;
+    for (int i = 0; i < values.length; i++) {
+      DataInputOutputUtil.writeINT(out, i == 0 ? values[i] : values[i] - prev);
+      prev = values[i];
+    }
+  }
+
+  /**
+   * A value read from disk, remembers the number of chunks it was stored in
+   */
+  static class ChunkedIntSet extends TIntHashSet {
+    private static final long serialVersionUID = 1L;
+
+    int myChunks;
+  }
+
   private static class IntSetExternalizer implements DataExternalizer<TIntHashSet> {
     @Override
     public void save(final DataOutput out, final TIntHashSet value) throws IOException {
-      final Ref<IOException> exRef = new Ref<IOException>(null);
-      value.forEach(new TIntProcedure() {
-        @Override
-        public boolean execute(int elem) {
-          try {
-            out.writeInt(elem);
-          }
-          catch (IOException e) {
-            exRef.set(e);
-            return false;
-          }
-          return true;
-        }
-      });
-      final IOException exception = exRef.get();
-      if (exception != null) {
-        throw exception;
-      }
+      writeChunk(out, value.toArray());
     }
 
     @Override
     public TIntHashSet read(final DataInput in) throws IOException {
-      final TIntHashSet result = new TIntHashSet();
+      final ChunkedIntSet result = new ChunkedIntSet();
       final DataInputStream stream = (DataInputStream)in;
       while (stream.available() > 0) {
-        result.add(in.readInt());
+        final int size = DataInputOutputUtil.readINT(in);
+        result.ensureCapacity(size);
+        int value = 0;
+        for (int i = 0; i < size; i++) {
+          value = i == 0 ? DataInputOutputUtil.readINT(in) : value + DataInputOutputUtil.readINT(in);
+          result.add(value);
+        }
+        result.myChunks++;
       }
       return result;
     }
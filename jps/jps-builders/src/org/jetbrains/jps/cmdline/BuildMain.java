@@ -47,6 +47,11 @@ import java.util.UUID;
  */
 public class BuildMain {
   public static final Key<String> FORCE_MODEL_LOADING_PARAMETER = Key.create("_force_model_loading");
+  /**
+   * When set, the process loads the project and opens build data storages while it waits for build parameters
+   */
+  public static final String PRELOAD_PROJECT_PATH = "preload.project.path";
+  public static final String PRELOAD_CONFIG_PATH = "preload.config.path";
 
   private static final String LOG_CONFIG_FILE_NAME = "build-log.xml";
   private static final String LOG_FILE_NAME = "build.log";
@@ -68,6 +73,10 @@ public class BuildMain {
     final File systemDir = new File(FileUtil.toCanonicalPath(args[3]));
     Utils.setSystemRoot(systemDir);
 
+    final String preloadProjectPath = System.getProperty(PRELOAD_PROJECT_PATH);
+    final String preloadConfigPath = System.getProperty(PRELOAD_CONFIG_PATH);
+    final PreloadedData preloadedData = preloadProjectPath != null && preloadConfigPath != null? new PreloadedData(preloadProjectPath, preloadConfigPath) : null;
+
     ourChannelFactory = new NioClientSocketChannelFactory(SharedThreadPool.getInstance(), SharedThreadPool.getInstance(), 1);
     final ClientBootstrap bootstrap = new ClientBootstrap(ourChannelFactory);
     bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
@@ -77,7 +86,7 @@ public class BuildMain {
           new ProtobufDecoder(CmdlineRemoteProto.Message.getDefaultInstance()),
           new ProtobufVarint32LengthFieldPrepender(),
           new ProtobufEncoder(),
-          new MyMessageHandler(sessionId)
+          new MyMessageHandler(sessionId, preloadedData)
         );
       }
     });
@@ -91,6 +100,9 @@ public class BuildMain {
 
     if (success) {
       Channels.write(future.getChannel(), CmdlineProtoUtil.toMessage(sessionId, CmdlineProtoUtil.createParamRequest()));
+      if (preloadedData != null) {
+        preloadedData.load();
+      }
     }
     else {
       final Throwable reason = future.getCause();
@@ -104,11 +116,14 @@ public class BuildMain {
   }
 
   private static class MyMessageHandler extends SimpleChannelHandler {
-    private final UUID mySessionId;
+    private volatile UUID mySessionId;
     private volatile BuildSession mySession;
+    @Nullable
+    private final PreloadedData myPreloadedData;
 
-    private MyMessageHandler(UUID sessionId) {
+    private MyMessageHandler(UUID sessionId, @Nullable PreloadedData preloadedData) {
       mySessionId = sessionId;
+      myPreloadedData = preloadedData;
     }
 
     @Override
@@ -123,8 +138,11 @@ public class BuildMain {
 
           case BUILD_PARAMETERS: {
             if (mySession == null) {
+              // a preloaded process is handed the session of the build it runs
+              final CmdlineRemoteProto.Message.UUID id = message.getSessionId();
+              mySessionId = new UUID(id.getMostSigBits(), id.getLeastSigBits());
               final CmdlineRemoteProto.Message.ControllerMessage.FSEvent delta = controllerMessage.hasFsEvent()? controllerMessage.getFsEvent() : null;
-              final BuildSession session = new BuildSession(mySessionId, channel, controllerMessage.getParamsMessage(), delta);
+              final BuildSession session = new BuildSession(mySessionId, channel, controllerMessage.getParamsMessage(), delta, myPreloadedData);
               mySession = session;
               SharedThreadPool.getInstance().executeOnPooledThread(new Runnable() {
                 public void run() {
@@ -186,6 +204,9 @@ public class BuildMain {
         new Thread("Shutdown thread") {
           public void run() {
             try {
+              if (myPreloadedData != null) {
+                myPreloadedData.release();
+              }
               ourChannelFactory.releaseExternalResources();
             }
             finally {
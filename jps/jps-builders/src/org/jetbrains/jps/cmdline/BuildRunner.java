@@ -112,6 +112,10 @@ public class BuildRunner {
                                  targetIndex, buildRootIndex, ignoredFileIndex);
   }
 
+  public boolean isForceCleanCaches() {
+    return myForceCleanCaches;
+  }
+
   public void setForceCleanCaches(boolean forceCleanCaches) {
     myForceCleanCaches = forceCleanCaches;
   }
@@ -62,6 +62,9 @@ final class BuildSession implements Runnable, CanceledStatus {
   private final Channel myChannel;
   private volatile boolean myCanceled = false;
   private final String myProjectPath;
+  private final String myGlobalOptionsPath;
+  @Nullable
+  private final PreloadedData myPreloadedData;
   @Nullable
   private CmdlineRemoteProto.Message.ControllerMessage.FSEvent myInitialFSDelta;
   // state
@@ -77,13 +80,15 @@ final class BuildSession implements Runnable, CanceledStatus {
   BuildSession(UUID sessionId,
                Channel channel,
                CmdlineRemoteProto.Message.ControllerMessage.ParametersMessage params,
-               @Nullable CmdlineRemoteProto.Message.ControllerMessage.FSEvent delta) {
+               @Nullable CmdlineRemoteProto.Message.ControllerMessage.FSEvent delta,
+               @Nullable PreloadedData preloadedData) {
     mySessionId = sessionId;
     myChannel = channel;
+    myPreloadedData = preloadedData;
 
     final CmdlineRemoteProto.Message.ControllerMessage.GlobalSettings globals = params.getGlobalSettings();
     myProjectPath = FileUtil.toCanonicalPath(params.getProjectId());
-    String globalOptionsPath = FileUtil.toCanonicalPath(globals.getGlobalOptionsPath());
+    myGlobalOptionsPath = FileUtil.toCanonicalPath(globals.getGlobalOptionsPath());
     myBuildType = convertCompileType(params.getBuildType());
     List<TargetTypeBuildScope> scopes = params.getScopeList();
     List<String> filePaths = params.getFilePathList();
@@ -92,7 +97,7 @@ final class BuildSession implements Runnable, CanceledStatus {
       builderParams.put(pair.getKey(), pair.getValue());
     }
     myInitialFSDelta = delta;
-    JpsModelLoaderImpl loader = new JpsModelLoaderImpl(myProjectPath, globalOptionsPath, null);
+    JpsModelLoaderImpl loader = new JpsModelLoaderImpl(myProjectPath, myGlobalOptionsPath, null);
     myForceModelLoading = Boolean.parseBoolean(builderParams.get(BuildMain.FORCE_MODEL_LOADING_PARAMETER.toString()));
     myBuildRunner = new BuildRunner(loader, scopes, filePaths, builderParams);
   }
@@ -183,13 +188,29 @@ final class BuildSession implements Runnable, CanceledStatus {
       if (!myForceModelLoading && (myBuildType == BuildType.BUILD || myBuildType == BuildType.UP_TO_DATE_CHECK) && !hasWorkToDoWithModules
           && scopeContainsModulesOnlyForIncrementalMake(myBuildRunner.getScopes()) && !containsChanges(myInitialFSDelta)) {
         updateFsStateOnDisk(dataStorageRoot, fsStateStream, myInitialFSDelta.getOrdinal());
+        if (myPreloadedData != null) {
+          myPreloadedData.release();
+        }
         return;
       }
     }
 
-    final BuildFSState fsState = new BuildFSState(false);
+    final ProjectDescriptor preloaded = myPreloadedData != null? myPreloadedData.takeProjectDescriptor(myProjectPath, myGlobalOptionsPath) : null;
+    final BuildFSState fsState = preloaded != null? preloaded.fsState : new BuildFSState(false);
     try {
-      final ProjectDescriptor pd = myBuildRunner.load(msgHandler, dataStorageRoot, fsState);
+      final ProjectDescriptor pd;
+      if (preloaded != null) {
+        for (BuildMessage message : myPreloadedData.getLoadingMessages()) {
+          msgHandler.processMessage(message);
+        }
+        if (myPreloadedData.isForceCleanCaches()) {
+          myBuildRunner.setForceCleanCaches(true);
+        }
+        pd = preloaded;
+      }
+      else {
+        pd = myBuildRunner.load(msgHandler, dataStorageRoot, fsState);
+      }
       myProjectDescriptor = pd;
       if (fsStateStream != null) {
         try {
@@ -341,8 +362,7 @@ final class BuildSession implements Runnable, CanceledStatus {
             if (fileStamp == -1L) {
               fileStamp = FileSystemUtil.lastModified(file); // lazy init
             }
-            final long stamp = timestamps.getStamp(file, descriptor.getTarget());
-            if (stamp != fileStamp) {
+            if (!timestamps.isUpToDate(file, descriptor.getTarget(), fileStamp)) {
               if (!cacheCleared) {
                 pd.getFSCache().clear();
                 cacheCleared = true;
@@ -351,7 +371,7 @@ final class BuildSession implements Runnable, CanceledStatus {
             }
             else {
               if (LOG.isDebugEnabled()) {
-                LOG.debug(descriptor.getTarget() + ": Path considered up-to-date: " + changed + "; timestamp= " + stamp);
+                LOG.debug(descriptor.getTarget() + ": Path considered up-to-date: " + changed + "; timestamp= " + fileStamp);
               }
             }
           }
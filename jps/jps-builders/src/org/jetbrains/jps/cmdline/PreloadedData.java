@@ -0,0 +1,142 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.cmdline;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jps.incremental.BuilderRegistry;
+import org.jetbrains.jps.incremental.MessageHandler;
+import org.jetbrains.jps.incremental.Utils;
+import org.jetbrains.jps.incremental.fs.BuildFSState;
+import org.jetbrains.jps.incremental.messages.BuildMessage;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.jetbrains.jps.api.CmdlineRemoteProto.Message.ControllerMessage.ParametersMessage.TargetTypeBuildScope;
+
+/**
+ * Project model and build data storages loaded by a build process launched in advance, while it waits for build parameters.
+ * The data is either taken by the build session or released when the process exits without building.
+ */
+final class PreloadedData {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.cmdline.PreloadedData");
+  private final String myProjectPath;
+  private final String myGlobalOptionsPath;
+  private final CountDownLatch myLoaded = new CountDownLatch(1);
+  private final List<BuildMessage> myLoadingMessages = Collections.synchronizedList(new ArrayList<BuildMessage>());
+  // guarded by this
+  private ProjectDescriptor myProjectDescriptor;
+  private boolean myForceCleanCaches;
+  private boolean myTaken;
+
+  PreloadedData(String projectPath, String globalOptionsPath) {
+    myProjectPath = FileUtil.toCanonicalPath(projectPath);
+    myGlobalOptionsPath = FileUtil.toCanonicalPath(globalOptionsPath);
+  }
+
+  public void load() {
+    try {
+      final File dataStorageRoot = Utils.getDataStorageRoot(myProjectPath);
+      if (dataStorageRoot == null || !dataStorageRoot.exists()) {
+        // the project is built for the first time, all its data will be created by the build itself
+        return;
+      }
+      BuilderRegistry.getInstance();
+      final BuildRunner runner = new BuildRunner(
+        new JpsModelLoaderImpl(myProjectPath, myGlobalOptionsPath, null), Collections.<TargetTypeBuildScope>emptyList(),
+        Collections.<String>emptyList(), Collections.<String, String>emptyMap()
+      );
+      final ProjectDescriptor pd = runner.load(new MessageHandler() {
+        @Override
+        public void processMessage(BuildMessage msg) {
+          myLoadingMessages.add(msg);
+        }
+      }, dataStorageRoot, new BuildFSState(false));
+      synchronized (this) {
+        myProjectDescriptor = pd;
+        myForceCleanCaches = runner.isForceCleanCaches();
+      }
+      LOG.info("Project " + myProjectPath + " preloaded");
+    }
+    catch (Throwable e) {
+      LOG.info("Failed to preload project " + myProjectPath, e);
+    }
+    finally {
+      myLoaded.countDown();
+    }
+  }
+
+  /**
+   * Waits until the loading is finished.
+   * @return the preloaded descriptor if it was loaded for the same project and global options, null otherwise
+   */
+  @Nullable
+  public ProjectDescriptor takeProjectDescriptor(String projectPath, String globalOptionsPath) {
+    waitForLoading();
+    synchronized (this) {
+      if (myTaken) {
+        return null;
+      }
+      myTaken = true;
+      final ProjectDescriptor pd = myProjectDescriptor;
+      myProjectDescriptor = null;
+      if (pd != null && !(FileUtil.pathsEqual(myProjectPath, projectPath) && FileUtil.pathsEqual(myGlobalOptionsPath, globalOptionsPath))) {
+        pd.release();
+        return null;
+      }
+      return pd;
+    }
+  }
+
+  public List<BuildMessage> getLoadingMessages() {
+    return myLoadingMessages;
+  }
+
+  public synchronized boolean isForceCleanCaches() {
+    return myForceCleanCaches;
+  }
+
+  /**
+   * Closes the storages unless the data has been taken by a build session
+   */
+  public void release() {
+    waitForLoading();
+    synchronized (this) {
+      if (!myTaken) {
+        myTaken = true;
+        final ProjectDescriptor pd = myProjectDescriptor;
+        myProjectDescriptor = null;
+        if (pd != null) {
+          pd.release();
+        }
+      }
+    }
+  }
+
+  private void waitForLoading() {
+    try {
+      myLoaded.await();
+    }
+    catch (InterruptedException e) {
+      LOG.info(e);
+    }
+  }
+}
@@ -292,6 +292,7 @@ public class JavaBuilder extends ModuleLevelBuilder {
       }
     }
     finally {
+      outputSink.waitForPendingTasks();
       if (JavaBuilderUtil.updateMappings(context, delta, dirtyFilesHolder, chunk, files, outputSink.getSuccessfullyCompiled())) {
         exitCode = ExitCode.ADDITIONAL_PASS_REQUIRED;
       }
@@ -17,9 +17,12 @@ package org.jetbrains.jps.incremental.java;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
+import com.intellij.util.containers.ConcurrentHashSet;
 import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.asm4.ClassReader;
+import org.jetbrains.jps.api.GlobalOptions;
 import org.jetbrains.jps.builders.java.JavaSourceRootDescriptor;
 import org.jetbrains.jps.builders.java.dependencyView.Callbacks;
 import org.jetbrains.jps.incremental.*;
@@ -28,12 +31,17 @@ import org.jetbrains.jps.incremental.messages.CompilerMessage;
 import org.jetbrains.jps.incremental.messages.ProgressMessage;
 import org.jetbrains.jps.javac.OutputFileConsumer;
 import org.jetbrains.jps.javac.OutputFileObject;
+import org.jetbrains.jps.service.SharedThreadPool;
 
 import javax.tools.*;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
 * @author Eugene Zhuravlev
@@ -41,11 +49,19 @@ import java.util.Set;
 */
 class OutputFilesSink implements OutputFileConsumer {
   private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.java.OutputFilesSink");
+  private static final BoundedTaskExecutor ourAnalysisExecutor =
+    new BoundedTaskExecutor(SharedThreadPool.getInstance(), Runtime.getRuntime().availableProcessors());
+  private static final int MAX_WRITER_THREADS = 4;
+  private static final BoundedTaskExecutor ourWriterExecutor = new BoundedTaskExecutor(SharedThreadPool.getInstance(), MAX_WRITER_THREADS);
   private final CompileContext myContext;
   private final ModuleLevelBuilder.OutputConsumer myOutputConsumer;
   private final Callbacks.Backend myMappingsCallback;
   private final String myChunkName;
+  private final boolean myParallelClassAnalysis;
   private final Set<File> mySuccessfullyCompiled = new THashSet<File>(FileUtil.FILE_HASHING_STRATEGY);
+  private final Set<File> myFailedSources = new ConcurrentHashSet<File>(FileUtil.FILE_HASHING_STRATEGY);
+  private final List<Future<?>> myPendingTasks = Collections.synchronizedList(new ArrayList<Future<?>>());
+  private final Set<File> myCreatedDirectories = new ConcurrentHashSet<File>(FileUtil.FILE_HASHING_STRATEGY);
 
   public OutputFilesSink(CompileContext context,
                          ModuleLevelBuilder.OutputConsumer outputConsumer,
@@ -55,6 +71,7 @@ class OutputFilesSink implements OutputFileConsumer {
     myOutputConsumer = outputConsumer;
     myMappingsCallback = callback;
     myChunkName = "[" +chunkName + "]";
+    myParallelClassAnalysis = Boolean.parseBoolean(System.getProperty(GlobalOptions.PARALLEL_CLASS_ANALYSIS_OPTION, "true"));
   }
 
   public void save(final @NotNull OutputFileObject fileObject) {
@@ -86,61 +103,142 @@ class OutputFilesSink implements OutputFileConsumer {
 
       if (!isTemp && outKind == JavaFileObject.Kind.CLASS && !Utils.errorsDetected(myContext)) {
         // register in mappings any non-temp class file
-        try {
-          final ClassReader reader = new ClassReader(content.getBuffer(), content.getOffset(), content.getLength());
-          myMappingsCallback.associate(FileUtil.toSystemIndependentName(fileObject.getFile().getPath()), sourcePath, reader);
+        final Runnable analysis = new Runnable() {
+          @Override
+          public void run() {
+            associate(fileObject, content, sourcePath);
+          }
+        };
+        if (myParallelClassAnalysis) {
+          myPendingTasks.add(ourAnalysisExecutor.submit(analysis));
         }
-        catch (Throwable e) {
-          // need this to make sure that unexpected errors in, for example, ASM will not ruin the compilation  
-          final String message = "Class dependency information may be incomplete! Error parsing generated class " + fileObject.getFile().getPath();
-          LOG.info(message, e);
-          myContext.processMessage(new CompilerMessage(
-            JavaBuilder.BUILDER_NAME, BuildMessage.Kind.WARNING, message + "\n" + CompilerMessage.getTextFromThrowable(e), sourcePath)
-          );
+        else {
+          analysis.run();
         }
       }
     }
 
     if (outKind == JavaFileObject.Kind.CLASS) {
       // generated sources and resources are handled separately
-      try {
-        writeToDisk(fileObject, isTemp);
-      }
-      catch (IOException e) {
-        myContext.processMessage(new CompilerMessage(JavaBuilder.BUILDER_NAME, BuildMessage.Kind.ERROR, e.getMessage()));
+      writeToDisk(fileObject, isTemp);
+    }
+  }
+
+  private void associate(@NotNull OutputFileObject fileObject, @NotNull BinaryContent content, @NotNull String sourcePath) {
+    try {
+      final ClassReader reader = new ClassReader(content.getBuffer(), content.getOffset(), content.getLength());
+      myMappingsCallback.associate(FileUtil.toSystemIndependentName(fileObject.getFile().getPath()), sourcePath, reader);
+    }
+    catch (Throwable e) {
+      // need this to make sure that unexpected errors in, for example, ASM will not ruin the compilation
+      final String message = "Class dependency information may be incomplete! Error parsing generated class " + fileObject.getFile().getPath();
+      LOG.info(message, e);
+      myContext.processMessage(new CompilerMessage(
+        JavaBuilder.BUILDER_NAME, BuildMessage.Kind.WARNING, message + "\n" + CompilerMessage.getTextFromThrowable(e), sourcePath)
+      );
+    }
+  }
+
+  /**
+   * Waits until all class files saved so far are written to disk and registered in the mappings,
+   * must be called before the mappings delta is processed.
+   * An interrupt doesn't stop the waiting, since the mappings must not be updated from a part of the classes,
+   * the interrupted status is restored when all the tasks are done.
+   */
+  public void waitForPendingTasks() {
+    final List<Future<?>> pending;
+    synchronized (myPendingTasks) {
+      pending = new ArrayList<Future<?>>(myPendingTasks);
+      myPendingTasks.clear();
+    }
+    boolean interrupted = false;
+    for (Future<?> future : pending) {
+      while (true) {
+        try {
+          future.get();
+          break;
+        }
+        catch (InterruptedException e) {
+          interrupted = true;
+        }
+        catch (ExecutionException e) {
+          LOG.error(e);
+          break;
+        }
       }
     }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
   }
 
+  /**
+   * Sources of failed writes are known only when the writes are done, so this should be called after {@link #waitForPendingTasks()}
+   */
   public Set<File> getSuccessfullyCompiled() {
-    return Collections.unmodifiableSet(mySuccessfullyCompiled);
+    final Set<File> compiled = new THashSet<File>(FileUtil.FILE_HASHING_STRATEGY);
+    synchronized (mySuccessfullyCompiled) {
+      compiled.addAll(mySuccessfullyCompiled);
+    }
+    compiled.removeAll(myFailedSources);
+    return Collections.unmodifiableSet(compiled);
   }
 
-  private void writeToDisk(@NotNull OutputFileObject fileObject, boolean isTemp) throws IOException {
+  /**
+   * Queues the class file to be written by one of the writer threads, so that javac doesn't wait for the disk.
+   * Errors are kept apart from the compiled sources, so that a failed write of one class of a source isn't overridden
+   * by another class of the same source saved later.
+   */
+  private void writeToDisk(@NotNull OutputFileObject fileObject, boolean isTemp) {
     myContext.processMessage(new ProgressMessage("Writing classes... " + myChunkName));
 
     final File file = fileObject.getFile();
     final BinaryContent content = fileObject.getContent();
     if (content == null) {
-      throw new IOException("Missing content for file " + file);
+      myContext.processMessage(new CompilerMessage(JavaBuilder.BUILDER_NAME, BuildMessage.Kind.ERROR, "Missing content for file " + file));
+      return;
     }
 
-    content.saveToFile(file);
+    final File source = !isTemp ? fileObject.getSourceFile() : null;
+    if (source != null) {
+      synchronized (mySuccessfullyCompiled) {
+        mySuccessfullyCompiled.add(source);
+      }
+    }
 
-    final File source = fileObject.getSourceFile();
-    if (!isTemp && source != null) {
-      mySuccessfullyCompiled.add(source);
-      //final String className = fileObject.getClassName();
-      //if (className != null) {
-      //  myContext.processMessage(new ProgressMessage("Compiled " + className));
-      //}
+    myPendingTasks.add(ourWriterExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          ensureParentExists(file);
+          content.saveToFile(file);
+        }
+        catch (IOException e) {
+          if (source != null) {
+            markError(source);
+          }
+          myContext.processMessage(new CompilerMessage(JavaBuilder.BUILDER_NAME, BuildMessage.Kind.ERROR, e.getMessage()));
+        }
+      }
+    }));
+  }
+
+  /**
+   * Classes of a package go to the same directory, create it once instead of failing to open the first file in it
+   */
+  private void ensureParentExists(@NotNull File file) {
+    final File parent = file.getParentFile();
+    if (parent != null && !myCreatedDirectories.contains(parent)) {
+      if (parent.mkdirs() || parent.isDirectory()) {
+        myCreatedDirectories.add(parent);
+      }
     }
   }
 
   public void markError(@NotNull final File sourceFile) {
-    mySuccessfullyCompiled.remove(sourceFile);
+    myFailedSources.add(sourceFile);
   }
   public void markError(@NotNull final Set<File> problematic) {
-    mySuccessfullyCompiled.removeAll(problematic);
+    myFailedSources.addAll(problematic);
   }
 }
@@ -15,26 +15,35 @@
  */
 package org.jetbrains.jps.incremental.storage;
 
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileSystemUtil;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.io.DataExternalizer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jps.api.GlobalOptions;
 import org.jetbrains.jps.builders.BuildTarget;
 
-import java.io.DataInput;
-import java.io.DataOutput;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * @author Eugene Zhuravlev
  *         Date: 10/7/11
  */
 public class TimestampStorage extends AbstractStateStorage<File, TimestampStorage.TimestampPerTarget[]> implements Timestamps {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.storage.TimestampStorage");
+  private static final long NO_HASH = 0L;
+  private static final int HASH_BUFFER_SIZE = 8 * 1024;
   private final BuildTargetsState myTargetsState;
+  private final boolean myContentHashCheck;
 
   public TimestampStorage(File storePath, BuildTargetsState targetsState) throws IOException {
     super(storePath, new FileKeyDescriptor(), new StateExternalizer());
     myTargetsState = targetsState;
+    myContentHashCheck = Boolean.parseBoolean(System.getProperty(GlobalOptions.CONTENT_HASH_CHECK_OPTION, "false"));
   }
 
   @Override
@@ -49,27 +58,92 @@ public class TimestampStorage extends AbstractStateStorage<File, TimestampStorag
 
   @Override
   public long getStamp(File file, BuildTarget<?> target) throws IOException {
+    final TimestampPerTarget stamp = findStamp(getState(file), myTargetsState.getBuildTargetId(target));
+    return stamp != null? stamp.timestamp : -1L;
+  }
+
+  @Override
+  public boolean isUpToDate(File file, BuildTarget<?> target, long fileStamp) throws IOException {
     final TimestampPerTarget[] state = getState(file);
+    final int targetId = myTargetsState.getBuildTargetId(target);
+    final TimestampPerTarget stamp = findStamp(state, targetId);
+    if (stamp == null) {
+      return false;
+    }
+    if (stamp.timestamp == fileStamp) {
+      return true;
+    }
+    if (!myContentHashCheck || stamp.hash == NO_HASH) {
+      return false;
+    }
+    final long hash = computeHash(file, fileStamp);
+    if (hash == NO_HASH || hash != stamp.hash) {
+      return false;
+    }
+    // the file was touched but not changed; remember the new timestamp so that it is not hashed again
+    update(file, updateTimestamp(state, targetId, fileStamp, hash));
+    return true;
+  }
+
+  @Override
+  public void saveStamp(File file, BuildTarget<?> buildTarget, long timestamp) throws IOException {
+    int targetId = myTargetsState.getBuildTargetId(buildTarget);
+    final long hash = myContentHashCheck? computeHash(file, timestamp) : NO_HASH;
+    update(file, updateTimestamp(getState(file), targetId, timestamp, hash));
+  }
+
+  @Nullable
+  private static TimestampPerTarget findStamp(@Nullable TimestampPerTarget[] state, int targetId) {
     if (state != null) {
-      int targetId = myTargetsState.getBuildTargetId(target);
       for (TimestampPerTarget timestampPerTarget : state) {
         if (timestampPerTarget.targetId == targetId) {
-          return timestampPerTarget.timestamp;
+          return timestampPerTarget;
         }
       }
     }
-    return -1L;
+    return null;
   }
 
-  @Override
-  public void saveStamp(File file, BuildTarget<?> buildTarget, long timestamp) throws IOException {
-    int targetId = myTargetsState.getBuildTargetId(buildTarget);
-    update(file, updateTimestamp(getState(file), targetId, timestamp));
+  /**
+   * @return the first 8 bytes of the content's MD5 digest, or NO_HASH if the file cannot be read or is modified
+   * while being read, so that the hash may not correspond to the timestamp
+   */
+  private static long computeHash(File file, long fileStamp) {
+    try {
+      final MessageDigest md5 = MessageDigest.getInstance("MD5");
+      final InputStream stream = new DigestInputStream(new FileInputStream(file), md5);
+      try {
+        final byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        while (stream.read(buffer) >= 0) {
+          // the digest is updated by the stream
+        }
+      }
+      finally {
+        stream.close();
+      }
+      final byte[] digest = md5.digest();
+      if (FileSystemUtil.lastModified(file) != fileStamp) {
+        return NO_HASH;
+      }
+      long hash = 0L;
+      for (int i = 0; i < 8; i++) {
+        hash = (hash << 8) | (digest[i] & 0xFF);
+      }
+      return hash;
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      return NO_HASH;
+    }
+    catch (NoSuchAlgorithmException e) {
+      LOG.error(e);
+      return NO_HASH;
+    }
   }
 
   @NotNull
-  private static TimestampPerTarget[] updateTimestamp(TimestampPerTarget[] oldState, final int targetId, long timestamp) {
-    final TimestampPerTarget newItem = new TimestampPerTarget(targetId, timestamp);
+  private static TimestampPerTarget[] updateTimestamp(TimestampPerTarget[] oldState, final int targetId, long timestamp, long hash) {
+    final TimestampPerTarget newItem = new TimestampPerTarget(targetId, timestamp, hash);
     if (oldState == null) {
       return new TimestampPerTarget[]{newItem};
     }
@@ -105,19 +179,31 @@ public class TimestampStorage extends AbstractStateStorage<File, TimestampStorag
   public static class TimestampPerTarget {
     public final int targetId;
     public final long timestamp;
+    public final long hash;
 
-    public TimestampPerTarget(int targetId, long timestamp) {
+    public TimestampPerTarget(int targetId, long timestamp, long hash) {
       this.targetId = targetId;
       this.timestamp = timestamp;
+      this.hash = hash;
     }
   }
 
+  /**
+   * Target ids are never negative, so the sign bit of the stored id tells whether a hash follows the timestamp.
+   * Entries without a hash are stored exactly as before the hashes were introduced.
+   */
   private static class StateExternalizer implements DataExternalizer<TimestampPerTarget[]> {
+    private static final int HASH_FLAG = 0x80000000;
+
     public void save(DataOutput out, TimestampPerTarget[] value) throws IOException {
       out.writeInt(value.length);
       for (TimestampPerTarget target : value) {
-        out.writeInt(target.targetId);
+        final boolean hasHash = target.hash != NO_HASH;
+        out.writeInt(hasHash? target.targetId | HASH_FLAG : target.targetId);
         out.writeLong(target.timestamp);
+        if (hasHash) {
+          out.writeLong(target.hash);
+        }
       }
     }
 
@@ -127,7 +213,12 @@ public class TimestampStorage extends AbstractStateStorage<File, TimestampStorag
       for (int i = 0; i < size; i++) {
         int id = in.readInt();
         long timestamp = in.readLong();
-        targets[i] = new TimestampPerTarget(id, timestamp);
+        long hash = NO_HASH;
+        if ((id & HASH_FLAG) != 0) {
+          id &= ~HASH_FLAG;
+          hash = in.readLong();
+        }
+        targets[i] = new TimestampPerTarget(id, timestamp, hash);
       }
       return targets;
     }
@@ -34,4 +34,10 @@ public interface Timestamps {
   void clean() throws IOException;
 
   long getStamp(File file, BuildTarget<?> target) throws IOException;
+
+  /**
+   * @return true if the file's current timestamp equals the saved one or, when content hash checks are enabled,
+   * if the file's content has not changed since the stamp was saved
+   */
+  boolean isUpToDate(File file, BuildTarget<?> target, long fileStamp) throws IOException;
 }
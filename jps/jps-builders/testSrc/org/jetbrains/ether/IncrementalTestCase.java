@@ -19,6 +19,7 @@ import com.intellij.openapi.application.ex.PathManagerEx;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.Processor;
+import org.jetbrains.jps.api.GlobalOptions;
 import org.jetbrains.jps.builders.BuildResult;
 import org.jetbrains.jps.builders.CompileScopeTestBuilder;
 import org.jetbrains.jps.builders.JpsBuildTestCase;
@@ -222,6 +223,9 @@ public abstract class IncrementalTestCase extends JpsBuildTestCase {
         rebuildDump.close();
   
         assertEquals(rebuildDump.toString(), makeDump.toString());
+
+        // class files are analyzed concurrently by default, analyzing them one by one must give the same mappings
+        assertEquals(rebuildDump.toString(), rebuildWithSequentialClassAnalysis(pd));
       }
       return result;
     }
@@ -233,6 +237,33 @@ public abstract class IncrementalTestCase extends JpsBuildTestCase {
     }
   }
 
+  private String rebuildWithSequentialClassAnalysis(ProjectDescriptor pd) throws IOException {
+    final String oldValue = System.getProperty(GlobalOptions.PARALLEL_CLASS_ANALYSIS_OPTION);
+    System.setProperty(GlobalOptions.PARALLEL_CLASS_ANALYSIS_OPTION, "false");
+    try {
+      doBuild(pd, CompileScopeTestBuilder.rebuild().allModules()).assertSuccessful();
+    }
+    finally {
+      if (oldValue != null) {
+        System.setProperty(GlobalOptions.PARALLEL_CLASS_ANALYSIS_OPTION, oldValue);
+      }
+      else {
+        System.clearProperty(GlobalOptions.PARALLEL_CLASS_ANALYSIS_OPTION);
+      }
+    }
+
+    final ByteArrayOutputStream dump = new ByteArrayOutputStream();
+    final PrintStream stream = new PrintStream(dump);
+    try {
+      pd.dataManager.getMappings().toStream(stream);
+    }
+    finally {
+      stream.close();
+    }
+    dump.close();
+    return dump.toString();
+  }
+
   private JpsSdk<JpsDummyElement> getOrCreateJdk() {
     if (myJdk == null) {
       myJdk = addJdk("IDEA jdk");
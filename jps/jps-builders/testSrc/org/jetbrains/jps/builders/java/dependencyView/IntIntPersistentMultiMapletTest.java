@@ -0,0 +1,151 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.builders.java.dependencyView;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.io.IntInlineKeyDescriptor;
+import gnu.trove.TIntHashSet;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class IntIntPersistentMultiMapletTest extends TestCase {
+  private File myDir;
+  private IntIntPersistentMultiMaplet myMaplet;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("maplet", null);
+    myMaplet = open();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myMaplet.close();
+    }
+    finally {
+      FileUtil.delete(myDir);
+      super.tearDown();
+    }
+  }
+
+  public void testRoundTrip() throws IOException {
+    myMaplet.put(1, set(5, 3, 200, 100000));
+    myMaplet.put(2, 7);
+    assertValue(1, 3, 5, 200, 100000);
+    assertValue(2, 7);
+    assertNull(myMaplet.get(3));
+
+    reopen();
+    assertValue(1, 3, 5, 200, 100000);
+    assertValue(2, 7);
+    assertFalse(myMaplet.containsKey(3));
+  }
+
+  public void testAppendedChunksAreCompactedOnFlush() throws IOException {
+    for (int i = 0; i < 20; i++) {
+      myMaplet.put(1, set(i, i + 1, 1000));
+    }
+    assertEquals(20, chunkCount(1));
+    assertValue(1, range(21, 1000));
+
+    myMaplet.flush(false);
+    myMaplet.put(1, 5000);
+    reopen();
+    assertEquals(2, chunkCount(1));
+    assertValue(1, range(21, 1000, 5000));
+  }
+
+  public void testPutOfEmptySetCreatesMapping() throws IOException {
+    myMaplet.put(1, new TIntHashSet());
+    assertTrue(myMaplet.containsKey(1));
+
+    reopen();
+    assertTrue(myMaplet.containsKey(1));
+    myMaplet.put(1, 2);
+    assertValue(1, 2);
+  }
+
+  public void testRemove() throws IOException {
+    myMaplet.put(1, set(1, 2, 3, 4));
+    myMaplet.put(2, set(1, 2));
+    myMaplet.put(3, 1);
+
+    myMaplet.removeFrom(1, 2);
+    myMaplet.removeAll(1, set(3, 10));
+    myMaplet.removeAll(2, set(1, 2));
+    myMaplet.remove(3);
+    assertValue(1, 1, 4);
+    assertFalse(myMaplet.containsKey(2));
+    assertFalse(myMaplet.containsKey(3));
+
+    reopen();
+    assertValue(1, 1, 4);
+    assertFalse(myMaplet.containsKey(2));
+    assertFalse(myMaplet.containsKey(3));
+  }
+
+  public void testLargeAndNegativeValues() throws IOException {
+    final int[] values = {Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -100000, -1, 0, 1, 191, 192, 1 << 30, Integer.MAX_VALUE};
+    myMaplet.put(1, set(values));
+    myMaplet.put(1, Integer.MIN_VALUE);
+    myMaplet.put(-1, set(Integer.MAX_VALUE, Integer.MIN_VALUE));
+
+    reopen();
+    assertValue(1, values);
+    assertValue(-1, Integer.MIN_VALUE, Integer.MAX_VALUE);
+  }
+
+  private IntIntPersistentMultiMaplet open() throws IOException {
+    return new IntIntPersistentMultiMaplet(new File(myDir, "maplet"), new IntInlineKeyDescriptor());
+  }
+
+  private void reopen() throws IOException {
+    myMaplet.close();
+    myMaplet = open();
+  }
+
+  private int chunkCount(int key) {
+    return ((IntIntPersistentMultiMaplet.ChunkedIntSet)myMaplet.get(key)).myChunks;
+  }
+
+  private void assertValue(int key, int... expected) {
+    final TIntHashSet value = myMaplet.get(key);
+    assertNotNull(value);
+    final int[] actual = value.toArray();
+    Arrays.sort(actual);
+    final int[] sorted = expected.clone();
+    Arrays.sort(sorted);
+    assertEquals(Arrays.toString(sorted), Arrays.toString(actual));
+  }
+
+  private static TIntHashSet set(int... values) {
+    return new TIntHashSet(values);
+  }
+
+  private static int[] range(int count, int... extra) {
+    final int[] result = new int[count + extra.length];
+    for (int i = 0; i < count; i++) {
+      result[i] = i;
+    }
+    System.arraycopy(extra, 0, result, count, extra.length);
+    return result;
+  }
+}
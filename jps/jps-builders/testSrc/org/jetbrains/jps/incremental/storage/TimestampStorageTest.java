@@ -0,0 +1,120 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.storage;
+
+import com.intellij.openapi.util.io.FileSystemUtil;
+import org.jetbrains.jps.api.GlobalOptions;
+import org.jetbrains.jps.builders.JpsBuildTestCase;
+import org.jetbrains.jps.builders.java.JavaModuleBuildTargetType;
+import org.jetbrains.jps.builders.logging.BuildLoggingManager;
+import org.jetbrains.jps.cmdline.ProjectDescriptor;
+import org.jetbrains.jps.incremental.ModuleBuildTarget;
+import org.jetbrains.jps.model.module.JpsModule;
+
+import java.io.File;
+import java.io.IOException;
+
+public class TimestampStorageTest extends JpsBuildTestCase {
+  private ProjectDescriptor myDescriptor;
+  private ModuleBuildTarget myTarget;
+  private TimestampStorage myStorage;
+  private String myPath;
+  private File myFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myPath = createFile("src/A.java", "class A {}");
+    myFile = new File(myPath);
+    JpsModule module = addModule("m", myFile.getParent());
+    myTarget = new ModuleBuildTarget(module, JavaModuleBuildTargetType.PRODUCTION);
+    myDescriptor = createProjectDescriptor(BuildLoggingManager.DEFAULT);
+    myStorage = openStorage(true);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myStorage.close();
+      myDescriptor.release();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testTouchedFileWithSameContentIsUpToDate() throws IOException {
+    long stamp = saveStamp();
+    myStorage.close();
+    myStorage = openStorage(true);
+    change(myPath);
+    long newStamp = FileSystemUtil.lastModified(myFile);
+    assertTrue(newStamp != stamp);
+    assertTrue(myStorage.isUpToDate(myFile, myTarget, newStamp));
+    assertEquals("the new timestamp must be saved", newStamp, myStorage.getStamp(myFile, myTarget));
+  }
+
+  public void testChangedFileIsNotUpToDate() throws IOException {
+    long stamp = saveStamp();
+    change(myPath, "class A { int a; }");
+    assertFalse(myStorage.isUpToDate(myFile, myTarget, FileSystemUtil.lastModified(myFile)));
+    assertEquals(stamp, myStorage.getStamp(myFile, myTarget));
+  }
+
+  public void testStampWithoutHashIsComparedByTimestampOnly() throws IOException {
+    myStorage.close();
+    myStorage = openStorage(false);
+    long stamp = saveStamp();
+    assertTrue(myStorage.isUpToDate(myFile, myTarget, stamp));
+
+    myStorage.close();
+    myStorage = openStorage(true);
+    assertEquals(stamp, myStorage.getStamp(myFile, myTarget));
+    change(myPath);
+    assertFalse(myStorage.isUpToDate(myFile, myTarget, FileSystemUtil.lastModified(myFile)));
+  }
+
+  public void testFileModifiedWhileHashingIsNotUpToDate() throws IOException {
+    long stamp = saveStamp();
+    change(myPath);
+    // the file's timestamp is different from the one observed before hashing, so the hash can't be trusted
+    long observedStamp = FileSystemUtil.lastModified(myFile) + 1000;
+    assertFalse(myStorage.isUpToDate(myFile, myTarget, observedStamp));
+    assertEquals(stamp, myStorage.getStamp(myFile, myTarget));
+  }
+
+  private long saveStamp() throws IOException {
+    long stamp = FileSystemUtil.lastModified(myFile);
+    myStorage.saveStamp(myFile, myTarget, stamp);
+    return stamp;
+  }
+
+  private TimestampStorage openStorage(boolean contentHashCheck) throws IOException {
+    String oldValue = System.getProperty(GlobalOptions.CONTENT_HASH_CHECK_OPTION);
+    System.setProperty(GlobalOptions.CONTENT_HASH_CHECK_OPTION, String.valueOf(contentHashCheck));
+    try {
+      return new TimestampStorage(new File(myDataStorageRoot, "test-timestamps"), myDescriptor.getTargetsState());
+    }
+    finally {
+      if (oldValue != null) {
+        System.setProperty(GlobalOptions.CONTENT_HASH_CHECK_OPTION, oldValue);
+      }
+      else {
+        System.clearProperty(GlobalOptions.CONTENT_HASH_CHECK_OPTION);
+      }
+    }
+  }
+}
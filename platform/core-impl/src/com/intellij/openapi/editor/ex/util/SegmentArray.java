@@ -23,19 +23,29 @@ import org.jetbrains.annotations.NotNull;
  * {@code 'index <-> (start; end)'} and provides convenient way for working with them, e.g. find index by particular offset that
  * belongs to target <code>(start; end)</code> segment etc.
  * <p/>
+ * Arrays created as <code>packed</code> expect adjacent segments (as lexer tokens are) and keep only their starts plus the end of
+ * the last one. They switch to keeping ends of all segments as soon as some change leaves a gap between segments.
+ * <p/>
  * Not thread-safe.
  */
 public class SegmentArray {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.editor.ex.util.SegmentArray");
   private int[] myStarts;
-  private int[] myEnds;
+  private int[] myEnds; // null when the segments are adjacent and packed
+  private int myLastEnd;
+  private final boolean myPacked;
 
   protected int mySegmentCount = 0;
   protected static final int INITIAL_SIZE = 64;
 
   protected SegmentArray() {
+    this(false);
+  }
+
+  protected SegmentArray(boolean packed) {
+    myPacked = packed;
     myStarts = new int[INITIAL_SIZE];
-    myEnds = new int[INITIAL_SIZE];
+    myEnds = packed ? null : new int[INITIAL_SIZE];
   }
 
   protected void setElementAt(int i, int startOffset, int endOffset) {
@@ -46,6 +56,19 @@ public class SegmentArray {
       LOG.error("Invalid endOffset:" + endOffset);
     }
 
+    if (myEnds == null) {
+      boolean append = i == mySegmentCount && (i == 0 || startOffset == myLastEnd);
+      boolean replaceLast = i == mySegmentCount - 1 && startOffset == myStarts[i];
+      if (append || replaceLast) {
+        myStarts = reallocateArray(myStarts, i);
+        myStarts[i] = startOffset;
+        myLastEnd = endOffset;
+        mySegmentCount = i + 1;
+        return;
+      }
+      unpack();
+    }
+
     if (i >= mySegmentCount) {
       mySegmentCount = i + 1;
     }
@@ -58,8 +81,76 @@ public class SegmentArray {
   }
 
   protected void replace(int startOffset, @NotNull SegmentArray data, int len) {
+    unpack();
     System.arraycopy(data.myStarts, 0, myStarts, startOffset, len);
-    System.arraycopy(data.myEnds, 0, myEnds, startOffset, len);
+    System.arraycopy(data.getEnds(), 0, myEnds, startOffset, len);
+  }
+
+  /**
+   * Same as <code>shiftSegments(endIndex, shift)</code> followed by replacing <code>[startIndex, endIndex)</code> segments with the given ones,
+   * but doesn't unpack the array when the new segments fill exactly the space of the old ones.
+   *
+   * @return false if the array is not packed or the replacement leaves gaps; nothing is changed then
+   */
+  protected boolean replacePacked(int startIndex, int endIndex, @NotNull SegmentArray newData, int shift) {
+    if (myEnds != null || newData.myEnds != null) return false;
+
+    int newLen = newData.mySegmentCount;
+    boolean tail = endIndex == mySegmentCount;
+    int start = startIndex < mySegmentCount ? myStarts[startIndex] : myLastEnd;
+    if (newLen == 0) {
+      if (!tail && start != myStarts[endIndex] + shift) return false;
+    }
+    else {
+      if (mySegmentCount > 0 && newData.myStarts[0] != start) return false;
+      if (!tail && newData.myLastEnd != myStarts[endIndex] + shift) return false;
+    }
+
+    int tailLength = mySegmentCount - endIndex;
+    myStarts = reallocateArray(myStarts, startIndex + newLen + tailLength);
+    System.arraycopy(myStarts, endIndex, myStarts, startIndex + newLen, tailLength);
+    for (int i = startIndex + newLen; i < startIndex + newLen + tailLength; i++) {
+      myStarts[i] += shift;
+    }
+    System.arraycopy(newData.myStarts, 0, myStarts, startIndex, newLen);
+
+    if (!tail) {
+      myLastEnd += shift;
+    }
+    else if (newLen > 0) {
+      myLastEnd = newData.myLastEnd;
+    }
+    else if (startIndex < mySegmentCount) {
+      myLastEnd = start;
+    }
+    mySegmentCount = startIndex + newLen + tailLength;
+    return true;
+  }
+
+  private void unpack() {
+    if (myEnds == null) {
+      myEnds = computeEnds(myStarts.length);
+    }
+  }
+
+  @NotNull
+  private int[] getEnds() {
+    return myEnds != null ? myEnds : computeEnds(mySegmentCount);
+  }
+
+  @NotNull
+  private int[] computeEnds(int length) {
+    int[] ends = new int[length];
+    if (mySegmentCount > 0) {
+      System.arraycopy(myStarts, 1, ends, 0, mySegmentCount - 1);
+      ends[mySegmentCount - 1] = myLastEnd;
+    }
+    return ends;
+  }
+
+  private int getEnd(int index) {
+    if (myEnds != null) return myEnds[index];
+    return index == mySegmentCount - 1 ? myLastEnd : myStarts[index + 1];
   }
 
   static int calcCapacity(int currentArraySize, int index) {
@@ -107,7 +198,7 @@ public class SegmentArray {
       if (offset < myStarts[i]) {
         end = i - 1;
       }
-      else if (offset >= myEnds[i]) {
+      else if (offset >= getEnd(i)) {
         start = i + 1;
       }
       else {
@@ -116,16 +207,26 @@ public class SegmentArray {
     }
 
     // This means that there is a gap at given offset
-    assert myStarts[start] <= offset && offset < myEnds[start] : start;
+    assert myStarts[start] <= offset && offset < getEnd(start) : start;
 
     return start;
   }
 
   public int getLastValidOffset() {
-    return mySegmentCount == 0 ? 0 : myEnds[mySegmentCount - 1];
+    return mySegmentCount == 0 ? 0 : getEnd(mySegmentCount - 1);
   }
 
   public final void changeSegmentLength(int startIndex, int change) {
+    if (myEnds == null) {
+      // the next segments are shifted, so the segment keeps adjacent to them
+      for (int i = Math.max(0, startIndex + 1); i < mySegmentCount; i++) {
+        myStarts[i] += change;
+      }
+      if (mySegmentCount > 0 && startIndex < mySegmentCount) {
+        myLastEnd += change;
+      }
+      return;
+    }
     if (startIndex >= 0 && startIndex < mySegmentCount) {
       myEnds[startIndex] += change;
     }
@@ -133,6 +234,19 @@ public class SegmentArray {
   }
 
   public final void shiftSegments(int startIndex, int shift) {
+    if (myEnds == null && startIndex > 0 && startIndex < mySegmentCount && shift != 0) {
+      // the gap before shifted segments can't be represented in packed form
+      unpack();
+    }
+    if (myEnds == null) {
+      for (int i = startIndex; i < mySegmentCount; i++) {
+        myStarts[i] += shift;
+      }
+      if (startIndex < mySegmentCount) {
+        myLastEnd += shift;
+      }
+      return;
+    }
     for (int i = startIndex; i < mySegmentCount; i++) {
       myStarts[i] += shift;
       myEnds[i] += shift;
@@ -144,9 +258,20 @@ public class SegmentArray {
 
   public void removeAll() {
     mySegmentCount = 0;
+    if (myPacked) {
+      myEnds = null;
+    }
   }
 
   public void remove(int startIndex, int endIndex) {
+    if (myEnds == null) {
+      if (startIndex < endIndex && endIndex == mySegmentCount) {
+        myLastEnd = myStarts[startIndex];
+        mySegmentCount = startIndex;
+        return;
+      }
+      unpack();
+    }
     myStarts = remove(myStarts, startIndex, endIndex);
     myEnds = remove(myEnds, startIndex, endIndex);
     mySegmentCount -= endIndex - startIndex;
@@ -161,8 +286,9 @@ public class SegmentArray {
   }
 
   protected void insert(@NotNull SegmentArray segmentArray, int startIndex) {
+    unpack();
     myStarts = insert(myStarts, segmentArray.myStarts, startIndex, segmentArray.getSegmentCount());
-    myEnds = insert(myEnds, segmentArray.myEnds, startIndex, segmentArray.getSegmentCount());
+    myEnds = insert(myEnds, segmentArray.getEnds(), startIndex, segmentArray.getSegmentCount());
     mySegmentCount += segmentArray.getSegmentCount();
   }
 
@@ -187,7 +313,7 @@ public class SegmentArray {
     if (index < 0 || index >= mySegmentCount) {
       throw new IndexOutOfBoundsException("Wrong line: " + index + ". Available lines count: " + mySegmentCount);
     }
-    return myEnds[index];
+    return getEnd(index);
   }
 
 
@@ -27,6 +27,14 @@ public class SegmentArrayWithData extends SegmentArray {
   private short[] myData;
 
   public SegmentArrayWithData() {
+    this(false);
+  }
+
+  /**
+   * @param packed whether the segments are expected to be adjacent, see {@link SegmentArray}
+   */
+  public SegmentArrayWithData(boolean packed) {
+    super(packed);
     myData = new short[INITIAL_SIZE];
   }
 
@@ -64,6 +72,22 @@ public class SegmentArrayWithData extends SegmentArray {
   }
 
 
+  /**
+   * Shifts segments starting from <code>endIndex</code> and replaces <code>[startIndex, endIndex)</code> segments with the given ones.
+   */
+  public void replace(int startIndex, int endIndex, @NotNull SegmentArrayWithData newData, int shift) {
+    int oldCount = mySegmentCount;
+    if (replacePacked(startIndex, endIndex, newData, shift)) {
+      int newLen = newData.getSegmentCount();
+      myData = reallocateArray(myData, mySegmentCount);
+      System.arraycopy(myData, endIndex, myData, startIndex + newLen, oldCount - endIndex);
+      System.arraycopy(newData.myData, 0, myData, startIndex, newLen);
+      return;
+    }
+    shiftSegments(endIndex, shift);
+    replace(startIndex, endIndex, newData);
+  }
+
   protected void replace(int startOffset, @NotNull SegmentArrayWithData data, int len) {
     System.arraycopy(data.myData, 0, myData, startOffset, len);
     super.replace(startOffset, data, len);
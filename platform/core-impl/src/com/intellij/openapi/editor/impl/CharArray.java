@@ -24,6 +24,7 @@ import com.intellij.util.LocalTimeCounter;
 import com.intellij.util.text.CharArrayCharSequence;
 import com.intellij.util.text.CharArrayUtil;
 import com.intellij.util.text.CharSequenceBackedByArray;
+import com.intellij.util.text.ImmutableText;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -55,13 +56,21 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
    */
   private static final int MAX_DEFERRED_CHANGES_NUMBER = 10000;
 
+  /**
+   * Keep the text in an {@link ImmutableText} instead of the flat array: edits don't move the tail of the text and
+   * {@link #getCharArray()} returns a snapshot which is not affected by subsequent changes. Deferred changes are not needed then.
+   */
+  @SuppressWarnings("UseOfArchaicSystemPropertyAccessors")
+  static final boolean USE_IMMUTABLE_TEXT = Boolean.getBoolean("idea.document.immutable.text");
+
   private final TextChangesStorage myDeferredChangesStorage;
 
   private volatile int myStart; // start offset in myArray (used as an optimization when call substring())
   private volatile int myCount;
 
   private volatile CharSequence myOriginalSequence;
-  private volatile char[] myArray;
+  private volatile char[] myArray; // for the immutable text it's a copy of the text created on getChars() request
+  private volatile ImmutableText myImmutableText;
   private volatile Reference<String> myStringRef; // buffers String value - for not to generate it every time
   private volatile int myBufferSize;
   private volatile int myDeferredShift;
@@ -75,7 +84,7 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
   // The main idea is to hold all history of bulk processing iteration in order to be able to retrieve it from client and reproduce the
   // problem.
   
-  private final boolean myDebug = isDebug();
+  private final boolean myDebug = !USE_IMMUTABLE_TEXT && isDebug();
 
   boolean isDebug() {
     return DEBUG_DEFERRED_PROCESSING || DocumentImpl.CHECK_DOCUMENT_CONSISTENCY;
@@ -102,8 +111,12 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
   CharArray(final int bufferSize, @NotNull char[] data, int length) {
     myBufferSize = bufferSize;
     myDeferredChangesStorage = new TextChangesStorage();
-    myArray = Arrays.copyOf(data, length);
     myCount = length;
+    if (USE_IMMUTABLE_TEXT) {
+      myImmutableText = ImmutableText.valueOf(new CharArrayCharSequence(data, 0, length));
+      return;
+    }
+    myArray = Arrays.copyOf(data, length);
 
     if (myDebug) {
       myDebugArray = new CharArray(bufferSize, data, length) {
@@ -184,6 +197,7 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
   }
 
   private void assertConsistency() {
+    if (myImmutableText != null) return;
     if (isDeferredChangeMode()) {
       assert myOriginalSequence == null;
     }
@@ -255,6 +269,10 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
   }
 
   private void doReplace(int startOffset, int endOffset, @NotNull CharSequence newString) {
+    if (myImmutableText != null) {
+      setImmutableText(myImmutableText.replace(startOffset, endOffset, newString));
+      return;
+    }
     prepareForModification();
 
     if (isDeferredChangeMode()) {
@@ -292,6 +310,10 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
     if (startIndex == endIndex) {
       return;
     }
+    if (myImmutableText != null) {
+      setImmutableText(myImmutableText.delete(startIndex, endIndex));
+      return;
+    }
     prepareForModification();
 
     if (isDeferredChangeMode()) {
@@ -320,6 +342,10 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
   }
 
   private void doInsert(@NotNull CharSequence s, final int startIndex) {
+    if (myImmutableText != null) {
+      setImmutableText(myImmutableText.insert(startIndex, s));
+      return;
+    }
     prepareForModification();
 
     if (isDeferredChangeMode()) {
@@ -341,6 +367,13 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
     }
   }
 
+  private void setImmutableText(@NotNull ImmutableText text) {
+    myImmutableText = text;
+    myCount = text.length();
+    myArray = null;
+    myStringRef = null;
+  }
+
   /**
    * Stores given change at collection of deferred changes (merging it with others if necessary) and updates current object
    * state ({@link #length() length} etc).
@@ -381,17 +414,31 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
 
   @NotNull
   public CharSequence getCharArray() {
+    ImmutableText immutableText = myImmutableText;
+    if (immutableText != null) return immutableText;
     assertConsistency();
     CharSequence originalSequence = myOriginalSequence;
     return originalSequence == null ? this : originalSequence;
   }
 
+  /**
+   * @return text which won't change when this array is modified
+   */
+  @NotNull
+  public CharSequence getImmutableCharSequence() {
+    ImmutableText immutableText = myImmutableText;
+    return immutableText != null ? immutableText : toString();
+  }
+
   @NotNull
   public String toString() {
     assertConsistency();
     String str = myStringRef == null ? null : myStringRef.get();
     if (str == null) {
-      if (myHasDeferredChanges) {
+      if (myImmutableText != null) {
+        str = myImmutableText.toString();
+      }
+      else if (myHasDeferredChanges) {
         str = substring(0, length()).toString();
       }
       else {
@@ -421,7 +468,11 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
     }
     i += myStart;
     final char result;
-    if (!myHasDeferredChanges) {
+    ImmutableText immutableText = myImmutableText;
+    if (immutableText != null) {
+      result = immutableText.charAt(i);
+    }
+    else if (!myHasDeferredChanges) {
       if (myOriginalSequence != null) {
         result = myOriginalSequence.charAt(i);
       }
@@ -448,6 +499,9 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
     assertReadAccess();
     assertConsistency();
     if (start == 0 && end == length()) return this;
+    if (myImmutableText != null) {
+      return myImmutableText.subtext(start, end);
+    }
     if (myOriginalSequence != null) {
       return myOriginalSequence.subSequence(start, end);
     }
@@ -461,6 +515,13 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
     assertReadAccess();
     assertConsistency();
     char[] array = myArray;
+    ImmutableText immutableText = myImmutableText;
+    if (immutableText != null) {
+      if (array == null) {
+        myArray = array = immutableText.toCharArray();
+      }
+      return array;
+    }
     CharSequence originalSequence = myOriginalSequence;
     if (myHasDeferredChanges || originalSequence != null && array == null) {
       // slow track
@@ -484,6 +545,11 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
   public void getChars(@NotNull final char[] dst, final int dstOffset) {
     assertReadAccess();
     assertConsistency();
+    ImmutableText immutableText = myImmutableText;
+    if (immutableText != null) {
+      immutableText.getChars(0, immutableText.length(), dst, dstOffset);
+      return;
+    }
     flushDeferredChanged();
     if (myOriginalSequence == null) {
       System.arraycopy(myArray, myStart, dst, dstOffset, length());
@@ -517,7 +583,10 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
   private CharSequence doSubString(int start, int end) {
     if (start == end) return "";
     final CharSequence result;
-    if (myOriginalSequence == null) {
+    if (myImmutableText != null) {
+      result = myImmutableText.subtext(start, end);
+    }
+    else if (myOriginalSequence == null) {
       result = myDeferredChangesStorage.substring(myArray, start + myStart, end + myStart);
     }
     else {
@@ -601,7 +670,7 @@ abstract class CharArray implements CharSequenceBackedByArray, Dumpable {
    * @param deferredChangeMode    flag that defines if <code>'defer changes'</code> mode should be used by the current object
    */
   public void setDeferredChangeMode(boolean deferredChangeMode) {
-    if (!DISABLE_DEFERRED_PROCESSING) {
+    if (!DISABLE_DEFERRED_PROCESSING && myImmutableText == null) {
       if (deferredChangeMode) {
         if (myDebug) {
           myDebugArray.setText(myDebugTextOnBatchUpdateStart = toString());
@@ -644,6 +644,15 @@ public class DocumentImpl extends UserDataHolderBase implements DocumentEx {
     return myText.getCharArray();
   }
 
+  /**
+   * @return text of the document which may be held and read from a background thread, it isn't affected by subsequent changes.
+   * It's a copy of the text unless the document keeps it in an {@link com.intellij.util.text.ImmutableText}.
+   */
+  @NotNull
+  public CharSequence getImmutableCharSequence() {
+    return myText.getImmutableCharSequence();
+  }
+
 
   @Override
   public void addDocumentListener(@NotNull DocumentListener listener) {
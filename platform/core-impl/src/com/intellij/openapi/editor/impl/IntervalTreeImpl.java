@@ -24,12 +24,15 @@ import com.intellij.util.Processor;
 import com.intellij.util.SmartList;
 import com.intellij.util.WalkingState;
 import com.intellij.util.concurrency.AtomicFieldUpdater;
+import gnu.trove.TIntArrayList;
 import gnu.trove.TLongHashSet;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -47,6 +50,9 @@ public abstract class IntervalTreeImpl<T extends MutableInterval> extends RedBla
   protected abstract int compareEqualStartIntervals(@NotNull IntervalNode<T> i1, @NotNull IntervalNode<T> i2);
   private final ReferenceQueue<T> myReferenceQueue = new ReferenceQueue<T>();
   private int deadReferenceCount;
+  private volatile IntervalTreeSnapshot<T> mySnapshot;
+  private static final int SNAPSHOT_SLICE_SIZE = 1000;
+  private static final int SNAPSHOT_ATTEMPTS = 3;
 
   protected static class IntervalNode<E extends MutableInterval> extends RedBlackTree.Node<E> implements MutableInterval {
     private volatile int myStart;
@@ -424,6 +430,112 @@ public abstract class IntervalTreeImpl<T extends MutableInterval> extends RedBla
     });
   }
 
+  /**
+   * Returns immutable copy of the tree which can be queried without locks, e.g. by background threads which shouldn't
+   * block modifications of the tree for the time of processing. The copy is built on the first request after the tree is modified,
+   * so any number of modifications (e.g. during bulk document update) cost one rebuild.
+   * <p/>
+   * The intervals are copied by slices of {@link #SNAPSHOT_SLICE_SIZE} with the read lock released in between, so that building
+   * the copy of a big tree doesn't block its modifications. A modification in the middle restarts the copying.
+   *
+   * @return null if the tree was modified during each of {@link #SNAPSHOT_ATTEMPTS} attempts to copy it,
+   * the caller should query the tree itself then
+   */
+  @Nullable
+  IntervalTreeSnapshot<T> getSnapshot() {
+    for (int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+      IntervalTreeSnapshot<T> snapshot = mySnapshot;
+      if (snapshot != null && snapshot.getModCount() == modCount) return snapshot;
+      snapshot = buildSnapshot();
+      if (snapshot != null) {
+        mySnapshot = snapshot;
+        return snapshot;
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private IntervalTreeSnapshot<T> buildSnapshot() {
+    SnapshotBuilder<T> builder = null;
+    while (true) {
+      try {
+        l.readLock().lock();
+        if (builder == null) {
+          checkMax(true);
+          builder = new SnapshotBuilder<T>(getRoot(), modCount, keySize);
+        }
+        else if (builder.myModCount != modCount) {
+          return null;
+        }
+        if (builder.copySlice(SNAPSHOT_SLICE_SIZE)) {
+          return builder.build();
+        }
+      }
+      finally {
+        l.readLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * In-order walk of the tree which can be suspended between slices. The stack holds nodes together with their accumulated deltas,
+   * which stay valid until modCount is changed, since the structure of the tree and the deltas are changed only by modifications.
+   */
+  private static class SnapshotBuilder<T extends MutableInterval> {
+    private final int myModCount;
+    private final List<IntervalNode<T>> myStack = new ArrayList<IntervalNode<T>>();
+    private final TIntArrayList myStackDeltas = new TIntArrayList();
+    private final TIntArrayList myStarts;
+    private final TIntArrayList myEnds;
+    private final List<Getter<T>> myKeys;
+
+    private SnapshotBuilder(@Nullable IntervalNode<T> root, int modCount, int size) {
+      myModCount = modCount;
+      myStarts = new TIntArrayList(size);
+      myEnds = new TIntArrayList(size);
+      myKeys = new ArrayList<Getter<T>>(size);
+      pushLeftPath(root, 0);
+    }
+
+    private void pushLeftPath(@Nullable IntervalNode<T> node, int deltaUpToNodeExclusive) {
+      while (node != null) {
+        deltaUpToNodeExclusive += node.delta;
+        myStack.add(node);
+        myStackDeltas.add(deltaUpToNodeExclusive);
+        node = node.getLeft();
+      }
+    }
+
+    /**
+     * @return true if the whole tree is copied
+     */
+    private boolean copySlice(int limit) {
+      int copied = 0;
+      while (!myStack.isEmpty() && copied < limit) {
+        int last = myStack.size() - 1;
+        IntervalNode<T> node = myStack.remove(last);
+        int delta = myStackDeltas.remove(last);
+        //noinspection ForLoopReplaceableByForEach
+        for (int i = 0; i < node.intervals.size(); i++) {
+          Getter<T> key = node.intervals.get(i);
+          if (key.get() == null) continue;
+          myStarts.add(node.intervalStart() + delta);
+          myEnds.add(node.intervalEnd() + delta);
+          myKeys.add(key);
+          copied++;
+        }
+        pushLeftPath(node.getRight(), delta);
+      }
+      return myStack.isEmpty();
+    }
+
+    @NotNull
+    private IntervalTreeSnapshot<T> build() {
+      return new IntervalTreeSnapshot<T>(myModCount, myStarts.toNativeArray(), myEnds.toNativeArray(), myKeys);
+    }
+  }
+
   @Override
   public boolean processOverlappingWith(int start, int end, @NotNull Processor<? super T> processor) {
     try {
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.impl;
+
+import com.intellij.openapi.util.Getter;
+import com.intellij.util.Processor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Immutable copy of {@link IntervalTreeImpl} contents as of some modification of the tree, see {@link IntervalTreeImpl#getSnapshot()}.
+ * Queries don't take any locks and never see concurrent modifications of the tree.
+ * <p/>
+ * Intervals are kept in arrays sorted in the tree order. The arrays are treated as an implicit balanced tree
+ * (the root of <code>[lo, hi)</code> range is its middle) with max end offset of each subtree stored in the root,
+ * so overlapping queries cost <code>O(log n + k)</code> like in the tree itself.
+ * Keys are held through the same weak references the tree uses, garbage collected keys are skipped.
+ */
+class IntervalTreeSnapshot<T extends MutableInterval> {
+  private final int myModCount;
+  private final int[] myStarts;
+  private final int[] myEnds;
+  private final int[] myMaxEnds;
+  private final List<Getter<T>> myKeys;
+
+  IntervalTreeSnapshot(int modCount, @NotNull int[] starts, @NotNull int[] ends, @NotNull List<Getter<T>> keys) {
+    myModCount = modCount;
+    myStarts = starts;
+    myEnds = ends;
+    myKeys = keys;
+    myMaxEnds = new int[starts.length];
+    computeMaxEnds(0, starts.length);
+  }
+
+  int getModCount() {
+    return myModCount;
+  }
+
+  int size() {
+    return myStarts.length;
+  }
+
+  private int computeMaxEnds(int lo, int hi) {
+    if (lo >= hi) return Integer.MIN_VALUE;
+    int mid = (lo + hi) >>> 1;
+    int maxEnd = Math.max(myEnds[mid], Math.max(computeMaxEnds(lo, mid), computeMaxEnds(mid + 1, hi)));
+    myMaxEnds[mid] = maxEnd;
+    return maxEnd;
+  }
+
+  public boolean process(@NotNull Processor<? super T> processor) {
+    for (Getter<T> key : myKeys) {
+      T t = key.get();
+      if (t != null && !processor.process(t)) return false;
+    }
+    return true;
+  }
+
+  public boolean processOverlappingWith(int start, int end, @NotNull Processor<? super T> processor) {
+    return processOverlappingWith(0, myStarts.length, start, end, processor);
+  }
+
+  private boolean processOverlappingWith(int lo, int hi, int start, int end, @NotNull Processor<? super T> processor) {
+    if (lo >= hi) return true;
+    int mid = (lo + hi) >>> 1;
+    if (start > myMaxEnds[mid]) return true; // right of the rightmost interval in the subtree
+
+    if (!processOverlappingWith(lo, mid, start, end, processor)) return false;
+    if (end < myStarts[mid]) return true; // everything to the right starts even later
+    if (myEnds[mid] >= start && !processKey(mid, processor)) return false;
+    return processOverlappingWith(mid + 1, hi, start, end, processor);
+  }
+
+  public boolean processContaining(int offset, @NotNull Processor<? super T> processor) {
+    return processContaining(0, myStarts.length, offset, processor);
+  }
+
+  private boolean processContaining(int lo, int hi, int offset, @NotNull Processor<? super T> processor) {
+    if (lo >= hi) return true;
+    int mid = (lo + hi) >>> 1;
+    if (offset > myMaxEnds[mid]) return true;
+
+    if (!processContaining(lo, mid, offset, processor)) return false;
+    if (offset < myStarts[mid]) return true;
+    if (offset < myEnds[mid] && !processKey(mid, processor)) return false;
+    return processContaining(mid + 1, hi, offset, processor);
+  }
+
+  public boolean processOverlappingWithOutside(int start, int end, @NotNull Processor<? super T> processor) {
+    return processOverlappingWithOutside(0, myStarts.length, start, end, processor);
+  }
+
+  private boolean processOverlappingWithOutside(int lo, int hi, int start, int end, @NotNull Processor<? super T> processor) {
+    if (lo >= hi) return true;
+    int mid = (lo + hi) >>> 1;
+
+    if (!processOverlappingWithOutside(lo, mid, start, end, processor)) return false;
+    if ((myStarts[mid] < start || myEnds[mid] > end) && !processKey(mid, processor)) return false;
+    if (myStarts[mid] >= start && myMaxEnds[mid] <= end) return true; // can't intersect outside
+    return processOverlappingWithOutside(mid + 1, hi, start, end, processor);
+  }
+
+  private boolean processKey(int index, @NotNull Processor<? super T> processor) {
+    T t = myKeys.get(index).get();
+    return t == null || processor.process(t);
+  }
+}
@@ -184,6 +184,9 @@ public class RangeMarkerTree<T extends RangeMarkerEx> extends IntervalTreeImpl<T
       l.writeLock().lock();
       if (size() == 0) return;
       checkMax(true);
+      IntervalNode<T> root = getRoot();
+      // the change is to the right of all the markers: nothing to update, cached offsets and the snapshot stay valid
+      if (root != null && e.getOffset() > root.maxEnd + root.delta) return;
 
       modCount++;
       List<IntervalNode<T>> affected = new SmartList<IntervalNode<T>>();
@@ -246,7 +249,7 @@ public class RangeMarkerTree<T extends RangeMarkerEx> extends IntervalTreeImpl<T
       }
       checkMax(true);
 
-      IntervalNode<T> root = getRoot();
+      root = getRoot();
       assert root == null || root.maxEnd + root.delta <= myDocument.getTextLength();
     }
     finally {
@@ -26,7 +26,7 @@ public abstract class RedBlackTree<K> {
   public static boolean VERIFY = false;
   private static final int INDENT_STEP = 4;
   private int nodeSize; // number of nodes
-  protected int modCount;
+  protected volatile int modCount;
   protected Node<K> root;
 
   public RedBlackTree() {
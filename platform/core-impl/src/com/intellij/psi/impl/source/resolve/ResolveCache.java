@@ -36,6 +36,10 @@ import org.jetbrains.annotations.Nullable;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Caches results of reference resolve until the next PSI change. References are held weakly and results softly, so the cache
+ * keeps no PSI of files nobody works with anymore and gives the memory back when it's short.
+ */
 public class ResolveCache {
   private static final Logger LOG = Logger.getInstance("#com.intellij.psi.impl.source.resolve.ResolveCache");
   private final ConcurrentMap[] myMaps = new ConcurrentMap[2*2*2]; //boolean physical, boolean incompleteCode, boolean isPoly
@@ -18,6 +18,7 @@ package com.intellij.psi.stubs;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.PairProcessor;
 
 import java.util.Collection;
 
@@ -33,5 +34,10 @@ public abstract class AbstractStubIndex<Key, Psi extends PsiElement> implements
     return StubIndex.getInstance().get(getKey(), key, project, scope);
   }
 
+  public boolean processElements(Collection<Key> keys, final Project project, final GlobalSearchScope scope,
+                                 PairProcessor<Key, ? super Psi> processor) {
+    return StubIndex.getInstance().processElements(getKey(), keys, project, scope, processor);
+  }
+
   public int getCacheSize() { return 2 * 1024; }
 }
@@ -26,9 +26,11 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.util.PsiUtilCore;
+import com.intellij.util.PairProcessor;
 import com.intellij.util.Processor;
 import com.intellij.util.indexing.FileBasedIndex;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
 import java.util.Iterator;
@@ -54,6 +56,28 @@ public abstract class StubIndex {
                                                                 GlobalSearchScope scope,
                                                                 @NotNull Processor<? super Psi> processor);
 
+  /**
+   * Processes elements stored under each of the given keys together with the key, which is cheaper than calling
+   * {@link #process(StubIndexKey, Object, Project, GlobalSearchScope, Processor)} for every key in a loop.
+   * Elements of a key are processed in no particular order relative to elements of other keys.
+   */
+  public <Key, Psi extends PsiElement> boolean processElements(@NotNull StubIndexKey<Key, Psi> indexKey,
+                                                               @NotNull Collection<Key> keys,
+                                                               @NotNull Project project,
+                                                               @Nullable GlobalSearchScope scope,
+                                                               @NotNull final PairProcessor<Key, ? super Psi> processor) {
+    for (final Key key : keys) {
+      boolean proceed = process(indexKey, key, project, scope, new Processor<Psi>() {
+        @Override
+        public boolean process(Psi psi) {
+          return processor.process(key, psi);
+        }
+      });
+      if (!proceed) return false;
+    }
+    return true;
+  }
+
   @NotNull
   public abstract <Key> Collection<Key> getAllKeys(@NotNull StubIndexKey<Key, ?> indexKey, @NotNull Project project);
 
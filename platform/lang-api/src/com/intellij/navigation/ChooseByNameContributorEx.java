@@ -0,0 +1,43 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.navigation;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.util.PairProcessor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+
+/**
+ * A contributor which can look up navigation items for several names at once.
+ */
+public interface ChooseByNameContributorEx extends ChooseByNameContributor {
+  /**
+   * Passes the navigation items matching each of the specified names to the processor together with the name.
+   *
+   * @param names                  the names selected from the list.
+   * @param pattern                the original pattern entered in the dialog
+   * @param project                the project in which the navigation is performed.
+   * @param includeNonProjectItems if true, the navigation items for non-project items (for example,
+   *                               library classes) should be processed as well.
+   * @return false if the processor stopped the processing, true otherwise.
+   */
+  boolean processItemsByNames(@NotNull Collection<String> names,
+                              String pattern,
+                              Project project,
+                              boolean includeNonProjectItems,
+                              @NotNull PairProcessor<String, ? super NavigationItem> processor);
+}
@@ -499,6 +499,11 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
            myFileStatusMap.getFileDirtyScope(document, Pass.UPDATE_ALL) == null;
   }
 
+  @NotNull
+  public DaemonStatistics getStatistics() {
+    return myPassExecutorService.getStatistics();
+  }
+
   @NotNull
   public FileStatusMap getFileStatusMap() {
     return myFileStatusMap;
@@ -528,6 +533,9 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
     PassExecutorService.log(myUpdateProgress, null, "CancelX", reason, start);
 
     if (myUpdateProgress != null) {
+      if (!myUpdateProgress.isCanceled()) {
+        myPassExecutorService.getStatistics().daemonCanceled(reason);
+      }
       myUpdateProgress.cancel();
       myPassExecutorService.cancelAll(false);
       myUpdateProgress = null;
@@ -780,7 +788,7 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
             cancelUpdateProgress(true, "Cancel by alarm");
             myAlarm.cancelAllRequests();
             DaemonProgressIndicator progress = createUpdateProgress();
-            myPassExecutorService.submitPasses(passes, progress, Job.DEFAULT_PRIORITY);
+            myPassExecutorService.submitPasses(passes, progress, Job.DEFAULT_PRIORITY, getSelectedFileEditor(activeEditors));
           }
         };
 
@@ -836,6 +844,16 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
     allowToInterrupt = can;
   }
 
+  @Nullable
+  private FileEditor getSelectedFileEditor(@NotNull Collection<FileEditor> activeEditors) {
+    Editor selectedEditor = FileEditorManager.getInstance(myProject).getSelectedTextEditor();
+    if (selectedEditor == null) return null;
+    for (FileEditor fileEditor : activeEditors) {
+      if (fileEditor instanceof TextEditor && ((TextEditor)fileEditor).getEditor() == selectedEditor) return fileEditor;
+    }
+    return null;
+  }
+
   @NotNull
   private Collection<FileEditor> getSelectedEditors() {
     // Editors in modal context
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.codeHighlighting.TextEditorHighlightingPass;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.ConcurrencyUtil;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Time spent by highlighting passes and local inspection tools, grouped by file type, and the number of daemon cancellations
+ * by reason. Collected since the project is opened or since the last {@link #reset()}, see {@link DaemonCodeAnalyzerImpl#getStatistics()}.
+ */
+public class DaemonStatistics {
+  private final ConcurrentMap<String, Entry> myPasses = ContainerUtil.newConcurrentMap();
+  private final ConcurrentMap<String, Entry> myInspections = ContainerUtil.newConcurrentMap();
+  private final ConcurrentMap<String, AtomicInteger> myCancellations = ContainerUtil.newConcurrentMap();
+
+  public void passCollected(@NotNull TextEditorHighlightingPass pass, long nanos) {
+    getEntry(myPasses, getFileType(pass.getDocument()), getPassName(pass)).add(1, nanos, 0, 0, 0);
+  }
+
+  public void passApplied(@NotNull TextEditorHighlightingPass pass, long nanos) {
+    getEntry(myPasses, getFileType(pass.getDocument()), getPassName(pass)).add(0, 0, 0, nanos, pass.getInfos().size());
+  }
+
+  /**
+   * Called when the tool has visited a part of the file, e.g. elements in the visible range. The time is reported separately
+   * from the time of the rest of the run, passed to {@link #inspectionFinished}, so that max time is one of the complete runs.
+   */
+  public void inspectionVisited(@Nullable FileType fileType, @NotNull String toolId, long nanos) {
+    getEntry(myInspections, fileType, toolId).add(0, 0, nanos, 0, 0);
+  }
+
+  public void inspectionFinished(@Nullable FileType fileType, @NotNull String toolId, long nanos, int problems) {
+    getEntry(myInspections, fileType, toolId).add(1, nanos, 0, 0, problems);
+  }
+
+  public void daemonCanceled(@NotNull @NonNls String reason) {
+    AtomicInteger count = myCancellations.get(reason);
+    if (count == null) {
+      count = ConcurrencyUtil.cacheOrGet(myCancellations, reason, new AtomicInteger());
+    }
+    count.incrementAndGet();
+  }
+
+  public void reset() {
+    myPasses.clear();
+    myInspections.clear();
+    myCancellations.clear();
+  }
+
+  @NotNull
+  public String getReport() {
+    StringBuilder report = new StringBuilder();
+    report.append("Highlighting passes (file type, pass: runs, collect ms, max collect ms, apply ms, highlights):\n");
+    appendEntries(report, myPasses, true);
+    report.append("Local inspections (file type, tool: runs, visible range ms, ms, max ms, problems):\n");
+    appendEntries(report, myInspections, false);
+    report.append("Daemon cancellations:\n");
+    List<Map.Entry<String, AtomicInteger>> cancellations = new ArrayList<Map.Entry<String, AtomicInteger>>(myCancellations.entrySet());
+    Collections.sort(cancellations, new Comparator<Map.Entry<String, AtomicInteger>>() {
+      @Override
+      public int compare(Map.Entry<String, AtomicInteger> o1, Map.Entry<String, AtomicInteger> o2) {
+        return o1.getKey().compareTo(o2.getKey());
+      }
+    });
+    for (Map.Entry<String, AtomicInteger> entry : cancellations) {
+      report.append("  ").append(entry.getKey()).append(": ").append(entry.getValue().get()).append('\n');
+    }
+    return report.toString();
+  }
+
+  private static void appendEntries(@NotNull StringBuilder report, @NotNull Map<String, Entry> entries, boolean passes) {
+    // entries keep changing, so sort by the times taken up front
+    Map<String, Entry> copy = new HashMap<String, Entry>(entries);
+    final Map<String, Long> totalNanos = new HashMap<String, Long>();
+    for (Map.Entry<String, Entry> entry : copy.entrySet()) {
+      totalNanos.put(entry.getKey(), entry.getValue().getTotalNanos());
+    }
+    List<String> sorted = new ArrayList<String>(totalNanos.keySet());
+    Collections.sort(sorted, new Comparator<String>() {
+      @Override
+      public int compare(String o1, String o2) {
+        return totalNanos.get(o2).compareTo(totalNanos.get(o1));
+      }
+    });
+    for (String key : sorted) {
+      report.append("  ").append(key).append(": ").append(copy.get(key).toString(passes)).append('\n');
+    }
+  }
+
+  @NotNull
+  private static Entry getEntry(@NotNull ConcurrentMap<String, Entry> entries, @Nullable FileType fileType, @NotNull String name) {
+    String key = (fileType == null ? "?" : fileType.getName()) + ", " + name;
+    Entry entry = entries.get(key);
+    return entry != null ? entry : ConcurrencyUtil.cacheOrGet(entries, key, new Entry());
+  }
+
+  @Nullable
+  private static FileType getFileType(@Nullable Document document) {
+    VirtualFile file = document == null ? null : FileDocumentManager.getInstance().getFile(document);
+    return file == null ? null : file.getFileType();
+  }
+
+  @NotNull
+  private static String getPassName(@NotNull TextEditorHighlightingPass pass) {
+    Class<?> aClass = pass.getClass();
+    while (aClass.isAnonymousClass()) {
+      aClass = aClass.getSuperclass();
+    }
+    return aClass.getSimpleName();
+  }
+
+  private static class Entry {
+    private int myRuns;
+    private long myNanos;
+    private long myMaxNanos;
+    private long myVisitNanos;
+    private long myApplyNanos;
+    private int myResults;
+
+    private synchronized void add(int runs, long nanos, long visitNanos, long applyNanos, int results) {
+      myRuns += runs;
+      myNanos += nanos;
+      if (runs > 0) {
+        myMaxNanos = Math.max(myMaxNanos, nanos);
+      }
+      myVisitNanos += visitNanos;
+      myApplyNanos += applyNanos;
+      myResults += results;
+    }
+
+    private synchronized long getTotalNanos() {
+      return myNanos + myVisitNanos + myApplyNanos;
+    }
+
+    private synchronized String toString(boolean pass) {
+      if (pass) {
+        return myRuns + ", " + myNanos / 1000000 + ", " + myMaxNanos / 1000000 + ", " + myApplyNanos / 1000000 + ", " + myResults;
+      }
+      return myRuns + ", " + myVisitNanos / 1000000 + ", " + myNanos / 1000000 + ", " + myMaxNanos / 1000000 + ", " + myResults;
+    }
+  }
+}
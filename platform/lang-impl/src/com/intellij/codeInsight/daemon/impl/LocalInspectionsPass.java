@@ -18,6 +18,7 @@ package com.intellij.codeInsight.daemon.impl;
 
 import com.intellij.codeHighlighting.Pass;
 import com.intellij.codeInsight.daemon.DaemonBundle;
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
 import com.intellij.codeInsight.daemon.HighlightDisplayKey;
 import com.intellij.codeInsight.daemon.impl.analysis.HighlightLevelUtil;
 import com.intellij.codeInsight.daemon.impl.quickfix.QuickFixAction;
@@ -88,6 +89,7 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
   private final String myShortcutText;
   private final SeverityRegistrar mySeverityRegistrar;
   private final InspectionProfileWrapper myProfileWrapper;
+  private final DaemonStatistics myStatistics;
   private boolean myFailFastOnAcquireReadAction;
 
   public LocalInspectionsPass(@NotNull PsiFile file,
@@ -122,6 +124,7 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
     assert myProfileWrapper != null;
     mySeverityRegistrar = ((SeverityProvider)myProfileWrapper.getInspectionProfile().getProfileManager()).getSeverityRegistrar();
     LOG.assertTrue(mySeverityRegistrar != null);
+    myStatistics = ((DaemonCodeAnalyzerImpl)DaemonCodeAnalyzer.getInstance(myProject)).getStatistics();
 
     // initial guess
     setProgressLimit(300 * 2);
@@ -338,7 +341,9 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
         }
     };
     Set<String> languages = (Set<String>)pair.getValue();
+    long start = System.nanoTime();
     PsiElementVisitor visitor = createVisitorAndAcceptElements(tool, holder, isOnTheFly, session, elements, languages);
+    myStatistics.inspectionVisited(myFile.getFileType(), wrapper.getShortName(), System.nanoTime() - start);
 
     synchronized (init) {
       init.add(new InspectionContext(wrapper, holder, visitor, languages));
@@ -385,9 +390,12 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
           
           indicator.checkCanceled();
           ApplicationManager.getApplication().assertReadAccessAllowed();
+          long start = System.nanoTime();
           acceptElements(elements, context.visitor, context.languageIds);
           advanceProgress(1);
           context.tool.getTool().inspectionFinished(session, context.holder);
+          myStatistics.inspectionFinished(myFile.getFileType(), context.tool.getShortName(), System.nanoTime() - start,
+                                          context.holder.getResultCount());
 
           if (context.holder.hasResults()) {
             appendDescriptors(myFile, context.holder.getResults(), context.tool);
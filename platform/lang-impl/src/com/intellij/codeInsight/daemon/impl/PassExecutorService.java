@@ -40,6 +40,7 @@ import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.ConcurrencyUtil;
 import com.intellij.util.Consumer;
@@ -48,6 +49,7 @@ import com.intellij.util.containers.ContainerUtil;
 import gnu.trove.THashMap;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 import java.util.concurrent.CancellationException;
@@ -66,6 +68,7 @@ public abstract class PassExecutorService implements Disposable {
   private final Project myProject;
   private volatile boolean isDisposed;
   private final AtomicInteger nextPassId = new AtomicInteger(100);
+  private final DaemonStatistics myStatistics = new DaemonStatistics();
 
   public PassExecutorService(Project project) {
     myProject = project;
@@ -77,6 +80,11 @@ public abstract class PassExecutorService implements Disposable {
     isDisposed = true;
   }
 
+  @NotNull
+  public DaemonStatistics getStatistics() {
+    return myStatistics;
+  }
+
   public void cancelAll(boolean waitForTermination) {
     for (Job<Void> submittedPass : mySubmittedPasses.values()) {
       submittedPass.cancel();
@@ -96,7 +104,21 @@ public abstract class PassExecutorService implements Disposable {
   }
 
   public void submitPasses(Map<FileEditor, HighlightingPass[]> passesMap, DaemonProgressIndicator updateProgress, final int jobPriority) {
+    submitPasses(passesMap, updateProgress, jobPriority, null);
+  }
+
+  /**
+   * @param selectedEditor editor the user works with. Passes for other editors get lower priority and are started
+   *                       only after the passes for documents of the selected editor have collected their information.
+   */
+  public void submitPasses(Map<FileEditor, HighlightingPass[]> passesMap,
+                           DaemonProgressIndicator updateProgress,
+                           final int jobPriority,
+                           @Nullable FileEditor selectedEditor) {
     if (isDisposed()) return;
+    if (!Registry.is("daemon.prioritize.selected.editor")) {
+      selectedEditor = null;
+    }
     int id = 1;
 
     // (doc, passId) -> created pass
@@ -162,6 +184,8 @@ public abstract class PassExecutorService implements Disposable {
     final AtomicInteger threadsToStartCountdown = new AtomicInteger(0);
     for (List<FileEditor> fileEditors : documentToEditors.values()) {
       List<TextEditorHighlightingPass> passes = textPasses.get(fileEditors.get(0));
+      boolean background = selectedEditor != null && !fileEditors.contains(selectedEditor);
+      int priority = background ? jobPriority + 1 : jobPriority;
       threadsToStartCountdown.addAndGet(passes.size());
 
       // create one scheduled pass per unique id (possibly for multiple file editors. they all will be applied at the pass finish)
@@ -181,7 +205,7 @@ public abstract class PassExecutorService implements Disposable {
         }
         if (newId != passId) {
           createScheduledPass(fileEditors, currentPass, toBeSubmitted, passes, freePasses, dependentPasses, updateProgress, threadsToStartCountdown,
-                              jobPriority);
+                              priority);
           passId = newId;
         }
       }
@@ -189,6 +213,9 @@ public abstract class PassExecutorService implements Disposable {
 
     log(updateProgress, null, "---------------------starting------------------------ " + threadsToStartCountdown.get(), freePasses);
 
+    if (selectedEditor != null) {
+      freePasses = deferBackgroundPasses(selectedEditor, toBeSubmitted.values(), freePasses);
+    }
     for (ScheduledPass dependentPass : dependentPasses) {
       mySubmittedPasses.put(dependentPass, JobImpl.NULL_JOB);
     }
@@ -197,6 +224,50 @@ public abstract class PassExecutorService implements Disposable {
     }
   }
 
+  /**
+   * @return passes to submit now; free passes of background editors are submitted when all passes of the selected editor are finished
+   */
+  @NotNull
+  private List<ScheduledPass> deferBackgroundPasses(@NotNull FileEditor selectedEditor,
+                                                    @NotNull Collection<ScheduledPass> allPasses,
+                                                    @NotNull List<ScheduledPass> freePasses) {
+    List<ScheduledPass> foregroundFreePasses = new ArrayList<ScheduledPass>(freePasses.size());
+    List<ScheduledPass> deferred = new ArrayList<ScheduledPass>(freePasses.size());
+    for (ScheduledPass freePass : freePasses) {
+      (freePass.myFileEditors.contains(selectedEditor) ? foregroundFreePasses : deferred).add(freePass);
+    }
+    if (foregroundFreePasses.isEmpty() || deferred.isEmpty()) return freePasses;
+
+    BackgroundPassesStarter starter = new BackgroundPassesStarter(deferred);
+    for (ScheduledPass pass : allPasses) {
+      if (pass.myFileEditors.contains(selectedEditor)) {
+        pass.myBackgroundPassesStarter = starter;
+        starter.myForegroundPassesToFinish.incrementAndGet();
+      }
+    }
+    for (ScheduledPass pass : deferred) {
+      mySubmittedPasses.put(pass, JobImpl.NULL_JOB);
+    }
+    return foregroundFreePasses;
+  }
+
+  private class BackgroundPassesStarter {
+    private final AtomicInteger myForegroundPassesToFinish = new AtomicInteger();
+    private final List<ScheduledPass> myBackgroundPasses;
+
+    private BackgroundPassesStarter(@NotNull List<ScheduledPass> backgroundPasses) {
+      myBackgroundPasses = backgroundPasses;
+    }
+
+    private void foregroundPassFinished() {
+      if (myForegroundPassesToFinish.decrementAndGet() == 0) {
+        for (ScheduledPass pass : myBackgroundPasses) {
+          submit(pass);
+        }
+      }
+    }
+  }
+
   private ScheduledPass createScheduledPass(@NotNull List<FileEditor> fileEditors,
                                             @NotNull TextEditorHighlightingPass pass,
                                             @NotNull Map<Pair<Document, Integer>, ScheduledPass> toBeSubmitted,
@@ -301,6 +372,7 @@ public abstract class PassExecutorService implements Disposable {
     private final Collection<ScheduledPass> mySuccessorsOnCompletion = new ArrayList<ScheduledPass>();
     private final Collection<ScheduledPass> mySuccessorsOnSubmit = new ArrayList<ScheduledPass>();
     private final DaemonProgressIndicator myUpdateProgress;
+    private BackgroundPassesStarter myBackgroundPassesStarter; // not null for passes of the selected editor holding back the others
 
     private ScheduledPass(@NotNull List<FileEditor> fileEditors,
                           @NotNull TextEditorHighlightingPass pass,
@@ -354,7 +426,11 @@ public abstract class PassExecutorService implements Disposable {
                 }
 
                 if (!myUpdateProgress.isCanceled()) {
+                  long start = System.nanoTime();
                   myPass.collectInformation(myUpdateProgress);
+                  if (!myUpdateProgress.isCanceled()) {
+                    myStatistics.passCollected(myPass, System.nanoTime() - start);
+                  }
                 }
               }
               catch (ProcessCanceledException e) {
@@ -391,6 +467,9 @@ public abstract class PassExecutorService implements Disposable {
             submit(successor);
           }
         }
+        if (myBackgroundPassesStarter != null) {
+          myBackgroundPassesStarter.foregroundPassFinished();
+        }
       }
     }
 
@@ -435,7 +514,9 @@ public abstract class PassExecutorService implements Disposable {
           if (!applied) {
             applied = true;
             log(updateProgress, pass, " Applied");
+            long start = System.nanoTime();
             pass.applyInformationToEditor();
+            myStatistics.passApplied(pass, System.nanoTime() - start);
           }
           afterApplyInformationToEditor(pass, fileEditor, updateProgress);
 
@@ -19,6 +19,7 @@ package com.intellij.find.impl;
 import com.intellij.BundleBase;
 import com.intellij.find.*;
 import com.intellij.find.ngrams.TrigramIndex;
+import com.intellij.find.ngrams.TrigramQuery;
 import com.intellij.navigation.ItemPresentation;
 import com.intellij.openapi.actionSystem.DataContext;
 import com.intellij.openapi.actionSystem.LangDataKeys;
@@ -29,7 +30,9 @@ import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditor;
+import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.fileTypes.FileTypeManager;
+import com.intellij.openapi.fileTypes.UnknownFileType;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.progress.ProcessCanceledException;
@@ -46,9 +49,9 @@ import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.util.text.StringUtil;
-import com.intellij.openapi.util.text.TrigramBuilder;
 import com.intellij.openapi.vfs.*;
 import com.intellij.openapi.vfs.ex.VirtualFileManagerEx;
+import com.intellij.openapi.vfs.newvfs.NewVirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.impl.cache.CacheManager;
 import com.intellij.psi.search.*;
@@ -64,6 +67,8 @@ import com.intellij.util.PatternUtil;
 import com.intellij.util.Processor;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.IndexInfrastructure;
+import com.intellij.util.indexing.IndexingStamp;
 import gnu.trove.THashSet;
 import gnu.trove.TIntHashSet;
 import gnu.trove.TIntIterator;
@@ -442,8 +447,26 @@ public class FindInProjectUtil {
     boolean fast = false;
 
     String stringToFind = findModel.getStringToFind();
+    if (findModel.isRegularExpressions()) {
+      // words of a regular expression aren't words of the text; only the trigram index can narrow the search
+      if (!TrigramIndex.ENABLED) return new Pair<Boolean, Collection<PsiFile>>(false, Collections.<PsiFile>emptyList());
+      TIntHashSet trigrams = TrigramQuery.getRequiredTrigrams(stringToFind, true);
+      if (trigrams.isEmpty()) return new Pair<Boolean, Collection<PsiFile>>(false, Collections.<PsiFile>emptyList());
+      for (TIntIterator it = trigrams.iterator(); it.hasNext(); ) {
+        keys.add(it.next());
+      }
+      List<VirtualFile> hits = new ArrayList<VirtualFile>();
+      FileBasedIndex.getInstance().getFilesWithKey(TrigramIndex.INDEX_ID, keys, new CommonProcessors.CollectProcessor<VirtualFile>(hits), scope);
+      for (VirtualFile hit : hits) {
+        ContainerUtil.addIfNotNull(resultFiles, pm.findFile(hit));
+      }
+      addFilesNotCoveredByTrigramIndex(resultFiles, scope, psiDirectory, module, fileIndex, project);
+      filterMaskedFiles(resultFiles, fileMaskRegExp);
+      return new Pair<Boolean, Collection<PsiFile>>(true, resultFiles);
+    }
+
     if (TrigramIndex.ENABLED) {
-      TIntHashSet trigrams = TrigramBuilder.buildTrigram(stringToFind);
+      TIntHashSet trigrams = TrigramQuery.getRequiredTrigrams(stringToFind, false);
       TIntIterator it = trigrams.iterator();
       while (it.hasNext()) {
         keys.add(it.next());
@@ -459,7 +482,11 @@ public class FindInProjectUtil {
         }
 
         filterMaskedFiles(resultFiles, fileMaskRegExp);
-        if (resultFiles.isEmpty()) return new Pair<Boolean, Collection<PsiFile>>(true, resultFiles);
+        if (resultFiles.isEmpty()) {
+          addFilesNotCoveredByTrigramIndex(resultFiles, scope, psiDirectory, module, fileIndex, project);
+          filterMaskedFiles(resultFiles, fileMaskRegExp);
+          return new Pair<Boolean, Collection<PsiFile>>(true, resultFiles);
+        }
       }
     }
 
@@ -512,6 +539,9 @@ public class FindInProjectUtil {
       PsiFile[] allWordsFiles =
         cacheManager.getFilesWithWord(stringToFind, UsageSearchContext.ANY, scope, findModel.isCaseSensitive());
       ContainerUtil.addAll(resultFiles, allWordsFiles);
+      if (!keys.isEmpty()) {
+        addFilesNotCoveredByTrigramIndex(resultFiles, scope, psiDirectory, module, fileIndex, project);
+      }
 
       filterMaskedFiles(resultFiles, fileMaskRegExp);
     }
@@ -519,6 +549,43 @@ public class FindInProjectUtil {
     return new Pair<Boolean, Collection<PsiFile>>(fast, resultFiles);
   }
 
+  /**
+   * Trigram index hits can't be the only candidates: files too large for indexing and files which were of binary or unknown type
+   * when indexed have no trigrams, though the latter are searched after their type is detected from content.
+   */
+  private static void addFilesNotCoveredByTrigramIndex(@NotNull final Set<PsiFile> resultFiles,
+                                                       @NotNull final GlobalSearchScope scope,
+                                                       @Nullable PsiDirectory psiDirectory,
+                                                       @Nullable Module module,
+                                                       @NotNull FileIndex fileIndex,
+                                                       @NotNull Project project) {
+    final PsiManager psiManager = PsiManager.getInstance(project);
+    final long indexCreationStamp = IndexInfrastructure.getIndexCreationStamp(TrigramIndex.INDEX_ID);
+    final ContentIterator iterator = new ContentIterator() {
+      @Override
+      public boolean processFile(VirtualFile file) {
+        ProgressManager.checkCanceled();
+        if (!file.isDirectory() && file instanceof NewVirtualFile && scope.contains(file)) {
+          FileType fileType = file.getFileType();
+          if ((fileType == UnknownFileType.INSTANCE || !fileType.isBinary()) &&
+              !IndexingStamp.isFileIndexed(file, TrigramIndex.INDEX_ID, indexCreationStamp)) {
+            ContainerUtil.addIfNotNull(resultFiles, psiManager.findFile(file));
+          }
+        }
+        return true;
+      }
+    };
+    if (psiDirectory != null) {
+      fileIndex.iterateContentUnderDirectory(psiDirectory.getVirtualFile(), iterator);
+      return;
+    }
+    fileIndex.iterateContent(iterator);
+    if (scope.isSearchInLibraries()) {
+      OrderEnumerator enumerator = module == null ? OrderEnumerator.orderEntries(project) : OrderEnumerator.orderEntries(module);
+      iterateAll(enumerator.withoutModuleSourceEntries().withoutDepModules().getSourceRoots(), scope, iterator);
+    }
+  }
+
   private static void filterMaskedFiles(@NotNull final Set<PsiFile> resultFiles, @Nullable final Pattern fileMaskRegExp) {
     if (fileMaskRegExp != null) {
       for (Iterator<PsiFile> iterator = resultFiles.iterator(); iterator.hasNext();) {
@@ -531,7 +598,7 @@ public class FindInProjectUtil {
   }
 
   private static boolean canOptimizeForFastWordSearch(@NotNull final FindModel findModel) {
-    return !findModel.isRegularExpressions()
+    return (!findModel.isRegularExpressions() || TrigramIndex.ENABLED)
            && (findModel.getCustomScope() == null || findModel.getCustomScope() instanceof GlobalSearchScope);
   }
 
@@ -21,18 +21,16 @@ package com.intellij.find.ngrams;
 
 import com.intellij.openapi.util.text.TrigramBuilder;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.SystemProperties;
 import com.intellij.util.indexing.*;
 import com.intellij.util.io.EnumeratorIntegerDescriptor;
 import com.intellij.util.io.KeyDescriptor;
-import gnu.trove.THashMap;
-import gnu.trove.TIntHashSet;
-import gnu.trove.TIntProcedure;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Map;
+import java.util.*;
 
 public class TrigramIndex extends ScalarIndexExtension<Integer> {
-  public static final boolean ENABLED = "true".equals(System.getProperty("idea.internal.trigramindex.enabled"));
+  public static final boolean ENABLED = SystemProperties.getBooleanProperty("idea.internal.trigramindex.enabled", true);
 
   public static final ID<Integer,Void> INDEX_ID = ID.create("Trigram.Index");
 
@@ -62,16 +60,9 @@ public class TrigramIndex extends ScalarIndexExtension<Integer> {
       @Override
       @NotNull
       public Map<Integer, Void> map(FileContent inputData) {
-        final Map<Integer, Void> result = new THashMap<Integer, Void>();
-        TIntHashSet built = TrigramBuilder.buildTrigram(inputData.getContentAsText());
-        built.forEach(new TIntProcedure() {
-          @Override
-          public boolean execute(int value) {
-            result.put(value, null);
-            return true;
-          }
-        });
-        return result;
+        int[] trigrams = TrigramBuilder.buildTrigram(inputData.getContentAsText()).toArray();
+        Arrays.sort(trigrams);
+        return new TrigramMap(trigrams);
       }
     };
   }
@@ -100,4 +91,65 @@ public class TrigramIndex extends ScalarIndexExtension<Integer> {
   public int getVersion() {
     return ENABLED ? 2 : 1;
   }
+
+  /**
+   * Read-only map view of a sorted array of trigrams: a file has thousands of them, and keeping them boxed in a hash map
+   * only to pass them to the index storage is a waste.
+   */
+  private static class TrigramMap extends AbstractMap<Integer, Void> {
+    private final int[] myTrigrams;
+
+    private TrigramMap(@NotNull int[] trigrams) {
+      myTrigrams = trigrams;
+    }
+
+    @Override
+    public int size() {
+      return myTrigrams.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return key instanceof Integer && Arrays.binarySearch(myTrigrams, (Integer)key) >= 0;
+    }
+
+    @Override
+    public Void get(Object key) {
+      return null;
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<Integer, Void>> entrySet() {
+      return new AbstractSet<Entry<Integer, Void>>() {
+        @Override
+        public Iterator<Entry<Integer, Void>> iterator() {
+          return new Iterator<Entry<Integer, Void>>() {
+            private int myIndex;
+
+            @Override
+            public boolean hasNext() {
+              return myIndex < myTrigrams.length;
+            }
+
+            @Override
+            public Entry<Integer, Void> next() {
+              if (myIndex >= myTrigrams.length) throw new NoSuchElementException();
+              return new SimpleImmutableEntry<Integer, Void>(myTrigrams[myIndex++], null);
+            }
+
+            @Override
+            public void remove() {
+              throw new UnsupportedOperationException();
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return myTrigrams.length;
+        }
+      };
+    }
+  }
 }
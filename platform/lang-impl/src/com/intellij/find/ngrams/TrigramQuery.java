@@ -0,0 +1,291 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.find.ngrams;
+
+import com.intellij.openapi.util.text.TrigramBuilder;
+import gnu.trove.TIntHashSet;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes which keys of {@link TrigramIndex} a file must contain to match a search string. Trigrams are built case-insensitively,
+ * so the same keys serve case-sensitive and case-insensitive searches.
+ * <p/>
+ * For regular expressions only the literal parts which every match must contain are taken into account: runs of plain characters
+ * outside of alternatives, optional atoms and character classes. Anything which is not understood just breaks the current run,
+ * so the resulting set may be smaller than possible, but never requires a trigram a matching file does not have.
+ */
+public class TrigramQuery {
+  private TrigramQuery() {
+  }
+
+  /**
+   * @return trigrams every matching file contains; empty set means the index can't narrow the search
+   */
+  @NotNull
+  public static TIntHashSet getRequiredTrigrams(@NotNull String stringToFind, boolean regExp) {
+    if (!regExp) {
+      return TrigramBuilder.buildTrigram(stringToFind);
+    }
+
+    TIntHashSet result = new TIntHashSet();
+    for (String literal : getRequiredLiterals(stringToFind)) {
+      result.addAll(TrigramBuilder.buildTrigram(literal).toArray());
+    }
+    return result;
+  }
+
+  /**
+   * @return strings of at least three characters every match of the regular expression contains
+   */
+  @NotNull
+  public static List<String> getRequiredLiterals(@NotNull String regExp) {
+    List<String> result = new ArrayList<String>();
+    if (hasCommentsFlag(regExp) || !parseSequence(regExp, 0, regExp.length(), result)) {
+      return new ArrayList<String>();
+    }
+    return result;
+  }
+
+  /**
+   * @return false if the sequence has alternatives, so that nothing is required
+   */
+  private static boolean parseSequence(String p, int start, int end, List<String> out) {
+    List<String> literals = new ArrayList<String>();
+    StringBuilder run = new StringBuilder();
+    int i = start;
+    while (i < end) {
+      char c = p.charAt(i);
+      if (c == '\\') {
+        if (i + 1 >= end) break;
+        char next = p.charAt(i + 1);
+        if (next == 'Q') {
+          int quoteEnd = p.indexOf("\\E", i + 2);
+          if (quoteEnd < 0 || quoteEnd > end) quoteEnd = end;
+          String quoted = p.substring(i + 2, quoteEnd);
+          i = Math.min(quoteEnd + 2, end);
+          if (!quoted.isEmpty()) {
+            run.append(quoted, 0, quoted.length() - 1);
+            i = appendLiteral(p, i, end, quoted.charAt(quoted.length() - 1), run, literals);
+          }
+        }
+        else if (!Character.isLetterOrDigit(next)) {
+          i = appendLiteral(p, i + 2, end, next, run, literals);
+        }
+        else {
+          // character classes, control characters, back references and so on
+          flush(run, literals);
+          i = skipQuantifier(p, skipEscape(p, i + 1, end), end);
+        }
+      }
+      else if (c == '[') {
+        flush(run, literals);
+        i = skipQuantifier(p, skipClass(p, i, end), end);
+      }
+      else if (c == '(') {
+        flush(run, literals);
+        int close = findClosingParenthesis(p, i, end);
+        if (close < 0) break;
+        int afterGroup = close + 1;
+        boolean optional = isOptionalQuantifier(p, afterGroup, end);
+        int contentStart = getGroupContentStart(p, i, close);
+        if (contentStart >= 0 && !optional) {
+          parseSequence(p, contentStart, close, literals);
+        }
+        i = skipQuantifier(p, afterGroup, end);
+      }
+      else if (c == '|') {
+        return false;
+      }
+      else if (c == '.' || c == '^' || c == '$' || c == ')' || c == '*' || c == '+' || c == '?' || c == '{') {
+        flush(run, literals);
+        i = c == '{' ? skipQuantifier(p, i, end) : i + 1;
+        if (c == '.') i = skipQuantifier(p, i, end);
+      }
+      else {
+        i = appendLiteral(p, i + 1, end, c, run, literals);
+      }
+    }
+    flush(run, literals);
+    out.addAll(literals);
+    return true;
+  }
+
+  /**
+   * Appends the character at <code>p[i - 1]</code> to the run, taking the quantifier which follows it into account
+   *
+   * @return index after the quantifier
+   */
+  private static int appendLiteral(String p, int i, int end, char c, StringBuilder run, List<String> literals) {
+    if (i < end && isOptionalQuantifier(p, i, end)) {
+      flush(run, literals);
+    }
+    else {
+      run.append(c);
+      // a repeated character can't be joined with the following ones
+      if (i < end && (p.charAt(i) == '+' || p.charAt(i) == '{')) flush(run, literals);
+    }
+    return skipQuantifier(p, i, end);
+  }
+
+  private static void flush(StringBuilder run, List<String> literals) {
+    if (run.length() >= 3) {
+      literals.add(run.toString());
+    }
+    run.setLength(0);
+  }
+
+  private static boolean isOptionalQuantifier(String p, int i, int end) {
+    if (i >= end) return false;
+    char c = p.charAt(i);
+    if (c == '?' || c == '*') return true;
+    if (c == '{') {
+      int j = i + 1;
+      while (j < end && p.charAt(j) == '0') j++;
+      return j > i + 1 && j < end && !Character.isDigit(p.charAt(j));
+    }
+    return false;
+  }
+
+  private static int skipQuantifier(String p, int i, int end) {
+    if (i >= end) return i;
+    char c = p.charAt(i);
+    if (c == '{') {
+      int close = p.indexOf('}', i);
+      if (close < 0 || close >= end) return end;
+      i = close + 1;
+    }
+    else if (c == '?' || c == '*' || c == '+') {
+      i++;
+    }
+    else {
+      return i;
+    }
+    // reluctant and possessive quantifiers
+    if (i < end && (p.charAt(i) == '?' || p.charAt(i) == '+')) i++;
+    return i;
+  }
+
+  /**
+   * @param i index of the character following the backslash
+   */
+  private static int skipEscape(String p, int i, int end) {
+    char c = p.charAt(i++);
+    if ((c == 'p' || c == 'P' || c == 'x') && i < end && p.charAt(i) == '{') {
+      return skipTo(p, '}', i, end);
+    }
+    if (c == 'k' && i < end && p.charAt(i) == '<') {
+      return skipTo(p, '>', i, end);
+    }
+    if (c == 'x') return Math.min(i + 2, end);
+    if (c == 'u') return Math.min(i + 4, end);
+    if (c == 'c') return Math.min(i + 1, end);
+    if (Character.isDigit(c)) {
+      while (i < end && Character.isDigit(p.charAt(i))) i++;
+    }
+    return i;
+  }
+
+  private static int skipTo(String p, char close, int i, int end) {
+    int index = p.indexOf(close, i);
+    return index < 0 || index >= end ? end : index + 1;
+  }
+
+  private static int skipClass(String p, int i, int end) {
+    i++;
+    if (i < end && p.charAt(i) == '^') i++;
+    if (i < end && p.charAt(i) == ']') i++;
+    while (i < end) {
+      char c = p.charAt(i);
+      if (c == '\\') {
+        i += 2;
+      }
+      else if (c == '[') {
+        i = skipClass(p, i, end);
+      }
+      else if (c == ']') {
+        return i + 1;
+      }
+      else {
+        i++;
+      }
+    }
+    return end;
+  }
+
+  private static int findClosingParenthesis(String p, int i, int end) {
+    int depth = 0;
+    while (i < end) {
+      char c = p.charAt(i);
+      if (c == '\\') {
+        if (i + 1 < end && p.charAt(i + 1) == 'Q') {
+          int quoteEnd = p.indexOf("\\E", i + 2);
+          if (quoteEnd < 0 || quoteEnd >= end) return -1;
+          i = quoteEnd + 2;
+        }
+        else {
+          i += 2;
+        }
+        continue;
+      }
+      if (c == '[') {
+        i = skipClass(p, i, end);
+        continue;
+      }
+      if (c == '(') depth++;
+      if (c == ')' && --depth == 0) return i;
+      i++;
+    }
+    return -1;
+  }
+
+  /**
+   * @return start of the group content, or -1 for look-arounds, inline flags and other groups which don't consume what they match
+   */
+  private static int getGroupContentStart(String p, int open, int close) {
+    if (open + 1 >= close || p.charAt(open + 1) != '?') return open + 1;
+    if (open + 2 >= close) return -1;
+    char c = p.charAt(open + 2);
+    if (c == ':' || c == '>') return open + 3;
+    if (c == '<' && open + 3 < close && Character.isLetter(p.charAt(open + 3))) {
+      // named group
+      int nameEnd = p.indexOf('>', open + 3);
+      return nameEnd < 0 || nameEnd >= close ? -1 : nameEnd + 1;
+    }
+    if (Character.isLetter(c) || c == '-') {
+      // inline flags applied to the group: (?i:...)
+      int j = open + 2;
+      while (j < close && (Character.isLetter(p.charAt(j)) || p.charAt(j) == '-')) j++;
+      return j < close && p.charAt(j) == ':' ? j + 1 : -1;
+    }
+    return -1;
+  }
+
+  private static boolean hasCommentsFlag(String p) {
+    int i = p.indexOf("(?");
+    while (i >= 0) {
+      int j = i + 2;
+      while (j < p.length() && (Character.isLetter(p.charAt(j)) || p.charAt(j) == '-')) {
+        if (p.charAt(j) == 'x') return true;
+        j++;
+      }
+      i = p.indexOf("(?", i + 2);
+    }
+    return false;
+  }
+}
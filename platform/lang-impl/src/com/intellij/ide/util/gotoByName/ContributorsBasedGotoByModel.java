@@ -20,6 +20,7 @@ import com.intellij.diagnostic.PluginException;
 import com.intellij.ide.plugins.PluginManager;
 import com.intellij.ide.util.NavigationItemListCellRenderer;
 import com.intellij.navigation.ChooseByNameContributor;
+import com.intellij.navigation.ChooseByNameContributorEx;
 import com.intellij.navigation.NavigationItem;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.extensions.PluginId;
@@ -31,10 +32,13 @@ import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.IndexNotReadyException;
 import com.intellij.openapi.project.Project;
 import com.intellij.util.ArrayUtil;
+import com.intellij.util.PairProcessor;
 import com.intellij.util.Processor;
 import com.intellij.util.containers.ConcurrentHashSet;
 import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.containers.MultiMap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
@@ -131,18 +135,7 @@ public abstract class ContributorsBasedGotoByModel implements ChooseByNameModel
 
         try {
           for (NavigationItem item : contributor.getItemsByName(name, pattern, myProject, checkBoxState)) {
-            if (item == null) {
-              PluginId pluginId = PluginManager.getPluginByClassName(contributor.getClass().getName());
-              if (pluginId != null) {
-                LOG.error(new PluginException("null item from contributor " + contributor + " for name " + name, pluginId));
-              }
-              else {
-                LOG.error("null item from contributor " + contributor + " for name " + name);
-              }
-              continue;
-            }
-
-            if (acceptItem(item)) {
+            if (isAcceptable(contributor, name, item)) {
               items.add(item);
             }
           }
@@ -161,6 +154,114 @@ public abstract class ContributorsBasedGotoByModel implements ChooseByNameModel
     return ArrayUtil.toObjectArray(items);
   }
 
+  /**
+   * Gets elements for each of the specified names. The default implementation calls
+   * {@link #getElementsByName(String, boolean, String, ProgressIndicator)} for every name.
+   *
+   * @return the elements by name, names without elements are absent
+   */
+  @NotNull
+  public Map<String, Object[]> getElementsByNames(@NotNull Collection<String> names,
+                                                  boolean checkBoxState,
+                                                  String pattern,
+                                                  @NotNull ProgressIndicator canceled) {
+    return getElementsByNamesOneByOne(names, checkBoxState, pattern, canceled);
+  }
+
+  @NotNull
+  protected final Map<String, Object[]> getElementsByNamesOneByOne(@NotNull Collection<String> names,
+                                                                   boolean checkBoxState,
+                                                                   String pattern,
+                                                                   @NotNull ProgressIndicator canceled) {
+    Map<String, Object[]> result = new HashMap<String, Object[]>();
+    for (String name : names) {
+      canceled.checkCanceled();
+      Object[] elements = getElementsByName(name, checkBoxState, pattern, canceled);
+      if (elements.length > 0) {
+        result.put(name, elements);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Gets elements for each of the specified names from contributors, so that contributors implementing
+   * {@link ChooseByNameContributorEx} look up all the names at once.
+   */
+  @NotNull
+  protected final Map<String, Object[]> getElementsByNamesFromContributors(@NotNull final Collection<String> names,
+                                                                           final boolean checkBoxState,
+                                                                           final String pattern,
+                                                                           @NotNull final ProgressIndicator canceled) {
+    final MultiMap<String, NavigationItem> items = new MultiMap<String, NavigationItem>();
+
+    Processor<ChooseByNameContributor> processor = new Processor<ChooseByNameContributor>() {
+      @Override
+      public boolean process(final ChooseByNameContributor contributor) {
+        if (myProject.isDisposed()) {
+          return true;
+        }
+
+        try {
+          if (contributor instanceof ChooseByNameContributorEx) {
+            ((ChooseByNameContributorEx)contributor).processItemsByNames(names, pattern, myProject, checkBoxState, new PairProcessor<String, NavigationItem>() {
+              @Override
+              public boolean process(String name, NavigationItem item) {
+                canceled.checkCanceled();
+                if (isAcceptable(contributor, name, item)) {
+                  synchronized (items) {
+                    items.putValue(name, item);
+                  }
+                }
+                return true;
+              }
+            });
+          }
+          else {
+            for (String name : names) {
+              canceled.checkCanceled();
+              for (NavigationItem item : contributor.getItemsByName(name, pattern, myProject, checkBoxState)) {
+                if (isAcceptable(contributor, name, item)) {
+                  synchronized (items) {
+                    items.putValue(name, item);
+                  }
+                }
+              }
+            }
+          }
+        }
+        catch (ProcessCanceledException ex) {
+          // index corruption detected, ignore
+        }
+        catch (Exception ex) {
+          LOG.error(ex);
+        }
+        return true;
+      }
+    };
+    JobLauncher.getInstance().invokeConcurrentlyUnderProgress(filterDumb(myContributors), canceled, false, processor);
+
+    Map<String, Object[]> result = new HashMap<String, Object[]>();
+    for (Map.Entry<String, Collection<NavigationItem>> entry : items.entrySet()) {
+      result.put(entry.getKey(), ArrayUtil.toObjectArray(entry.getValue()));
+    }
+    return result;
+  }
+
+  private boolean isAcceptable(@NotNull ChooseByNameContributor contributor, @NotNull String name, @Nullable NavigationItem item) {
+    if (item == null) {
+      PluginId pluginId = PluginManager.getPluginByClassName(contributor.getClass().getName());
+      if (pluginId != null) {
+        LOG.error(new PluginException("null item from contributor " + contributor + " for name " + name, pluginId));
+      }
+      else {
+        LOG.error("null item from contributor " + contributor + " for name " + name);
+      }
+      return false;
+    }
+    return acceptItem(item);
+  }
+
   /**
    * Get elements by name from contributors.
    *
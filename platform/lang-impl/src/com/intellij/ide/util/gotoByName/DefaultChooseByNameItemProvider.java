@@ -27,6 +27,7 @@ import com.intellij.psi.PsiElement;
 import com.intellij.psi.codeStyle.MinusculeMatcher;
 import com.intellij.psi.codeStyle.NameUtil;
 import com.intellij.psi.util.proximity.PsiProximityComparator;
+import com.intellij.util.ArrayUtil;
 import com.intellij.util.Function;
 import com.intellij.util.Processor;
 import com.intellij.util.SmartList;
@@ -41,7 +42,9 @@ import java.util.*;
 
 public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider {
   private static final Logger LOG = Logger.getInstance("#com.intellij.ide.util.gotoByName.ChooseByNameIdea");
+  private static final int NAMES_BATCH_SIZE = 32;
   private WeakReference<PsiElement> myContext;
+  private final Map<String, MatchedNames> myLastMatchedNames = ContainerUtil.newConcurrentMap();
 
   public DefaultChooseByNameItemProvider(PsiElement context) {
     myContext = new WeakReference<PsiElement>(context);
@@ -67,26 +70,27 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider
                     namePattern.equals("@") && model instanceof GotoClassModel2;    // TODO[yole]: remove implicit dependency
     if (empty && !base.canShowListForEmptyPattern()) return true;
 
-    Set<String> names = new THashSet<String>(Arrays.asList(base.getNames(everywhere)));
+    String[] names = base.getNames(everywhere);
+    Set<String> consumedNames = new THashSet<String>();
 
     if (base.isSearchInAnyPlace() && !namePattern.trim().isEmpty()) {
       String middleMatchPattern = "*" + namePattern + (namePattern.charAt(namePattern.length() - 1) == ' ' ? "" : "*");
 
       // consume elements matching by prefix case-sensitively
-      Integer elementsConsumed = consumeElements(base, everywhere, indicator, consumer, namePattern, qualifierPattern, names,
+      Integer elementsConsumed = consumeElements(base, everywhere, indicator, consumer, namePattern, qualifierPattern, names, consumedNames,
                                                  MatchingMode.CASE_SENSITIVE, false);
       if (elementsConsumed == null) return false;
 
       if (elementsConsumed == 0) {
         // search for strict prefixes case-insensitively
         elementsConsumed = consumeElements(base, everywhere, indicator, consumer, namePattern,
-                                           qualifierPattern, names, MatchingMode.STRICT_CASE_INSENSITIVE, false);
+                                           qualifierPattern, names, consumedNames, MatchingMode.STRICT_CASE_INSENSITIVE, false);
         if (elementsConsumed == null) return false;
 
         // search with original pattern without case sensitivity, don't add separator before found items
         // result: items matched by prefix will always be above middle-matched items
         Integer elementsConsumed2 = consumeElements(base, everywhere, indicator, consumer, namePattern,
-                                                    qualifierPattern, names, MatchingMode.CASE_INSENSITIVE, false);
+                                                    qualifierPattern, names, consumedNames, MatchingMode.CASE_INSENSITIVE, false);
         if (elementsConsumed2 == null) return false;
 
         elementsConsumed += elementsConsumed2;
@@ -94,11 +98,11 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider
 
       // search with broadest criteria - middle match pattern, without case sensitivity
       elementsConsumed = consumeElements(base, everywhere, indicator, consumer, middleMatchPattern,
-                                         qualifierPattern, names, MatchingMode.CASE_INSENSITIVE, elementsConsumed > 0);
+                                         qualifierPattern, names, consumedNames, MatchingMode.CASE_INSENSITIVE, elementsConsumed > 0);
       return elementsConsumed != null;
     }
     else {
-      Integer elementsConsumed = consumeElements(base, everywhere, indicator, consumer, namePattern, qualifierPattern, names,
+      Integer elementsConsumed = consumeElements(base, everywhere, indicator, consumer, namePattern, qualifierPattern, names, consumedNames,
                                                  MatchingMode.CASE_INSENSITIVE, false);
       return elementsConsumed != null;
     }
@@ -114,13 +118,13 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider
                                   @NotNull Processor<Object> consumer,
                                   @NotNull String namePattern,
                                   @NotNull String qualifierPattern,
-                                  @NotNull Set<String> allNames,
+                                  @NotNull String[] allNames,
+                                  @NotNull Set<String> consumedNames,
                                   @NotNull MatchingMode matchingMode,
                                   boolean needSeparator) {
     ChooseByNameModel model = base.getModel();
-    List<String> namesList = new ArrayList<String>();
-    getNamesByPattern(base, new ArrayList<String>(allNames), indicator, namesList, namePattern, matchingMode);
-    allNames.removeAll(namesList);
+    List<String> namesList = getNamesByPattern(base, allNames, consumedNames, indicator, namePattern, matchingMode, true);
+    consumedNames.addAll(namesList);
     sortNamesList(namePattern, namesList);
 
     indicator.checkCanceled();
@@ -129,13 +133,24 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider
     List<Pair<String, MinusculeMatcher>> patternsAndMatchers = getPatternsAndMatchers(qualifierPattern, base);
     int elementsConsumed = 0;
 
-    for (String name : namesList) {
+    Map<String, Object[]> elementsByName = Collections.emptyMap();
+    for (int i = 0; i < namesList.size(); i++) {
+      String name = namesList.get(i);
       indicator.checkCanceled();
 
-      // use interruptible call if possible
-      Object[] elements = model instanceof ContributorsBasedGotoByModel ?
-                                ((ContributorsBasedGotoByModel)model).getElementsByName(name, everywhere, namePattern, indicator)
-                                : model.getElementsByName(name, everywhere, namePattern);
+      Object[] elements;
+      if (model instanceof ContributorsBasedGotoByModel) {
+        // use interruptible call and look up the names in batches, small enough to stop early once the consumer has got enough
+        if (i % NAMES_BATCH_SIZE == 0) {
+          List<String> batch = namesList.subList(i, Math.min(i + NAMES_BATCH_SIZE, namesList.size()));
+          elementsByName = ((ContributorsBasedGotoByModel)model).getElementsByNames(batch, everywhere, namePattern, indicator);
+        }
+        elements = elementsByName.get(name);
+        if (elements == null) elements = ArrayUtil.EMPTY_OBJECT_ARRAY;
+      }
+      else {
+        elements = model.getElementsByName(name, everywhere, namePattern);
+      }
       if (elements.length > 1) {
         sameNameElements.clear();
         for (final Object element : elements) {
@@ -264,17 +279,22 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider
   @NotNull
   @Override
   public List<String> filterNames(@NotNull ChooseByNameBase base, @NotNull String[] names, @NotNull String pattern) {
-    List<String> res = new ArrayList<String>();
-    getNamesByPattern(base, Arrays.asList(names), null, res, pattern, MatchingMode.CASE_INSENSITIVE);
-    return res;
+    return getNamesByPattern(base, names, Collections.<String>emptySet(), null, pattern, MatchingMode.CASE_INSENSITIVE, false);
   }
 
-  private static void getNamesByPattern(@NotNull final ChooseByNameBase base,
-                                        @NotNull List<String> names,
-                                        @Nullable ProgressIndicator indicator,
-                                        @NotNull final List<String> outListFiltered, // matched items
-                                        @NotNull String pattern,
-                                        @NotNull MatchingMode matchingMode) throws ProcessCanceledException {
+  /**
+   * @param excludedNames names not to return even if they match
+   * @param narrowDown whether names matched by the pattern should be remembered, so that when the user types more characters
+   *                   only these names are matched against the longer pattern
+   */
+  @NotNull
+  private List<String> getNamesByPattern(@NotNull final ChooseByNameBase base,
+                                         @NotNull String[] names,
+                                         @NotNull Set<String> excludedNames,
+                                         @Nullable ProgressIndicator indicator,
+                                         @NotNull String pattern,
+                                         @NotNull MatchingMode matchingMode,
+                                         boolean narrowDown) throws ProcessCanceledException {
     if (!base.canShowListForEmptyPattern()) {
       LOG.assertTrue(!pattern.isEmpty(), base);
     }
@@ -302,20 +322,40 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider
         };
         break;
       default:
-        return;
+        return new ArrayList<String>();
     }
 
-    JobLauncher.getInstance().invokeConcurrentlyUnderProgress(names, indicator, false, new Processor<String>() {
+    // middle matching goes after prefix matching in the same mode, remember names matched in these two cases separately
+    String key = matchingMode + (pattern.startsWith("*") ? " middle" : "");
+    narrowDown &= !(base.getModel() instanceof CustomMatcherModel);
+    MatchedNames lastMatched = narrowDown ? myLastMatchedNames.get(key) : null;
+    List<String> candidates = lastMatched != null && lastMatched.isNarrowedBy(names, pattern, matcher)
+                              ? lastMatched.myNames
+                              : Arrays.asList(names);
+
+    final List<String> matched = new ArrayList<String>();
+    boolean completed = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(candidates, indicator, false, new Processor<String>() {
       @Override
       public boolean process(String name) {
         if (matches(base, finalPattern, matcher, name)) {
-          synchronized (outListFiltered) {
-            outListFiltered.add(name);
+          synchronized (matched) {
+            matched.add(name);
           }
         }
         return true;
       }
     });
+    if (narrowDown && completed && (indicator == null || !indicator.isCanceled())) {
+      myLastMatchedNames.put(key, new MatchedNames(names, pattern, matcher, matched));
+    }
+
+    Set<String> result = new THashSet<String>(matched.size());
+    for (String name : matched) {
+      if (!excludedNames.contains(name)) {
+        result.add(name);
+      }
+    }
+    return new ArrayList<String>(result);
   }
 
   private static boolean matches(@NotNull ChooseByNameBase base,
@@ -342,6 +382,31 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider
     return NameUtil.buildMatcher(pattern, caseSensitivity);
   }
 
+  /**
+   * Names matched by a pattern, while the user types more characters of the pattern only these names can match it
+   */
+  private static class MatchedNames {
+    private final String[] myAllNames;
+    private final String myPattern;
+    private final Matcher myMatcher;
+    private final List<String> myNames;
+
+    private MatchedNames(@NotNull String[] allNames, @NotNull String pattern, @NotNull Matcher matcher, @NotNull List<String> names) {
+      myAllNames = allNames;
+      myPattern = pattern;
+      myMatcher = matcher;
+      myNames = names;
+    }
+
+    private boolean isNarrowedBy(@NotNull String[] allNames, @NotNull String pattern, @NotNull Matcher matcher) {
+      if (allNames != myAllNames || myPattern.isEmpty()) return false;
+      if (matcher instanceof MinusculeMatcher) {
+        return myMatcher instanceof MinusculeMatcher && ((MinusculeMatcher)matcher).isNarrowingOf((MinusculeMatcher)myMatcher);
+      }
+      return !(myMatcher instanceof MinusculeMatcher) && StringUtil.startsWithIgnoreCase(pattern, myPattern);
+    }
+  }
+
   private static class MatchesComparator implements Comparator<String> {
     private final String myOriginalPattern;
 
@@ -22,6 +22,7 @@ import com.intellij.navigation.ChooseByNameContributor;
 import com.intellij.navigation.ChooseByNameRegistry;
 import com.intellij.navigation.GotoClassContributor;
 import com.intellij.navigation.NavigationItem;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.psi.PsiElement;
@@ -30,6 +31,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 public class GotoClassModel2 extends FilteringGotoByModel<Language> {
@@ -55,6 +57,15 @@ public class GotoClassModel2 extends FilteringGotoByModel<Language> {
     return items;
   }
 
+  @NotNull
+  @Override
+  public Map<String, Object[]> getElementsByNames(@NotNull Collection<String> names,
+                                                  boolean checkBoxState,
+                                                  String pattern,
+                                                  @NotNull ProgressIndicator canceled) {
+    return getElementsByNamesFromContributors(names, checkBoxState, pattern, canceled);
+  }
+
   @Override
   @Nullable
   public String getPromptText() {
@@ -25,6 +25,7 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.extensions.Extensions;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -33,10 +34,10 @@ import com.intellij.openapi.vfs.newvfs.persistent.PersistentFS;
 import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
-import com.intellij.psi.PsiManager;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.util.PsiUtilCore;
 import com.intellij.util.CommonProcessors;
+import com.intellij.util.PairProcessor;
 import com.intellij.util.Processor;
 import com.intellij.util.SmartList;
 import com.intellij.util.indexing.*;
@@ -131,6 +132,7 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
           new StubIdExternalizer(),
           extension.getCacheSize()
         );
+        storage.setStatistics(IndexingStatistics.getInstance(indexKey.toString()));
         final MemoryIndexStorage<K, StubIdList> memStorage = new MemoryIndexStorage<K, StubIdList>(storage);
         myIndices.put(indexKey, new MyIndex<K>(memStorage));
         break;
@@ -201,12 +203,88 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
                                                        @NotNull final Project project,
                                                        @Nullable final GlobalSearchScope scope,
                                                        @NotNull final Processor<? super Psi> processor) {
+    return processIndexData(indexKey, project, scope, new IndexDataProcessor<Key>() {
+      @Override
+      public boolean process(@NotNull MyIndex<Key> index,
+                             @Nullable final FileBasedIndexImpl.ProjectIndexableFilesFilter projectFilesFilter) throws StorageException {
+        final PersistentFS fs = (PersistentFS)ManagingFS.getInstance();
+        return index.getData(key).forEach(new ValueContainer.ContainerAction<StubIdList>() {
+          @Override
+          public boolean perform(final int id, @NotNull final StubIdList value) {
+            final VirtualFile file = findFile(fs, id, projectFilesFilter, scope);
+            return file == null || myStubProcessingHelper.processStubsInFile(project, file, value, processor);
+          }
+        });
+      }
+    });
+  }
+
+  @Override
+  public <Key, Psi extends PsiElement> boolean processElements(@NotNull final StubIndexKey<Key, Psi> indexKey,
+                                                               @NotNull final Collection<Key> keys,
+                                                               @NotNull final Project project,
+                                                               @Nullable final GlobalSearchScope scope,
+                                                               @NotNull final PairProcessor<Key, ? super Psi> processor) {
+    return processIndexData(indexKey, project, scope, new IndexDataProcessor<Key>() {
+      @Override
+      public boolean process(@NotNull MyIndex<Key> index,
+                             @Nullable final FileBasedIndexImpl.ProjectIndexableFilesFilter projectFilesFilter) throws StorageException {
+        final List<StubIdListWithKey<Key>> found = new ArrayList<StubIdListWithKey<Key>>();
+        for (final Key key : keys) {
+          ProgressManager.checkCanceled();
+          index.getData(key).forEach(new ValueContainer.ContainerAction<StubIdList>() {
+            @Override
+            public boolean perform(final int id, @NotNull final StubIdList value) {
+              if (projectFilesFilter == null || projectFilesFilter.contains(id)) {
+                found.add(new StubIdListWithKey<Key>(key, id, value));
+              }
+              return true;
+            }
+          });
+        }
+
+        // stubs of a file found under different keys come together, so the file is looked up and its stub tree is loaded once
+        Collections.sort(found);
+
+        final PersistentFS fs = (PersistentFS)ManagingFS.getInstance();
+        VirtualFile file = null;
+        int lastFileId = 0;
+        for (final StubIdListWithKey<Key> entry : found) {
+          if (entry.fileId != lastFileId) {
+            lastFileId = entry.fileId;
+            file = findFile(fs, lastFileId, projectFilesFilter, scope);
+          }
+          if (file == null) continue;
+
+          boolean proceed = myStubProcessingHelper.processStubsInFile(project, file, entry.value, new Processor<Psi>() {
+            @Override
+            public boolean process(Psi psi) {
+              return processor.process(entry.key, psi);
+            }
+          });
+          if (!proceed) return false;
+        }
+        return true;
+      }
+    });
+  }
+
+  private interface IndexDataProcessor<Key> {
+    boolean process(@NotNull MyIndex<Key> index,
+                    @Nullable FileBasedIndexImpl.ProjectIndexableFilesFilter projectFilesFilter) throws StorageException;
+  }
+
+  /**
+   * Brings the stub index up to date and passes its data to the processor under the index read lock,
+   * scheduling the index rebuild if its data turns out to be corrupted
+   */
+  private <Key> boolean processIndexData(@NotNull StubIndexKey<Key, ?> indexKey,
+                                         @NotNull Project project,
+                                         @Nullable GlobalSearchScope scope,
+                                         @NotNull IndexDataProcessor<Key> processor) {
     final FileBasedIndexImpl fileBasedIndex = (FileBasedIndexImpl)FileBasedIndex.getInstance();
     fileBasedIndex.ensureUpToDate(StubUpdatingIndex.INDEX_ID, project, scope);
 
-    final PersistentFS fs = (PersistentFS)ManagingFS.getInstance();
-    final PsiManager psiManager = PsiManager.getInstance(project);
-
     final MyIndex<Key> index = (MyIndex<Key>)myIndices.get(indexKey);
 
     try {
@@ -214,22 +292,7 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
         // disable up-to-date check to avoid locks on attempt to acquire index write lock while holding at the same time the readLock for this index
         FileBasedIndexImpl.disableUpToDateCheckForCurrentThread();
         index.getReadLock().lock();
-        final ValueContainer<StubIdList> container = index.getData(key);
-
-        final FileBasedIndexImpl.ProjectIndexableFilesFilter projectFilesFilter = fileBasedIndex.projectIndexableFiles(project);
-
-        return container.forEach(new ValueContainer.ContainerAction<StubIdList>() {
-          @Override
-          public boolean perform(final int id, @NotNull final StubIdList value) {
-            if (projectFilesFilter != null && !projectFilesFilter.contains(id)) return true;
-            final VirtualFile file = IndexInfrastructure.findFileByIdIfCached(fs, id);
-            if (file == null || scope != null && !scope.contains(file)) {
-              return true;
-            }
-            return myStubProcessingHelper.processStubsInFile(project, file, value, processor);
-          }
-
-        });
+        return processor.process(index, fileBasedIndex.projectIndexableFiles(project));
       }
       finally {
         index.getReadLock().unlock();
@@ -252,6 +315,33 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
     return true;
   }
 
+  @Nullable
+  private static VirtualFile findFile(@NotNull PersistentFS fs,
+                                      int fileId,
+                                      @Nullable FileBasedIndexImpl.ProjectIndexableFilesFilter projectFilesFilter,
+                                      @Nullable GlobalSearchScope scope) {
+    if (projectFilesFilter != null && !projectFilesFilter.contains(fileId)) return null;
+    final VirtualFile file = IndexInfrastructure.findFileByIdIfCached(fs, fileId);
+    return file == null || scope != null && !scope.contains(file) ? null : file;
+  }
+
+  private static class StubIdListWithKey<Key> implements Comparable<StubIdListWithKey<Key>> {
+    private final Key key;
+    private final int fileId;
+    private final StubIdList value;
+
+    private StubIdListWithKey(@NotNull Key key, int fileId, @NotNull StubIdList value) {
+      this.key = key;
+      this.fileId = fileId;
+      this.value = value;
+    }
+
+    @Override
+    public int compareTo(@NotNull StubIdListWithKey<Key> o) {
+      return fileId < o.fileId ? -1 : fileId == o.fileId ? 0 : 1;
+    }
+  }
+
   private static void forceRebuild(@NotNull Throwable e) {
     LOG.info(e);
     FileBasedIndex.getInstance().scheduleRebuild(StubUpdatingIndex.INDEX_ID, e);
@@ -394,6 +394,7 @@ public class FileBasedIndexImpl extends FileBasedIndex {
           extension.getCacheSize(),
           extension.isKeyHighlySelective()
         );
+        storage.setStatistics(IndexingStatistics.getInstance(name.toString()));
         final MemoryIndexStorage<K, V> memStorage = new MemoryIndexStorage<K, V>(storage);
         final UpdatableIndex<K, V, FileContent> index = createIndex(name, extension, memStorage);
         final InputFilter inputFilter = extension.getInputFilter();
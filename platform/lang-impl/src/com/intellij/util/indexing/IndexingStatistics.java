@@ -0,0 +1,202 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.indexing;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accumulates the cost of maintaining an index: time spent in {@link DataIndexer#map(Object)} and in storage updates, number of
+ * indexed inputs and produced keys, bytes of value containers written and hit rate of the {@link MapIndexStorage} cache.
+ * Counters are kept per index name for the whole IDE session, see {@link #getSnapshots()}.
+ */
+public final class IndexingStatistics {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.util.indexing.IndexingStatistics");
+  @NonNls private static final String CSV_FILE_PROPERTY = "idea.indexing.statistics.csv";
+  private static final int INDICES_TO_LOG = 10;
+
+  private static final ConcurrentMap<String, IndexingStatistics> ourStatistics = new ConcurrentHashMap<String, IndexingStatistics>();
+
+  private final String myIndexName;
+  private final AtomicLong myMappedInputs = new AtomicLong();
+  private final AtomicLong myMapTime = new AtomicLong();
+  private final AtomicLong myKeys = new AtomicLong();
+  private final AtomicLong myUpdateTime = new AtomicLong();
+  private final AtomicLong myBytesWritten = new AtomicLong();
+  private final AtomicLong myCacheHits = new AtomicLong();
+  private final AtomicLong myCacheMisses = new AtomicLong();
+
+  private IndexingStatistics(@NotNull String indexName) {
+    myIndexName = indexName;
+  }
+
+  @NotNull
+  public static IndexingStatistics getInstance(@NotNull String indexName) {
+    IndexingStatistics statistics = ourStatistics.get(indexName);
+    if (statistics == null) {
+      statistics = new IndexingStatistics(indexName);
+      IndexingStatistics existing = ourStatistics.putIfAbsent(indexName, statistics);
+      if (existing != null) statistics = existing;
+    }
+    return statistics;
+  }
+
+  void inputMapped(long nanos, int keysCount) {
+    myMappedInputs.incrementAndGet();
+    myMapTime.addAndGet(nanos);
+    myKeys.addAndGet(keysCount);
+  }
+
+  void storageUpdated(long nanos) {
+    myUpdateTime.addAndGet(nanos);
+  }
+
+  void bytesWritten(int bytes) {
+    myBytesWritten.addAndGet(bytes);
+  }
+
+  void cacheAccessed(boolean hit) {
+    (hit ? myCacheHits : myCacheMisses).incrementAndGet();
+  }
+
+  @NotNull
+  public Snapshot getSnapshot() {
+    return new Snapshot(myIndexName, myMappedInputs.get(), myMapTime.get() / 1000000, myKeys.get(), myUpdateTime.get() / 1000000,
+                        myBytesWritten.get(), myCacheHits.get(), myCacheMisses.get());
+  }
+
+  /**
+   * @return snapshots of all indices sorted by total time spent in mapping and storage updates, most expensive first
+   */
+  @NotNull
+  public static List<Snapshot> getSnapshots() {
+    List<Snapshot> result = new ArrayList<Snapshot>(ourStatistics.size());
+    for (IndexingStatistics statistics : ourStatistics.values()) {
+      result.add(statistics.getSnapshot());
+    }
+    Collections.sort(result, new Comparator<Snapshot>() {
+      @Override
+      public int compare(Snapshot o1, Snapshot o2) {
+        long t1 = o1.getTotalTime();
+        long t2 = o2.getTotalTime();
+        return t1 < t2 ? 1 : t1 == t2 ? o1.indexName.compareTo(o2.indexName) : -1;
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Logs the most expensive indices and, if <code>idea.indexing.statistics.csv</code> system property is set, writes snapshots of
+   * all indices to the file it points to.
+   */
+  public static void dump() {
+    List<Snapshot> snapshots = getSnapshots();
+    StringBuilder builder = new StringBuilder("Most expensive indices:");
+    for (int i = 0; i < snapshots.size() && i < INDICES_TO_LOG; i++) {
+      builder.append("\n  ").append(snapshots.get(i));
+    }
+    LOG.info(builder.toString());
+
+    String csvPath = System.getProperty(CSV_FILE_PROPERTY);
+    if (csvPath != null) {
+      try {
+        writeCsv(new File(csvPath), snapshots);
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+    }
+  }
+
+  public static void writeCsv(@NotNull File file, @NotNull List<Snapshot> snapshots) throws IOException {
+    StringBuilder builder = new StringBuilder(Snapshot.CSV_HEADER).append('\n');
+    for (Snapshot snapshot : snapshots) {
+      builder.append(snapshot.toCsvLine()).append('\n');
+    }
+    FileUtil.writeToFile(file, builder.toString());
+  }
+
+  public static final class Snapshot {
+    @NonNls private static final String CSV_HEADER = "index,inputs,map ms,keys,update ms,bytes written,cache hits,cache misses";
+
+    public final String indexName;
+    public final long mappedInputs;
+    public final long mapTime;
+    public final long keys;
+    public final long updateTime;
+    public final long bytesWritten;
+    public final long cacheHits;
+    public final long cacheMisses;
+
+    private Snapshot(@NotNull String indexName,
+                     long mappedInputs,
+                     long mapTime,
+                     long keys,
+                     long updateTime,
+                     long bytesWritten,
+                     long cacheHits,
+                     long cacheMisses) {
+      this.indexName = indexName;
+      this.mappedInputs = mappedInputs;
+      this.mapTime = mapTime;
+      this.keys = keys;
+      this.updateTime = updateTime;
+      this.bytesWritten = bytesWritten;
+      this.cacheHits = cacheHits;
+      this.cacheMisses = cacheMisses;
+    }
+
+    public long getTotalTime() {
+      return mapTime + updateTime;
+    }
+
+    /**
+     * @return part of storage reads served from the cache, or <code>null</code> if the storage was not read
+     */
+    @Nullable
+    public Double getCacheHitRate() {
+      long accesses = cacheHits + cacheMisses;
+      return accesses == 0 ? null : (double)cacheHits / accesses;
+    }
+
+    @NotNull
+    String toCsvLine() {
+      return indexName + "," + mappedInputs + "," + mapTime + "," + keys + "," + updateTime + "," + bytesWritten + "," + cacheHits +
+             "," + cacheMisses;
+    }
+
+    @Override
+    public String toString() {
+      Double hitRate = getCacheHitRate();
+      return indexName + ": " + mappedInputs + " inputs mapped in " + mapTime + " ms to " + keys + " keys, " +
+             "storage updated in " + updateTime + " ms, " + bytesWritten / 1024 + " KB written" +
+             (hitRate != null ? ", cache hit rate " + (int)(hitRate * 100) + "%" : "");
+    }
+  }
+}
@@ -50,6 +50,7 @@ public final class MapIndexStorage<Key, Value> implements IndexStorage<Key, Valu
   private final Lock l = new ReentrantLock();
   private final DataExternalizer<Value> myDataExternalizer;
   private boolean myHighKeySelectivity;
+  @Nullable private volatile IndexingStatistics myStatistics;
 
   public MapIndexStorage(@NotNull File storageFile,
                          @NotNull KeyDescriptor<Key> keyDescriptor,
@@ -75,6 +76,7 @@ public final class MapIndexStorage<Key, Value> implements IndexStorage<Key, Valu
 
   private void initMapAndCache() throws IOException {
     final ValueContainerMap<Key, Value> map = new ValueContainerMap<Key, Value>(myStorageFile, myKeyDescriptor, myDataExternalizer);
+    map.setStatistics(myStatistics);
     myCache = new SLRUCache<Key, ChangeTrackingValueContainer<Value>>(myCacheSize, (int)(Math.ceil(myCacheSize * 0.25)) /* 25% from the main cache size*/) {
       @Override
       @NotNull
@@ -120,6 +122,11 @@ public final class MapIndexStorage<Key, Value> implements IndexStorage<Key, Valu
     myMap = map;
   }
 
+  public void setStatistics(@Nullable IndexingStatistics statistics) {
+    myStatistics = statistics;
+    ((ValueContainerMap<Key, Value>)myMap).setStatistics(statistics);
+  }
+
   @Override
   public void flush() {
     l.lock();
@@ -220,6 +227,12 @@ public final class MapIndexStorage<Key, Value> implements IndexStorage<Key, Valu
   public ChangeTrackingValueContainer<Value> read(final Key key) throws StorageException {
     l.lock();
     try {
+      final IndexingStatistics statistics = myStatistics;
+      if (statistics != null) {
+        final ChangeTrackingValueContainer<Value> cached = myCache.getIfCached(key);
+        statistics.cacheAccessed(cached != null);
+        if (cached != null) return cached;
+      }
       return myCache.get(key);
     }
     catch (RuntimeException e) {
@@ -44,6 +44,7 @@ public class MapReduceIndex<Key, Value, Input> implements UpdatableIndex<Key,Val
   @Nullable private final ID<Key, Value> myIndexId;
   private final DataIndexer<Key, Value, Input> myIndexer;
   @NotNull protected final IndexStorage<Key, Value> myStorage;
+  @Nullable private final IndexingStatistics myStatistics;
   @Nullable private PersistentHashMap<Integer, Collection<Key>> myInputsIndex;
 
   private final ReentrantReadWriteLock myLock = new ReentrantReadWriteLock();
@@ -55,6 +56,7 @@ public class MapReduceIndex<Key, Value, Input> implements UpdatableIndex<Key,Val
     myIndexId = indexId;
     myIndexer = indexer;
     myStorage = storage;
+    myStatistics = indexId != null ? IndexingStatistics.getInstance(indexId.toString()) : null;
   }
 
   @NotNull
@@ -212,7 +214,11 @@ public class MapReduceIndex<Key, Value, Input> implements UpdatableIndex<Key,Val
   public final void update(final int inputId, @Nullable Input content) throws StorageException {
     assert myInputsIndex != null;
 
+    final long started = System.nanoTime();
     final Map<Key, Value> data = content != null ? myIndexer.map(content) : Collections.<Key, Value>emptyMap();
+    if (myStatistics != null && content != null) {
+      myStatistics.inputMapped(System.nanoTime() - started, data.size());
+    }
 
     updateWithMap(inputId, data, new Callable<Collection<Key>>() {
       @Override
@@ -225,6 +231,7 @@ public class MapReduceIndex<Key, Value, Input> implements UpdatableIndex<Key,Val
 
   protected void updateWithMap(final int inputId, @NotNull Map<Key, Value> newData, @NotNull Callable<Collection<Key>> oldKeysGetter) throws StorageException {
     getWriteLock().lock();
+    final long started = System.nanoTime();
     try {
       try {
         for (Key key : oldKeysGetter.call()) {
@@ -273,6 +280,9 @@ public class MapReduceIndex<Key, Value, Input> implements UpdatableIndex<Key,Val
       }
     }
     finally {
+      if (myStatistics != null) {
+        myStatistics.storageUpdated(System.nanoTime() - started);
+      }
       getWriteLock().unlock();
     }
   }
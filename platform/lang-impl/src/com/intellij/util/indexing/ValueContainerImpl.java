@@ -21,8 +21,6 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.util.SmartList;
 import com.intellij.util.containers.EmptyIterator;
 import gnu.trove.THashMap;
-import gnu.trove.TIntHashSet;
-import gnu.trove.TIntIterator;
 import gnu.trove.TObjectObjectProcedure;
 
 import java.util.*;
@@ -37,6 +35,7 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
   // there is no volatile as we modify under write lock and read under read lock
   // Most often (80%) we store 0 or one mapping, then we store them in two fields: myInputIdMapping, myInputIdMappingValue
   // when there are several value mapped, myInputIdMapping is THashMap<Value, Data>, myInputIdMappingValue = null
+  // Data is either Integer for a single input id or IdSet otherwise
   private Object myInputIdMapping;
   private Object myInputIdMappingValue;
 
@@ -52,27 +51,44 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
           ((THashMap<Value, Object>)myInputIdMapping).put((Value)oldMapping, myInputIdMappingValue);
           myInputIdMappingValue = null;
         }
-        ((THashMap<Value, Object>)myInputIdMapping).put(value, inputId);
+        ((THashMap<Value, Object>)myInputIdMapping).put(value != null ? value : (Value)myNullValue, inputId);
       } else {
         myInputIdMapping = value != null ? value:(Value)myNullValue;
         myInputIdMappingValue = inputId;
       }
     }
     else {
-      final TIntHashSet idSet;
       if (input instanceof Integer) {
-        idSet = new IdSet(3, 0.98f);
-        idSet.add(((Integer)input).intValue());
-        if (!(myInputIdMapping instanceof THashMap)) myInputIdMappingValue = idSet;
-        else ((THashMap<Value, Object>)myInputIdMapping).put(value, idSet);
+        final int existingId = ((Integer)input).intValue();
+        if (existingId == inputId) return;
+        setInput(value, new IdSet(existingId, inputId));
       }
       else {
-        idSet = (TIntHashSet)input;
+        ((IdSet)input).add(inputId);
       }
-      idSet.add(inputId);
     }
   }
 
+  /**
+   * Associates the value with <code>count</code> input ids from the given array, the array is adopted by the container when possible.
+   */
+  void addValues(Value value, int[] inputIds, int count) {
+    if (count == 0) return;
+    if (count == 1 || getInput(value) != null || !IdSet.isStrictlyAscending(inputIds, count)) {
+      for (int i = 0; i < count; i++) {
+        addValue(inputIds[i], value);
+      }
+      return;
+    }
+    addValue(inputIds[0], value);
+    setInput(value, new IdSet(inputIds, count));
+  }
+
+  private void setInput(Value value, Object input) {
+    if (!(myInputIdMapping instanceof THashMap)) myInputIdMappingValue = input;
+    else ((THashMap<Value, Object>)myInputIdMapping).put(value != null ? value : (Value)myNullValue, input);
+  }
+
   @Override
   public int size() {
     return myInputIdMapping != null ? myInputIdMapping instanceof THashMap ? ((THashMap)myInputIdMapping).size(): 1 : 0;
@@ -106,13 +122,14 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
       return false;
     }
 
-    if (input instanceof TIntHashSet) {
-      final TIntHashSet idSet = (TIntHashSet)input;
+    if (input instanceof IdSet) {
+      final IdSet idSet = (IdSet)input;
       final boolean reallyRemoved = idSet.remove(inputId);
-      if (reallyRemoved) {
-        idSet.compact();
+      if (idSet.size() > 1) {
+        return reallyRemoved;
       }
-      if (!idSet.isEmpty()) {
+      if (idSet.size() == 1) {
+        setInput(value, idSet.get(0));
         return reallyRemoved;
       }
     }
@@ -127,7 +144,7 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
       myInputIdMappingValue = null;
     } else {
       THashMap<Value, Object> mapping = (THashMap<Value, Object>)myInputIdMapping;
-      mapping.remove(value);
+      mapping.remove(value != null ? value : (Value)myNullValue);
       if (mapping.size() == 1) {
         myInputIdMapping = mapping.keySet().iterator().next();
         myInputIdMappingValue = mapping.get((Value)myInputIdMapping);
@@ -202,8 +219,8 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
   @Override
   public boolean isAssociated(Value value, final int inputId) {
     final Object input = getInput(value);
-    if (input instanceof TIntHashSet) {
-      return ((TIntHashSet)input).contains(inputId);
+    if (input instanceof IdSet) {
+      return ((IdSet)input).contains(inputId);
     }
     if (input instanceof Integer ){
       return inputId == ((Integer)input).intValue();
@@ -225,7 +242,7 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
       };
     }
     return new IntPredicate() {
-      final TIntHashSet mySet = (TIntHashSet)input;
+      final IdSet mySet = (IdSet)input;
       @Override
       boolean contains(int id) {
         return mySet.contains(id);
@@ -237,8 +254,8 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
   public IntIterator getInputIdsIterator(Value value) {
     final Object input = getInput(value);
     final IntIterator it;
-    if (input instanceof TIntHashSet) {
-      it = new IntSetIterator((TIntHashSet)input);
+    if (input instanceof IdSet) {
+      it = new IdSetIterator((IdSet)input);
     }
     else if (input instanceof Integer ){
       it = new SingleValueIterator(((Integer)input).intValue());
@@ -270,8 +287,8 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
       final ValueContainerImpl clone = (ValueContainerImpl)super.clone();
       if (myInputIdMapping instanceof THashMap) {
         clone.myInputIdMapping = mapCopy((THashMap<Value, Object>)myInputIdMapping);
-      } else if (myInputIdMappingValue instanceof TIntHashSet) {
-        clone.myInputIdMappingValue = ((TIntHashSet)myInputIdMappingValue).clone();
+      } else if (myInputIdMappingValue instanceof IdSet) {
+        clone.myInputIdMappingValue = ((IdSet)myInputIdMappingValue).copy();
       }
       return clone;
     }
@@ -308,8 +325,8 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
       mapping.forEachEntry(new TObjectObjectProcedure<Value, Object>() {
         @Override
         public boolean execute(Value key, Object val) {
-          if (val instanceof TIntHashSet) {
-            newMapping.put(key, ((TIntHashSet)val).clone());
+          if (val instanceof IdSet) {
+            newMapping.put(key, ((IdSet)val).copy());
           }
           else {
             newMapping.put(key, val);
@@ -319,8 +336,8 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
       });
     } else {
       container.myInputIdMapping = myInputIdMapping;
-      container.myInputIdMappingValue = myInputIdMappingValue instanceof TIntHashSet ?
-                                        ((TIntHashSet)myInputIdMappingValue).clone():myInputIdMappingValue;
+      container.myInputIdMappingValue = myInputIdMappingValue instanceof IdSet ?
+                                        ((IdSet)myInputIdMappingValue).copy():myInputIdMappingValue;
     }
     return container;
   }
@@ -351,23 +368,24 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
     }
   }
 
-  private static class IntSetIterator implements IntIterator {
-    private final TIntIterator mySetIterator;
+  private static class IdSetIterator implements IntIterator {
+    private final int[] myIds;
     private final int mySize;
+    private int myIndex;
 
-    public IntSetIterator(final TIntHashSet set) {
-      mySetIterator = set.iterator();
-      mySize = set.size();
+    public IdSetIterator(final IdSet set) {
+      myIds = set.myIds;
+      mySize = set.mySize;
     }
 
     @Override
     public boolean hasNext() {
-      return mySetIterator.hasNext();
+      return myIndex < mySize;
     }
 
     @Override
     public int next() {
-      return mySetIterator.next();
+      return myIds[myIndex++];
     }
 
     @Override
@@ -384,8 +402,8 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
     cloned.forEachEntry(new TObjectObjectProcedure<Value, Object>() {
       @Override
       public boolean execute(Value key, Object val) {
-        if (val instanceof TIntHashSet) {
-          cloned.put(key, ((TIntHashSet)val).clone());
+        if (val instanceof IdSet) {
+          cloned.put(key, ((IdSet)val).copy());
         }
         return true;
       }
@@ -401,17 +419,81 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
     }
   };
 
-  private static class IdSet extends TIntHashSet {
+  /**
+   * Input ids kept in a sorted array. Ids mostly come in ascending order (when read from disk or when files are indexed
+   * one after another), so additions are appended, and the array takes 4 bytes per id instead of ~9 of a hash set.
+   */
+  private static final class IdSet {
+    private int[] myIds;
+    private int mySize;
 
-    private IdSet(final int initialCapacity, final float loadFactor) {
-      super(initialCapacity, loadFactor);
+    private IdSet(int first, int second) {
+      myIds = new int[4];
+      myIds[0] = Math.min(first, second);
+      myIds[1] = Math.max(first, second);
+      mySize = 2;
     }
 
-    @Override
-    public void compact() {
-      if (((int)(capacity() * _loadFactor)/ Math.max(1, size())) >= 3) {
-        super.compact();
+    private IdSet(int[] ids, int size) {
+      myIds = ids;
+      mySize = size;
+    }
+
+    private static boolean isStrictlyAscending(int[] ids, int size) {
+      for (int i = 1; i < size; i++) {
+        if (ids[i - 1] >= ids[i]) return false;
       }
+      return true;
+    }
+
+    int size() {
+      return mySize;
+    }
+
+    int get(int index) {
+      return myIds[index];
+    }
+
+    boolean contains(int id) {
+      return mySize > 0 && id <= myIds[mySize - 1] && Arrays.binarySearch(myIds, 0, mySize, id) >= 0;
+    }
+
+    boolean add(int id) {
+      int index;
+      if (mySize == 0 || id > myIds[mySize - 1]) {
+        index = mySize;
+      }
+      else {
+        index = Arrays.binarySearch(myIds, 0, mySize, id);
+        if (index >= 0) return false;
+        index = -index - 1;
+      }
+
+      int[] ids = myIds;
+      if (mySize == ids.length) {
+        ids = new int[mySize + (mySize >> 1) + 1];
+        System.arraycopy(myIds, 0, ids, 0, index);
+      }
+      System.arraycopy(myIds, index, ids, index + 1, mySize - index);
+      ids[index] = id;
+      myIds = ids;
+      mySize++;
+      return true;
+    }
+
+    boolean remove(int id) {
+      final int index = Arrays.binarySearch(myIds, 0, mySize, id);
+      if (index < 0) return false;
+      System.arraycopy(myIds, index + 1, myIds, index, mySize - index - 1);
+      mySize--;
+      if (myIds.length > 8 && mySize < myIds.length / 3) {
+        myIds = Arrays.copyOf(myIds, mySize + (mySize >> 1) + 1);
+      }
+      return true;
+    }
+
+    IdSet copy() {
+      return new IdSet(Arrays.copyOf(myIds, mySize), mySize);
     }
   }
 
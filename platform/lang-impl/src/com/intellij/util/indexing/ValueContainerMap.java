@@ -5,6 +5,7 @@ import com.intellij.util.io.*;
 import com.intellij.util.io.DataOutputStream;
 import gnu.trove.TIntHashSet;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.util.Iterator;
@@ -24,6 +25,10 @@ class ValueContainerMap<Key, Value> extends PersistentHashMap<Key, ValueContaine
     myValueContainerExternalizer = (ValueContainerExternalizer<Value>)myValueExternalizer;
   }
 
+  void setStatistics(@Nullable IndexingStatistics statistics) {
+    myValueContainerExternalizer.myStatistics = statistics;
+  }
+
   @NotNull
   Object getDataAccessLock() {
     return myEnumerator;
@@ -65,6 +70,7 @@ class ValueContainerMap<Key, Value> extends PersistentHashMap<Key, ValueContaine
 
   private static final class ValueContainerExternalizer<T> implements DataExternalizer<ValueContainer<T>> {
     @NotNull private final DataExternalizer<T> myExternalizer;
+    @Nullable private volatile IndexingStatistics myStatistics;
 
     private ValueContainerExternalizer(@NotNull DataExternalizer<T> externalizer) {
       myExternalizer = externalizer;
@@ -72,7 +78,15 @@ class ValueContainerMap<Key, Value> extends PersistentHashMap<Key, ValueContaine
 
     @Override
     public void save(final DataOutput out, @NotNull final ValueContainer<T> container) throws IOException {
-      saveImpl(out, container);
+      final IndexingStatistics statistics = myStatistics;
+      if (statistics != null && out instanceof java.io.DataOutputStream) {
+        final int sizeBefore = ((java.io.DataOutputStream)out).size();
+        saveImpl(out, container);
+        statistics.bytesWritten(((java.io.DataOutputStream)out).size() - sizeBefore);
+      }
+      else {
+        saveImpl(out, container);
+      }
     }
 
     public static void saveInvalidateCommand(final DataOutput out, int inputId) throws IOException {
@@ -88,9 +102,12 @@ class ValueContainerMap<Key, Value> extends PersistentHashMap<Key, ValueContaine
         final ValueContainer.IntIterator ids = container.getInputIdsIterator(value);
         if (ids != null) {
           DataInputOutputUtil.writeSINT(out, ids.size());
+          // ids go in ascending order, so store the first one and then differences which mostly fit in a byte
+          int prev = 0;
           while (ids.hasNext()) {
             final int id = ids.next();
-            DataInputOutputUtil.writeSINT(out, id);
+            DataInputOutputUtil.writeINT(out, id - prev);
+            prev = id;
           }
         }
         else {
@@ -115,9 +132,17 @@ class ValueContainerMap<Key, Value> extends PersistentHashMap<Key, ValueContaine
           for (int valueIdx = 0; valueIdx < valueCount; valueIdx++) {
             final T value = myExternalizer.read(in);
             final int idCount = DataInputOutputUtil.readSINT(in);
-            for (int i = 0; i < idCount; i++) {
-              final int id = DataInputOutputUtil.readSINT(in);
-              valueContainer.addValue(id, value);
+            if (idCount == 1) {
+              valueContainer.addValue(DataInputOutputUtil.readINT(in), value);
+            }
+            else if (idCount > 1) {
+              final int[] ids = new int[idCount];
+              int prev = 0;
+              for (int i = 0; i < idCount; i++) {
+                prev += DataInputOutputUtil.readINT(in);
+                ids[i] = prev;
+              }
+              valueContainer.addValues(value, ids, idCount);
             }
           }
         }
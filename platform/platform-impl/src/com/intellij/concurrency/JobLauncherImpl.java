@@ -22,6 +22,7 @@ import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.impl.ProgressManagerImpl;
 import com.intellij.openapi.progress.util.ProgressWrapper;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.util.Consumer;
 import com.intellij.util.Processor;
 import org.jetbrains.annotations.NotNull;
@@ -29,6 +30,7 @@ import org.jetbrains.annotations.NotNull;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author cdr
@@ -36,12 +38,37 @@ import java.util.concurrent.Future;
 
 public class JobLauncherImpl extends JobLauncher {
   private static final Logger LOG = Logger.getInstance("#com.intellij.concurrency.JobLauncher");
+  static final int MAX_DYNAMIC_CHUNK_SIZE = 64;
 
   private <T> boolean invokeConcurrentlyForAll(@NotNull final List<T> things,
                                                       boolean failFastOnAcquireReadAction,
                                                       @NotNull final Processor<T> thingProcessor) throws ProcessCanceledException {
     final Job<String> job = new JobImpl<String>(Job.DEFAULT_PRIORITY, failFastOnAcquireReadAction);
 
+    if (Registry.is("job.launcher.dynamic.chunks")) {
+      addDynamicChunkTasks(job, things, thingProcessor);
+    }
+    else {
+      addFixedChunkTasks(job, things, thingProcessor);
+    }
+
+    try {
+      job.scheduleAndWaitForResults();
+    }
+    catch (RuntimeException e) {
+      job.cancel();
+      throw e;
+    }
+    catch (Throwable throwable) {
+      job.cancel();
+      LOG.error(throwable);
+    }
+    return !job.isCanceled();
+  }
+
+  private static <T> void addFixedChunkTasks(@NotNull final Job<String> job,
+                                             @NotNull final List<T> things,
+                                             @NotNull final Processor<T> thingProcessor) {
     final int chunkSize = Math.max(1, things.size() / JobSchedulerImpl.CORES_COUNT / 20);
     for (int i = 0; i < things.size(); i += chunkSize) {
       // this job chunk is i..i+chunkSize-1
@@ -64,18 +91,45 @@ public class JobLauncherImpl extends JobLauncher {
         }
       });
     }
-    try {
-      job.scheduleAndWaitForResults();
-    }
-    catch (RuntimeException e) {
-      job.cancel();
-      throw e;
-    }
-    catch (Throwable throwable) {
-      job.cancel();
-      LOG.error(throwable);
+  }
+
+  /**
+   * Instead of splitting the list into chunks up front, adds one worker task per core; workers claim the next chunk from the shared
+   * position, with chunk size shrinking as the list is drained. So a single expensive element delays only the worker processing it,
+   * while the others keep taking the remaining elements.
+   */
+  private static <T> void addDynamicChunkTasks(@NotNull final Job<String> job,
+                                               @NotNull final List<T> things,
+                                               @NotNull final Processor<T> thingProcessor) {
+    final AtomicInteger nextIndex = new AtomicInteger();
+    final int size = things.size();
+    final int workers = Math.min(size, JobSchedulerImpl.CORES_COUNT);
+    for (int w = 0; w < workers; w++) {
+      job.addTask(new Runnable() {
+        public void run() {
+          try {
+            while (!job.isCanceled()) {
+              int start = nextIndex.get();
+              if (start >= size) break;
+              int chunkSize = Math.max(1, Math.min(MAX_DYNAMIC_CHUNK_SIZE, (size - start) / (4 * workers)));
+              if (!nextIndex.compareAndSet(start, start + chunkSize)) continue;
+
+              for (int k = start; k < start + chunkSize && k < size; k++) {
+                T thing = things.get(k);
+                if (!thingProcessor.process(thing)) {
+                  job.cancel();
+                  return;
+                }
+              }
+            }
+          }
+          catch (ProcessCanceledException e) {
+            job.cancel();
+            throw e;
+          }
+        }
+      });
     }
-    return !job.isCanceled();
   }
 
   /**
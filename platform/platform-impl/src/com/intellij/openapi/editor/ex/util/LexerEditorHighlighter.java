@@ -15,6 +15,7 @@
  */
 package com.intellij.openapi.editor.ex.util;
 
+import com.intellij.concurrency.JobLauncher;
 import com.intellij.lexer.Lexer;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
@@ -32,19 +33,26 @@ import com.intellij.openapi.editor.impl.EditorDocumentPriorities;
 import com.intellij.openapi.editor.markup.TextAttributes;
 import com.intellij.openapi.fileTypes.PlainSyntaxHighlighter;
 import com.intellij.openapi.fileTypes.SyntaxHighlighter;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.DumbAwareRunnable;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.util.ArrayUtil;
+import com.intellij.util.Processor;
 import com.intellij.util.ui.UIUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDocumentListener {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.editor.ex.util.LexerEditorHighlighter");
+  private static final int MIN_CHUNK_SIZE = 256 * 1024;
+  private static final int CHUNK_OVERLAP = 16 * 1024;
   private HighlighterClient myEditor;
   private final Lexer myLexer;
   private final Map<IElementType, TextAttributes> myAttributesMap = new HashMap<IElementType, TextAttributes>();
@@ -63,7 +71,7 @@ public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDoc
   }
 
   protected SegmentArrayWithData createSegments() {
-    return new SegmentArrayWithData();
+    return new SegmentArrayWithData(true);
   }
 
   public boolean isPlain() {
@@ -207,7 +215,7 @@ public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDoc
     int repaintEnd = -1;
     int insertSegmentCount = 0;
     int oldEndIndex = -1;
-    SegmentArrayWithData insertSegments = new SegmentArrayWithData();
+    SegmentArrayWithData insertSegments = new SegmentArrayWithData(true);
 
     while(myLexer.getTokenType() != null) {
       int tokenStart = myLexer.getTokenStart();
@@ -256,8 +264,7 @@ public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDoc
     if (oldEndIndex < 0){
       oldEndIndex = mySegments.getSegmentCount();
     }
-    mySegments.shiftSegments(oldEndIndex, shift);
-    mySegments.replace(startIndex, oldEndIndex, insertSegments);
+    mySegments.replace(startIndex, oldEndIndex, insertSegments, shift);
 
     if (insertSegmentCount == 0 ||
         oldEndIndex == startIndex + 1 && insertSegmentCount == 1 && data == mySegments.getSegmentData(startIndex)) {
@@ -304,9 +311,13 @@ public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDoc
 
   private void doSetText(final CharSequence text) {
     final TokenProcessor processor = createTokenProcessor(0);
-    myLexer.start(text, 0, text.length(),myInitialState);
     mySegments.removeAll();
-    int i = 0;
+    int startOffset = 0;
+    if (processor.getClass() == TokenProcessor.class && text.length() >= Registry.intValue("editor.lexer.concurrent.threshold")) {
+      startOffset = lexConcurrently(text);
+    }
+    myLexer.start(text, startOffset, text.length(), myInitialState);
+    int i = mySegments.getSegmentCount();
     while (true) {
       final IElementType tokenType = myLexer.getTokenType();
       if (tokenType == null) break;
@@ -332,6 +343,140 @@ public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDoc
     return new TokenProcessor();
   }
 
+  /**
+   * Splits the text into chunks at line starts and lexes them concurrently, each one with its own lexer starting in the initial state.
+   * Chunk lexing goes a bit past the chunk end, and the next chunk is joined at the first offset where both lexings have a token
+   * starting in the initial state: tokens from there on don't depend on where lexing was started.
+   *
+   * @return offset lexing should be continued from, tokens before it are in {@link #mySegments}
+   */
+  private int lexConcurrently(@NotNull final CharSequence text) {
+    int chunkCount = Math.min(Runtime.getRuntime().availableProcessors(), text.length() / MIN_CHUNK_SIZE);
+    if (chunkCount < 2) return 0;
+
+    List<LexedChunk> chunks = new ArrayList<LexedChunk>(chunkCount);
+    int chunkStart = 0;
+    for (int k = 1; k <= chunkCount && chunkStart < text.length(); k++) {
+      int chunkEnd = k == chunkCount ? text.length() : getLineStartAfter(text, (int)((long)text.length() * k / chunkCount));
+      Lexer lexer = myHighlighter.getHighlightingLexer();
+      if (lexer == myLexer) return 0;
+      for (LexedChunk chunk : chunks) {
+        if (chunk.myLexer == lexer) return 0; // the highlighter shares its lexer
+      }
+      chunks.add(new LexedChunk(lexer, chunkStart, chunkEnd));
+      chunkStart = chunkEnd;
+    }
+
+    boolean completed = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(chunks, null, false, new Processor<LexedChunk>() {
+      @Override
+      public boolean process(LexedChunk chunk) {
+        chunk.lex(text);
+        return true;
+      }
+    });
+    if (!completed) return 0;
+
+    boolean joined = true;
+    for (LexedChunk chunk : chunks) {
+      if (!chunk.appendTo(mySegments)) {
+        joined = false;
+        break;
+      }
+    }
+    if (joined) return text.length();
+
+    // continue from the last token lexing can be restarted at
+    int restartIndex = mySegments.getSegmentCount() - 1;
+    while (restartIndex > 0 && !isInitialState(mySegments.getSegmentData(restartIndex))) {
+      restartIndex--;
+    }
+    if (restartIndex <= 0) {
+      mySegments.removeAll();
+      return 0;
+    }
+    int restartOffset = mySegments.getSegmentStart(restartIndex);
+    mySegments.remove(restartIndex, mySegments.getSegmentCount());
+    return restartOffset;
+  }
+
+  private static int getLineStartAfter(@NotNull CharSequence text, int offset) {
+    for (int i = offset; i < text.length(); i++) {
+      if (text.charAt(i) == '\n') return i + 1;
+    }
+    return text.length();
+  }
+
+  private class LexedChunk {
+    private final Lexer myLexer;
+    private final int myStart;
+    private final int myEnd;
+    private final SegmentArrayWithData myTokens = new SegmentArrayWithData(true);
+    private boolean myFailed;
+
+    private LexedChunk(@NotNull Lexer lexer, int start, int end) {
+      myLexer = lexer;
+      myStart = start;
+      myEnd = end;
+    }
+
+    private void lex(@NotNull CharSequence text) {
+      int stopOffset = myEnd == text.length() ? myEnd : myEnd + CHUNK_OVERLAP;
+      try {
+        myLexer.start(text, myStart, text.length(), myInitialState);
+        IElementType tokenType;
+        int i = 0;
+        while ((tokenType = myLexer.getTokenType()) != null && myLexer.getTokenStart() < stopOffset) {
+          myTokens.setElementAt(i++, myLexer.getTokenStart(), myLexer.getTokenEnd(), packData(tokenType, myLexer.getState()));
+          myLexer.advance();
+        }
+      }
+      catch (ProcessCanceledException e) {
+        throw e;
+      }
+      catch (RuntimeException e) {
+        // lexing will be continued sequentially from the previous chunk, which reports the error again if it's not caused by the restart
+        LOG.warn("Lexing " + myLexer + " from " + myStart + " failed, continuing sequentially", e);
+        myFailed = true;
+      }
+    }
+
+    /**
+     * @return false if the chunk can't be joined to the tokens lexed before it
+     */
+    private boolean appendTo(@NotNull SegmentArrayWithData segments) {
+      if (myFailed) return false;
+
+      int from = 0;
+      if (segments.getSegmentCount() > 0) {
+        int i = segments.findSegmentIndex(myStart);
+        while (i < segments.getSegmentCount() && from < myTokens.getSegmentCount()) {
+          int start = segments.getSegmentStart(i);
+          int chunkStart = myTokens.getSegmentStart(from);
+          if (start < chunkStart) {
+            i++;
+          }
+          else if (chunkStart < start) {
+            from++;
+          }
+          else if (isInitialState(segments.getSegmentData(i)) && isInitialState(myTokens.getSegmentData(from))) {
+            break;
+          }
+          else {
+            i++;
+            from++;
+          }
+        }
+        if (i == segments.getSegmentCount() || from == myTokens.getSegmentCount()) return false;
+        segments.remove(i, segments.getSegmentCount());
+      }
+
+      for (int k = from; k < myTokens.getSegmentCount(); k++) {
+        segments.setElementAt(segments.getSegmentCount(), myTokens.getSegmentStart(k), myTokens.getSegmentEnd(k), myTokens.getSegmentData(k));
+      }
+      return true;
+    }
+  }
+
   private TextAttributes getAttributes(IElementType tokenType) {
     TextAttributes attrs = myAttributesMap.get(tokenType);
     if (attrs == null) {
@@ -250,14 +250,27 @@ public class MarkupModelImpl extends UserDataHolderBase implements MarkupModelEx
 
   @Override
   public boolean processRangeHighlightersOverlappingWith(int start, int end, @NotNull Processor<? super RangeHighlighterEx> processor) {
+    if (isBackgroundThread()) {
+      IntervalTreeSnapshot<RangeHighlighterEx> snapshot = myHighlighterTree.getSnapshot();
+      if (snapshot != null) return snapshot.processOverlappingWith(start, end, processor);
+    }
     return myHighlighterTree.processOverlappingWith(start, end, processor);
   }
 
   @Override
   public boolean processRangeHighlightersOutside(int start, int end, @NotNull Processor<? super RangeHighlighterEx> processor) {
+    if (isBackgroundThread()) {
+      IntervalTreeSnapshot<RangeHighlighterEx> snapshot = myHighlighterTree.getSnapshot();
+      if (snapshot != null) return snapshot.processOverlappingWithOutside(start, end, processor);
+    }
     return myHighlighterTree.processOverlappingWithOutside(start, end, processor);
   }
 
+  // highlighters are modified in EDT, so background readers use the tree snapshot instead of blocking modifications with the tree lock
+  private static boolean isBackgroundThread() {
+    return !ApplicationManager.getApplication().isDispatchThread();
+  }
+
   @Override
   @NotNull
   public DisposableIterator<RangeHighlighterEx> overlappingIterator(int startOffset, int endOffset) {
@@ -35,6 +35,7 @@ import gnu.trove.THashSet;
 import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 class CacheUpdateRunner {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.project.CacheUpdateRunner");
@@ -42,6 +43,9 @@ class CacheUpdateRunner {
   private final Project myProject;
   private final Collection<CacheUpdater> myUpdaters;
   private CacheUpdateSession mySession;
+  private final AtomicLong myProcessedFilesCount = new AtomicLong();
+  private final AtomicLong myProcessingTime = new AtomicLong();
+  private volatile int myProcessingThreadsCount;
 
   CacheUpdateRunner(Project project, Collection<CacheUpdater> updaters) {
     myProject = project;
@@ -69,6 +73,7 @@ class CacheUpdateRunner {
       final FileContentQueue queue = new FileContentQueue();
       Collection<VirtualFile> files = mySession.getFilesToUpdate();
       final double total = files.size();
+      final long started = System.currentTimeMillis();
       queue.queue(files, indicator);
 
       Consumer<VirtualFile> progressUpdater = new Consumer<VirtualFile>() {
@@ -99,6 +104,8 @@ class CacheUpdateRunner {
         }
       }
 
+      logStatistics(queue, System.currentTimeMillis() - started);
+
       if (myProject.isDisposed()) {
         indicator.cancel();
         indicator.checkCanceled();
@@ -110,6 +117,17 @@ class CacheUpdateRunner {
     }
   }
 
+  private void logStatistics(FileContentQueue queue, long elapsed) {
+    final long loadingTime = queue.getLoadingTime();
+    final long processingTime = myProcessingTime.get() / 1000000;
+    LOG.info("Processed " + myProcessedFilesCount.get() + " files in " + elapsed + " ms; " +
+             "content loading: " + queue.getLoadedFilesCount() + " files, " + queue.getLoadedBytes() / 1024 + " KB in " + loadingTime +
+             " ms by " + queue.getLoadingThreadsCount() + " thread(s)" +
+             (loadingTime > 0 ? ", " + queue.getLoadedBytes() / 1024 * 1000 / loadingTime + " KB/s" : "") + "; " +
+             "processing: " + processingTime + " ms by " + myProcessingThreadsCount + " thread(s)" +
+             (processingTime > 0 ? ", " + myProcessedFilesCount.get() * 1000 / processingTime + " files/s" : ""));
+  }
+
   public void updatingDone() {
     try {
       mySession.updatingDone();
@@ -144,6 +162,7 @@ class CacheUpdateRunner {
       if (threadsCount <= 0) {
         threadsCount = Math.min(PROC_COUNT, 4);
       }
+      myProcessingThreadsCount = threadsCount;
       if (threadsCount == 1) {
         Runnable process = new MyRunnable(innerIndicator, queue, isFinished, progressUpdater, processInReadAction, application);
         ProgressManager.getInstance().runProcess(process, innerIndicator);
@@ -228,7 +247,10 @@ class CacheUpdateRunner {
               if (!myProject.isDisposed()) {
                 final VirtualFile file = fileContent.getVirtualFile();
                 myProgressUpdater.consume(file);
+                final long started = System.nanoTime();
                 mySession.processFile(fileContent);
+                myProcessingTime.addAndGet(System.nanoTime() - started);
+                myProcessedFilesCount.incrementAndGet();
               }
             }
           };
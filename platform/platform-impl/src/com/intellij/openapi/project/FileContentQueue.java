@@ -20,6 +20,7 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.vfs.InvalidVirtualFileAccessException;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -29,9 +30,13 @@ import org.jetbrains.annotations.Nullable;
 import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
 * @author peter
@@ -51,36 +56,86 @@ public class FileContentQueue {
   private final Queue<FileContent> myPushbackBuffer = new ArrayDeque<FileContent>();
   private volatile boolean myContentLoadingThreadTerminated = false;
 
+  private final AtomicLong myLoadedFilesCount = new AtomicLong();
+  private final AtomicLong myLoadedBytes = new AtomicLong();
+  private final AtomicLong myLoadingTime = new AtomicLong();
+  private volatile int myLoadingThreadsCount;
+
   public void queue(final Collection<VirtualFile> files, @NotNull final ProgressIndicator indicator) {
+    final Iterator<VirtualFile> iterator = files.iterator();
+    final int threadsCount = getLoadingThreadsCount(files.size());
+    final AtomicInteger activeThreads = new AtomicInteger(threadsCount);
+    final AtomicBoolean canceled = new AtomicBoolean();
+    myLoadingThreadsCount = threadsCount;
+
     final Runnable contentLoadingRunnable = new Runnable() {
       public void run() {
         try {
-          for (VirtualFile file : files) {
+          while (true) {
             indicator.checkCanceled();
+            final VirtualFile file;
+            synchronized (iterator) {
+              if (!iterator.hasNext()) break;
+              file = iterator.next();
+            }
             addLast(file, indicator);
           }
-
-          // put end-of-queue marker only if not canceled
-          try {
-            myQueue.put(new FileContent(null));
-          }
-          catch (InterruptedException e) {
-            LOG.error(e);
-          }
         }
         catch (ProcessCanceledException e) {
           // Do nothing, exit the thread.
+          canceled.set(true);
         }
         catch (InterruptedException e) {
+          canceled.set(true);
           LOG.error(e);
         }
         finally {
-          myContentLoadingThreadTerminated = true;
+          if (activeThreads.decrementAndGet() == 0) {
+            // the last loading thread puts end-of-queue marker, only if not canceled
+            if (!canceled.get()) {
+              try {
+                myQueue.put(new FileContent(null));
+              }
+              catch (InterruptedException e) {
+                LOG.error(e);
+              }
+            }
+            myContentLoadingThreadTerminated = true;
+          }
         }
       }
     };
 
-    ApplicationManager.getApplication().executeOnPooledThread(contentLoadingRunnable);
+    for (int i = 0; i < threadsCount; i++) {
+      ApplicationManager.getApplication().executeOnPooledThread(contentLoadingRunnable);
+    }
+  }
+
+  private static int getLoadingThreadsCount(int filesCount) {
+    int threadsCount = Registry.intValue("caches.contentLoaderThreadsCount");
+    if (threadsCount <= 0) {
+      threadsCount = Math.min(Runtime.getRuntime().availableProcessors(), 2);
+    }
+    return Math.max(1, Math.min(threadsCount, filesCount));
+  }
+
+  public int getLoadingThreadsCount() {
+    return myLoadingThreadsCount;
+  }
+
+  public long getLoadedFilesCount() {
+    return myLoadedFilesCount.get();
+  }
+
+  public long getLoadedBytes() {
+    return myLoadedBytes.get();
+  }
+
+  /**
+   * @return total time in milliseconds spent by the loading threads in reading file contents
+   */
+  public long getLoadingTime() {
+    return myLoadingTime.get() / 1000000;
   }
 
   private void addLast(VirtualFile file, @NotNull final ProgressIndicator indicator) throws InterruptedException {
@@ -113,7 +168,11 @@ public class FileContentQueue {
         counterUpdated = true;
       }
 
+      final long started = System.nanoTime();
       content.getBytes(); // Reads the content bytes and caches them.
+      myLoadingTime.addAndGet(System.nanoTime() - started);
+      myLoadedFilesCount.incrementAndGet();
+      myLoadedBytes.addAndGet(contentLength);
 
       return true;
     }
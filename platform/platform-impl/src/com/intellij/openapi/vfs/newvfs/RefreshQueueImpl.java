@@ -42,6 +42,7 @@ public class RefreshQueueImpl extends RefreshQueue {
   private final ExecutorService myQueue = ConcurrencyUtil.newSingleThreadExecutor("FS Synchronizer");
   private final ProgressIndicator myRefreshIndicator = new RefreshProgress(VfsBundle.message("file.synchronize.progress"));
   private final TLongObjectHashMap<RefreshSession> mySessions = new TLongObjectHashMap<RefreshSession>();
+  private volatile RefreshSessionImpl myChunkedSession; // the session which events are being applied in chunks
 
   public void execute(@NotNull RefreshSessionImpl session) {
     if (session.isAsynchronous()) {
@@ -51,6 +52,10 @@ public class RefreshQueueImpl extends RefreshQueue {
     else {
       Application app = ApplicationManager.getApplication();
       if (app.isDispatchThread()) {
+        RefreshSessionImpl chunkedSession = myChunkedSession;
+        if (chunkedSession != null) {
+          chunkedSession.fireRemainingChunks(app.isWriteAccessAllowed());
+        }
         doScan(session);
         session.fireEvents(app.isWriteAccessAllowed());
       }
@@ -83,6 +88,10 @@ public class RefreshQueueImpl extends RefreshQueue {
         }
         finally {
           final Application app = ApplicationManager.getApplication();
+          final boolean inChunks = session.willFireEventsInChunks();
+          if (inChunks) {
+            myChunkedSession = session;
+          }
           app.invokeLater(new DumbAwareRunnable() {
             @Override
             public void run() {
@@ -90,6 +99,11 @@ public class RefreshQueueImpl extends RefreshQueue {
               session.fireEvents(false);
             }
           }, modality);
+          if (inChunks) {
+            // the next session is scanned after all events of this one are applied, so that their events don't interleave
+            while (!session.waitFor(100) && !app.isDisposed()) ;
+            myChunkedSession = null;
+          }
         }
       }
     });
@@ -15,15 +15,19 @@
  */
 package com.intellij.openapi.vfs.newvfs;
 
+import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.vfs.ex.VirtualFileManagerEx;
 import com.intellij.openapi.vfs.impl.local.FileWatcher;
 import com.intellij.openapi.vfs.impl.local.LocalFileSystemImpl;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
 import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
 import com.intellij.openapi.vfs.newvfs.persistent.PersistentFS;
 import com.intellij.openapi.vfs.newvfs.persistent.RefreshWorker;
@@ -57,6 +61,7 @@ public class RefreshSessionImpl extends RefreshSession {
   private volatile boolean iHaveEventsToFire;
   private volatile RefreshWorker myWorker = null;
   private volatile boolean myCancelled = false;
+  private ChunkedEventsFiring myChunkedFiring; // accessed in EDT only
 
   public RefreshSessionImpl(boolean async, boolean recursive, @Nullable Runnable finishRunnable) {
     this(async, recursive, finishRunnable, ModalityState.NON_MODAL);
@@ -159,7 +164,23 @@ public class RefreshSessionImpl extends RefreshSession {
     }
   }
 
+  /**
+   * @return true if the events found by the scan are going to be applied in several write actions, see {@link #fireEventsInChunks}
+   */
+  boolean willFireEventsInChunks() {
+    return iHaveEventsToFire && myIsAsync && getEventsChunkSize() > 0 && myEvents.size() > getEventsChunkSize();
+  }
+
+  private static int getEventsChunkSize() {
+    return Registry.intValue("vfs.refresh.events.chunk.size");
+  }
+
   public void fireEvents(boolean hasWriteAction) {
+    if (!hasWriteAction && willFireEventsInChunks()) {
+      fireEventsInChunks(getEventsChunkSize());
+      return;
+    }
+
     try {
       if (!iHaveEventsToFire) return;
 
@@ -202,10 +223,141 @@ public class RefreshSessionImpl extends RefreshSession {
     }
   }
 
+  /**
+   * Applies events in several short write actions instead of one long, letting the event queue run in between, so that refresh
+   * after a VCS update touching thousands of files does not freeze the UI. A deletion and a re-creation of the same file are
+   * always applied together. The refresh queue doesn't start the next session until all chunks are applied, and a synchronous
+   * refresh applies the remaining chunks first, see {@link #fireRemainingChunks}.
+   */
+  private void fireEventsInChunks(int chunkSize) {
+    myChunkedFiring = new ChunkedEventsFiring(chunkSize, mergeEventsAndReset());
+    myChunkedFiring.run();
+  }
+
+  /**
+   * Applies the events left by {@link #fireEventsInChunks} in one write action, so that they are not interleaved with events of
+   * another session
+   */
+  void fireRemainingChunks(boolean hasWriteAction) {
+    final ChunkedEventsFiring firing = myChunkedFiring;
+    if (firing == null) return;
+
+    if (hasWriteAction) {
+      firing.fireRemaining();
+    }
+    else {
+      ApplicationManager.getApplication().runWriteAction(new Runnable() {
+        @Override
+        public void run() {
+          firing.fireRemaining();
+        }
+      });
+    }
+  }
+
+  private class ChunkedEventsFiring implements Runnable {
+    private final Application myApp = ApplicationManager.getApplication();
+    private final VirtualFileManagerEx myManager = (VirtualFileManagerEx)VirtualFileManager.getInstance();
+    private final int myChunkSize;
+    private final List<VFileEvent> myPendingEvents;
+    private boolean myStarted;
+    private boolean myFinished;
+    private int myNext;
+
+    private ChunkedEventsFiring(int chunkSize, @NotNull List<VFileEvent> events) {
+      myChunkSize = chunkSize;
+      myPendingEvents = events;
+    }
+
+    @Override
+    public void run() {
+      if (myFinished) return; // the remaining chunks were applied by a synchronous refresh
+
+      if (myApp.isDisposed()) {
+        myFinished = true;
+        myChunkedFiring = null;
+        mySemaphore.up();
+        return;
+      }
+
+      myApp.runWriteAction(new Runnable() {
+        @Override
+        public void run() {
+          fireNextChunk();
+        }
+      });
+      if (!myFinished) {
+        myApp.invokeLater(this, myModalityState);
+      }
+    }
+
+    private void fireRemaining() {
+      while (!myFinished) {
+        fireNextChunk();
+      }
+    }
+
+    private void fireNextChunk() {
+      if (!myStarted) {
+        myStarted = true;
+        myManager.fireBeforeRefreshStart(myIsAsync);
+      }
+
+      boolean finished = true;
+      try {
+        PersistentFS.getInstance().processEvents(nextChunk());
+        if (myNext == myPendingEvents.size()) {
+          myPendingEvents.clear();
+          myNext = 0;
+          scan();
+          myPendingEvents.addAll(mergeEventsAndReset());
+        }
+        finished = myPendingEvents.isEmpty();
+      }
+      finally {
+        if (finished) {
+          myFinished = true;
+          myChunkedFiring = null;
+          try {
+            myManager.fireAfterRefreshFinish(myIsAsync);
+          }
+          finally {
+            try {
+              if (myFinishRunnable != null) {
+                myFinishRunnable.run();
+              }
+            }
+            finally {
+              mySemaphore.up();
+            }
+          }
+        }
+      }
+    }
+
+    private List<VFileEvent> nextChunk() {
+      int end = Math.min(myPendingEvents.size(), myNext + myChunkSize);
+      while (end < myPendingEvents.size() && isReCreation(myPendingEvents.get(end - 1), myPendingEvents.get(end))) {
+        end++;
+      }
+      List<VFileEvent> chunk = new ArrayList<VFileEvent>(myPendingEvents.subList(myNext, end));
+      myNext = end;
+      return chunk;
+    }
+  }
+
+  private static boolean isReCreation(@NotNull VFileEvent previous, @NotNull VFileEvent event) {
+    return previous instanceof VFileDeleteEvent && event instanceof VFileCreateEvent && previous.getPath().equals(event.getPath());
+  }
+
   public void waitFor() {
     mySemaphore.waitFor();
   }
 
+  boolean waitFor(long msTimeout) {
+    return mySemaphore.waitFor(msTimeout);
+  }
+
   private List<VFileEvent> mergeEventsAndReset() {
     LinkedHashSet<VFileEvent> mergedEvents = new LinkedHashSet<VFileEvent>(myEvents);
     List<VFileEvent> events = new ArrayList<VFileEvent>(mergedEvents);
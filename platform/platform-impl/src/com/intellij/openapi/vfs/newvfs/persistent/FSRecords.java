@@ -29,6 +29,7 @@ import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
 import com.intellij.openapi.util.io.ByteSequence;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.ArrayUtil;
+import com.intellij.util.SystemProperties;
 import com.intellij.util.containers.ConcurrentHashMap;
 import com.intellij.util.containers.IntArrayList;
 import com.intellij.util.io.*;
@@ -37,11 +38,14 @@ import com.intellij.util.io.storage.*;
 import gnu.trove.TIntArrayList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
 import javax.swing.*;
 import java.awt.*;
 import java.io.*;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static com.intellij.util.io.IOUtil.deleteAllFilesStartingWith;
@@ -92,6 +96,9 @@ public class FSRecords implements Forceable {
   private static volatile int ourLocalModificationCount = 0;
   private static volatile boolean ourIsDisposed;
 
+  // the heap copy takes 32 bytes per record in addition to the mapped records file, so it is off unless requested
+  private static final boolean CACHE_RECORD_FIELDS = SystemProperties.getBooleanProperty("idea.vfs.cache.record.fields", false);
+
   private static final int FREE_RECORD_FLAG = 0x100;
   private static final int ALL_VALID_FLAGS = PersistentFS.ALL_VALID_FLAGS | FREE_RECORD_FLAG;
 
@@ -112,6 +119,7 @@ public class FSRecords implements Forceable {
     private static Storage myAttributes;
     private static RefCountingStorage myContents;
     private static ResizeableMappedFile myRecords;
+    private static volatile RecordsCache myRecordsCache;
     private static final TIntArrayList myFreeRecords = new TIntArrayList();
 
     private static boolean myDirty = false;
@@ -214,6 +222,9 @@ public class FSRecords implements Forceable {
         assert aligned; // for performance
         myRecords = new ResizeableMappedFile(recordsFile, 20 * 1024, storageLockContext,
                                              PagedFileStorage.BUFFER_SIZE, aligned);
+        // header, root and top level directories are touched by almost every VFS operation, don't let index scans evict them
+        myRecords.getPagedFileStorage().pinPageAt(0);
+        myNames.pinRootPages();
 
         if (myRecords.length() == 0) {
           cleanRecord(0); // Clean header
@@ -228,6 +239,9 @@ public class FSRecords implements Forceable {
         if (myRecords.getInt(HEADER_CONNECTION_STATUS_OFFSET) != SAFELY_CLOSED_MAGIC) {
           throw new IOException("FS repository wasn't safely shut down");
         }
+        if (CACHE_RECORD_FIELDS) {
+          myRecordsCache = new RecordsCache(myRecords);
+        }
         markDirty();
         scanFreeRecords();
       }
@@ -393,6 +407,10 @@ public class FSRecords implements Forceable {
 
     static void cleanRecord(int id) {
       myRecords.put(id * RECORD_SIZE, ZEROES, 0, RECORD_SIZE);
+      final RecordsCache cache = myRecordsCache;
+      if (cache != null) {
+        cache.cleanRecord(id);
+      }
     }
 
     public static PersistentStringEnumerator getNames() {
@@ -424,6 +442,7 @@ public class FSRecords implements Forceable {
         myContents = null;
       }
 
+      myRecordsCache = null;
       if (myRecords != null) {
         markClean();
         myRecords.close();
@@ -481,6 +500,22 @@ public class FSRecords implements Forceable {
     DbConnection.connect();
   }
 
+  @TestOnly
+  static boolean areRecordFieldsCached() {
+    return DbConnection.myRecordsCache != null;
+  }
+
+  @TestOnly
+  static void setRecordFieldsCached(boolean cached) {
+    try {
+      w.lock();
+      DbConnection.myRecordsCache = cached ? new RecordsCache(getRecords()) : null;
+    }
+    finally {
+      w.unlock();
+    }
+  }
+
   public static long getCreationTimestamp() {
     try {
       r.lock();
@@ -859,6 +894,10 @@ public class FSRecords implements Forceable {
     ourLocalModificationCount++;
     final int count = getModCount() + 1;
     getRecords().putInt(HEADER_GLOBAL_MOD_COUNT_OFFSET, count);
+    final RecordsCache cache = DbConnection.myRecordsCache;
+    if (cache != null) {
+      cache.myGlobalModCount = count;
+    }
 
     int parent = id;
     int depth = 10000;
@@ -877,6 +916,10 @@ public class FSRecords implements Forceable {
   }
 
   public static int getModCount() {
+    final RecordsCache cache = DbConnection.myRecordsCache;
+    if (cache != null) {
+      return cache.myGlobalModCount;
+    }
     try {
       r.lock();
       return getRecords().getInt(HEADER_GLOBAL_MOD_COUNT_OFFSET);
@@ -888,19 +931,13 @@ public class FSRecords implements Forceable {
 
   public static int getParent(int id) {
     try {
-      r.lock();
-      try {
-        final int parentId = getRecordInt(id, PARENT_OFFSET);
-        if (parentId == id) {
-          LOG.error("Cyclic parent child relations in the database. id = " + id);
-          return 0;
-        }
-
-        return parentId;
-      }
-      finally {
-        r.unlock();
+      final int parentId = readRecordInt(id, PARENT_OFFSET);
+      if (parentId == id) {
+        LOG.error("Cyclic parent child relations in the database. id = " + id);
+        return 0;
       }
+
+      return parentId;
     }
     catch (Throwable e) {
       throw DbConnection.handleError(e);
@@ -928,13 +965,7 @@ public class FSRecords implements Forceable {
 
   public static int getNameId(int id) {
     try {
-      r.lock();
-      try {
-        return getRecordInt(id, NAME_OFFSET);
-      }
-      finally {
-        r.unlock();
-      }
+      return readRecordInt(id, NAME_OFFSET);
     }
     catch (Throwable e) {
       throw DbConnection.handleError(e);
@@ -958,10 +989,12 @@ public class FSRecords implements Forceable {
 
   public static String getName(int id) {
     try {
+      final int nameId = readRecordInt(id, NAME_OFFSET);
+      if (nameId == 0) return "";
+
       r.lock();
       try {
-        final int nameId = getRecordInt(id, NAME_OFFSET);
-        return nameId != 0 ? getNames().valueOf(nameId) : "";
+        return getNames().valueOf(nameId);
       }
       finally {
         r.unlock();
@@ -1002,13 +1035,7 @@ public class FSRecords implements Forceable {
   }
 
   public static int getFlags(int id) {
-    try {
-      r.lock();
-      return getRecordInt(id, FLAGS_OFFSET);
-    }
-    finally {
-      r.unlock();
-    }
+    return readRecordInt(id, FLAGS_OFFSET);
   }
 
   public static void setFlags(int id, int flags, final boolean markAsChange) {
@@ -1028,20 +1055,14 @@ public class FSRecords implements Forceable {
   }
 
   public static long getLength(int id) {
-    try {
-      r.lock();
-      return getRecords().getLong(getOffset(id, LENGTH_OFFSET));
-    }
-    finally {
-      r.unlock();
-    }
+    return readRecordLong(id, LENGTH_OFFSET);
   }
 
   public static void setLength(int id, long len) {
     try {
       w.lock();
       incModCount(id);
-      getRecords().putLong(getOffset(id, LENGTH_OFFSET), len);
+      putRecordLong(id, LENGTH_OFFSET, len);
     }
     catch (Throwable e) {
       throw DbConnection.handleError(e);
@@ -1052,20 +1073,14 @@ public class FSRecords implements Forceable {
   }
 
   public static long getTimestamp(int id) {
-    try {
-      r.lock();
-      return getRecords().getLong(getOffset(id, TIMESTAMP_OFFSET));
-    }
-    finally {
-      r.unlock();
-    }
+    return readRecordLong(id, TIMESTAMP_OFFSET);
   }
 
   public static void setTimestamp(int id, long value) {
     try {
       w.lock();
       incModCount(id);
-      getRecords().putLong(getOffset(id, TIMESTAMP_OFFSET), value);
+      putRecordLong(id, TIMESTAMP_OFFSET, value);
     }
     catch (Throwable e) {
       throw DbConnection.handleError(e);
@@ -1076,13 +1091,7 @@ public class FSRecords implements Forceable {
   }
 
   public static int getModCount(int id) {
-    try {
-      r.lock();
-      return getRecordInt(id, MOD_COUNT_OFFSET);
-    }
-    finally {
-      r.unlock();
-    }
+    return readRecordInt(id, MOD_COUNT_OFFSET);
   }
 
   private static void setModCount(int id, int value) {
@@ -1111,6 +1120,49 @@ public class FSRecords implements Forceable {
 
   private static void putRecordInt(int id, int offset, int value) {
     getRecords().putInt(getOffset(id, offset), value);
+    final RecordsCache cache = DbConnection.myRecordsCache;
+    if (cache != null) {
+      cache.putInt(id, offset, value);
+    }
+  }
+
+  private static void putRecordLong(int id, int offset, long value) {
+    getRecords().putLong(getOffset(id, offset), value);
+    final RecordsCache cache = DbConnection.myRecordsCache;
+    if (cache != null) {
+      cache.putLong(id, offset, value);
+    }
+  }
+
+  /**
+   * Reads the record field from {@link RecordsCache} without locking when possible, falls back to the records file otherwise
+   */
+  private static int readRecordInt(int id, int offset) {
+    final RecordsCache cache = DbConnection.myRecordsCache;
+    if (cache != null && cache.isCached(id, offset)) {
+      return cache.getInt(id, offset);
+    }
+    try {
+      r.lock();
+      return getRecordInt(id, offset);
+    }
+    finally {
+      r.unlock();
+    }
+  }
+
+  private static long readRecordLong(int id, int offset) {
+    final RecordsCache cache = DbConnection.myRecordsCache;
+    if (cache != null && cache.isCached(id, offset)) {
+      return cache.getLong(id, offset);
+    }
+    try {
+      r.lock();
+      return getRecords().getLong(getOffset(id, offset));
+    }
+    finally {
+      r.unlock();
+    }
   }
 
   private static int getOffset(int id, int offset) {
@@ -1496,4 +1548,122 @@ public class FSRecords implements Forceable {
   public static RuntimeException handleError(Throwable e) {
     return DbConnection.handleError(e);   
   }
+
+  /**
+   * Heap copy of the record fields which are read most often (parent, name, flags, mod count, timestamp and length) and of the
+   * global mod count. Readers access it without taking {@link #r}; it is modified only by writers holding {@link #w}, right after
+   * the corresponding change of the records file. Arrays are replaced (never shrunk) when new records are created, so a reader
+   * which has checked {@link #isCached(int, int)} always finds the record in the arrays it reads.
+   */
+  private static final class RecordsCache {
+    private static final int PARENT = 0;
+    private static final int NAME = 1;
+    private static final int FLAGS = 2;
+    private static final int MOD_COUNT = 3;
+    private static final int INT_FIELDS_COUNT = 4;
+
+    private static final int TIMESTAMP = 0;
+    private static final int LENGTH = 1;
+    private static final int LONG_FIELDS_COUNT = 2;
+
+    private volatile AtomicIntegerArray myInts;
+    private volatile AtomicLongArray myLongs;
+    private volatile int myRecordsCount;
+    private volatile int myGlobalModCount;
+
+    private RecordsCache(@NotNull ResizeableMappedFile records) {
+      final int count = (int)(records.length() / RECORD_SIZE);
+      myInts = new AtomicIntegerArray(count * INT_FIELDS_COUNT);
+      myLongs = new AtomicLongArray(count * LONG_FIELDS_COUNT);
+      for (int id = 1; id < count; id++) {
+        myInts.set(id * INT_FIELDS_COUNT + PARENT, records.getInt(getOffset(id, PARENT_OFFSET)));
+        myInts.set(id * INT_FIELDS_COUNT + NAME, records.getInt(getOffset(id, NAME_OFFSET)));
+        myInts.set(id * INT_FIELDS_COUNT + FLAGS, records.getInt(getOffset(id, FLAGS_OFFSET)));
+        myInts.set(id * INT_FIELDS_COUNT + MOD_COUNT, records.getInt(getOffset(id, MOD_COUNT_OFFSET)));
+        myLongs.set(id * LONG_FIELDS_COUNT + TIMESTAMP, records.getLong(getOffset(id, TIMESTAMP_OFFSET)));
+        myLongs.set(id * LONG_FIELDS_COUNT + LENGTH, records.getLong(getOffset(id, LENGTH_OFFSET)));
+      }
+      myGlobalModCount = records.getInt(HEADER_GLOBAL_MOD_COUNT_OFFSET);
+      myRecordsCount = count;
+    }
+
+    private static int intField(int offset) {
+      switch (offset) {
+        case PARENT_OFFSET: return PARENT;
+        case NAME_OFFSET: return NAME;
+        case FLAGS_OFFSET: return FLAGS;
+        case MOD_COUNT_OFFSET: return MOD_COUNT;
+        default: return -1;
+      }
+    }
+
+    private static int longField(int offset) {
+      switch (offset) {
+        case TIMESTAMP_OFFSET: return TIMESTAMP;
+        case LENGTH_OFFSET: return LENGTH;
+        default: return -1;
+      }
+    }
+
+    private boolean isCached(int id, int offset) {
+      return id > 0 && id < myRecordsCount && (intField(offset) >= 0 || longField(offset) >= 0);
+    }
+
+    private int getInt(int id, int offset) {
+      return myInts.get(id * INT_FIELDS_COUNT + intField(offset));
+    }
+
+    private long getLong(int id, int offset) {
+      return myLongs.get(id * LONG_FIELDS_COUNT + longField(offset));
+    }
+
+    // should be called under write lock
+    private void putInt(int id, int offset, int value) {
+      final int field = intField(offset);
+      if (field < 0) return;
+      ensureCapacity(id);
+      myInts.set(id * INT_FIELDS_COUNT + field, value);
+    }
+
+    // should be called under write lock
+    private void putLong(int id, int offset, long value) {
+      final int field = longField(offset);
+      if (field < 0) return;
+      ensureCapacity(id);
+      myLongs.set(id * LONG_FIELDS_COUNT + field, value);
+    }
+
+    // should be called under write lock
+    private void cleanRecord(int id) {
+      ensureCapacity(id);
+      for (int i = 0; i < INT_FIELDS_COUNT; i++) {
+        myInts.set(id * INT_FIELDS_COUNT + i, 0);
+      }
+      for (int i = 0; i < LONG_FIELDS_COUNT; i++) {
+        myLongs.set(id * LONG_FIELDS_COUNT + i, 0);
+      }
+    }
+
+    private void ensureCapacity(int id) {
+      if (id < myRecordsCount) return;
+
+      final AtomicIntegerArray ints = myInts;
+      final int capacity = ints.length() / INT_FIELDS_COUNT;
+      if (id >= capacity) {
+        final int newCapacity = Math.max(id + 1, capacity * 3 / 2 + 1);
+        final AtomicIntegerArray newInts = new AtomicIntegerArray(newCapacity * INT_FIELDS_COUNT);
+        for (int i = 0; i < ints.length(); i++) {
+          newInts.set(i, ints.get(i));
+        }
+        final AtomicLongArray longs = myLongs;
+        final AtomicLongArray newLongs = new AtomicLongArray(newCapacity * LONG_FIELDS_COUNT);
+        for (int i = 0; i < longs.length(); i++) {
+          newLongs.set(i, longs.get(i));
+        }
+        myInts = newInts;
+        myLongs = newLongs;
+      }
+      myRecordsCount = id + 1;
+    }
+  }
 }
@@ -15,6 +15,7 @@
  */
 package com.intellij.openapi.vfs.newvfs.persistent;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.Pair;
@@ -22,6 +23,8 @@ import com.intellij.openapi.util.io.FileAttributes;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.impl.local.LocalFileSystemBase;
+import com.intellij.openapi.vfs.impl.win32.Win32LocalFileSystem;
 import com.intellij.openapi.vfs.newvfs.NewVirtualFile;
 import com.intellij.openapi.vfs.newvfs.NewVirtualFileSystem;
 import com.intellij.openapi.vfs.newvfs.events.*;
@@ -32,9 +35,11 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.intellij.openapi.diagnostic.LogUtil.debug;
 import static com.intellij.util.containers.ContainerUtil.newHashSet;
@@ -45,6 +50,10 @@ import static com.intellij.util.containers.ContainerUtil.newHashSet;
 public class RefreshWorker {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.vfs.newvfs.persistent.RefreshWorker");
 
+  // directories with fewer children than this are checked file by file
+  private static final int BATCH_THRESHOLD = 64;
+  private static final int STAT_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
   private final boolean myIsRecursive;
   private final Queue<Pair<NewVirtualFile, FileAttributes>> myRefreshQueue = new Queue<Pair<NewVirtualFile, FileAttributes>>(100);
   private final List<VFileEvent> myEvents = new ArrayList<VFileEvent>();
@@ -121,39 +130,50 @@ public class RefreshWorker {
             scheduleDeletion(file.findChild(name));
           }
 
+          List<VirtualFile> newChildren = new ArrayList<VirtualFile>(newNames.size());
           for (String name : newNames) {
-            if (myCancelled) break main;
-            FileAttributes childAttributes = fs.getAttributes(new FakeVirtualFile(file, name));
-            if (childAttributes != null) {
-              scheduleCreation(file, name, childAttributes.isDirectory());
+            newChildren.add(new FakeVirtualFile(file, name));
+          }
+          FileAttributes[] newAttributes = getAttributes(fs, file, newChildren, true);
+          if (myCancelled) break main;
+          for (int i = 0; i < newChildren.size(); i++) {
+            String name = newChildren.get(i).getName();
+            if (newAttributes[i] != null) {
+              scheduleCreation(file, name, newAttributes[i].isDirectory());
             }
             else {
               LOG.warn("fs=" + fs + " dir=" + file + " name=" + name);
             }
           }
 
+          List<VirtualFile> children = new ArrayList<VirtualFile>();
           for (VirtualFile child : file.getChildren()) {
-            if (myCancelled) break main;
             if (!deletedNames.contains(child.getName())) {
-              FileAttributes childAttributes = fs.getAttributes(child);
-              if (childAttributes != null) {
-                checkAndScheduleChildRefresh(file, child, childAttributes);
-              }
-              else {
-                LOG.warn("fs=" + fs + " dir=" + file + " name=" + child.getName());
-                scheduleDeletion(child);
-              }
+              children.add(child);
+            }
+          }
+          FileAttributes[] childrenAttributes = getAttributes(fs, file, children, true);
+          if (myCancelled) break main;
+          for (int i = 0; i < children.size(); i++) {
+            VirtualFile child = children.get(i);
+            if (childrenAttributes[i] != null) {
+              checkAndScheduleChildRefresh(file, child, childrenAttributes[i]);
+            }
+            else {
+              LOG.warn("fs=" + fs + " dir=" + file + " name=" + child.getName());
+              scheduleDeletion(child);
             }
           }
         }
         else {
-          Collection<VirtualFile> cachedChildren = file.getCachedChildren();
+          List<VirtualFile> cachedChildren = new ArrayList<VirtualFile>(file.getCachedChildren());
           debug(LOG, "cached=%s", cachedChildren);
-          for (VirtualFile child : cachedChildren) {
-            if (myCancelled) break main;
-            FileAttributes childAttributes = fs.getAttributes(child);
-            if (childAttributes != null) {
-              checkAndScheduleChildRefresh(file, child, childAttributes);
+          FileAttributes[] childrenAttributes = getAttributes(fs, file, cachedChildren, false);
+          if (myCancelled) break main;
+          for (int i = 0; i < cachedChildren.size(); i++) {
+            VirtualFile child = cachedChildren.get(i);
+            if (childrenAttributes[i] != null) {
+              checkAndScheduleChildRefresh(file, child, childrenAttributes[i]);
             }
             else {
               scheduleDeletion(child);
@@ -198,6 +218,64 @@ public class RefreshWorker {
     }
   }
 
+  /**
+   * Returns attributes of the given children of the directory, <code>null</code> for the ones which don't exist.
+   * Large directories are not checked file by file: on Windows the directory is listed once (the listing brings attributes
+   * of all children), elsewhere the children are stat'ed from several threads.
+   * The result is incomplete if the worker was cancelled meanwhile.
+   */
+  @NotNull
+  private FileAttributes[] getAttributes(@NotNull final NewVirtualFileSystem fs,
+                                         @NotNull VirtualFile dir,
+                                         @NotNull final List<VirtualFile> children,
+                                         boolean listed) {
+    final FileAttributes[] result = new FileAttributes[children.size()];
+    if (children.size() >= BATCH_THRESHOLD) {
+      if (fs instanceof Win32LocalFileSystem) {
+        if (!listed) fs.list(dir);
+      }
+      else if (fs instanceof LocalFileSystemBase && STAT_THREADS > 1) {
+        getAttributesConcurrently(fs, children, result);
+        return result;
+      }
+    }
+    for (int i = 0; i < result.length && !myCancelled; i++) {
+      result[i] = fs.getAttributes(children.get(i));
+    }
+    return result;
+  }
+
+  private void getAttributesConcurrently(@NotNull final NewVirtualFileSystem fs,
+                                         @NotNull final List<VirtualFile> children,
+                                         @NotNull final FileAttributes[] result) {
+    final AtomicInteger next = new AtomicInteger();
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        int i;
+        while (!myCancelled && (i = next.getAndIncrement()) < result.length) {
+          result[i] = fs.getAttributes(children.get(i));
+        }
+      }
+    };
+    List<Future<?>> futures = new ArrayList<Future<?>>(STAT_THREADS - 1);
+    for (int i = 1; i < STAT_THREADS; i++) {
+      futures.add(ApplicationManager.getApplication().executeOnPooledThread(task));
+    }
+    task.run();
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      }
+      catch (InterruptedException e) {
+        LOG.error(e);
+      }
+      catch (ExecutionException e) {
+        LOG.error(e);
+      }
+    }
+  }
+
   private void checkAndScheduleChildRefresh(@NotNull VirtualFile parent,
                                             @NotNull VirtualFile child,
                                             @NotNull FileAttributes childAttributes) {
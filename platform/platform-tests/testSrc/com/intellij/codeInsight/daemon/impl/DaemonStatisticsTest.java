@@ -0,0 +1,55 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import junit.framework.TestCase;
+
+public class DaemonStatisticsTest extends TestCase {
+  private static final long MS = 1000000;
+
+  public void testVisitTimeIsNotMixedWithRunTime() {
+    DaemonStatistics statistics = new DaemonStatistics();
+    statistics.inspectionVisited(null, "Tool", 100 * MS);
+    statistics.inspectionFinished(null, "Tool", 10 * MS, 1);
+    statistics.inspectionVisited(null, "Tool", 200 * MS);
+    statistics.inspectionFinished(null, "Tool", 20 * MS, 2);
+    assertTrue(statistics.getReport(), statistics.getReport().contains("  ?, Tool: 2, 300, 30, 20, 3\n"));
+  }
+
+  public void testEntriesAreSortedByTotalTime() {
+    DaemonStatistics statistics = new DaemonStatistics();
+    statistics.inspectionFinished(null, "Fast", 10 * MS, 0);
+    statistics.inspectionVisited(null, "Slow", 5 * MS);
+    statistics.inspectionFinished(null, "Slow", 10 * MS, 0);
+    String report = statistics.getReport();
+    assertTrue(report, report.indexOf("Slow") < report.indexOf("Fast"));
+  }
+
+  public void testCancellationsAndReset() {
+    DaemonStatistics statistics = new DaemonStatistics();
+    statistics.daemonCanceled("typing");
+    statistics.daemonCanceled("typing");
+    statistics.daemonCanceled("commit");
+    String report = statistics.getReport();
+    assertTrue(report, report.endsWith("Daemon cancellations:\n  commit: 1\n  typing: 2\n"));
+
+    statistics.inspectionFinished(null, "Tool", MS, 0);
+    statistics.reset();
+    report = statistics.getReport();
+    assertFalse(report, report.contains("Tool"));
+    assertTrue(report, report.endsWith("Daemon cancellations:\n"));
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.concurrency;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.util.registry.RegistryValue;
+import com.intellij.testFramework.PlatformTestCase;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.Processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks and compares fixed and dynamic chunking of {@link JobLauncherImpl}, including workloads where element costs are very uneven,
+ * like an inspection run or indexing over a project with a few huge files among thousands of small ones.
+ */
+public class JobLauncherSkewedWorkloadTest extends PlatformTestCase {
+  private RegistryValue myDynamicChunks;
+  private boolean myOldValue;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDynamicChunks = Registry.get("job.launcher.dynamic.chunks");
+    myOldValue = myDynamicChunks.asBoolean();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myDynamicChunks.setValue(myOldValue);
+    super.tearDown();
+  }
+
+  public void testAllElementsProcessedOnce() {
+    for (boolean dynamic : new boolean[]{false, true}) {
+      myDynamicChunks.setValue(dynamic);
+      final List<Integer> things = createCosts(10000, 0, 0);
+      final AtomicInteger[] counters = new AtomicInteger[things.size()];
+      for (int i = 0; i < counters.length; i++) {
+        counters[i] = new AtomicInteger();
+      }
+      List<Integer> indices = new ArrayList<Integer>(things.size());
+      for (int i = 0; i < things.size(); i++) {
+        indices.add(i);
+      }
+      boolean result = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(indices, null, false, new Processor<Integer>() {
+        @Override
+        public boolean process(Integer index) {
+          counters[index].incrementAndGet();
+          return true;
+        }
+      });
+      assertTrue(result);
+      for (AtomicInteger counter : counters) {
+        assertEquals(1, counter.get());
+      }
+    }
+  }
+
+  public void testProcessorReturningFalseStopsProcessing() {
+    myDynamicChunks.setValue(true);
+    final AtomicInteger processed = new AtomicInteger();
+    boolean result = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(createCosts(100000, 0, 0), null, false, new Processor<Integer>() {
+      @Override
+      public boolean process(Integer integer) {
+        return processed.incrementAndGet() < 100;
+      }
+    });
+    assertFalse(result);
+    assertTrue(String.valueOf(processed.get()), processed.get() < 100000);
+  }
+
+  public void testCancellationIsPropagated() {
+    myDynamicChunks.setValue(true);
+    final ProgressIndicator progress = new ProgressIndicatorBase();
+    try {
+      JobLauncher.getInstance().invokeConcurrentlyUnderProgress(createCosts(100000, 0, 0), progress, false, new Processor<Integer>() {
+        @Override
+        public boolean process(Integer integer) {
+          progress.cancel();
+          progress.checkCanceled();
+          return true;
+        }
+      });
+      fail("ProcessCanceledException expected");
+    }
+    catch (ProcessCanceledException ignored) {
+    }
+  }
+
+  public void testExpensiveElementDoesNotHoldBackOthers() throws InterruptedException {
+    assumeTrue(JobSchedulerImpl.CORES_COUNT > 1);
+    myDynamicChunks.setValue(true);
+    final int count = 10000;
+    final List<Integer> indices = new ArrayList<Integer>(count);
+    for (int i = 0; i < count; i++) {
+      indices.add(i);
+    }
+    final AtomicInteger processed = new AtomicInteger();
+    final CountDownLatch othersDone = new CountDownLatch(1);
+    final AtomicBoolean balanced = new AtomicBoolean();
+    boolean result = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(indices, null, false, new Processor<Integer>() {
+      @Override
+      public boolean process(Integer index) {
+        if (index == 0) {
+          // the first chunk starts with this element, so only the rest of that chunk may wait for it
+          try {
+            balanced.set(othersDone.await(60, TimeUnit.SECONDS));
+          }
+          catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        else if (processed.incrementAndGet() >= count - JobLauncherImpl.MAX_DYNAMIC_CHUNK_SIZE) {
+          othersDone.countDown();
+        }
+        return true;
+      }
+    });
+    assertTrue(result);
+    assertTrue("elements were held back by the worker processing the expensive one: " + processed.get(), balanced.get());
+    assertEquals(count - 1, processed.get());
+  }
+
+  public void testSkewedWorkloadPerformance() {
+    assumeTrue(!PlatformTestUtil.COVERAGE_ENABLED_BUILD && JobSchedulerImpl.CORES_COUNT > 1);
+    // inspection run: a handful of large files among thousands of small ones
+    assertDynamicChunksNotSlower("one huge file", createCosts(5000, 1, 2000));
+    // find usages: word index gives many candidates, few of them are big
+    assertDynamicChunksNotSlower("few big files", createCosts(5000, 50, 200));
+    // indexing: costs are roughly proportional to the file size, sizes are heavily skewed
+    assertDynamicChunksNotSlower("skewed sizes", createSkewedCosts(5000));
+  }
+
+  private void assertDynamicChunksNotSlower(String name, List<Integer> costs) {
+    long fixed = Long.MAX_VALUE;
+    long dynamic = Long.MAX_VALUE;
+    for (int i = 0; i < 3; i++) {
+      fixed = Math.min(fixed, run(costs, false));
+      dynamic = Math.min(dynamic, run(costs, true));
+    }
+    String message = name + ": fixed chunks " + fixed + "ms, dynamic chunks " + dynamic + "ms";
+    assertTrue(message, dynamic <= fixed + fixed / 10 + 10);
+  }
+
+  private long run(List<Integer> costs, boolean dynamic) {
+    myDynamicChunks.setValue(dynamic);
+    long start = System.currentTimeMillis();
+    boolean result = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(costs, null, false, new Processor<Integer>() {
+      @Override
+      public boolean process(Integer cost) {
+        burn(cost);
+        return true;
+      }
+    });
+    assertTrue(result);
+    return System.currentTimeMillis() - start;
+  }
+
+  private static volatile long ourSink;
+
+  private static void burn(int units) {
+    long value = units;
+    for (int i = 0; i < units * 10000; i++) {
+      value = value * 31 + i;
+    }
+    ourSink = value;
+  }
+
+  private static List<Integer> createCosts(int count, int bigCount, int bigCost) {
+    List<Integer> costs = new ArrayList<Integer>(count);
+    for (int i = 0; i < count; i++) {
+      costs.add(i < bigCount ? bigCost : 1);
+    }
+    Collections.shuffle(costs, new Random(42));
+    return costs;
+  }
+
+  private static List<Integer> createSkewedCosts(int count) {
+    Random random = new Random(42);
+    List<Integer> costs = new ArrayList<Integer>(count);
+    for (int i = 0; i < count; i++) {
+      costs.add((int)Math.min(5000, Math.exp(random.nextGaussian() * 1.5)) + 1);
+    }
+    return costs;
+  }
+}
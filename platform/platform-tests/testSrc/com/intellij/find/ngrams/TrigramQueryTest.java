@@ -0,0 +1,85 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.find.ngrams;
+
+import com.intellij.openapi.util.text.TrigramBuilder;
+import gnu.trove.TIntHashSet;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TrigramQueryTest extends TestCase {
+  public void testLiterals() {
+    assertLiterals("foo.*bar", "foo", "bar");
+    assertLiterals("getFoo\\(\\)", "getFoo()");
+    assertLiterals("\\Qa.b.c\\E", "a.b.c");
+    assertLiterals("abc\\d+def", "abc", "def");
+    assertLiterals("[a-z]+Impl\\b", "Impl");
+    assertLiterals("^\\s*import\\s+java", "import", "java");
+  }
+
+  public void testEscapesWithArguments() {
+    assertLiterals("(?<q>['\"])abc\\k<q>def", "abc", "def");
+    assertLiterals("abc\\x{1F600}def", "abc", "def");
+    assertLiterals("abc\\x41def", "abc", "def");
+    assertLiterals("abc\\p{Alpha}def", "abc", "def");
+  }
+
+  public void testQuantifiers() {
+    assertLiterals("colou?r", "colo");
+    assertLiterals("abcd*ef", "abc");
+    assertLiterals("abcd{0,2}ef", "abc");
+    assertLiterals("abcd+ef", "abcd");
+    assertLiterals("abcd{2}efg", "abcd", "efg");
+    assertLiterals("abc.*?def", "abc", "def");
+  }
+
+  public void testGroups() {
+    assertLiterals("(foo)bar", "foo", "bar");
+    assertLiterals("(?:foo|bar)baz", "baz");
+    assertLiterals("(?i)Hello", "Hello");
+    assertLiterals("(?i:Hello) world", "Hello", " world");
+    assertLiterals("(?<name>abc)def", "abc", "def");
+    assertLiterals("(foo)?bar", "bar");
+    assertLiterals("(?=abc)def", "def");
+    assertLiterals("(?<!abc)def", "def");
+    assertLiterals("a[(]bc(def)", "def");
+  }
+
+  public void testNothingRequired() {
+    assertLiterals("foo|bar");
+    assertLiterals("(?x) foo bar");
+    assertLiterals(".*");
+    assertLiterals("ab");
+  }
+
+  public void testTrigrams() {
+    TIntHashSet plain = TrigramQuery.getRequiredTrigrams("Hello", false);
+    assertEquals(TrigramBuilder.buildTrigram("hello"), plain);
+
+    TIntHashSet regExp = TrigramQuery.getRequiredTrigrams("Hello.*World", true);
+    TIntHashSet expected = TrigramBuilder.buildTrigram("hello");
+    expected.addAll(TrigramBuilder.buildTrigram("world").toArray());
+    assertEquals(expected, regExp);
+  }
+
+  private static void assertLiterals(String regExp, String... expected) {
+    List<String> literals = TrigramQuery.getRequiredLiterals(regExp);
+    assertEquals(regExp, expected.length == 0 ? Collections.<String>emptyList() : Arrays.asList(expected), literals);
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.ex.util;
+
+import com.intellij.lang.Language;
+import com.intellij.lexer.Lexer;
+import com.intellij.lexer.LexerBase;
+import com.intellij.openapi.editor.colors.EditorColorsManager;
+import com.intellij.openapi.editor.colors.TextAttributesKey;
+import com.intellij.openapi.fileTypes.SyntaxHighlighterBase;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.util.registry.RegistryValue;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.testFramework.LightPlatformTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Random;
+
+public class LexerEditorHighlighterTest extends LightPlatformTestCase {
+  private static final IElementType WORD = new IElementType("WORD", Language.ANY);
+  private static final IElementType COMMENT = new IElementType("COMMENT", Language.ANY);
+  private static final IElementType WHITESPACE = new IElementType("WHITESPACE", Language.ANY);
+  private static final IElementType OTHER = new IElementType("OTHER", Language.ANY);
+
+  private RegistryValue myThreshold;
+  private int myOldThreshold;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myThreshold = Registry.get("editor.lexer.concurrent.threshold");
+    myOldThreshold = myThreshold.asInteger();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myThreshold.setValue(myOldThreshold);
+    super.tearDown();
+  }
+
+  public void testConcurrentLexingGivesSameTokensAsSequential() {
+    if (Runtime.getRuntime().availableProcessors() < 2) return;
+    String text = generateText(new Random(0), 3 * 1024 * 1024);
+
+    SegmentArrayWithData sequential = lex(text, Integer.MAX_VALUE, false);
+    SegmentArrayWithData concurrent = lex(text, 0, false);
+    assertSameTokens(sequential, concurrent);
+  }
+
+  public void testFailedChunkIsLexedSequentially() {
+    if (Runtime.getRuntime().availableProcessors() < 2) return;
+    String text = generateText(new Random(1), 3 * 1024 * 1024);
+
+    SegmentArrayWithData sequential = lex(text, Integer.MAX_VALUE, false);
+    SegmentArrayWithData concurrent = lex(text, 0, true);
+    assertSameTokens(sequential, concurrent);
+  }
+
+  private SegmentArrayWithData lex(String text, int threshold, boolean failChunks) {
+    myThreshold.setValue(threshold);
+    LexerEditorHighlighter highlighter =
+      new LexerEditorHighlighter(new TestSyntaxHighlighter(failChunks), EditorColorsManager.getInstance().getGlobalScheme());
+    highlighter.setText(text);
+    return highlighter.getSegments();
+  }
+
+  // token types, offsets and restart states are all packed into the segment data
+  private static void assertSameTokens(SegmentArrayWithData expected, SegmentArrayWithData actual) {
+    assertEquals(expected.getSegmentCount(), actual.getSegmentCount());
+    for (int i = 0; i < expected.getSegmentCount(); i++) {
+      assertEquals("token " + i, expected.getSegmentStart(i), actual.getSegmentStart(i));
+      assertEquals("token " + i, expected.getSegmentEnd(i), actual.getSegmentEnd(i));
+      assertEquals("token " + i, expected.getSegmentData(i), actual.getSegmentData(i));
+    }
+  }
+
+  // comments spanning many lines make chunks start inside them, so chunk lexing has to be joined at a later token
+  private static String generateText(Random random, int length) {
+    StringBuilder text = new StringBuilder(length + 100);
+    while (text.length() < length) {
+      int kind = random.nextInt(20);
+      if (kind == 0) {
+        text.append("/* comment");
+        for (int lines = random.nextInt(5000); lines > 0; lines--) {
+          text.append(" line ").append(lines).append('\n');
+        }
+        text.append("*/");
+      }
+      else if (kind < 5) {
+        text.append('\n');
+      }
+      else if (kind < 10) {
+        text.append(' ');
+      }
+      else if (kind < 12) {
+        text.append(";");
+      }
+      else {
+        text.append("word").append(random.nextInt(100));
+      }
+    }
+    return text.toString();
+  }
+
+  private static class TestSyntaxHighlighter extends SyntaxHighlighterBase {
+    private final boolean myFailChunks;
+    private int myLexerCount;
+
+    private TestSyntaxHighlighter(boolean failChunks) {
+      myFailChunks = failChunks;
+    }
+
+    @NotNull
+    @Override
+    public Lexer getHighlightingLexer() {
+      // the first lexer is the highlighter's own one, the others lex chunks
+      return new CommentLexer(myFailChunks && myLexerCount++ > 0);
+    }
+
+    @NotNull
+    @Override
+    public TextAttributesKey[] getTokenHighlights(IElementType tokenType) {
+      return new TextAttributesKey[0];
+    }
+  }
+
+  /**
+   * Words, single character tokens and block comments, which are split into a token per line and keep the lexer state between lines
+   */
+  private static class CommentLexer extends LexerBase {
+    private final boolean myFailAfterStart;
+    private CharSequence myBuffer;
+    private int myEnd;
+    private int myState;
+    private int myTokenState;
+    private int myTokenStart;
+    private int myTokenEnd;
+    private IElementType myTokenType;
+
+    private CommentLexer(boolean failAfterStart) {
+      myFailAfterStart = failAfterStart;
+    }
+
+    @Override
+    public void start(CharSequence buffer, int startOffset, int endOffset, int initialState) {
+      if (myFailAfterStart && startOffset > 0) throw new IllegalStateException("Lexing from " + startOffset + " isn't supported");
+      myBuffer = buffer;
+      myEnd = endOffset;
+      myState = initialState;
+      myTokenEnd = startOffset;
+      locateToken();
+    }
+
+    private void locateToken() {
+      myTokenStart = myTokenEnd;
+      myTokenState = myState;
+      if (myTokenStart >= myEnd) {
+        myTokenType = null;
+        return;
+      }
+      char c = myBuffer.charAt(myTokenStart);
+      if (myState == 1 || c == '/' && myTokenStart + 1 < myEnd && myBuffer.charAt(myTokenStart + 1) == '*') {
+        myTokenType = COMMENT;
+        int i = myState == 1 ? myTokenStart : myTokenStart + 2;
+        myState = 1;
+        while (i < myEnd) {
+          if (myBuffer.charAt(i) == '\n') {
+            i++;
+            break;
+          }
+          if (myBuffer.charAt(i) == '*' && i + 1 < myEnd && myBuffer.charAt(i + 1) == '/') {
+            i += 2;
+            myState = 0;
+            break;
+          }
+          i++;
+        }
+        myTokenEnd = i;
+      }
+      else if (Character.isLetterOrDigit(c)) {
+        myTokenType = WORD;
+        int i = myTokenStart + 1;
+        while (i < myEnd && Character.isLetterOrDigit(myBuffer.charAt(i))) i++;
+        myTokenEnd = i;
+      }
+      else {
+        myTokenType = Character.isWhitespace(c) ? WHITESPACE : OTHER;
+        myTokenEnd = myTokenStart + 1;
+      }
+    }
+
+    @Override
+    public int getState() {
+      return myTokenState;
+    }
+
+    @Override
+    public IElementType getTokenType() {
+      return myTokenType;
+    }
+
+    @Override
+    public int getTokenStart() {
+      return myTokenStart;
+    }
+
+    @Override
+    public int getTokenEnd() {
+      return myTokenEnd;
+    }
+
+    @Override
+    public void advance() {
+      locateToken();
+    }
+
+    @NotNull
+    @Override
+    public CharSequence getBufferSequence() {
+      return myBuffer;
+    }
+
+    @Override
+    public int getBufferEnd() {
+      return myEnd;
+    }
+  }
+}
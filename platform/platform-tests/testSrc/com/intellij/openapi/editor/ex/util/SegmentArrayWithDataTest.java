@@ -0,0 +1,95 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.ex.util;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class SegmentArrayWithDataTest extends TestCase {
+  public void testPackedArrayBehavesAsExplicitOne() {
+    Random random = new Random(0);
+    for (int iteration = 0; iteration < 10000; iteration++) {
+      SegmentArrayWithData packed = new SegmentArrayWithData(true);
+      SegmentArrayWithData explicit = new SegmentArrayWithData();
+      int offset = random.nextInt(3);
+      for (int i = random.nextInt(20); i > 0; i--) {
+        int length = 1 + random.nextInt(5);
+        int data = random.nextInt(100) - 50;
+        packed.setElementAt(packed.getSegmentCount(), offset, offset + length, data);
+        explicit.setElementAt(explicit.getSegmentCount(), offset, offset + length, data);
+        offset += length;
+      }
+
+      for (int step = 0; step < 5; step++) {
+        int count = explicit.getSegmentCount();
+        int startIndex = random.nextInt(count + 1);
+        int endIndex = random.nextBoolean() ? count : startIndex + random.nextInt(count - startIndex + 1);
+        switch (random.nextInt(3)) {
+          case 0:
+            packed.remove(startIndex, endIndex);
+            explicit.remove(startIndex, endIndex);
+            break;
+          case 1:
+            if (startIndex < count) {
+              int change = random.nextInt(4);
+              packed.changeSegmentLength(startIndex, change);
+              explicit.changeSegmentLength(startIndex, change);
+            }
+            break;
+          default:
+            replace(random, packed, explicit, startIndex, endIndex);
+        }
+        assertSameSegments(explicit, packed);
+      }
+    }
+  }
+
+  private static void replace(Random random, SegmentArrayWithData packed, SegmentArrayWithData explicit, int startIndex, int endIndex) {
+    int count = explicit.getSegmentCount();
+    int offset = startIndex < count ? explicit.getSegmentStart(startIndex) : explicit.getLastValidOffset();
+    // sometimes leave a gap before or after the new segments
+    offset += random.nextInt(5) == 0 ? 1 : 0;
+    SegmentArrayWithData newPacked = new SegmentArrayWithData(true);
+    SegmentArrayWithData newExplicit = new SegmentArrayWithData();
+    for (int i = random.nextInt(4); i > 0; i--) {
+      int length = 1 + random.nextInt(4);
+      newPacked.setElementAt(newPacked.getSegmentCount(), offset, offset + length, i);
+      newExplicit.setElementAt(newExplicit.getSegmentCount(), offset, offset + length, i);
+      offset += length;
+    }
+    int shift = 0;
+    if (endIndex < count) {
+      shift = offset - explicit.getSegmentStart(endIndex) + (random.nextInt(5) == 0 ? 1 : 0);
+    }
+
+    packed.replace(startIndex, endIndex, newPacked, shift);
+    explicit.shiftSegments(endIndex, shift);
+    explicit.replace(startIndex, endIndex, newExplicit);
+  }
+
+  private static void assertSameSegments(SegmentArrayWithData expected, SegmentArrayWithData actual) {
+    assertEquals(expected.getSegmentCount(), actual.getSegmentCount());
+    assertEquals(expected.getLastValidOffset(), actual.getLastValidOffset());
+    for (int i = 0; i < expected.getSegmentCount(); i++) {
+      assertEquals(expected.getSegmentStart(i), actual.getSegmentStart(i));
+      assertEquals(expected.getSegmentEnd(i), actual.getSegmentEnd(i));
+      assertEquals(expected.getSegmentData(i), actual.getSegmentData(i));
+      int middle = (expected.getSegmentStart(i) + expected.getSegmentEnd(i)) / 2;
+      assertEquals(expected.findSegmentIndex(middle), actual.findSegmentIndex(middle));
+    }
+  }
+}
@@ -10,6 +10,8 @@ import com.intellij.openapi.editor.*;
 import com.intellij.openapi.editor.event.DocumentAdapter;
 import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.editor.ex.DocumentEx;
+import com.intellij.openapi.editor.ex.MarkupModelEx;
+import com.intellij.openapi.editor.ex.RangeHighlighterEx;
 import com.intellij.openapi.editor.ex.RangeMarkerEx;
 import com.intellij.openapi.editor.markup.HighlighterTargetArea;
 import com.intellij.openapi.editor.markup.MarkupModel;
@@ -22,7 +24,10 @@ import com.intellij.psi.impl.PsiDocumentManagerImpl;
 import com.intellij.psi.impl.PsiToDocumentSynchronizer;
 import com.intellij.testFramework.LeakHunter;
 import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.testFramework.PlatformTestUtil;
 import com.intellij.testFramework.Timings;
+import com.intellij.util.CommonProcessors;
+import com.intellij.util.ThrowableRunnable;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
@@ -30,6 +35,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author mike
@@ -1043,4 +1052,90 @@ public class RangeMarkerTest extends LightPlatformTestCase {
     assertValidMarker(marker1, 2, 2);
     assertValidMarker(marker2, 2, 4);
   }
+
+  public void testBackgroundReadersSeeTheSameHighlightersAsEDT() throws Exception {
+    Document document = EditorFactory.getInstance().createDocument(StringUtil.repeatSymbol(' ', 1000));
+    final MarkupModelEx markupModel = (MarkupModelEx)DocumentMarkupModel.forDocument(document, ourProject, true);
+    Random random = new Random(0);
+    for (int i = 0; i < 1000; i++) {
+      int start = random.nextInt(1000);
+      markupModel.addRangeHighlighter(start, start + random.nextInt(1000 - start), random.nextInt(10), null, HighlighterTargetArea.EXACT_RANGE);
+    }
+    document.insertString(500, "xxx");
+    document.deleteString(100, 120);
+
+    for (int i = 0; i < 100; i++) {
+      final int start = random.nextInt(document.getTextLength());
+      final int end = start + random.nextInt(document.getTextLength() - start);
+      assertEquals(collectHighlighters(markupModel, start, end, false), ApplicationManager.getApplication().executeOnPooledThread(
+        new Callable<List<RangeHighlighterEx>>() {
+          @Override
+          public List<RangeHighlighterEx> call() throws Exception {
+            return collectHighlighters(markupModel, start, end, false);
+          }
+        }).get());
+      assertEquals(collectHighlighters(markupModel, start, end, true), ApplicationManager.getApplication().executeOnPooledThread(
+        new Callable<List<RangeHighlighterEx>>() {
+          @Override
+          public List<RangeHighlighterEx> call() throws Exception {
+            return collectHighlighters(markupModel, start, end, true);
+          }
+        }).get());
+    }
+  }
+
+  private static List<RangeHighlighterEx> collectHighlighters(MarkupModelEx markupModel, int start, int end, boolean outside) {
+    CommonProcessors.CollectProcessor<RangeHighlighterEx> processor = new CommonProcessors.CollectProcessor<RangeHighlighterEx>();
+    if (outside) {
+      markupModel.processRangeHighlightersOutside(start, end, processor);
+    }
+    else {
+      markupModel.processRangeHighlightersOverlappingWith(start, end, processor);
+    }
+    return new ArrayList<RangeHighlighterEx>(processor.getResults());
+  }
+
+  public void testTypingWithManyHighlightersAndBackgroundReaders_NoVerify() throws Exception {
+    final int n = 100000;
+    final Document document = EditorFactory.getInstance().createDocument(StringUtil.repeatSymbol(' ', 10 * n));
+    final MarkupModelEx markupModel = (MarkupModelEx)DocumentMarkupModel.forDocument(document, ourProject, true);
+    for (int i = 0; i < n; i++) {
+      markupModel.addRangeHighlighter(10 * i, 10 * i + 5, 0, null, HighlighterTargetArea.EXACT_RANGE);
+    }
+
+    // background passes scan the whole file meanwhile
+    final AtomicBoolean typing = new AtomicBoolean(true);
+    final AtomicInteger scans = new AtomicInteger();
+    Future<?> reader = ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+      @Override
+      public void run() {
+        while (typing.get()) {
+          markupModel.processRangeHighlightersOverlappingWith(0, document.getTextLength(), new CommonProcessors.CollectProcessor<RangeHighlighterEx>());
+          scans.incrementAndGet();
+        }
+      }
+    });
+    try {
+      PlatformTestUtil.startPerformanceTest("typing with 100k highlighters", 3000, new ThrowableRunnable() {
+        @Override
+        public void run() throws Throwable {
+          new WriteCommandAction.Simple(getProject()) {
+            @Override
+            protected void run() throws Throwable {
+              int offset = 5 * n;
+              for (int i = 0; i < 1000; i++) {
+                document.insertString(offset++, "x");
+              }
+              document.deleteString(5 * n, offset);
+            }
+          }.execute().throwException();
+        }
+      }).cpuBound().assertTiming();
+    }
+    finally {
+      typing.set(false);
+      reader.get();
+    }
+    assertTrue(scans.get() > 0);
+  }
 }
@@ -20,6 +20,8 @@ import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.io.FileAttributes;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.io.IoTestUtil;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.util.registry.RegistryValue;
 import com.intellij.openapi.vfs.*;
 import com.intellij.openapi.vfs.newvfs.ManagingFS;
 import com.intellij.openapi.vfs.newvfs.NewVirtualFile;
@@ -33,6 +35,8 @@ import com.intellij.openapi.vfs.newvfs.persistent.PersistentFS;
 import com.intellij.openapi.vfs.newvfs.persistent.PersistentFSImpl;
 import com.intellij.testFramework.PlatformLangTestCase;
 import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.concurrency.Semaphore;
+import com.intellij.util.ui.UIUtil;
 
 import java.io.File;
 import java.io.IOException;
@@ -297,6 +301,52 @@ public class LocalFileSystemTest extends PlatformLangTestCase {
     checkChildCount(virtualDir, 2);
   }
 
+  public void testRefreshOfLargeDirectory() throws Exception {
+    File testDir = FileUtil.createTempDirectory("RefreshLargeDirTest." + getName(), null);
+    for (int i = 0; i < 300; i++) {
+      FileUtil.writeToFile(new File(testDir, "old" + i + ".txt"), "");
+    }
+    VirtualFile virtualDir = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(testDir);
+    assertNotNull(virtualDir);
+    checkChildCount(virtualDir, 300);
+    VirtualFile changed = virtualDir.findChild("old1.txt");
+    assertNotNull(changed);
+    assertEquals(0, changed.getLength());
+
+    for (int i = 0; i < 100; i++) {
+      FileUtil.delete(new File(testDir, "old" + (i * 3) + ".txt"));
+      FileUtil.writeToFile(new File(testDir, "new" + i + ".txt"), "");
+    }
+    FileUtil.writeToFile(new File(testDir, "old1.txt"), "content");
+
+    RegistryValue chunkSize = Registry.get("vfs.refresh.events.chunk.size");
+    int oldChunkSize = chunkSize.asInteger();
+    chunkSize.setValue(7);
+    try {
+      final Semaphore semaphore = new Semaphore();
+      semaphore.down();
+      RefreshQueue.getInstance().refresh(true, true, new Runnable() {
+        @Override
+        public void run() {
+          semaphore.up();
+        }
+      }, virtualDir);
+      long deadline = System.currentTimeMillis() + 10000;
+      while (!semaphore.waitFor(10) && System.currentTimeMillis() < deadline) {
+        UIUtil.dispatchAllInvocationEvents();
+      }
+      assertTrue(semaphore.waitFor(0));
+    }
+    finally {
+      chunkSize.setValue(oldChunkSize);
+    }
+
+    checkChildCount(virtualDir, 300);
+    assertNull(virtualDir.findChild("old0.txt"));
+    assertNotNull(virtualDir.findChild("new99.txt"));
+    assertEquals(7, changed.getLength());
+  }
+
   private static void checkChildCount(VirtualFile virtualDir, int expectedCount) {
     VirtualFile[] children = virtualDir.getChildren();
     if (children.length != expectedCount) {
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vfs.newvfs.persistent;
+
+import com.intellij.testFramework.LightPlatformTestCase;
+
+public class FSRecordsCacheTest extends LightPlatformTestCase {
+  private boolean myWasCached;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myWasCached = FSRecords.areRecordFieldsCached();
+    FSRecords.setRecordFieldsCached(true);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FSRecords.setRecordFieldsCached(myWasCached);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testWritesAreReadBackThroughCache() {
+    int parent = FSRecords.createRecord();
+    int id = FSRecords.createRecord();
+    try {
+      FSRecords.setParent(id, parent);
+      FSRecords.setName(id, "cached.txt");
+      FSRecords.setFlags(id, PersistentFS.IS_DIRECTORY_FLAG, true);
+      FSRecords.setTimestamp(id, 12345L);
+      FSRecords.setLength(id, 678L);
+      int modCount = FSRecords.getModCount();
+      assertCachedFields(id, parent, modCount);
+
+      // the records file must have the same values
+      FSRecords.setRecordFieldsCached(false);
+      assertCachedFields(id, parent, modCount);
+
+      // a cache loaded from the records file must have them too
+      FSRecords.setRecordFieldsCached(true);
+      assertCachedFields(id, parent, modCount);
+    }
+    finally {
+      FSRecords.deleteRecordRecursively(id);
+      FSRecords.deleteRecordRecursively(parent);
+    }
+  }
+
+  public void testCleanedRecordIsReadBackThroughCache() {
+    int id = FSRecords.createRecord();
+    FSRecords.setTimestamp(id, 12345L);
+    FSRecords.deleteRecordRecursively(id);
+    assertEquals(0L, FSRecords.getTimestamp(id));
+    assertEquals(0, FSRecords.getParent(id));
+
+    int reused = FSRecords.createRecord();
+    try {
+      assertEquals(0, FSRecords.getFlags(reused));
+      assertEquals(0L, FSRecords.getLength(reused));
+    }
+    finally {
+      FSRecords.deleteRecordRecursively(reused);
+    }
+  }
+
+  private static void assertCachedFields(int id, int parent, int modCount) {
+    assertEquals(parent, FSRecords.getParent(id));
+    assertEquals("cached.txt", FSRecords.getName(id));
+    assertEquals(PersistentFS.IS_DIRECTORY_FLAG, FSRecords.getFlags(id));
+    assertEquals(12345L, FSRecords.getTimestamp(id));
+    assertEquals(678L, FSRecords.getLength(id));
+    assertEquals(modCount, FSRecords.getModCount(id));
+    assertEquals(modCount, FSRecords.getModCount(parent));
+    assertEquals(modCount, FSRecords.getModCount());
+  }
+}
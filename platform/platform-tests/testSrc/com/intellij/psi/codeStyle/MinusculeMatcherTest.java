@@ -0,0 +1,147 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.codeStyle;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.ThrowableRunnable;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class MinusculeMatcherTest extends TestCase {
+  private static final String[] WORDS = {
+    "get", "set", "is", "create", "find", "process", "File", "Manager", "Psi", "Element", "Impl", "Util", "Java", "Class", "Type",
+    "Factory", "Provider", "Index", "Stub", "Action", "Editor", "Document", "Highlighter", "Listener", "Event", "Tree", "Node", "Model",
+    "Base", "Abstract", "Default", "Project", "Module", "Root", "Virtual", "Local", "Search", "Scope", "Cache", "Name", "Matcher", "URL",
+    "IO", "XML", "Html", "Dom", "Swing", "Ui", "Component", "Panel", "Dialog", "Popup", "Cell", "Renderer", "Key", "Value", "Map", "List",
+  };
+  private static final String[] PATTERNS = {
+    "FiMa", "psiel", "getNa", "*Impl", "*impl", "XML", "AbsFac", "Abst Fact", "gFT", "VFile", "psi.el", "c_r", "Ui*Dia", "URLC",
+    "findElement", "n ", "HiLi", "DocLis", "PsiElementFactoryImpl", "*Cache*", "io", "ProjRoMa", "zz", "keyvalue",
+  };
+
+  public void testFastPathGivesSameResultsAsFragments() {
+    List<String> names = createNames(new Random(0), 20000);
+    names.add("İstanbulIndex");
+    names.add("ıoManager");
+    names.add("ÜberFile");
+    List<String> patterns = new ArrayList<String>();
+    for (String pattern : PATTERNS) {
+      patterns.add(pattern);
+    }
+    patterns.add("io");
+    patterns.add("ist");
+    patterns.add("überF");
+    for (String pattern : patterns) {
+      for (NameUtil.MatchingCaseSensitivity options : NameUtil.MatchingCaseSensitivity.values()) {
+        MinusculeMatcher matcher = new MinusculeMatcher(pattern, options);
+        for (String name : names) {
+          assertEquals(pattern + " " + options + " " + name, matcher.matchingFragments(name) != null, matcher.matches(name));
+        }
+      }
+    }
+  }
+
+  public void testNarrowing() {
+    assertNarrowing("foob", "foo");
+    assertNarrowing("*foob*", "*foo*");
+    assertNarrowing("*foob", "*foo*");
+    assertNotNarrowing("fooB", "foo");
+    assertNotNarrowing("*foob*", "foo");
+    assertNotNarrowing("foob*", "*foo*");
+    assertNotNarrowing("foo b", "foo ");
+    assertNotNarrowing("*fooB*", "*foo ");
+    assertNotNarrowing("*foo*", "*");
+    assertNotNarrowing("*get*", "*ge*");
+    assertNotNarrowing("foo.b", "foo");
+  }
+
+  public void testNarrowingPatternMatchesOnlyNamesMatchedBefore() {
+    List<String> names = createNames(new Random(0), 20000);
+    for (String pattern : PATTERNS) {
+      for (String middle : new String[]{"", "*"}) {
+        String typed = middle + pattern.trim();
+        for (int length = middle.length() + 1; length < typed.length(); length++) {
+          MinusculeMatcher before = new MinusculeMatcher(typed.substring(0, length) + middle, NameUtil.MatchingCaseSensitivity.NONE);
+          MinusculeMatcher after = new MinusculeMatcher(typed.substring(0, length + 1) + middle, NameUtil.MatchingCaseSensitivity.NONE);
+          if (!after.isNarrowingOf(before)) continue;
+          for (String name : names) {
+            if (after.matches(name)) {
+              assertTrue(typed.substring(0, length + 1) + " " + name, before.matches(name));
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static void assertNarrowing(String pattern, String previousPattern) {
+    assertTrue(isNarrowing(pattern, previousPattern));
+  }
+
+  private static void assertNotNarrowing(String pattern, String previousPattern) {
+    assertFalse(isNarrowing(pattern, previousPattern));
+  }
+
+  private static boolean isNarrowing(String pattern, String previousPattern) {
+    NameUtil.MatchingCaseSensitivity options = NameUtil.MatchingCaseSensitivity.NONE;
+    return new MinusculeMatcher(pattern, options).isNarrowingOf(new MinusculeMatcher(previousPattern, options));
+  }
+
+  public void testMatchingPerformance() {
+    final List<String> names = createNames(new Random(0), 200000);
+    PlatformTestUtil.startPerformanceTest("matching identifiers", 1500, new ThrowableRunnable() {
+      @Override
+      public void run() throws Throwable {
+        int matched = 0;
+        for (String pattern : PATTERNS) {
+          MinusculeMatcher matcher = new MinusculeMatcher(pattern, NameUtil.MatchingCaseSensitivity.NONE);
+          for (String name : names) {
+            if (matcher.matches(name)) {
+              matched++;
+            }
+          }
+        }
+        assertTrue(matched > 0);
+      }
+    }).cpuBound().assertTiming();
+  }
+
+  /**
+   * Camel-case and constant-like identifiers made of common words
+   */
+  private static List<String> createNames(Random random, int count) {
+    List<String> names = new ArrayList<String>(count);
+    for (int i = 0; i < count; i++) {
+      StringBuilder name = new StringBuilder();
+      boolean constant = random.nextInt(10) == 0;
+      for (int j = 1 + random.nextInt(4); j > 0; j--) {
+        String word = WORDS[random.nextInt(WORDS.length)];
+        if (constant) {
+          if (name.length() > 0) name.append('_');
+          name.append(word.toUpperCase());
+        }
+        else {
+          name.append(name.length() == 0 && random.nextBoolean() ? word.toLowerCase() : word);
+        }
+      }
+      names.add(name.toString());
+    }
+    return names;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.impl.source.resolve;
+
+import com.intellij.openapi.fileTypes.PlainTextFileType;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.PsiReferenceBase;
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.util.ArrayUtil;
+import org.jetbrains.annotations.NotNull;
+
+public class ResolveCacheTest extends LightPlatformTestCase {
+  public void testResolveResultIsCached() {
+    PsiReference ref = createReference();
+    ResolveCache cache = ResolveCache.getInstance(getProject());
+    TargetCreatingResolver resolver = new TargetCreatingResolver();
+
+    PsiElement target = cache.resolveWithCaching(ref, resolver, false, false);
+    assertSame(target, cache.resolveWithCaching(ref, resolver, false, false));
+    assertEquals(1, resolver.myResolveCount);
+  }
+
+  public void testCacheIsClearedOnPsiChange() {
+    PsiReference ref = createReference();
+    ResolveCache cache = ResolveCache.getInstance(getProject());
+    TargetCreatingResolver resolver = new TargetCreatingResolver();
+
+    cache.resolveWithCaching(ref, resolver, false, false);
+    cache.clearCache(true);
+    cache.resolveWithCaching(ref, resolver, false, false);
+    assertEquals(2, resolver.myResolveCount);
+  }
+
+  private PsiReference createReference() {
+    PsiFile file = PsiFileFactory.getInstance(getProject()).createFileFromText("ref.txt", PlainTextFileType.INSTANCE, "target");
+    return new PsiReferenceBase<PsiFile>(file) {
+      @Override
+      public PsiElement resolve() {
+        return null;
+      }
+
+      @NotNull
+      @Override
+      public Object[] getVariants() {
+        return ArrayUtil.EMPTY_OBJECT_ARRAY;
+      }
+    };
+  }
+
+  private class TargetCreatingResolver implements ResolveCache.Resolver {
+    private int myResolveCount;
+
+    @Override
+    public PsiElement resolve(@NotNull PsiReference ref, boolean incompleteCode) {
+      myResolveCount++;
+      return PsiFileFactory.getInstance(getProject()).createFileFromText("target.txt", PlainTextFileType.INSTANCE, "target");
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.indexing;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class ValueContainerImplTest extends TestCase {
+  public void testIdsAreKeptSorted() {
+    ValueContainerImpl<String> container = new ValueContainerImpl<String>();
+    int[] ids = {5, 3, 9, 1, 7, 3, 5};
+    for (int id : ids) {
+      container.addValue(id, "a");
+    }
+    assertEquals(1, container.size());
+    assertEquals(Arrays.asList(1, 3, 5, 7, 9), collectIds(container, "a"));
+    assertTrue(container.isAssociated("a", 7));
+    assertFalse(container.isAssociated("a", 8));
+    assertTrue(container.getValueAssociationPredicate("a").contains(9));
+    assertFalse(container.getValueAssociationPredicate("a").contains(10));
+  }
+
+  public void testRemoval() {
+    ValueContainerImpl<String> container = new ValueContainerImpl<String>();
+    for (int id = 1; id <= 100; id++) {
+      container.addValue(id, id % 2 == 0 ? "even" : "odd");
+    }
+    assertEquals(2, container.size());
+    for (int id = 1; id < 100; id++) {
+      container.removeAssociatedValue(id);
+    }
+    assertEquals(1, container.size());
+    assertEquals(Arrays.asList(100), collectIds(container, "even"));
+    assertTrue(collectIds(container, "odd").isEmpty());
+
+    container.removeAssociatedValue(100);
+    assertEquals(0, container.size());
+  }
+
+  public void testNullValue() {
+    ValueContainerImpl<String> container = new ValueContainerImpl<String>();
+    container.addValue(1, "a");
+    container.addValue(2, null);
+    container.addValue(3, null);
+    assertEquals(2, container.size());
+    assertEquals(Arrays.asList(2, 3), collectIds(container, null));
+    assertTrue(container.removeValue(2, null));
+    assertTrue(container.removeValue(3, null));
+    assertEquals(1, container.size());
+  }
+
+  public void testCopyIsIndependent() {
+    ValueContainerImpl<String> container = new ValueContainerImpl<String>();
+    container.addValue(1, "a");
+    container.addValue(2, "a");
+    ValueContainerImpl<String> copy = container.copy();
+    copy.addValue(3, "a");
+    assertEquals(Arrays.asList(1, 2), collectIds(container, "a"));
+    assertEquals(Arrays.asList(1, 2, 3), collectIds(copy, "a"));
+  }
+
+  public void testStorageRoundTrip() throws IOException {
+    File dir = FileUtil.createTempDirectory("value", "container");
+    try {
+      ValueContainerMap<String, String> map =
+        new ValueContainerMap<String, String>(new File(dir, "map"), new EnumeratorStringDescriptor(), new EnumeratorStringDescriptor());
+      Random random = new Random(42);
+      List<Integer> expected = new ArrayList<Integer>();
+      try {
+        // several appended chunks with ids in arbitrary order, like after a few indexing sessions
+        for (int chunk = 0; chunk < 3; chunk++) {
+          ChangeTrackingValueContainer<String> container = createContainer(map, "key");
+          for (int i = 0; i < 1000; i++) {
+            int id = random.nextInt(100000) + 1;
+            if (!expected.contains(id)) expected.add(id);
+            container.addValue(id, "value");
+          }
+          container.addValue(100000 + chunk + 1, "other");
+          map.put("key", container);
+        }
+      }
+      finally {
+        map.close();
+      }
+
+      map = new ValueContainerMap<String, String>(new File(dir, "map"), new EnumeratorStringDescriptor(), new EnumeratorStringDescriptor());
+      try {
+        ValueContainer<String> container = map.get("key");
+        assertEquals(2, container.size());
+        List<Integer> sorted = new ArrayList<Integer>(expected);
+        Collections.sort(sorted);
+        assertEquals(sorted, collectIds(container, "value"));
+        assertEquals(Arrays.asList(100001, 100002, 100003), collectIds(container, "other"));
+      }
+      finally {
+        map.close();
+      }
+    }
+    finally {
+      FileUtil.delete(dir);
+    }
+  }
+
+  private static ChangeTrackingValueContainer<String> createContainer(final ValueContainerMap<String, String> map, final String key) {
+    return new ChangeTrackingValueContainer<String>(new ChangeTrackingValueContainer.Initializer<String>() {
+      @Override
+      public Object getLock() {
+        return map.getDataAccessLock();
+      }
+
+      @Override
+      public ValueContainer<String> compute() {
+        try {
+          ValueContainer<String> container = map.get(key);
+          return container != null ? container : new ValueContainerImpl<String>();
+        }
+        catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+  }
+
+  private static List<Integer> collectIds(ValueContainer<String> container, String value) {
+    List<Integer> result = new ArrayList<Integer>();
+    for (ValueContainer.IntIterator iterator = container.getInputIdsIterator(value); iterator.hasNext(); ) {
+      result.add(iterator.next());
+    }
+    return result;
+  }
+}
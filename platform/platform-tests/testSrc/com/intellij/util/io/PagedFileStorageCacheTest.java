@@ -0,0 +1,156 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.io;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PagedFileStorageCacheTest extends TestCase {
+  private static final int PAGE_SIZE = 64 * 1024;
+
+  private File myDir;
+  private PagedFileStorage.StorageLock myLock;
+  private final List<PagedFileStorage> myStorages = new ArrayList<PagedFileStorage>();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("paged", "storage");
+    myLock = new PagedFileStorage.StorageLock(false);
+    myLock.setSizeLimit(8 * PAGE_SIZE);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (PagedFileStorage storage : myStorages) {
+      storage.close();
+    }
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  public void testScanDoesNotEvictHotPages() throws IOException {
+    PagedFileStorage hot = createStorage("hot", 4);
+    PagedFileStorage scanned = createStorage("scanned", 100);
+
+    readPages(hot, 4);
+    readPages(createStorage("other", 1), 1);
+    readPages(hot, 4); // pages become protected when accessed again after other pages were mapped
+    readPages(scanned, 100);
+
+    long misses = myLock.getMissCount();
+    readPages(hot, 4);
+    assertEquals(misses, myLock.getMissCount());
+    assertTrue(myLock.getEvictionCount() > 0);
+    assertTrue(myLock.getCachedSize() <= 8 * PAGE_SIZE);
+  }
+
+  public void testPinnedPageIsNotEvicted() throws IOException {
+    PagedFileStorage header = createStorage("header", 4);
+    PagedFileStorage scanned = createStorage("scanned", 100);
+
+    assertTrue(header.pinPageAt(PAGE_SIZE + 10));
+    assertEquals(PAGE_SIZE, myLock.getPinnedSize());
+    header.getInt(PAGE_SIZE);
+    header.getInt(2 * PAGE_SIZE);
+    for (int i = 0; i < 3; i++) {
+      readPages(scanned, 100);
+    }
+
+    long misses = myLock.getMissCount();
+    header.getInt(PAGE_SIZE);
+    assertEquals(misses, myLock.getMissCount());
+    header.getInt(2 * PAGE_SIZE);
+    assertEquals(misses + 1, myLock.getMissCount());
+
+    header.close();
+    myStorages.remove(header);
+    assertEquals(0, myLock.getPinnedSize());
+  }
+
+  public void testQuota() throws IOException {
+    PagedFileStorage hot = createStorage("hot", 4);
+    PagedFileStorage limited = createStorage("limited", 100);
+    limited.setCacheQuota(2 * PAGE_SIZE);
+
+    readPages(hot, 4);
+    readPages(limited, 100);
+
+    long misses = myLock.getMissCount();
+    readPages(hot, 4);
+    assertEquals(misses, myLock.getMissCount());
+    assertEquals(4 * PAGE_SIZE + 2 * PAGE_SIZE, myLock.getCachedSize());
+  }
+
+  public void testLeastRecentlyUsedPageIsEvicted() throws IOException {
+    PagedFileStorage storage = createStorage("lru", 9);
+    readPages(storage, 8);
+    storage.getInt(0); // becomes protected
+
+    storage.getInt(8 * PAGE_SIZE);
+    long misses = myLock.getMissCount();
+    storage.getInt(0);
+    storage.getInt(2 * PAGE_SIZE);
+    assertEquals(misses, myLock.getMissCount());
+    storage.getInt(PAGE_SIZE);
+    assertEquals(misses + 1, myLock.getMissCount());
+  }
+
+  public void testQuotaEvictsLeastRecentlyUsedOwnPage() throws IOException {
+    PagedFileStorage limited = createStorage("limited", 0);
+    limited.setCacheQuota(2 * PAGE_SIZE);
+    readPages(createStorage("other", 2), 2);
+    limited.resize(3 * PAGE_SIZE);
+
+    limited.getInt(PAGE_SIZE);
+    long misses = myLock.getMissCount();
+    limited.getInt(0);
+    assertEquals(misses + 1, myLock.getMissCount());
+    limited.getInt(PAGE_SIZE);
+    assertEquals(misses + 1, myLock.getMissCount());
+    limited.getInt(2 * PAGE_SIZE);
+    assertEquals(misses + 2, myLock.getMissCount());
+    assertEquals(4 * PAGE_SIZE, myLock.getCachedSize());
+  }
+
+  public void testDataSurvivesEviction() throws IOException {
+    PagedFileStorage storage = createStorage("data", 100);
+    for (int page = 0; page < 100; page++) {
+      storage.putInt(page * PAGE_SIZE, page);
+    }
+    for (int page = 0; page < 100; page++) {
+      assertEquals(page, storage.getInt(page * PAGE_SIZE));
+    }
+  }
+
+  private PagedFileStorage createStorage(String name, int pages) throws IOException {
+    PagedFileStorage storage = new PagedFileStorage(new File(myDir, name), myLock, PAGE_SIZE, false);
+    storage.resize(pages * PAGE_SIZE);
+    myStorages.add(storage);
+    return storage;
+  }
+
+  private static void readPages(PagedFileStorage storage, int pages) {
+    for (int page = 0; page < pages; page++) {
+      storage.getInt(page * PAGE_SIZE);
+    }
+  }
+}
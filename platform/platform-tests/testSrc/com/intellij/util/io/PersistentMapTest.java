@@ -11,6 +11,7 @@ import junit.framework.TestCase;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.intellij.util.io.StringEnumeratorTest.createRandomString;
 
@@ -210,6 +211,153 @@ public class PersistentMapTest extends TestCase {
     }
   }
 
+  public void testIncrementalCompactionOnOpening() throws Exception {
+    final String padding = StringUtil.repeat("x", 4096);
+    Map<String, String> expected = new HashMap<String, String>();
+    for (int i = 0; i < 2000; ++i) {
+      myMap.put("key" + i, i + padding);
+      expected.put("key" + i, i + padding);
+    }
+    for (int i = 0; i < 1500; ++i) {
+      myMap.remove("key" + i);
+      expected.remove("key" + i);
+    }
+    myMap.close();
+    final long sizeBefore = myDataFile.length();
+
+    myMap = new PersistentHashMap<String, String>(myFile, new EnumeratorStringDescriptor(), new EnumeratorStringDescriptor());
+    assertTrue(myMap.isCompactionInProgress());
+
+    // the map is usable while values are copied
+    for (int i = 1500; i < 2000; i += 2) {
+      myMap.put("key" + i, "modified" + i);
+      expected.put("key" + i, "modified" + i);
+    }
+    for (int i = 1501; i < 2000; i += 10) {
+      myMap.remove("key" + i);
+      expected.remove("key" + i);
+    }
+    for (int i = 2000; i < 2100; ++i) {
+      final int finalI = i;
+      myMap.appendData("key" + i, new PersistentHashMap.ValueDataAppender() {
+        @Override
+        public void append(DataOutput out) throws IOException {
+          new EnumeratorStringDescriptor().save(out, "new" + finalI);
+        }
+      });
+      expected.put("key" + i, "new" + i);
+    }
+    for (Map.Entry<String, String> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), myMap.get(entry.getKey()));
+    }
+
+    long deadline = System.currentTimeMillis() + 60000;
+    while (myMap.isCompactionInProgress() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse(myMap.isCompactionInProgress());
+    assertTrue(myDataFile.length() < sizeBefore / 2);
+
+    for (int reopen = 0; reopen < 2; reopen++) {
+      assertEquals(expected.keySet(), new HashSet<String>(myMap.getAllKeysWithExistingMapping()));
+      for (Map.Entry<String, String> entry : expected.entrySet()) {
+        assertEquals(entry.getValue(), myMap.get(entry.getKey()));
+      }
+      myMap.close();
+      myMap = new PersistentHashMap<String, String>(myFile, new EnumeratorStringDescriptor(), new EnumeratorStringDescriptor());
+    }
+  }
+
+  public void testFailureWhileSwitchingToCompactedStorage() throws Exception {
+    final String padding = StringUtil.repeat("x", 4096);
+    Map<String, String> expected = new HashMap<String, String>();
+    for (int i = 0; i < 2000; ++i) {
+      myMap.put("key" + i, i + padding);
+      expected.put("key" + i, i + padding);
+    }
+    for (int i = 0; i < 1500; ++i) {
+      myMap.remove("key" + i);
+      expected.remove("key" + i);
+    }
+    myMap.close();
+    final long sizeBefore = myDataFile.length();
+
+    final AtomicBoolean failed = new AtomicBoolean();
+    myMap = new PersistentHashMap<String, String>(myFile, new EnumeratorStringDescriptor(), new EnumeratorStringDescriptor()) {
+      @Override
+      void beforeSwitchingDataFiles() throws IOException {
+        failed.set(true);
+        throw new IOException("injected");
+      }
+    };
+    waitForCompaction(myMap);
+    assertTrue(failed.get());
+    assertEquals(sizeBefore, myDataFile.length());
+
+    // the map keeps working with the old storage
+    for (Map.Entry<String, String> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), myMap.get(entry.getKey()));
+    }
+    myMap.put("key1500", "modified");
+    expected.put("key1500", "modified");
+
+    myMap.close();
+    myMap = new PersistentHashMap<String, String>(myFile, new EnumeratorStringDescriptor(), new EnumeratorStringDescriptor());
+    waitForCompaction(myMap);
+    assertTrue(myDataFile.length() < sizeBefore / 2);
+    assertEquals(expected.keySet(), new HashSet<String>(myMap.getAllKeysWithExistingMapping()));
+    for (Map.Entry<String, String> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), myMap.get(entry.getKey()));
+    }
+  }
+
+  private static void waitForCompaction(PersistentHashMap<?, ?> map) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 60000;
+    while (map.isCompactionInProgress() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse(map.isCompactionInProgress());
+  }
+
+  public void testLeftoverReplacedStorageOnOpening() throws IOException {
+    myMap.put("key", "value");
+    myMap.close();
+    final File replacedDataFile = new File(myDataFile.getPath() + ".old");
+
+    // interrupted after the data file was replaced
+    FileUtil.writeToFile(replacedDataFile, "garbage");
+    myMap = new PersistentHashMap<String, String>(myFile, new EnumeratorStringDescriptor(), new EnumeratorStringDescriptor());
+    assertFalse(replacedDataFile.exists());
+    assertEquals("value", myMap.get("key"));
+    myMap.close();
+
+    // interrupted before the compacted data file was renamed
+    FileUtil.rename(myDataFile, replacedDataFile);
+    myMap = new PersistentHashMap<String, String>(myFile, new EnumeratorStringDescriptor(), new EnumeratorStringDescriptor());
+    assertFalse(replacedDataFile.exists());
+    assertEquals("value", myMap.get("key"));
+  }
+
+  public void testClosingDuringIncrementalCompaction() throws IOException {
+    final String padding = StringUtil.repeat("x", 4096);
+    for (int i = 0; i < 2000; ++i) {
+      myMap.put("key" + i, i + padding);
+    }
+    for (int i = 0; i < 1500; ++i) {
+      myMap.remove("key" + i);
+    }
+    myMap.close();
+
+    myMap = new PersistentHashMap<String, String>(myFile, new EnumeratorStringDescriptor(), new EnumeratorStringDescriptor());
+    myMap.close();
+    assertFalse(new File(myDataFile.getPath() + ".new").exists());
+
+    myMap = new PersistentHashMap<String, String>(myFile, new EnumeratorStringDescriptor(), new EnumeratorStringDescriptor());
+    for (int i = 1500; i < 2000; ++i) {
+      assertEquals(i + padding, myMap.get("key" + i));
+    }
+  }
+
   public void testOpeningWithCompact2() throws IOException {
     File file = FileUtil.createTempFile("persistent", "map");
 
@@ -365,7 +513,7 @@ public class PersistentMapTest extends TestCase {
     return StringEnumeratorTest.createRandomString();
   }
 
-  public void testOpeningWithCompact3() throws IOException {
+  public void testOpeningWithCompact3() throws Exception {
     if (!DO_SLOW_TEST) return;
     File file = FileUtil.createTempFile("persistent", "map");
 
@@ -403,6 +551,7 @@ public class PersistentMapTest extends TestCase {
 
       map = new PersistentHashMap<String, Integer>(file, stringDescriptor, integerDescriptor);
       if (isSmall) map.compact();
+      waitForCompaction(map);
       assertTrue(!map.makesSenseToCompact());
       System.out.println(System.currentTimeMillis() - started);
       for (int i = 0; i < stringsCount; ++i) {
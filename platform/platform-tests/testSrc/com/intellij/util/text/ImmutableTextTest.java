@@ -0,0 +1,163 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.text;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.ThrowableRunnable;
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class ImmutableTextTest extends TestCase {
+  private static final int MB = 1024 * 1024;
+
+  public void testEdits() {
+    ImmutableText text = ImmutableText.valueOf("0123456789");
+    assertEquals("01ab23456789", text.insert(2, "ab").toString());
+    assertEquals("0189", text.delete(2, 8).toString());
+    assertEquals("0x9", text.replace(1, 9, "x").toString());
+    assertEquals("", text.delete(0, 10).toString());
+    assertEquals("345", text.subSequence(3, 6).toString());
+    assertEquals("0123456789", text.toString());
+    assertSame(text, ImmutableText.valueOf(text));
+  }
+
+  public void testRandomEditsMatchStringBuilder() {
+    Random random = new Random(42);
+    StringBuilder expected = new StringBuilder(randomText(random, 10 * ImmutableText.LEAF_SIZE));
+    ImmutableText text = ImmutableText.valueOf(expected);
+    for (int i = 0; i < 10000; i++) {
+      int start = random.nextInt(expected.length() + 1);
+      int end = Math.min(expected.length(), start + random.nextInt(i % 100 == 0 ? 5000 : 10));
+      String inserted = randomText(random, random.nextInt(i % 50 == 0 ? 3000 : 3));
+      expected.replace(start, end, inserted);
+      text = text.replace(start, end, inserted);
+      if (i % 100 == 0) {
+        assertEquals(expected.toString(), text.toString());
+        int offset = random.nextInt(expected.length());
+        assertEquals(expected.charAt(offset), text.charAt(offset));
+      }
+    }
+    assertEquals(expected.toString(), text.toString());
+    for (int i = 0; i < expected.length(); i++) {
+      assertEquals(expected.charAt(i), text.charAt(i));
+    }
+  }
+
+  public void testSnapshotIsNotAffectedByEdits() {
+    ImmutableText text = ImmutableText.valueOf(randomText(new Random(0), 100000));
+    ImmutableText snapshot = text;
+    String before = snapshot.toString();
+    for (int i = 0; i < 1000; i++) {
+      text = text.insert(50000 + i, "x").delete(i, i + 1);
+    }
+    assertEquals(before, snapshot.toString());
+    assertEquals(before.length(), text.length());
+  }
+
+  public void testTypingKeepsTreeBalancedAndChunksFull() {
+    ImmutableText text = ImmutableText.valueOf(randomText(new Random(0), MB));
+    for (int i = 0; i < 100000; i++) {
+      text = text.insert(MB / 2 + i, "x");
+    }
+    int leaves = (text.length() + ImmutableText.LEAF_SIZE - 1) / ImmutableText.LEAF_SIZE;
+    // AVL trees are at most 1.44 times deeper than perfectly balanced ones; chunks which typing went through stay merged
+    assertTrue(String.valueOf(text.getDepth()), text.getDepth() <= 1.44 * log2(4 * leaves) + 2);
+  }
+
+  public void testTypingPerformance() {
+    for (final int size : new int[]{MB, 10 * MB, 100 * MB}) {
+      final ImmutableText initial = createText(size);
+      PlatformTestUtil.startPerformanceTest("typing in " + size / MB + " MB text", 200, new ThrowableRunnable() {
+        @Override
+        public void run() throws Throwable {
+          ImmutableText text = initial;
+          int caret = size / 2;
+          for (int i = 0; i < 10000; i++) {
+            text = text.insert(caret++, "x");
+            if (i % 10 == 9) {
+              text = text.delete(caret - 1, caret);
+              caret--;
+            }
+          }
+        }
+      }).cpuBound().assertTiming();
+    }
+  }
+
+  public void testBulkReplacePerformance() {
+    for (final int size : new int[]{MB, 10 * MB, 100 * MB}) {
+      final ImmutableText initial = createText(size);
+      PlatformTestUtil.startPerformanceTest("bulk replace in " + size / MB + " MB text", 200, new ThrowableRunnable() {
+        @Override
+        public void run() throws Throwable {
+          ImmutableText text = initial;
+          int step = size / 10000;
+          for (int offset = 0; offset + 10 < text.length(); offset += step) {
+            text = text.replace(offset, offset + 10, "    ");
+          }
+        }
+      }).cpuBound().assertTiming();
+    }
+  }
+
+  public void testSnapshotReadPerformance() {
+    for (final int size : new int[]{MB, 10 * MB, 100 * MB}) {
+      final ImmutableText initial = createText(size);
+      PlatformTestUtil.startPerformanceTest("snapshots of " + size / MB + " MB text", 300, new ThrowableRunnable() {
+        @Override
+        public void run() throws Throwable {
+          // after each keystroke a background reader takes the text and scans a screen of it around the caret
+          ImmutableText text = initial;
+          int caret = size / 2;
+          int sum = 0;
+          for (int i = 0; i < 10000; i++) {
+            text = text.insert(caret++, "x");
+            CharSequence snapshot = text;
+            for (int offset = caret - 2000; offset < caret + 2000; offset++) {
+              sum += snapshot.charAt(offset);
+            }
+          }
+          assertTrue(sum != 0);
+        }
+      }).cpuBound().assertTiming();
+    }
+  }
+
+  /**
+   * Repeats 1 MB of text, so that big texts share their chunks and don't take memory
+   */
+  private static ImmutableText createText(int size) {
+    ImmutableText block = ImmutableText.valueOf(randomText(new Random(size), Math.min(size, MB)));
+    ImmutableText text = ImmutableText.empty();
+    while (text.length() < size) {
+      text = text.concat(block);
+    }
+    return text;
+  }
+
+  private static String randomText(Random random, int length) {
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = i % 60 == 59 ? '\n' : (char)('a' + random.nextInt(26));
+    }
+    return new String(chars);
+  }
+
+  private static double log2(int value) {
+    return Math.log(value) / Math.log(2);
+  }
+}
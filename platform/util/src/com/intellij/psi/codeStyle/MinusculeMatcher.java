@@ -110,7 +110,10 @@ public class MinusculeMatcher implements Matcher {
     return false;
   }
 
-  private static FList<TextRange> prependRange(@NotNull FList<TextRange> ranges, int from, int length) {
+  private static FList<TextRange> prependRange(@NotNull FList<TextRange> ranges, int from, int length, MatchingState matchingState) {
+    if (!matchingState.myBuildFragments) {
+      return ranges;
+    }
     TextRange head = ranges.getHead();
     if (head != null && head.getStartOffset() == from + length) {
       return ranges.getTail().prepend(new TextRange(from, head.getEndOffset()));
@@ -193,13 +196,83 @@ public class MinusculeMatcher implements Matcher {
     // optimisation: name too short for this pattern
     if (!myHasWildCards && name.length() < myPattern.length) return false;
 
-    return matchingFragments(name) != null;
+    // optimisation: some pattern character doesn't occur in the name, or not in the pattern order
+    if (!containsPatternCharacters(name)) return false;
+
+    return match(name, false) != null;
+  }
+
+  /**
+   * A cheap allocation-free necessary condition for matching: every pattern character except wildcards should match
+   * some name character, in the same order
+   */
+  private boolean containsPatternCharacters(@NotNull String name) {
+    int nameIndex = 0;
+    for (int i = 0; i < myPattern.length; i++) {
+      if (isWildcard(i)) continue;
+      char p = myPattern[i];
+      while (true) {
+        if (nameIndex == name.length()) return false;
+        char c = name.charAt(nameIndex++);
+        if (c == p || c == toLowerCase[i] || c == toUpperCase[i] ||
+            !(IOUtil.isAscii(c) && IOUtil.isAscii(p)) && StringUtil.charsEqualIgnoreCase(c, p)) {
+          break;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return true if every name matching this matcher also matches the given one. That's the case when this pattern is the other one
+   * with some letters or digits typed at its end, which don't change the matching rules, so the names matched by the other matcher
+   * can be filtered instead of all the names. Leading and trailing stars must be the same, e.g. "*foob*" narrows "*foo*".
+   * Trailing stars are ignored in the comparison, unless the other pattern ends with a middle match shorter than 3 characters,
+   * which then has to match at a word start while a longer middle match doesn't (see {@link #doMatchFragments}).
+   */
+  public boolean isNarrowingOf(@NotNull MinusculeMatcher other) {
+    int length = other.getLengthWithoutTrailingStars();
+    int myLength = getLengthWithoutTrailingStars();
+    if (myOptions != other.myOptions || length > myLength || other.isWildcard(length - 1)) return false;
+    if (myHasHumps != other.myHasHumps || myHasSeparators != other.myHasSeparators || myHasDots != other.myHasDots) return false;
+
+    // the leading wildcards must be the same and the other pattern must have something after them
+    int start = 0;
+    while (other.isWildcard(start)) start++;
+    if (start == length) return false;
+
+    if (length < other.myPattern.length) {
+      int lastWildcard = length - 1;
+      while (lastWildcard >= 0 && !other.isWildcard(lastWildcard)) lastWildcard--;
+      if (other.isPatternChar(lastWildcard, '*') && length - lastWildcard - 1 < 3) return false;
+    }
+
+    for (int i = 0; i < myLength; i++) {
+      if (i < length ? myPattern[i] != other.myPattern[i] : !Character.isLetterOrDigit(myPattern[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int getLengthWithoutTrailingStars() {
+    int length = myPattern.length;
+    while (isPatternChar(length - 1, '*')) length--;
+    return length;
   }
 
   @Nullable
   public FList<TextRange> matchingFragments(@NotNull String name) {
+    return match(name, true);
+  }
+
+  /**
+   * @param buildFragments if false, returns an empty list for matching names, so that checking a name for a match doesn't allocate
+   */
+  @Nullable
+  private FList<TextRange> match(@NotNull String name, boolean buildFragments) {
     MatchingState state = myMatchingState.get();
-    state.initializeState(name);
+    state.initializeState(name, buildFragments);
     FList<TextRange> result = matchWildcards(name, 0, 0, state);
     state.releaseState();
     return result;
@@ -336,7 +409,7 @@ public class MinusculeMatcher implements Matcher {
           int nextWordStart = indexOfWordStart(name, patternIndex + i, nameIndex + i, matchingState.isAsciiName);
           FList<TextRange> ranges = matchWildcards(name, patternIndex + i, nextWordStart, matchingState);
           if (ranges != null) {
-            return prependRange(ranges, nameIndex, i);
+            return prependRange(ranges, nameIndex, i, matchingState);
           }
           // at least three consecutive uppercase letters shouldn't match lowercase
           if (myHasHumps && i > 1 && isUpperCase[patternIndex + i - 1] && isUpperCase[patternIndex + i - 2]) {
@@ -350,7 +423,8 @@ public class MinusculeMatcher implements Matcher {
     // we've found the longest fragment matching pattern and name
 
     if (patternIndex + i >= myPattern.length) {
-      return FList.<TextRange>emptyList().prepend(TextRange.from(nameIndex, i));
+      FList<TextRange> ranges = FList.emptyList();
+      return matchingState.myBuildFragments ? ranges.prepend(TextRange.from(nameIndex, i)) : ranges;
     }
 
     // try to match the remainder of pattern with the remainder of name
@@ -360,7 +434,7 @@ public class MinusculeMatcher implements Matcher {
                                 matchWildcards(name, patternIndex + i, nameIndex + i, matchingState) :
                                 matchSkippingWords(name, patternIndex + i, nameIndex + i, false, matchingState);
       if (ranges != null) {
-        return prependRange(ranges, nameIndex, i);
+        return prependRange(ranges, nameIndex, i, matchingState);
       }
       i--;
     }
@@ -445,11 +519,13 @@ public class MinusculeMatcher implements Matcher {
     private boolean myBusy;
     private int myNameLength;
     private boolean isAsciiName;
+    private boolean myBuildFragments;
     private final BitSet myTable = new BitSet();
 
-    void initializeState(String name) {
+    void initializeState(String name, boolean buildFragments) {
       assert !myBusy;
       myBusy = true;
+      myBuildFragments = buildFragments;
       myNameLength = name.length();
       isAsciiName = IOUtil.isAscii(name);
       myTable.clear();
@@ -17,6 +17,7 @@ package com.intellij.util.containers.hash;
 
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
@@ -119,6 +120,15 @@ public class LinkedHashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>
     assert val != null : "LinkedHashMap.Entry was not removed. Possibly mutable key: " + back.key;
   }
 
+  /**
+   * @return the key of the least recently accessed entry, or null if the map is empty
+   */
+  @Nullable
+  public K getEldestKey() {
+    final Entry<K, V> back = this.back;
+    return back != null ? back.key : null;
+  }
+
   public boolean containsKey(final Object key) {
     return get(key) != null;
   }
@@ -26,6 +26,7 @@ public abstract class ByteBufferWrapper {
   protected final long myPosition;
   protected final long myLength;
   protected volatile boolean myDirty;
+  int myLoadStamp; // used by PagedFileStorage cache
 
   protected ByteBufferWrapper(final File file, final long offset, final long length) {
     myFile = file;
@@ -50,6 +50,7 @@ class IntToIntBtree {
   private static final boolean hasCachedMappings = false;
   private TIntIntHashMap myCachedMappings;
   private final int myCachedMappingsSize;
+  private boolean myRootPagePinned; // the root moves to a new page when it is split
 
   public IntToIntBtree(int _pageSize, File file, PagedFileStorage.StorageLockContext storageLockContext, boolean initial) throws IOException {
     pageSize = _pageSize;
@@ -251,6 +252,11 @@ class IntToIntBtree {
     storage.force();
   }
 
+  void pinRootPage() {
+    myRootPagePinned = true;
+    storage.getPagedFileStorage().pinPageAt(root.address);
+  }
+
   static void myAssert(boolean b) {
     if (!b) {
       myAssert("breakpoint place" != "do not remove");
@@ -512,6 +518,33 @@ class IntToIntBtree {
       return true;
     }
 
+    boolean processMappings(int fromKey, int[] processed, KeyValueProcessor processor) throws IOException {
+      assert isIndexLeaf();
+
+      if (isHashedLeaf()) {
+        int offset = myAddressInBuffer + indexToOffset(0);
+
+        for(int i = 0; i < btree.hashPageCapacity; ++i) {
+          int key = myBuffer.getInt(offset + KEY_OFFSET);
+          if (key != HASH_FREE && key >= fromKey) {
+            processed[0]++;
+            if(!processor.process(key,  myBuffer.getInt(offset))) return false;
+          }
+          offset += INTERIOR_SIZE;
+        }
+      } else {
+        final int childrenCount = getChildrenCount();
+        for(int i = 0; i < childrenCount; ++i) {
+          final int key = keyAt(i);
+          if (key >= fromKey) {
+            processed[0]++;
+            if (!processor.process(key, addressAt(i))) return false;
+          }
+        }
+      }
+      return true;
+    }
+
     public void initTraversal(int address) {
       myHasFullPagesAlongPath = false;
       setAddress(address);
@@ -714,6 +747,9 @@ class IntToIntBtree {
         }
         btree.root.setAddress(newRootAddress);
         parentAddress = newRootAddress;
+        if (btree.myRootPagePinned) {
+          btree.pinRootPage();
+        }
 
         btree.root.setChildrenCount((short)1); // btree.root becomes dirty
         btree.root.setKeyAt(0, medianKey);
@@ -1102,6 +1138,56 @@ class IntToIntBtree {
     return processLeafPages(root, processor);
   }
 
+  /**
+   * Processes the mappings with keys not less than {@code fromKey} leaf page by leaf page in the key order, the zero key is processed
+   * when starting from {@link Integer#MIN_VALUE}. Stops at the end of the leaf page on which {@code limit} mappings have been processed.
+   *
+   * @return the key to continue from, or {@link Long#MAX_VALUE} if there are no more mappings or the processor has stopped the processing
+   */
+  public long processMappings(int fromKey, int limit, @NotNull KeyValueProcessor processor) throws IOException {
+    flushCachedMappings();
+    root.syncWithStore();
+
+    final int[] processed = new int[1];
+    if (fromKey == Integer.MIN_VALUE && hasZeroKey) {
+      if (!processor.process(0, zeroKeyValue)) return Long.MAX_VALUE;
+      processed[0]++;
+    }
+    final long nextKey = processLeafPages(root, fromKey, Long.MAX_VALUE, limit, processed, processor);
+    return nextKey == CONTINUE_PROCESSING ? Long.MAX_VALUE : nextKey;
+  }
+
+  private static final long CONTINUE_PROCESSING = Long.MIN_VALUE;
+
+  // children of an interior node cover the keys from its previous key inclusive to its key exclusive
+  private long processLeafPages(@NotNull BtreeIndexNodeView node, int fromKey, long upperKey, int limit, @NotNull int[] processed,
+                                @NotNull KeyValueProcessor processor) throws IOException {
+    if (node.isIndexLeaf()) {
+      if (!node.processMappings(fromKey, processed, processor)) return Long.MAX_VALUE;
+      return processed[0] >= limit ? upperKey : CONTINUE_PROCESSING;
+    }
+
+    // Copy children addresses and keys first to avoid node's ByteBuffer invalidation
+    final int childrenCount = node.getChildrenCount();
+    final int[] childrenAddresses = new int[childrenCount + 1];
+    final int[] keys = new int[childrenCount];
+
+    for(int i = 0; i <= childrenCount; ++i) {
+      childrenAddresses[i] = -node.addressAt(i);
+      if (i < childrenCount) keys[i] = node.keyAt(i);
+    }
+
+    BtreeIndexNodeView child = new BtreeIndexNodeView(this);
+    for(int i = 0; i <= childrenCount; ++i) {
+      final long childUpperKey = i < childrenCount ? keys[i] : upperKey;
+      if (childUpperKey <= fromKey) continue;
+      child.setAddress(childrenAddresses[i]);
+      final long nextKey = processLeafPages(child, fromKey, childUpperKey, limit, processed, processor);
+      if (nextKey != CONTINUE_PROCESSING) return nextKey;
+    }
+    return CONTINUE_PROCESSING;
+  }
+
   private boolean processLeafPages(@NotNull BtreeIndexNodeView node, @NotNull KeyValueProcessor processor) throws IOException {
     if (node.isIndexLeaf()) {
       return node.processMappings(processor);
@@ -20,10 +20,12 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.util.SystemProperties;
 import com.intellij.util.containers.hash.LinkedHashMap;
+import gnu.trove.TIntObjectHashMap;
 import jsr166e.SequenceLock;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 import sun.misc.VM;
 
 import java.io.File;
@@ -47,6 +49,8 @@ public class PagedFileStorage implements Forceable {
   private final static int UPPER_LIMIT;
   public final static int BUFFER_SIZE;
   private static final int UNKNOWN_PAGE = -1;
+  private static final int PROTECTED_SHARE = Math.min(90, Math.max(0, SystemProperties.getIntProperty("idea.paged.storage.protected.share", 75)));
+  private static final long PINNED_LIMIT;
 
   static {
     final int lower = 100;
@@ -56,10 +60,12 @@ public class PagedFileStorage implements Forceable {
     final long max = VM.maxDirectMemory() - 2 * BUFFER_SIZE;
     LOWER_LIMIT = (int)Math.min(lower * MB, max);
     UPPER_LIMIT = (int)Math.min(Math.max(LOWER_LIMIT, SystemProperties.getIntProperty("idea.max.paged.storage.cache", upper) * MB), max);
+    PINNED_LIMIT = (long)UPPER_LIMIT / 100 * Math.min(50, Math.max(0, SystemProperties.getIntProperty("idea.paged.storage.pinned.share", 10)));
 
     LOG.info("lower=" + (LOWER_LIMIT / MB) +
              "; upper=" + (UPPER_LIMIT / MB) +
              "; buffer=" + (BUFFER_SIZE / MB) +
+             "; pinned=" + (PINNED_LIMIT / MB) +
              "; max=" + max
             );
   }
@@ -78,6 +84,8 @@ public class PagedFileStorage implements Forceable {
   private int myLastChangeCount2;
   private int myLastChangeCount3;
   private int myStorageIndex;
+  private long myCachedSize; // guarded by StorageLock.mySegmentsAccessLock
+  private volatile long myCacheQuota;
 
   private static final int MAX_PAGES_COUNT = 0xFFFF;
   private static final int MAX_LIVE_STORAGES_COUNT = 0xFFFF;
@@ -122,6 +130,30 @@ public class PagedFileStorage implements Forceable {
     return myFile;
   }
 
+  /**
+   * Limits the size of mapped pages of this storage, when it is exceeded the storage replaces its own pages instead of evicting
+   * pages of other storages. Zero means no quota.
+   */
+  public void setCacheQuota(long bytes) {
+    myCacheQuota = bytes;
+  }
+
+  /**
+   * Keeps the page containing given address mapped until the storage is closed, should be used for small number of hot pages like
+   * headers and roots of search structures. Pinned pages of all storages are limited by <code>idea.paged.storage.pinned.share</code>
+   * percents of the cache.
+   *
+   * @return false if the pinned pages limit is reached
+   */
+  public boolean pinPageAt(int addr) {
+    if (myStorageIndex == -1) {
+      myStorageIndex = myStorageLockContext.myStorageLock.registerPagedFileStorage(this);
+    }
+    final int page = addr / myPageSize;
+    assert page >= 0 && page <= MAX_PAGES_COUNT:page;
+    return myStorageLockContext.myStorageLock.pin(myStorageIndex | page, myPageSize);
+  }
+
   public void putInt(int addr, int value) {
     if (myValuesAreBufferAligned) {
       int page = addr / myPageSize;
@@ -279,6 +311,7 @@ public class PagedFileStorage implements Forceable {
     }
     finally {
       unmapAll();
+      myStorageLockContext.myStorageLock.unpinPagesForOwner(myStorageIndex);
       myStorageLockContext.myStorageLock.myIndex2Storage.remove(myStorageIndex);
       myStorageIndex = -1;
     }
@@ -439,8 +472,13 @@ public class PagedFileStorage implements Forceable {
     public final StorageLockContext myDefaultStorageLockContext;
     private final ConcurrentHashMap<Integer, PagedFileStorage> myIndex2Storage = new ConcurrentHashMap<Integer, PagedFileStorage>();
 
-    private final LinkedHashMap<Integer, ByteBufferWrapper> mySegments;
-    private final SequenceLock mySegmentsAccessLock = new SequenceLock(); // protects map operations of mySegments, needed for LRU order, mySize and myMappingChangeCount
+    // Segments are cached in 2Q manner: newly mapped segments are probationary and are evicted first, segments accessed again
+    // after some other segment was mapped are protected, so a scan through a big storage doesn't evict the ones actually used
+    private final SegmentQueue myProbationarySegments = new SegmentQueue();
+    private final SegmentQueue myProtectedSegments = new SegmentQueue();
+    private final Map<Integer, ByteBufferWrapper> myPinnedSegments = new HashMap<Integer, ByteBufferWrapper>();
+    private final Map<Integer, Integer> myPinnedPages = new HashMap<Integer, Integer>(); // page key -> reserved size
+    private final SequenceLock mySegmentsAccessLock = new SequenceLock(); // protects map operations of segments and pins, needed for LRU order, sizes, counters and myMappingChangeCount
     // todo avoid locking for access
 
     private final SequenceLock mySegmentsAllocationLock = new SequenceLock();
@@ -448,6 +486,12 @@ public class PagedFileStorage implements Forceable {
     private volatile long mySize;
     private volatile long mySizeLimit;
     private volatile int myMappingChangeCount;
+    private long myProtectedSize;
+    private long myPinnedSize;
+    private int myLoadCount;
+    private volatile long myHits;
+    private volatile long myMisses;
+    private volatile long myEvictions;
 
     public StorageLock() {
       this(true);
@@ -457,25 +501,6 @@ public class PagedFileStorage implements Forceable {
       myDefaultStorageLockContext = new StorageLockContext(this, checkThreadAccess);
 
       mySizeLimit = UPPER_LIMIT;
-      mySegments = new LinkedHashMap<Integer, ByteBufferWrapper>(10, 0.75f) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<Integer, ByteBufferWrapper> eldest) {
-          return mySize > mySizeLimit;
-        }
-
-        @Nullable
-        @Override
-        public ByteBufferWrapper remove(Object key) {
-          // this method can be called after removeEldestEntry
-          ByteBufferWrapper wrapper = super.remove(key);
-          if (wrapper != null) {
-            ++myMappingChangeCount;
-            mySegmentsToRemove.offer(wrapper);
-            mySize -= wrapper.myLength;
-          }
-          return wrapper;
-        }
-      };
     }
 
     public void lock() {
@@ -486,6 +511,37 @@ public class PagedFileStorage implements Forceable {
       myDefaultStorageLockContext.myLock.unlock();
     }
 
+    public long getHitCount() {
+      return myHits;
+    }
+
+    public long getMissCount() {
+      return myMisses;
+    }
+
+    public long getEvictionCount() {
+      return myEvictions;
+    }
+
+    public long getCachedSize() {
+      return mySize;
+    }
+
+    @TestOnly
+    void setSizeLimit(long sizeLimit) {
+      mySizeLimit = sizeLimit;
+    }
+
+    public long getPinnedSize() {
+      mySegmentsAccessLock.lock();
+      try {
+        return myPinnedSize;
+      }
+      finally {
+        mySegmentsAccessLock.unlock();
+      }
+    }
+
     private int registerPagedFileStorage(PagedFileStorage storage) {
       int registered = myIndex2Storage.size();
       assert registered <= MAX_LIVE_STORAGES_COUNT;
@@ -506,8 +562,11 @@ public class PagedFileStorage implements Forceable {
       ByteBufferWrapper wrapper;
       try {         // fast path
         mySegmentsAccessLock.lock();
-        wrapper = mySegments.get(key);
-        if (wrapper != null) return wrapper;
+        wrapper = lookup(key);
+        if (wrapper != null) {
+          ++myHits;
+          return wrapper;
+        }
       }
       finally {
         mySegmentsAccessLock.unlock();
@@ -518,8 +577,11 @@ public class PagedFileStorage implements Forceable {
         // check if anybody cared about our segment
         mySegmentsAccessLock.lock();
         try {
-          wrapper = mySegments.get(key);
-          if (wrapper != null) return wrapper;
+          wrapper = lookup(key);
+          if (wrapper != null) {
+            ++myHits;
+            return wrapper;
+          }
         } finally {
           mySegmentsAccessLock.unlock();
         }
@@ -535,10 +597,23 @@ public class PagedFileStorage implements Forceable {
           }
         }
 
+        final PagedFileStorage owner = getRegisteredPagedFileStorageByIndex(key & FILE_INDEX_MASK);
         mySegmentsAccessLock.lock();
         try {
-          mySegments.put(key, wrapper);
+          ++myMisses;
+          wrapper.myLoadStamp = ++myLoadCount;
+          if (myPinnedPages.containsKey(key)) {
+            myPinnedSegments.put(key, wrapper);
+          }
+          else {
+            myProbationarySegments.put(key, wrapper);
+          }
           mySize += wrapper.myLength;
+          if (owner != null) {
+            owner.myCachedSize += wrapper.myLength;
+            // storage over its quota replaces its own segments
+            while (owner.myCacheQuota > 0 && owner.myCachedSize > owner.myCacheQuota && evictEldest(key & FILE_INDEX_MASK, key)) ;
+          }
         }
         finally {
           mySegmentsAccessLock.unlock();
@@ -553,6 +628,104 @@ public class PagedFileStorage implements Forceable {
       }
     }
 
+    @Nullable
+    private ByteBufferWrapper lookup(Integer key) {
+      assert mySegmentsAccessLock.isHeldByCurrentThread();
+
+      ByteBufferWrapper wrapper = myPinnedSegments.get(key);
+      if (wrapper != null) return wrapper;
+      wrapper = myProtectedSegments.get(key);
+      if (wrapper != null) return wrapper;
+      wrapper = myProbationarySegments.get(key);
+      if (wrapper != null && wrapper.myLoadStamp != myLoadCount) {
+        // accessed again after another segment was mapped, so it is not just a part of a scan
+        myProbationarySegments.remove(key);
+        myProtectedSegments.put(key, wrapper);
+        myProtectedSize += wrapper.myLength;
+        final long protectedLimit = mySizeLimit / 100 * PROTECTED_SHARE;
+        while (myProtectedSize > protectedLimit && myProtectedSegments.size() > 1) {
+          final Integer eldest = myProtectedSegments.getEldestKey(-1);
+          final ByteBufferWrapper demoted = myProtectedSegments.remove(eldest);
+          myProtectedSize -= demoted.myLength;
+          myProbationarySegments.put(eldest, demoted);
+        }
+      }
+      return wrapper;
+    }
+
+    private boolean evictEldest(int ownerIndex, @Nullable Integer except) {
+      assert mySegmentsAccessLock.isHeldByCurrentThread();
+
+      // the excepted segment is just mapped, so it is probationary and it is the eldest one only if it's the only one of its owner
+      Integer eldest = myProbationarySegments.getEldestKey(ownerIndex);
+      if (eldest == null || eldest.equals(except)) eldest = myProtectedSegments.getEldestKey(ownerIndex);
+      if (eldest == null || eldest.equals(except)) return false;
+      removeSegment(eldest);
+      ++myEvictions;
+      return true;
+    }
+
+    @Nullable
+    private ByteBufferWrapper removeSegment(Integer key) {
+      assert mySegmentsAccessLock.isHeldByCurrentThread();
+
+      ByteBufferWrapper wrapper = myProbationarySegments.remove(key);
+      if (wrapper == null) {
+        wrapper = myProtectedSegments.remove(key);
+        if (wrapper != null) myProtectedSize -= wrapper.myLength;
+      }
+      if (wrapper == null) {
+        wrapper = myPinnedSegments.remove(key);
+      }
+      if (wrapper != null) {
+        ++myMappingChangeCount;
+        mySegmentsToRemove.offer(wrapper);
+        mySize -= wrapper.myLength;
+        final PagedFileStorage owner = getRegisteredPagedFileStorageByIndex(key & FILE_INDEX_MASK);
+        if (owner != null) owner.myCachedSize -= wrapper.myLength;
+      }
+      return wrapper;
+    }
+
+    private boolean pin(Integer key, int size) {
+      mySegmentsAccessLock.lock();
+      try {
+        if (myPinnedPages.containsKey(key)) return true;
+        if (myPinnedSize + size > PINNED_LIMIT) return false;
+        myPinnedPages.put(key, size);
+        myPinnedSize += size;
+
+        ByteBufferWrapper wrapper = myProbationarySegments.remove(key);
+        if (wrapper == null) {
+          wrapper = myProtectedSegments.remove(key);
+          if (wrapper != null) myProtectedSize -= wrapper.myLength;
+        }
+        if (wrapper != null) myPinnedSegments.put(key, wrapper);
+        return true;
+      }
+      finally {
+        mySegmentsAccessLock.unlock();
+      }
+    }
+
+    private void unpinPagesForOwner(int index) {
+      mySegmentsAccessLock.lock();
+      try {
+        for (Iterator<Map.Entry<Integer, Integer>> iterator = myPinnedPages.entrySet().iterator(); iterator.hasNext(); ) {
+          Map.Entry<Integer, Integer> entry = iterator.next();
+          if ((entry.getKey() & FILE_INDEX_MASK) == index) {
+            myPinnedSize -= entry.getValue();
+            iterator.remove();
+            ByteBufferWrapper wrapper = myPinnedSegments.remove(entry.getKey());
+            if (wrapper != null) myProbationarySegments.put(entry.getKey(), wrapper);
+          }
+        }
+      }
+      finally {
+        mySegmentsAccessLock.unlock();
+      }
+    }
+
     private void disposeRemovedSegments() {
       if (mySegmentsToRemove.isEmpty()) return;
 
@@ -571,7 +744,7 @@ public class PagedFileStorage implements Forceable {
         mySegmentsAccessLock.lock();
         while (mySize > sizeLimit) {
           // we still have to drop something
-          mySegments.doRemoveEldestEntry();
+          if (!evictEldest(-1, null)) break; // only pinned segments are left
         }
       } finally {
         mySegmentsAccessLock.unlock();
@@ -615,7 +788,8 @@ public class PagedFileStorage implements Forceable {
           long newSize = mySize - owner.myPageSize;
           if (newSize < 0) {
             LOG.info("Currently allocated:"+mySize);
-            LOG.info("Mapping failed due to OOME. Current buffers: " + mySegments);
+            LOG.info("Mapping failed due to OOME. Current buffers: " + myProbationarySegments + ", " + myProtectedSegments + ", " +
+                     myPinnedSegments);
             LOG.info(oome);
             try {
               Class<?> aClass = Class.forName("java.nio.Bits");
@@ -649,17 +823,20 @@ public class PagedFileStorage implements Forceable {
       try {
         checkThreadAccess(storageLockContext);
         Map<Integer, ByteBufferWrapper> mineBuffers = null;
-        for (Map.Entry<Integer, ByteBufferWrapper> entry : mySegments.entrySet()) {
-          if ((entry.getKey() & FILE_INDEX_MASK) == index) {
-            if (mineBuffers == null) {
-              mineBuffers = new TreeMap<Integer, ByteBufferWrapper>(new Comparator<Integer>() {
-                @Override
-                public int compare(Integer o1, Integer o2) {
-                  return o1 - o2;
-                }
-              });
+        for (Map<Integer, ByteBufferWrapper> segments : Arrays.asList(myProbationarySegments.getOwnerSegments(index),
+                                                                      myProtectedSegments.getOwnerSegments(index), myPinnedSegments)) {
+          for (Map.Entry<Integer, ByteBufferWrapper> entry : segments.entrySet()) {
+            if ((entry.getKey() & FILE_INDEX_MASK) == index) {
+              if (mineBuffers == null) {
+                mineBuffers = new TreeMap<Integer, ByteBufferWrapper>(new Comparator<Integer>() {
+                  @Override
+                  public int compare(Integer o1, Integer o2) {
+                    return o1 - o2;
+                  }
+                });
+              }
+              mineBuffers.put(entry.getKey(), entry.getValue());
             }
-            mineBuffers.put(entry.getKey(), entry.getValue());
           }
         }
         return mineBuffers;
@@ -676,7 +853,7 @@ public class PagedFileStorage implements Forceable {
         mySegmentsAccessLock.lock();
         try {
           for (Integer key : buffers.keySet()) {
-            mySegments.remove(key);
+            removeSegment(key);
           }
         }
         finally {
@@ -711,7 +888,7 @@ public class PagedFileStorage implements Forceable {
     public void invalidateBuffer(int page) {
       mySegmentsAccessLock.lock();
       try {
-        mySegments.remove(page);
+        removeSegment(page);
       } finally {
         mySegmentsAccessLock.unlock();
       }
@@ -723,6 +900,69 @@ public class PagedFileStorage implements Forceable {
         mySegmentsAllocationLock.unlock();
       }
     }
+
+    /**
+     * Segments in the order of access, both all together and by owner storage, so the least recently used segment is found without a scan
+     */
+    private static class SegmentQueue {
+      private final LinkedHashMap<Integer, ByteBufferWrapper> mySegments = new LinkedHashMap<Integer, ByteBufferWrapper>(10, 0.75f);
+      private final TIntObjectHashMap<LinkedHashMap<Integer, ByteBufferWrapper>> myOwnerSegments =
+        new TIntObjectHashMap<LinkedHashMap<Integer, ByteBufferWrapper>>();
+
+      @Nullable
+      private ByteBufferWrapper get(Integer key) {
+        final ByteBufferWrapper wrapper = mySegments.get(key);
+        if (wrapper != null) {
+          myOwnerSegments.get(key & FILE_INDEX_MASK).get(key); // updates the access order
+        }
+        return wrapper;
+      }
+
+      private void put(Integer key, ByteBufferWrapper wrapper) {
+        mySegments.put(key, wrapper);
+        LinkedHashMap<Integer, ByteBufferWrapper> ownerSegments = myOwnerSegments.get(key & FILE_INDEX_MASK);
+        if (ownerSegments == null) {
+          ownerSegments = new LinkedHashMap<Integer, ByteBufferWrapper>(10, 0.75f);
+          myOwnerSegments.put(key & FILE_INDEX_MASK, ownerSegments);
+        }
+        ownerSegments.put(key, wrapper);
+      }
+
+      @Nullable
+      private ByteBufferWrapper remove(Integer key) {
+        final ByteBufferWrapper wrapper = mySegments.remove(key);
+        if (wrapper != null) {
+          final LinkedHashMap<Integer, ByteBufferWrapper> ownerSegments = myOwnerSegments.get(key & FILE_INDEX_MASK);
+          ownerSegments.remove(key);
+          if (ownerSegments.isEmpty()) myOwnerSegments.remove(key & FILE_INDEX_MASK);
+        }
+        return wrapper;
+      }
+
+      /**
+       * @return least recently used key of the segments belonging to the given owner (any owner if the index is -1)
+       */
+      @Nullable
+      private Integer getEldestKey(int ownerIndex) {
+        final LinkedHashMap<Integer, ByteBufferWrapper> segments = ownerIndex == -1 ? mySegments : myOwnerSegments.get(ownerIndex);
+        return segments != null ? segments.getEldestKey() : null;
+      }
+
+      @NotNull
+      private Map<Integer, ByteBufferWrapper> getOwnerSegments(int ownerIndex) {
+        final LinkedHashMap<Integer, ByteBufferWrapper> segments = myOwnerSegments.get(ownerIndex);
+        return segments != null ? segments : Collections.<Integer, ByteBufferWrapper>emptyMap();
+      }
+
+      private int size() {
+        return mySegments.size();
+      }
+
+      @Override
+      public String toString() {
+        return mySegments.toString();
+      }
+    }
   }
 
   public static class StorageLockContext {
@@ -163,6 +163,12 @@ public class PersistentBTreeEnumerator<Data> extends PersistentEnumeratorBase<Da
     storeVars(true);
   }
 
+  @Override
+  public void pinRootPages() {
+    super.pinRootPages();
+    btree.pinRootPage();
+  }
+
   @Override
   protected void doClose() throws IOException {
     try {
@@ -226,6 +232,42 @@ public class PersistentBTreeEnumerator<Data> extends PersistentEnumeratorBase<Da
     }
   }
 
+  /**
+   * Positions are hash codes of the keys shifted to non-negative values, they are processed in the order of the btree
+   */
+  @Override
+  public long traverseRecords(long position, int limit, @NotNull final RecordsProcessor p) throws IOException {
+    try {
+      lockStorage();
+      final long nextKey = btree.processMappings((int)(position + Integer.MIN_VALUE), limit, new IntToIntBtree.KeyValueProcessor() {
+        public boolean process(int key, int value) throws IOException {
+          p.setCurrentKey(key);
+
+          if (value > 0) {
+            if (!p.process(value)) return false;
+          }
+          else {
+            int rec = -value;
+            while (rec != 0) {
+              int id = myStorage.getInt(rec);
+              if (!p.process(id)) return false;
+              rec = myStorage.getInt(rec + COLLISION_OFFSET);
+            }
+          }
+          return true;
+        }
+      });
+      return nextKey == Long.MAX_VALUE ? -1 : nextKey - Integer.MIN_VALUE;
+    }
+    catch (IllegalStateException e) {
+      CorruptedException corruptedException = new CorruptedException(myFile);
+      corruptedException.initCause(e);
+      throw corruptedException;
+    } finally {
+      unlockStorage();
+    }
+  }
+
   @Override
   protected int indexToAddr(int idx) {
     if (myExternalKeysNoMapping) {
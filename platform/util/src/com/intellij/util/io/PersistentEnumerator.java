@@ -69,6 +69,29 @@ public class PersistentEnumerator<Data> extends PersistentEnumeratorBase<Data> {
     return traverseRecords(FIRST_VECTOR_OFFSET, SLOTS_PER_FIRST_VECTOR, p);
   }
 
+  /**
+   * Positions are slots of the first vector: the slot of a record is determined by its hash code, so it doesn't change when vectors
+   * are split
+   */
+  @Override
+  public synchronized long traverseRecords(long position, int limit, @NotNull final RecordsProcessor p) throws IOException {
+    final int[] processed = new int[1];
+    final RecordsProcessor counter = new RecordsProcessor() {
+      @Override
+      public boolean process(int record) throws IOException {
+        processed[0]++;
+        return p.process(record);
+      }
+    };
+    for (int slot = (int)position; slot < SLOTS_PER_FIRST_VECTOR; slot++) {
+      if (!traverseRecords(FIRST_VECTOR_OFFSET + slot * 4, 1, counter)) return -1;
+      if (processed[0] >= limit) {
+        return slot + 1 < SLOTS_PER_FIRST_VECTOR ? slot + 1 : -1;
+      }
+    }
+    return -1;
+  }
+
   private boolean traverseRecords(int vectorStart, int slotsCount, @NotNull RecordsProcessor p) throws IOException {
     lockStorage();
     try {
@@ -366,6 +366,17 @@ abstract class PersistentEnumeratorBase<Data> implements Forceable, Closeable {
 
   public abstract boolean traverseAllRecords(RecordsProcessor p) throws IOException;
 
+  /**
+   * Traverses the records by parts, so that the storage isn't locked during the whole traversal. The traversal starts at position 0,
+   * each call processes about {@code limit} records and returns the position to continue from, or -1 if there are no more records.
+   * A record which exists during the whole traversal is processed exactly once even if other records are added or removed between
+   * the calls. The traversal ends when the processor returns false.
+   */
+  public long traverseRecords(long position, int limit, @NotNull RecordsProcessor p) throws IOException {
+    traverseAllRecords(p);
+    return -1;
+  }
+
   protected abstract int enumerateImpl(final Data value, final boolean onlyCheckForExisting, boolean saveNewValue) throws IOException;
 
   protected boolean isKeyAtIndex(final Data value, final int idx) throws IOException {
@@ -630,6 +641,13 @@ abstract class PersistentEnumeratorBase<Data> implements Forceable, Closeable {
     myStorage.force();
   }
 
+  /**
+   * Keeps the pages with the header and the root of the enumerator mapped, see {@link PagedFileStorage#pinPageAt(int)}
+   */
+  public void pinRootPages() {
+    myStorage.getPagedFileStorage().pinPageAt(0);
+  }
+
   @Override
   public synchronized void force() {
     lockStorage();
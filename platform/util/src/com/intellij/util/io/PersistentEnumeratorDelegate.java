@@ -79,10 +79,18 @@ public class PersistentEnumeratorDelegate<Data> implements Closeable, Forceable
     return myEnumerator.tryEnumerate(name);
   }
 
+  public void pinRootPages() {
+    myEnumerator.pinRootPages();
+  }
+
   public boolean traverseAllRecords(PersistentEnumeratorBase.RecordsProcessor recordsProcessor) throws IOException {
     return myEnumerator.traverseAllRecords(recordsProcessor);
   }
 
+  public long traverseRecords(long position, int limit, @NotNull PersistentEnumeratorBase.RecordsProcessor recordsProcessor) throws IOException {
+    return myEnumerator.traverseRecords(position, limit, recordsProcessor);
+  }
+
   public Collection<Data> getAllDataObjects(@Nullable final PersistentEnumeratorBase.DataFilter filter) throws IOException {
     return myEnumerator.getAllDataObjects(filter);
   }
@@ -20,10 +20,17 @@ import com.intellij.openapi.util.LowMemoryWatcher;
 import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.CommonProcessors;
+import com.intellij.util.ConcurrencyUtil;
 import com.intellij.util.Processor;
+import com.intellij.util.SystemProperties;
 import com.intellij.util.containers.LimitedPool;
 import com.intellij.util.containers.SLRUCache;
 import com.intellij.util.containers.hash.EqualityPolicy;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntIterator;
+import gnu.trove.TLongArrayList;
+import gnu.trove.TLongLongHashMap;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -31,8 +38,11 @@ import org.jetbrains.annotations.TestOnly;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Eugene Zhuravlev
@@ -66,6 +76,18 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
   private boolean myIntAddressForNewRecord;
   private static final boolean doHardConsistencyChecks = true;
 
+  private static final boolean INCREMENTAL_COMPACTION =
+    SystemProperties.getBooleanProperty("idea.persistent.hash.map.incremental.compaction", true);
+  private static final int COMPACTION_SLICE_RECORDS = 1000;
+  private static final int COMPACTION_SLICE_BYTES = 1024 * 1024;
+  private static final ThreadPoolExecutor ourCompactionExecutor = ConcurrencyUtil.newSingleThreadExecutor("PersistentHashMap compaction",
+                                                                                                         Thread.MIN_PRIORITY);
+  static {
+    ourCompactionExecutor.setKeepAliveTime(1, TimeUnit.SECONDS);
+    ourCompactionExecutor.allowCoreThreadTimeOut(true);
+  }
+  private volatile IncrementalCompaction myCompaction; // modified under myEnumerator lock
+
   private static class AppendStream extends DataOutputStream {
     private AppendStream() {
       super(null);
@@ -147,6 +169,18 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
 
     try {
       myValueExternalizer = valueExternalizer;
+      // left by compaction interrupted before switching to the new storage, the map itself still refers to the old one
+      FileUtil.delete(getCompactedDataFile(file));
+      // left by compaction interrupted while switching to the new storage, the map still refers to the old one if it wasn't replaced
+      final File replacedDataFile = getReplacedDataFile(file);
+      if (replacedDataFile.exists()) {
+        if (getDataFile(file).exists()) {
+          FileUtil.delete(replacedDataFile);
+        }
+        else {
+          renameOrFail(replacedDataFile, getDataFile(file));
+        }
+      }
       myValueStorage = PersistentHashMapValueStorage.create(getDataFile(file).getPath());
       myLiveAndGarbageKeysCounter = myEnumerator.getMetaData();
       long data2 = myEnumerator.getMetaData2();
@@ -155,7 +189,12 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
       myCanReEnumerate = myEnumerator.canReEnumerate();
 
       if (makesSenseToCompact()) {
-        compact();
+        if (INCREMENTAL_COMPACTION) {
+          startIncrementalCompaction();
+        }
+        else {
+          compact();
+        }
       }
     }
     catch (IOException e) {
@@ -255,6 +294,7 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
 
   @TestOnly // public for tests
   public boolean makesSenseToCompact() {
+    if (myCompaction != null) return false;
     final long fileSize = getDataFile(myEnumerator.myFile).length();
     final int megabyte = 1024 * 1024;
 
@@ -292,6 +332,15 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
     return new File(file.getParentFile(), file.getName() + DATA_FILE_EXTENSION);
   }
 
+  @NotNull
+  private static File getCompactedDataFile(@NotNull final File file) {
+    return new File(file.getParentFile(), file.getName() + DATA_FILE_EXTENSION + ".new");
+  }
+
+  private static File getReplacedDataFile(@NotNull final File file) {
+    return new File(file.getParentFile(), file.getName() + DATA_FILE_EXTENSION + ".old");
+  }
+
   @Override
   public final void put(Key key, Value value) throws IOException {
     synchronized (myEnumerator) {
@@ -506,7 +555,11 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
         clearAppenderCaches();
       }
       finally {
-        super.force();
+        // the records refer to the deleted storage until the compaction translates them, so the map can't be saved as consistent yet
+        final IncrementalCompaction compaction = myCompaction;
+        if (compaction == null || !compaction.isSwitched()) {
+          super.force();
+        }
       }
     }
     finally {
@@ -532,6 +585,9 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
       try {
         myAppendCacheFlusher.stop();
         myAppendCache.clear();
+        if (myCompaction != null) {
+          stopIncrementalCompaction();
+        }
         final PersistentHashMapValueStorage valueStorage = myValueStorage;
         if (valueStorage != null) {
           valueStorage.dispose();
@@ -563,13 +619,17 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
   // made public for tests
   public void compact() throws IOException {
     synchronized (myEnumerator) {
+      if (myCompaction != null) {
+        stopIncrementalCompaction();
+      }
       LOG.info("Compacting "+myEnumerator.myFile.getPath());
       LOG.info("Live keys:" + ((int)(myLiveAndGarbageKeysCounter  / LIVE_KEY_MASK)) +
                ", dead keys:" + ((int)(myLiveAndGarbageKeysCounter & DEAD_KEY_NUMBER_MASK)) +
                ", read compaction size:" + myReadCompactionGarbageSize);
 
       final long now = System.currentTimeMillis();
-      final String newPath = getDataFile(myEnumerator.myFile).getPath() + ".new";
+      final String newPath = getCompactedDataFile(myEnumerator.myFile).getPath();
+      FileUtil.delete(new File(newPath));
       final PersistentHashMapValueStorage newStorage = PersistentHashMapValueStorage.create(newPath);
       myValueStorage.switchToCompactionMode();
       long sizeBefore = myValueStorage.getSize();
@@ -656,7 +716,296 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
     LOG.info("Updated mappings:" + (System.currentTimeMillis() - started) + " ms");
   }
 
+  private void startIncrementalCompaction() throws IOException {
+    synchronized (myEnumerator) {
+      LOG.info("Starting incremental compaction of " + myEnumerator.myFile.getPath() +
+               ", live keys:" + ((int)(myLiveAndGarbageKeysCounter / LIVE_KEY_MASK)) +
+               ", dead keys:" + ((int)(myLiveAndGarbageKeysCounter & DEAD_KEY_NUMBER_MASK)) +
+               ", read compaction size:" + myReadCompactionGarbageSize);
+      final File newDataFile = getCompactedDataFile(myEnumerator.myFile);
+      FileUtil.delete(newDataFile);
+      myCompaction = new IncrementalCompaction(newDataFile, PersistentHashMapValueStorage.create(newDataFile.getPath()));
+      // value addresses are remembered by compaction and should stay valid until it finishes
+      myValueStorage.setCompactOnRead(false);
+      ourCompactionExecutor.execute(myCompaction);
+    }
+  }
+
+  private void cancelIncrementalCompaction() {
+    final IncrementalCompaction compaction = myCompaction;
+    myCompaction = null;
+    compaction.myNewStorage.dispose();
+    FileUtil.delete(compaction.myNewDataFile);
+    myValueStorage.setCompactOnRead(true);
+  }
+
+  /**
+   * Cancels the compaction which hasn't switched to the new storage yet, otherwise completes it since the old storage is deleted already
+   */
+  private void stopIncrementalCompaction() throws IOException {
+    final IncrementalCompaction compaction = myCompaction;
+    if (compaction.isSwitched()) {
+      compaction.translateAll();
+    }
+    else {
+      cancelIncrementalCompaction();
+    }
+  }
+
+  @TestOnly
+  public boolean isCompactionInProgress() {
+    return myCompaction != null;
+  }
+
+  /**
+   * Compaction which copies live values into the new storage by small slices in background, so the map stays available for readers
+   * and writers meanwhile. Values are never modified in place, so the value written at an address copied before stays the same; values
+   * written after the compaction started get new addresses, their keys are remembered and the values are copied before switching to
+   * the new storage. Until then the map works with the old storage only and the new one is discarded if the map is closed or the
+   * process terminates. The switch replaces the files only, the records keep the old addresses and are translated on reading until
+   * they are rewritten by slices as well.
+   */
+  private final class IncrementalCompaction implements Runnable {
+    private final File myNewDataFile;
+    private final PersistentHashMapValueStorage myNewStorage;
+    private final long myStarted = System.currentTimeMillis();
+    private long myPosition; // see PersistentEnumeratorBase.traverseRecords()
+    private TLongArrayList myLiveAddresses = new TLongArrayList();
+    private long[] myOldAddresses; // sorted addresses of values which were live when compaction started
+    private long[] myNewAddresses;
+    private int myCopied;
+    private final TIntHashSet myModifiedKeys = new TIntHashSet(); // ids of keys which values were updated after compaction started
+    private final TLongLongHashMap myLateAddresses = new TLongLongHashMap(); // new addresses of values of modified keys
+    private TIntHashSet myTranslatedKeys; // ids of keys which records refer to the new storage, created on switching to it
+    private long mySizeBefore;
+
+    private IncrementalCompaction(@NotNull File newDataFile, @NotNull PersistentHashMapValueStorage newStorage) {
+      myNewDataFile = newDataFile;
+      myNewStorage = newStorage;
+    }
+
+    @Override
+    public void run() {
+      synchronized (myEnumerator) {
+        if (myCompaction != this) return; // cancelled or completed
+        try {
+          if (myTranslatedKeys != null) {
+            if (translateSlice()) return;
+          }
+          else if (myOldAddresses == null) {
+            collectSlice();
+          }
+          else if (myCopied < myOldAddresses.length) {
+            copySlice();
+          }
+          else if (myModifiedKeys.size() > COMPACTION_SLICE_RECORDS) {
+            copyModifiedValues(COMPACTION_SLICE_RECORDS);
+          }
+          else {
+            switchToNewStorage();
+          }
+          ourCompactionExecutor.execute(this);
+        }
+        catch (Throwable t) {
+          LOG.info("Incremental compaction of " + myEnumerator.myFile.getPath() + " failed", t);
+          if (myTranslatedKeys != null) {
+            // records which aren't translated yet refer to the deleted storage
+            myCompaction = null;
+            myEnumerator.markCorrupted();
+          }
+          else {
+            cancelIncrementalCompaction();
+          }
+        }
+      }
+    }
+
+    private boolean isSwitched() {
+      return myTranslatedKeys != null;
+    }
+
+    private void valueUpdated(int keyId) {
+      (myTranslatedKeys != null ? myTranslatedKeys : myModifiedKeys).add(keyId);
+    }
+
+    private boolean refersToOldStorage(int keyId) {
+      return myTranslatedKeys != null && !myTranslatedKeys.contains(keyId);
+    }
+
+    private void collectSlice() throws IOException {
+      myPosition = traverseRecords(myPosition, COMPACTION_SLICE_RECORDS, new PersistentEnumerator.RecordsProcessor() {
+        @Override
+        public boolean process(final int keyId) throws IOException {
+          final long record = readValueId(keyId);
+          if (record != NULL_ADDR) {
+            myLiveAddresses.add(record);
+          }
+          return true;
+        }
+      });
+      if (myPosition != -1) return;
+
+      myLiveAddresses.sort();
+      final long[] addresses = myLiveAddresses.toNativeArray();
+      int count = 0;
+      for (int i = 0; i < addresses.length; i++) {
+        if (count == 0 || addresses[i] != addresses[count - 1]) {
+          addresses[count++] = addresses[i];
+        }
+      }
+      myOldAddresses = count == addresses.length ? addresses : Arrays.copyOf(addresses, count);
+      myNewAddresses = new long[count];
+      myLiveAddresses = null;
+    }
+
+    private void copySlice() throws IOException {
+      final int end = Math.min(myOldAddresses.length, myCopied + COMPACTION_SLICE_RECORDS);
+      final long sizeBefore = myNewStorage.getSize();
+      while (myCopied < end && myNewStorage.getSize() - sizeBefore < COMPACTION_SLICE_BYTES) {
+        myNewAddresses[myCopied] = copyValue(myOldAddresses[myCopied]);
+        myCopied++;
+      }
+    }
+
+    private void copyModifiedValues(int limit) throws IOException {
+      final TIntIterator iterator = myModifiedKeys.iterator();
+      for (int i = 0; i < limit && iterator.hasNext(); i++) {
+        final int keyId = iterator.next();
+        iterator.remove();
+        final long record = readValueId(keyId);
+        if (record != NULL_ADDR && Arrays.binarySearch(myOldAddresses, record) < 0 && !myLateAddresses.containsKey(record)) {
+          myLateAddresses.put(record, copyValue(record));
+        }
+      }
+    }
+
+    private long copyValue(long address) throws IOException {
+      final byte[] value = myValueStorage.readBytes(address).buffer;
+      return myNewStorage.appendBytes(value, 0, value.length, 0);
+    }
+
+    private void switchToNewStorage() throws IOException {
+      clearAppenderCaches();
+      copyModifiedValues(Integer.MAX_VALUE);
+      myEnumerator.markDirty(true);
+
+      mySizeBefore = myValueStorage.getSize();
+      myNewStorage.dispose();
+      myValueStorage.dispose();
+
+      // the records aren't modified by the switch, so any failure just restores the old storage and cancels the compaction
+      final File dataFile = getDataFile(myEnumerator.myFile);
+      final File oldDataFile = getReplacedDataFile(myEnumerator.myFile);
+      try {
+        beforeSwitchingDataFiles();
+        FileUtil.delete(oldDataFile);
+        renameOrFail(dataFile, oldDataFile);
+        renameOrFail(myNewDataFile, dataFile);
+      }
+      catch (Throwable t) {
+        restoreOldStorage(dataFile, oldDataFile);
+        if (t instanceof IOException) throw (IOException)t;
+        throw new IOException("Switching to compacted storage failed", t);
+      }
+
+      FileUtil.delete(oldDataFile);
+      myValueStorage = PersistentHashMapValueStorage.create(dataFile.getPath());
+      myLiveAndGarbageKeysCounter = myLiveAndGarbageKeysCounter / LIVE_KEY_MASK * LIVE_KEY_MASK;
+      myReadCompactionGarbageSize = 0;
+      myModifiedKeys.clear();
+      myTranslatedKeys = new TIntHashSet();
+      myPosition = 0;
+    }
+
+    private void restoreOldStorage(File dataFile, File oldDataFile) {
+      try {
+        if (!dataFile.exists() && oldDataFile.exists()) {
+          renameOrFail(oldDataFile, dataFile);
+        }
+        myValueStorage = PersistentHashMapValueStorage.create(dataFile.getPath());
+      }
+      catch (Throwable t) {
+        LOG.info("Failed to restore " + myEnumerator.myFile.getPath() + " after unsuccessful compaction", t);
+        myEnumerator.markCorrupted();
+      }
+    }
+
+    private long translate(long address) {
+      final int index = Arrays.binarySearch(myOldAddresses, address);
+      if (index >= 0) return myNewAddresses[index];
+      if (myLateAddresses.containsKey(address)) return myLateAddresses.get(address);
+      LOG.error("No compacted value at " + address + " in " + myEnumerator.myFile.getPath());
+      return NULL_ADDR;
+    }
+
+    /**
+     * @return true if all records are translated and the compaction is completed
+     */
+    private boolean translateSlice() throws IOException {
+      final TIntArrayList keyIds = new TIntArrayList();
+      final TIntArrayList keys = new TIntArrayList();
+      myPosition = traverseRecords(myPosition, COMPACTION_SLICE_RECORDS, new PersistentEnumerator.RecordsProcessor() {
+        @Override
+        public boolean process(final int keyId) throws IOException {
+          if (refersToOldStorage(keyId)) {
+            keyIds.add(keyId);
+            keys.add(getCurrentKey());
+          }
+          return true;
+        }
+      });
+
+      // records are updated after the traversal since updating may reenumerate the key
+      myEnumerator.lockStorage();
+      try {
+        for (int i = 0; i < keyIds.size(); i++) {
+          final int keyId = keyIds.get(i);
+          if (!refersToOldStorage(keyId)) continue;
+          final long record = readRawValueId(keyId);
+          if (record != NULL_ADDR) {
+            updateValueId(keyId, translate(record), record, null, keys.get(i));
+          }
+        }
+      }
+      finally {
+        myEnumerator.unlockStorage();
+      }
+      if (myPosition != -1) return false;
+
+      myCompaction = null;
+      myEnumerator.putMetaData(myLiveAndGarbageKeysCounter);
+      myEnumerator.putMetaData2(myLargeIndexWatermarkId);
+      LOG.info("Incrementally compacted " + myEnumerator.myFile.getPath() + ":" + mySizeBefore + " bytes into " +
+               myValueStorage.getSize() + " bytes in " + (System.currentTimeMillis() - myStarted) + "ms, " +
+               myLateAddresses.size() + " values copied after compaction started");
+      return true;
+    }
+
+    private void translateAll() throws IOException {
+      while (!translateSlice()) ;
+    }
+  }
+
+  private static void renameOrFail(File from, File to) throws IOException {
+    if (!from.renameTo(to)) {
+      throw new IOException("Failed to rename " + from + " to " + to);
+    }
+  }
+
+  @TestOnly
+  void beforeSwitchingDataFiles() throws IOException {
+  }
+
   private long readValueId(final int keyId) {
+    final long address = readRawValueId(keyId);
+    final IncrementalCompaction compaction = myCompaction;
+    if (address != NULL_ADDR && compaction != null && compaction.refersToOldStorage(keyId)) {
+      return compaction.translate(address);
+    }
+    return address;
+  }
+
+  private long readRawValueId(final int keyId) {
     long address = myEnumerator.myStorage.getInt(keyId + myParentValueRefOffset);
     if (address == 0 || address == -POSITIVE_VALUE_SHIFT) {
       return NULL_ADDR;
@@ -688,7 +1037,7 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
         myEnumerator.myStorage.putInt(keyId + myParentValueRefOffset, -(int)(value + POSITIVE_VALUE_SHIFT));
         if (newKey) ++smallKeys;
       } else {
-        if ((keyId < myLargeIndexWatermarkId || myLargeIndexWatermarkId == 0) && (newKey || canUseIntAddressForNewRecord(oldValue))) {
+        if ((keyId < myLargeIndexWatermarkId || myLargeIndexWatermarkId == 0) && (newKey || canUseIntAddressForNewRecord(readRawValueId(keyId)))) {
           // keyId is result of enumerate, if we do reenumerate then it is no longer accessible unless somebody cached it
           myIntAddressForNewRecord = false;
           keyId = myEnumerator.reenumerate(key == null ? myEnumerator.getValue(keyId, processingKey) : key);
@@ -710,11 +1059,15 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
                         ",@"+getBaseFile().getPath());
     }
     if (doHardConsistencyChecks) {
-      long checkRecord = readValueId(keyId);
+      long checkRecord = readRawValueId(keyId);
       if (checkRecord != value) {
         assert false:value;
       }
     }
+    final IncrementalCompaction compaction = myCompaction;
+    if (compaction != null) {
+      compaction.valueUpdated(keyId);
+    }
     return keyId;
   }
 }
@@ -37,6 +37,7 @@ public class PersistentHashMapValueStorage {
   private final File myFile;
   private final String myPath;
   private boolean myCompactionMode = false;
+  private boolean myCompactOnRead = true;
 
   private static final int CACHE_PROTECTED_QUEUE_SIZE = 10;
   private static final int CACHE_PROBATIONAL_QUEUE_SIZE = 20;
@@ -339,7 +340,7 @@ public class PersistentHashMapValueStorage {
       }
     }
 
-    if (chunkCount > 1 && !myCompactionMode) {
+    if (chunkCount > 1 && !myCompactionMode && myCompactOnRead) {
       long l = appendBytes(new ByteSequence(result), 0);
       return new ReadResult(l, result);
     }
@@ -390,6 +391,13 @@ public class PersistentHashMapValueStorage {
     }
   }
 
+  /**
+   * Allows to keep addresses of values stable while they are read, fragmented values are rewritten at the end of the storage otherwise
+   */
+  public void setCompactOnRead(boolean compactOnRead) {
+    myCompactOnRead = compactOnRead;
+  }
+
   public void switchToCompactionMode() {
     ourReadersCache.remove(myPath);
     // in compaction mode use faster reader
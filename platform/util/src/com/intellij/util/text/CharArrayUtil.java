@@ -92,6 +92,10 @@ public class CharArrayUtil {
         ((StringBuilder)src).getChars(srcOffset, srcOffset + len, dst, dstOffset);
         return;
       }
+      else if (src instanceof ImmutableText) {
+        ((ImmutableText)src).getChars(srcOffset, srcOffset + len, dst, dstOffset);
+        return;
+      }
     }
 
     for (int i = 0, j = srcOffset, max = srcOffset + len; j < max && i < dst.length; i++, j++) {
@@ -163,6 +167,10 @@ public class CharArrayUtil {
       return chars;
     }
 
+    if (seq instanceof ImmutableText) {
+      return ((ImmutableText)seq).toCharArray();
+    }
+
     return seq.toString().toCharArray();
   }
 
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.text;
+
+import com.intellij.util.ArrayUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.TestOnly;
+
+import java.util.Arrays;
+
+/**
+ * Immutable char sequence kept as a balanced tree of small char arrays (a rope).
+ * <p/>
+ * Edits return new instances which share all untouched chunks with the original one, so they cost <code>O(log n)</code>
+ * whatever the length of the text is. Any instance is a consistent snapshot which may be held and read from any thread without copying.
+ * Sequential {@link #charAt(int)} calls are served from the last accessed chunk, so iterating over the text is cheap too.
+ */
+public final class ImmutableText implements CharSequence {
+  /**
+   * Maximum length of a chunk. Adjacent chunks are merged while they fit into it, so that typing doesn't produce one chunk per char.
+   */
+  static final int LEAF_SIZE = 512;
+
+  private static final LeafNode EMPTY_NODE = new LeafNode(ArrayUtil.EMPTY_CHAR_ARRAY);
+  private static final ImmutableText EMPTY = new ImmutableText(EMPTY_NODE);
+
+  private final Node myRoot;
+  private volatile LeafPosition myLastLeaf;
+
+  private ImmutableText(@NotNull Node root) {
+    myRoot = root;
+  }
+
+  @NotNull
+  public static ImmutableText empty() {
+    return EMPTY;
+  }
+
+  @NotNull
+  public static ImmutableText valueOf(@NotNull CharSequence text) {
+    if (text instanceof ImmutableText) return (ImmutableText)text;
+    return text.length() == 0 ? EMPTY : new ImmutableText(toNode(text));
+  }
+
+  @Override
+  public int length() {
+    return myRoot.length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length()) {
+      throw new IndexOutOfBoundsException("Wrong offset: " + index + "; length: " + length());
+    }
+    LeafPosition leaf = myLastLeaf;
+    if (leaf == null || index < leaf.myOffset || index >= leaf.myOffset + leaf.myLeaf.myChars.length) {
+      myLastLeaf = leaf = findLeaf(index);
+    }
+    return leaf.myLeaf.myChars[index - leaf.myOffset];
+  }
+
+  @NotNull
+  @Override
+  public ImmutableText subSequence(int start, int end) {
+    return subtext(start, end);
+  }
+
+  @NotNull
+  public ImmutableText subtext(int start, int end) {
+    checkRange(start, end);
+    if (start == 0 && end == length()) return this;
+    if (start == end) return EMPTY;
+    return new ImmutableText(myRoot.subNode(start, end));
+  }
+
+  @NotNull
+  public ImmutableText concat(@NotNull CharSequence text) {
+    return replace(length(), length(), text);
+  }
+
+  @NotNull
+  public ImmutableText insert(int index, @NotNull CharSequence text) {
+    return replace(index, index, text);
+  }
+
+  @NotNull
+  public ImmutableText delete(int start, int end) {
+    return replace(start, end, "");
+  }
+
+  /**
+   * @return text with the <code>[start, end)</code> range replaced by the given text
+   */
+  @NotNull
+  public ImmutableText replace(int start, int end, @NotNull CharSequence text) {
+    checkRange(start, end);
+    if (start == end && text.length() == 0) return this;
+    Node head = start == 0 ? EMPTY_NODE : myRoot.subNode(0, start);
+    Node tail = end == length() ? EMPTY_NODE : myRoot.subNode(end, length());
+    Node result = concat(concat(head, toNode(text)), tail);
+    return result.length() == 0 ? EMPTY : new ImmutableText(result);
+  }
+
+  /**
+   * Copies <code>[start, end)</code> range of the text to the given array.
+   */
+  public void getChars(int start, int end, @NotNull char[] dest, int destPos) {
+    checkRange(start, end);
+    if (start < end) {
+      myRoot.getChars(start, end, dest, destPos);
+    }
+  }
+
+  @NotNull
+  public char[] toCharArray() {
+    char[] chars = new char[length()];
+    myRoot.getChars(0, chars.length, chars, 0);
+    return chars;
+  }
+
+  @NotNull
+  @Override
+  public String toString() {
+    return length() == 0 ? "" : StringFactory.createShared(toCharArray());
+  }
+
+  @TestOnly
+  int getDepth() {
+    return myRoot.depth();
+  }
+
+  private void checkRange(int start, int end) {
+    if (start < 0 || end > length() || start > end) {
+      throw new IndexOutOfBoundsException("Wrong range: [" + start + ", " + end + "); length: " + length());
+    }
+  }
+
+  @NotNull
+  private LeafPosition findLeaf(int index) {
+    Node node = myRoot;
+    int offset = 0;
+    while (node instanceof CompositeNode) {
+      CompositeNode composite = (CompositeNode)node;
+      int headLength = composite.myHead.length();
+      if (index - offset < headLength) {
+        node = composite.myHead;
+      }
+      else {
+        offset += headLength;
+        node = composite.myTail;
+      }
+    }
+    return new LeafPosition((LeafNode)node, offset);
+  }
+
+  @NotNull
+  private static Node toNode(@NotNull CharSequence text) {
+    if (text instanceof ImmutableText) return ((ImmutableText)text).myRoot;
+    if (text.length() == 0) return EMPTY_NODE;
+    if (text instanceof String) {
+      return build((String)text, null, 0, text.length());
+    }
+    return build(null, CharArrayUtil.fromSequence(text), 0, text.length());
+  }
+
+  /**
+   * Builds a perfectly balanced tree of full chunks; either string or chars is not null.
+   */
+  @NotNull
+  private static Node build(String string, char[] chars, int start, int end) {
+    int length = end - start;
+    if (length <= LEAF_SIZE) {
+      if (chars != null) return new LeafNode(Arrays.copyOfRange(chars, start, end));
+      char[] leaf = new char[length];
+      string.getChars(start, end, leaf, 0);
+      return new LeafNode(leaf);
+    }
+    int leaves = (length + LEAF_SIZE - 1) / LEAF_SIZE;
+    int middle = start + (leaves + 1) / 2 * LEAF_SIZE;
+    return new CompositeNode(build(string, chars, start, middle), build(string, chars, middle, end));
+  }
+
+  /**
+   * Joins two balanced trees keeping the result balanced: the shallower tree is attached to the deeper one
+   * at the level of its own depth, and the nodes on the way back are rotated when necessary, as in an AVL tree.
+   * A short chunk is carried down to the adjacent chunk and merged with it if the result fits into {@link #LEAF_SIZE}.
+   */
+  @NotNull
+  private static Node concat(@NotNull Node head, @NotNull Node tail) {
+    if (head.length() == 0) return tail;
+    if (tail.length() == 0) return head;
+    if (head.length() + tail.length() <= LEAF_SIZE) {
+      char[] chars = new char[head.length() + tail.length()];
+      head.getChars(0, head.length(), chars, 0);
+      tail.getChars(0, tail.length(), chars, head.length());
+      return new LeafNode(chars);
+    }
+    if (head.depth() > tail.depth() + 1 || head instanceof CompositeNode && isShortLeaf(tail)) {
+      CompositeNode composite = (CompositeNode)head;
+      return balance(composite.myHead, concat(composite.myTail, tail));
+    }
+    if (tail.depth() > head.depth() + 1 || tail instanceof CompositeNode && isShortLeaf(head)) {
+      CompositeNode composite = (CompositeNode)tail;
+      return balance(concat(head, composite.myHead), composite.myTail);
+    }
+    return new CompositeNode(head, tail);
+  }
+
+  private static boolean isShortLeaf(@NotNull Node node) {
+    return node instanceof LeafNode && node.length() < LEAF_SIZE / 2;
+  }
+
+  /**
+   * @return node joining balanced trees whose depths differ by two at most
+   */
+  @NotNull
+  private static Node balance(@NotNull Node head, @NotNull Node tail) {
+    if (head.depth() > tail.depth() + 1) {
+      CompositeNode left = (CompositeNode)head;
+      if (left.myHead.depth() >= left.myTail.depth()) {
+        return new CompositeNode(left.myHead, new CompositeNode(left.myTail, tail));
+      }
+      CompositeNode middle = (CompositeNode)left.myTail;
+      return new CompositeNode(new CompositeNode(left.myHead, middle.myHead), new CompositeNode(middle.myTail, tail));
+    }
+    if (tail.depth() > head.depth() + 1) {
+      CompositeNode right = (CompositeNode)tail;
+      if (right.myTail.depth() >= right.myHead.depth()) {
+        return new CompositeNode(new CompositeNode(head, right.myHead), right.myTail);
+      }
+      CompositeNode middle = (CompositeNode)right.myHead;
+      return new CompositeNode(new CompositeNode(head, middle.myHead), new CompositeNode(middle.myTail, right.myTail));
+    }
+    return new CompositeNode(head, tail);
+  }
+
+  private abstract static class Node {
+    abstract int length();
+
+    abstract int depth();
+
+    /**
+     * @param start less than end
+     */
+    @NotNull
+    abstract Node subNode(int start, int end);
+
+    abstract void getChars(int start, int end, @NotNull char[] dest, int destPos);
+  }
+
+  private static final class LeafNode extends Node {
+    private final char[] myChars;
+
+    private LeafNode(@NotNull char[] chars) {
+      myChars = chars;
+    }
+
+    @Override
+    int length() {
+      return myChars.length;
+    }
+
+    @Override
+    int depth() {
+      return 0;
+    }
+
+    @NotNull
+    @Override
+    Node subNode(int start, int end) {
+      return start == 0 && end == myChars.length ? this : new LeafNode(Arrays.copyOfRange(myChars, start, end));
+    }
+
+    @Override
+    void getChars(int start, int end, @NotNull char[] dest, int destPos) {
+      System.arraycopy(myChars, start, dest, destPos, end - start);
+    }
+  }
+
+  private static final class CompositeNode extends Node {
+    private final Node myHead;
+    private final Node myTail;
+    private final int myLength;
+    private final int myDepth;
+
+    private CompositeNode(@NotNull Node head, @NotNull Node tail) {
+      myHead = head;
+      myTail = tail;
+      myLength = head.length() + tail.length();
+      myDepth = Math.max(head.depth(), tail.depth()) + 1;
+    }
+
+    @Override
+    int length() {
+      return myLength;
+    }
+
+    @Override
+    int depth() {
+      return myDepth;
+    }
+
+    @NotNull
+    @Override
+    Node subNode(int start, int end) {
+      if (start == 0 && end == myLength) return this;
+      int headLength = myHead.length();
+      if (end <= headLength) return myHead.subNode(start, end);
+      if (start >= headLength) return myTail.subNode(start - headLength, end - headLength);
+      return concat(myHead.subNode(start, headLength), myTail.subNode(0, end - headLength));
+    }
+
+    @Override
+    void getChars(int start, int end, @NotNull char[] dest, int destPos) {
+      int headLength = myHead.length();
+      if (start < headLength) {
+        myHead.getChars(start, Math.min(end, headLength), dest, destPos);
+      }
+      if (end > headLength) {
+        int tailStart = Math.max(start, headLength);
+        myTail.getChars(tailStart - headLength, end - headLength, dest, destPos + tailStart - start);
+      }
+    }
+  }
+
+  private static final class LeafPosition {
+    private final LeafNode myLeaf;
+    private final int myOffset;
+
+    private LeafPosition(@NotNull LeafNode leaf, int offset) {
+      myLeaf = leaf;
+      myOffset = offset;
+    }
+  }
+}
@@ -62,6 +62,10 @@ public class CommitHashPlusParents {
     return result;
   }
 
+  public String[] getParentHashes() {
+    return myParents;
+  }
+
   public String getAuthorName() {
     return myAuthorName;
   }
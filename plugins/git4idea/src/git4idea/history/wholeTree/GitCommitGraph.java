@@ -0,0 +1,314 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.history.wholeTree;
+
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.io.DataInputOutputUtil;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongArrayList;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Skeleton of a repository history (commit hashes, parents, commit times and authors) persisted between IDE sessions,
+ * see {@link GitCommitGraphCache}.
+ * <p/>
+ * Hashes and author names are enumerated, commits are kept column-wise. Commits are appended in batches: a batch contains
+ * the commits which became reachable from the refs since the previous batch. Each batch is appended to the file as a whole,
+ * so an update costs only the new commits; the rows of all batches are merged into date order when a snapshot is taken.
+ */
+class GitCommitGraph {
+  private static final int VERSION = 1;
+
+  private final File myFile;
+
+  // hashes of commits and of parents which are not loaded
+  private final List<String> myHashes = new ArrayList<String>();
+  private final TObjectIntHashMap<String> myHashIds = new TObjectIntHashMap<String>();
+  private final BitSet myLoaded = new BitSet();
+  private final List<String> myAuthors = new ArrayList<String>();
+  private final TObjectIntHashMap<String> myAuthorIds = new TObjectIntHashMap<String>();
+
+  // columns, one row per commit
+  private final TIntArrayList myRowHashes = new TIntArrayList();
+  private final TLongArrayList myRowTimes = new TLongArrayList();
+  private final TIntArrayList myRowAuthors = new TIntArrayList();
+  private final List<int[]> myRowParents = new ArrayList<int[]>();
+
+  private final TIntArrayList myBatchStarts = new TIntArrayList();
+  private Set<String> myHeads = Collections.emptySet();
+  private Set<String> myTags = Collections.emptySet();
+  private int[] myOrder;
+
+  GitCommitGraph(@NotNull File file) {
+    myFile = file;
+  }
+
+  /**
+   * @return false if there's nothing stored yet
+   */
+  synchronized boolean load() throws IOException {
+    if (!myFile.exists()) return false;
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile)));
+    try {
+      if (in.readInt() != VERSION) throw new IOException("Version mismatch");
+      long remaining = myFile.length() - 4;
+      while (remaining > 0) {
+        int length = in.readInt();
+        if (length > remaining - 4) throw new IOException("Truncated batch");
+        readBatch(in);
+        remaining -= length + 4;
+      }
+    }
+    finally {
+      in.close();
+    }
+    return true;
+  }
+
+  synchronized boolean isEmpty() {
+    return myRowHashes.isEmpty();
+  }
+
+  synchronized boolean isUpToDate(@NotNull Collection<String> heads, @NotNull Collection<String> tags) {
+    return !isEmpty() && myHeads.equals(new HashSet<String>(heads)) && myTags.equals(new HashSet<String>(tags));
+  }
+
+  @NotNull
+  synchronized Set<String> getHeads() {
+    return myHeads;
+  }
+
+  @NotNull
+  synchronized Set<String> getTags() {
+    return myTags;
+  }
+
+  synchronized boolean contains(@NotNull String hash) {
+    return myHashIds.containsKey(hash) && myLoaded.get(myHashIds.get(hash));
+  }
+
+  /**
+   * Stores the commits (already known ones are skipped) as a new batch and remembers the refs they were loaded for.
+   */
+  synchronized void append(@NotNull List<CommitHashPlusParents> commits, @NotNull Collection<String> heads, @NotNull Collection<String> tags)
+    throws IOException {
+    int hashesBefore = myHashes.size();
+    int authorsBefore = myAuthors.size();
+    int rowsBefore = myRowHashes.size();
+    myBatchStarts.add(rowsBefore);
+    for (CommitHashPlusParents commit : commits) {
+      int hashId = enumerateHash(commit.getHash());
+      if (myLoaded.get(hashId)) continue;
+      String[] parentHashes = commit.getParentHashes();
+      int[] parents = parentHashes.length == 0 ? ArrayUtil.EMPTY_INT_ARRAY : new int[parentHashes.length];
+      for (int i = 0; i < parentHashes.length; i++) {
+        parents[i] = enumerateHash(parentHashes[i]);
+      }
+      addRow(hashId, commit.getTime(), enumerateAuthor(commit.getAuthorName()), parents);
+    }
+    myHeads = new HashSet<String>(heads);
+    myTags = new HashSet<String>(tags);
+    myOrder = null;
+
+    BufferExposingByteArrayOutputStream bytes = new BufferExposingByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    writeBatch(out, hashesBefore, authorsBefore, rowsBefore);
+    out.close();
+
+    boolean created = !myFile.exists() || myFile.length() == 0;
+    if (created) FileUtil.createParentDirs(myFile);
+    DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myFile, !created)));
+    try {
+      if (created) file.writeInt(VERSION);
+      file.writeInt(bytes.size());
+      file.write(bytes.getInternalBuffer(), 0, bytes.size());
+    }
+    finally {
+      file.close();
+    }
+  }
+
+  /**
+   * @return rows currently stored in <code>git log --date-order</code> order: by commit time, latest first, but never a parent
+   * above its child. Rows appended later are not visible through the snapshot.
+   */
+  @NotNull
+  synchronized Snapshot getSnapshot() {
+    if (myOrder == null) {
+      myOrder = dateOrder();
+    }
+    return new Snapshot(myOrder);
+  }
+
+  private int[] dateOrder() {
+    final int rows = myRowHashes.size();
+    final int[] rowOfHash = new int[myHashes.size()];
+    Arrays.fill(rowOfHash, -1);
+    for (int row = 0; row < rows; row++) {
+      rowOfHash[myRowHashes.get(row)] = row;
+    }
+    final int[] childCount = new int[rows];
+    for (int row = 0; row < rows; row++) {
+      for (int parent : myRowParents.get(row)) {
+        if (rowOfHash[parent] >= 0) childCount[rowOfHash[parent]]++;
+      }
+    }
+    // commits with equal times keep the order they were listed in by git, later batches first
+    final int[] batchOf = new int[rows];
+    for (int batch = 0; batch < myBatchStarts.size(); batch++) {
+      int end = batch == myBatchStarts.size() - 1 ? rows : myBatchStarts.get(batch + 1);
+      Arrays.fill(batchOf, myBatchStarts.get(batch), end, batch);
+    }
+    final PriorityQueue<Integer> ready = new PriorityQueue<Integer>(Math.max(1, rows), new Comparator<Integer>() {
+      @Override
+      public int compare(Integer row1, Integer row2) {
+        long time1 = myRowTimes.get(row1);
+        long time2 = myRowTimes.get(row2);
+        if (time1 != time2) return time1 > time2 ? -1 : 1;
+        if (batchOf[row1] != batchOf[row2]) return batchOf[row2] - batchOf[row1];
+        return row1 - row2;
+      }
+    });
+    for (int row = 0; row < rows; row++) {
+      if (childCount[row] == 0) ready.add(row);
+    }
+    final int[] order = new int[rows];
+    int idx = 0;
+    while (!ready.isEmpty()) {
+      int row = ready.poll();
+      order[idx++] = row;
+      for (int parent : myRowParents.get(row)) {
+        int parentRow = rowOfHash[parent];
+        if (parentRow >= 0 && --childCount[parentRow] == 0) ready.add(parentRow);
+      }
+    }
+    return order;
+  }
+
+  private synchronized CommitHashPlusParents getRow(int row) {
+    int[] parentIds = myRowParents.get(row);
+    String[] parents = parentIds.length == 0 ? ArrayUtil.EMPTY_STRING_ARRAY : new String[parentIds.length];
+    for (int i = 0; i < parentIds.length; i++) {
+      parents[i] = myHashes.get(parentIds[i]);
+    }
+    return new CommitHashPlusParents(myHashes.get(myRowHashes.get(row)), parents, myRowTimes.get(row),
+                                     myAuthors.get(myRowAuthors.get(row)));
+  }
+
+  private void addRow(int hashId, long time, int authorId, int[] parents) {
+    myRowHashes.add(hashId);
+    myRowTimes.add(time);
+    myRowAuthors.add(authorId);
+    myRowParents.add(parents);
+    myLoaded.set(hashId);
+  }
+
+  private int enumerateHash(String hash) {
+    if (myHashIds.containsKey(hash)) return myHashIds.get(hash);
+    myHashIds.put(hash, myHashes.size());
+    myHashes.add(hash);
+    return myHashes.size() - 1;
+  }
+
+  private int enumerateAuthor(String author) {
+    if (myAuthorIds.containsKey(author)) return myAuthorIds.get(author);
+    myAuthorIds.put(author, myAuthors.size());
+    myAuthors.add(author);
+    return myAuthors.size() - 1;
+  }
+
+  private void writeBatch(DataOutput out, int hashesBefore, int authorsBefore, int rowsBefore) throws IOException {
+    writeStrings(out, myHeads);
+    writeStrings(out, myTags);
+    writeStrings(out, myHashes.subList(hashesBefore, myHashes.size()));
+    writeStrings(out, myAuthors.subList(authorsBefore, myAuthors.size()));
+    DataInputOutputUtil.writeINT(out, myRowHashes.size() - rowsBefore);
+    for (int row = rowsBefore; row < myRowHashes.size(); row++) {
+      DataInputOutputUtil.writeINT(out, myRowHashes.get(row));
+      DataInputOutputUtil.writeTIME(out, myRowTimes.get(row));
+      DataInputOutputUtil.writeINT(out, myRowAuthors.get(row));
+      int[] parents = myRowParents.get(row);
+      DataInputOutputUtil.writeINT(out, parents.length);
+      for (int parent : parents) {
+        DataInputOutputUtil.writeINT(out, parent);
+      }
+    }
+  }
+
+  private void readBatch(DataInput in) throws IOException {
+    myHeads = new HashSet<String>(readStrings(in));
+    myTags = new HashSet<String>(readStrings(in));
+    for (String hash : readStrings(in)) {
+      enumerateHash(hash);
+    }
+    for (String author : readStrings(in)) {
+      enumerateAuthor(author);
+    }
+    myBatchStarts.add(myRowHashes.size());
+    int rows = DataInputOutputUtil.readINT(in);
+    for (int i = 0; i < rows; i++) {
+      int hashId = DataInputOutputUtil.readINT(in);
+      long time = DataInputOutputUtil.readTIME(in);
+      int authorId = DataInputOutputUtil.readINT(in);
+      int[] parents = new int[DataInputOutputUtil.readINT(in)];
+      for (int j = 0; j < parents.length; j++) {
+        parents[j] = DataInputOutputUtil.readINT(in);
+      }
+      if (hashId >= myHashes.size() || authorId >= myAuthors.size()) throw new IOException("Corrupted batch");
+      addRow(hashId, time, authorId, parents);
+    }
+    myOrder = null;
+  }
+
+  private static void writeStrings(DataOutput out, Collection<String> strings) throws IOException {
+    DataInputOutputUtil.writeINT(out, strings.size());
+    for (String string : strings) {
+      out.writeUTF(string);
+    }
+  }
+
+  private static List<String> readStrings(DataInput in) throws IOException {
+    int size = DataInputOutputUtil.readINT(in);
+    List<String> result = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(in.readUTF());
+    }
+    return result;
+  }
+
+  class Snapshot {
+    private final int[] myRows;
+
+    private Snapshot(int[] rows) {
+      myRows = rows;
+    }
+
+    int getRowCount() {
+      return myRows.length;
+    }
+
+    @NotNull
+    CommitHashPlusParents getRow(int index) {
+      return GitCommitGraph.this.getRow(myRows[index]);
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.history.wholeTree;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Getter;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vcs.FilePathImpl;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.changes.FilePathsHelper;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.AsynchConsumer;
+import com.intellij.util.containers.SLRUMap;
+import git4idea.commands.GitCommand;
+import git4idea.commands.GitSimpleHandler;
+import git4idea.history.GitHistoryUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * !! application-level
+ *
+ * Keeps {@link GitCommitGraph} of each repository root on disk under the system directory and brings it up to date with the refs
+ * before the log is shown: only the commits which became reachable since the previous update are asked from git.
+ * If some commits are not reachable anymore (a branch was deleted or reset), the graph is rebuilt.
+ */
+public class GitCommitGraphCache {
+  private static final Logger LOG = Logger.getInstance("#git4idea.history.wholeTree.GitCommitGraphCache");
+  // keep command lines short; excluding fewer refs only makes git walk more, already known commits are skipped anyway
+  private static final int MAX_REFS_IN_COMMAND_LINE = 200;
+
+  private final File myDir;
+  private final Object myLock = new Object();
+  private final SLRUMap<String, GitCommitGraph> myGraphs = new SLRUMap<String, GitCommitGraph>(3, 3);
+  private final Map<String, Object> myRootLocks = new HashMap<String, Object>();
+
+  public GitCommitGraphCache() {
+    myDir = new File(new File(PathManager.getSystemPath(), "vcs"), "git_graph");
+  }
+
+  public static GitCommitGraphCache getInstance() {
+    return ServiceManager.getService(GitCommitGraphCache.class);
+  }
+
+  /**
+   * Should be called from a pooled thread: the first call for a root runs <code>git log</code> over the whole history.
+   *
+   * @return rows of the graph which is up to date with the refs, or null if it could not be built or loading was canceled
+   */
+  @Nullable
+  GitCommitGraph.Snapshot getUpToDateGraph(@NotNull Project project, @NotNull VirtualFile root, @Nullable Getter<Boolean> isCanceled)
+    throws VcsException {
+    final List<String> heads = revParse(project, root, "HEAD", "--branches", "--remotes");
+    final List<String> tags = revParse(project, root, "--tags");
+    final String key = FilePathsHelper.convertPath(root);
+
+    synchronized (getRootLock(key)) {
+      GitCommitGraph graph = getGraph(key);
+      if (graph.isUpToDate(heads, tags)) return graph.getSnapshot();
+
+      if (!graph.isEmpty() && lostCommits(project, root, graph, heads, tags)) {
+        LOG.info("Some commits are not reachable anymore, rebuilding commit graph for " + root.getPresentableUrl());
+        graph = createGraph(key);
+      }
+
+      final List<CommitHashPlusParents> commits = new ArrayList<CommitHashPlusParents>();
+      final AsynchConsumer<CommitHashPlusParents> consumer = new AsynchConsumer<CommitHashPlusParents>() {
+        @Override
+        public void consume(CommitHashPlusParents commit) {
+          commits.add(commit);
+        }
+
+        @Override
+        public void finished() {
+        }
+      };
+      GitHistoryUtils.hashesWithParents(project, new FilePathImpl(root), consumer, isCanceled, null,
+                                        ArrayUtil.toStringArray(getNewCommitsParameters(graph, tags)));
+      // a partial batch would break the order of rows
+      if (isCanceled != null && isCanceled.get()) return null;
+
+      try {
+        graph.append(commits, heads, tags);
+      }
+      catch (IOException e) {
+        LOG.info(e);
+        createGraph(key);
+        return null;
+      }
+      return graph.getSnapshot();
+    }
+  }
+
+  private Object getRootLock(String key) {
+    synchronized (myLock) {
+      Object lock = myRootLocks.get(key);
+      if (lock == null) {
+        lock = new Object();
+        myRootLocks.put(key, lock);
+      }
+      return lock;
+    }
+  }
+
+  private GitCommitGraph getGraph(String key) {
+    synchronized (myLock) {
+      GitCommitGraph graph = myGraphs.get(key);
+      if (graph != null) return graph;
+    }
+    GitCommitGraph graph = new GitCommitGraph(getFile(key));
+    try {
+      graph.load();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      return createGraph(key);
+    }
+    synchronized (myLock) {
+      myGraphs.put(key, graph);
+    }
+    return graph;
+  }
+
+  private GitCommitGraph createGraph(String key) {
+    File file = getFile(key);
+    FileUtil.delete(file);
+    GitCommitGraph graph = new GitCommitGraph(file);
+    synchronized (myLock) {
+      myGraphs.put(key, graph);
+    }
+    return graph;
+  }
+
+  private File getFile(String key) {
+    return new File(myDir, FileUtil.sanitizeFileName(new File(key).getName()) + "." + Integer.toHexString(FileUtil.pathHashCode(key)));
+  }
+
+  private static List<String> getNewCommitsParameters(GitCommitGraph graph, List<String> tags) {
+    final List<String> parameters = new ArrayList<String>();
+    parameters.add("HEAD");
+    parameters.add("--branches");
+    parameters.add("--remotes");
+    final List<String> newTags = new ArrayList<String>(tags);
+    newTags.removeAll(graph.getTags());
+    if (graph.isEmpty() || newTags.size() > MAX_REFS_IN_COMMAND_LINE) {
+      parameters.add("--tags");
+    }
+    else {
+      parameters.addAll(newTags);
+    }
+    parameters.add("--date-order");
+    if (!graph.isEmpty()) {
+      parameters.add("--not");
+      int count = 0;
+      for (String head : graph.getHeads()) {
+        if (++count > MAX_REFS_IN_COMMAND_LINE) break;
+        parameters.add(head);
+      }
+    }
+    return parameters;
+  }
+
+  private static boolean lostCommits(Project project, VirtualFile root, GitCommitGraph graph, List<String> heads, List<String> tags)
+    throws VcsException {
+    final Set<String> removed = new HashSet<String>(graph.getHeads());
+    removed.addAll(graph.getTags());
+    removed.removeAll(heads);
+    removed.removeAll(tags);
+    if (removed.isEmpty()) return false;
+    if (removed.size() > MAX_REFS_IN_COMMAND_LINE) return true;
+
+    final GitSimpleHandler h = new GitSimpleHandler(project, root, GitCommand.REV_LIST);
+    h.setSilent(true);
+    h.addParameters("--max-count=1");
+    h.addParameters(new ArrayList<String>(removed));
+    h.addParameters("--not", "HEAD", "--branches", "--remotes", "--tags");
+    h.endOptions();
+    return !StringUtil.isEmptyOrSpaces(h.run());
+  }
+
+  private static List<String> revParse(Project project, VirtualFile root, String... parameters) throws VcsException {
+    final GitSimpleHandler h = new GitSimpleHandler(project, root, GitCommand.REV_PARSE);
+    h.setSilent(true);
+    h.addParameters(parameters);
+    final List<String> result = new ArrayList<String>();
+    for (String line : StringUtil.splitByLines(h.run())) {
+      if (!StringUtil.isEmptyOrSpaces(line)) {
+        result.add(line.trim());
+      }
+    }
+    return result;
+  }
+}
@@ -12,6 +12,7 @@
  */
 package git4idea.history.wholeTree;
 
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Getter;
@@ -35,7 +36,9 @@ import java.util.*;
  * @author irengrig
  */
 public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlusParents> {
+  private static final Logger LOG = Logger.getInstance("#git4idea.history.wholeTree.LoaderAndRefresherImpl");
   private final static int ourFirstLoadCount = 15;
+  private final static boolean ourUseCommitGraph = ! Boolean.getBoolean("git.log.no.commit.graph");
   private final static int ourPreload = (! parameterCheck(Integer.getInteger("git.log.preload.size"))) ? 100 : Integer.getInteger("git.log.preload.size");
 
   private final Collection<String> myStartingPoints;
@@ -60,6 +63,11 @@ public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlus
   @NotNull
   private volatile StepType myStepType;
   private final boolean myTopoOrder;
+  // unfiltered log is read from the persistent commit graph, if it can be built
+  private boolean myUseCommitGraph;
+  private GitCommitGraph.Snapshot myCommitGraph;
+  private int myCommitGraphPosition;
+  private long myCommitGraphTime = Long.MAX_VALUE;
 
   private static boolean parameterCheck(final Integer i) {
     return i != null && i > 0;
@@ -80,6 +88,8 @@ public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlus
     myHaveStructureFilter = haveStructureFilter;
     myTopoOrder = topoOrder;
     myLoadParents = ! haveDisordering;
+    myUseCommitGraph = ourUseCommitGraph && filters.isEmpty() && (startingPoints == null || startingPoints.isEmpty()) &&
+                       ! haveStructureFilter && ! topoOrder;
     myTicket = ticket;
     myFilters = filters;
     myMediator = mediator;
@@ -150,6 +160,17 @@ public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlus
       if (! checkStartingPoints()) return new LoadAlgorithm.Result<CommitHashPlusParents>(true, 0, myRepeatingLoadConsumer.getLast());
     }*/
 
+    if (myUseCommitGraph && myCommitGraph == null) {
+      try {
+        myCommitGraph = GitCommitGraphCache.getInstance().getUpToDateGraph(myProject, myRootHolder.getRoot(), myProgressAnalog);
+      }
+      catch (VcsException e) {
+        LOG.info(e);
+      }
+      if (isInterrupted()) return new LoadAlgorithm.Result<CommitHashPlusParents>(true, 0, myRepeatingLoadConsumer.getLast());
+      myUseCommitGraph = myCommitGraph != null;
+    }
+
     myRepeatingLoadConsumer.reset();
     int count = 340;
     boolean shouldFull = ! myHaveStructureFilter;
@@ -161,6 +182,10 @@ public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlus
       count = ourPreload;
     }
 
+    if (myUseCommitGraph) {
+      return loadFromCommitGraph(count);
+    }
+
     long start;
     boolean isOver = false;
     while (true) {
@@ -191,6 +216,30 @@ public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlus
     return new LoadAlgorithm.Result<CommitHashPlusParents>(isOver, end - start, myRepeatingLoadConsumer.getLast());
   }
 
+  // rows are passed to the UI as they are read; details are loaded later for the visible rows only
+  private LoadAlgorithm.Result<CommitHashPlusParents> loadFromCommitGraph(final int count) {
+    final long start = System.currentTimeMillis();
+    // the last row of the previous step is passed again for the consumer to find where to continue from
+    final int from = Math.max(0, myCommitGraphPosition - 1);
+    final int to = Math.min(myCommitGraph.getRowCount(), myCommitGraphPosition + count);
+    for (int i = from; i < to; i++) {
+      if (isInterrupted()) return new LoadAlgorithm.Result<CommitHashPlusParents>(true, 0, myRepeatingLoadConsumer.getLast());
+      myRepeatingLoadConsumer.consume(myCommitGraph.getRow(i));
+    }
+    myCommitGraphPosition = to;
+
+    final boolean isOver = to == myCommitGraph.getRowCount();
+    if (isOver) {
+      myId.finished();
+      myStepType = StepType.FINISHED;
+    } else if (myRepeatingLoadConsumer.getLast() != null) {
+      // a parent committed with a clock ahead of its child's still comes after it, the registered time should not grow back though
+      myCommitGraphTime = Math.min(myCommitGraphTime, myRepeatingLoadConsumer.getLast().getTime());
+      myId.registerTime(myCommitGraphTime);
+    }
+    return new LoadAlgorithm.Result<CommitHashPlusParents>(isOver, System.currentTimeMillis() - start, myRepeatingLoadConsumer.getLast());
+  }
+
   private void step(final int count, final boolean shouldFull, final long continuation) {
     if (shouldFull) {
       loadFull(count, continuation);
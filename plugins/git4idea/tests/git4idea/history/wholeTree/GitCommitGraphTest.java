@@ -0,0 +1,86 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.history.wholeTree;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class GitCommitGraphTest extends TestCase {
+  private File myFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myFile = FileUtil.createTempFile("git", "graph");
+    FileUtil.delete(myFile);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myFile);
+    super.tearDown();
+  }
+
+  public void testBranchesLoadedInSeparateBatchesAreMergedByDate() throws Exception {
+    GitCommitGraph graph = new GitCommitGraph(myFile);
+    graph.append(Arrays.asList(commit("a2", 30, "a1"), commit("a1", 10)), Collections.singletonList("a2"), Collections.<String>emptyList());
+    // a branch forked from a1 and fetched later
+    graph.append(Arrays.asList(commit("b2", 40, "b1"), commit("b1", 20, "a1")), Arrays.asList("a2", "b2"), Collections.<String>emptyList());
+
+    assertOrder(graph, "b2", "a2", "b1", "a1");
+
+    GitCommitGraph loaded = new GitCommitGraph(myFile);
+    assertTrue(loaded.load());
+    assertOrder(loaded, "b2", "a2", "b1", "a1");
+  }
+
+  public void testParentIsNeverAboveChild() throws Exception {
+    GitCommitGraph graph = new GitCommitGraph(myFile);
+    graph.append(Arrays.asList(commit("a2", 30, "a1"), commit("a1", 10)), Collections.singletonList("a2"), Collections.<String>emptyList());
+    // committed with a clock behind the one of its parent
+    graph.append(Arrays.asList(commit("c1", 20, "a2")), Collections.singletonList("c1"), Collections.<String>emptyList());
+
+    assertOrder(graph, "c1", "a2", "a1");
+  }
+
+  public void testMergeAcrossBatches() throws Exception {
+    GitCommitGraph graph = new GitCommitGraph(myFile);
+    graph.append(Arrays.asList(commit("a2", 30, "a1"), commit("a1", 10)), Collections.singletonList("a2"), Collections.<String>emptyList());
+    graph.append(Arrays.asList(commit("b1", 20, "a1")), Arrays.asList("a2", "b1"), Collections.<String>emptyList());
+    graph.append(Arrays.asList(commit("d1", 50, "a2", "b1")), Collections.singletonList("d1"), Collections.<String>emptyList());
+
+    assertOrder(graph, "d1", "a2", "b1", "a1");
+  }
+
+  private static CommitHashPlusParents commit(String hash, long time, String... parents) {
+    return new CommitHashPlusParents(hash, parents, time, "author");
+  }
+
+  private static void assertOrder(GitCommitGraph graph, String... expected) {
+    GitCommitGraph.Snapshot snapshot = graph.getSnapshot();
+    List<String> actual = new ArrayList<String>();
+    for (int i = 0; i < snapshot.getRowCount(); i++) {
+      actual.add(snapshot.getRow(i).getHash());
+    }
+    assertEquals(Arrays.asList(expected), actual);
+  }
+}